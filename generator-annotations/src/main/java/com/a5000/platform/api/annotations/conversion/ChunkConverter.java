@@ -0,0 +1,27 @@
+package com.a5000.platform.api.annotations.conversion;
+
+import java.util.List;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Sequential conversion of a chunk of the records converted by {@link ParallelConversion}.
+ */
+public interface ChunkConverter<T, V> {
+
+    List<V> convert( List<? extends T> chunk );
+
+}
@@ -0,0 +1,132 @@
+package com.a5000.platform.api.annotations.conversion;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * DTOs converted by the current thread during a top-level conversion call of the generated conversion
+ * services.
+ *
+ * Conversions nested into the call (related entities, list elements) enter the same context, so an entity
+ * reached several times is converted once and keeps a single DTO; as a DTO is registered before its fields
+ * are converted, cycles of the entity graph end at the already created DTO. Entities are matched by theirs
+ * ids when known (so a proxy and a loaded instance share the DTO) or by identity otherwise.
+ */
+public final class ConversionContext {
+
+    private static final ThreadLocal<ConversionContext> CURRENT = new ThreadLocal<ConversionContext>();
+
+    private final Map<Class<?>, Conversions> conversions = new IdentityHashMap<Class<?>, Conversions>();
+    private Class<?> lastEntityClass;
+    private Conversions lastConversions;
+    private int depth;
+
+    private ConversionContext() {}
+
+    /**
+     * Enters the context of the current thread, a new one is opened by a top-level call.
+     * Each call must be paired with {@link #exit()}.
+     */
+    public static ConversionContext enter() {
+        ConversionContext result = CURRENT.get();
+        if ( result == null ) {
+            result = new ConversionContext();
+            CURRENT.set( result );
+        }
+
+        result.depth++;
+        return result;
+    }
+
+    /**
+     * @return true when the current thread converts within a context
+     */
+    static boolean isEntered() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Leaves the context, which is dropped with all its DTOs by the top-level call
+     */
+    public void exit() {
+        if ( --depth == 0 ) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * @param entityClass class the converter of which has been called
+     * @param id id of the entity, null when unknown
+     * @return DTO the entity has been converted to, null when not converted yet
+     */
+    public Object get( Class<?> entityClass, Object entity, Long id ) {
+        Conversions entityConversions = getConversions( entityClass, false );
+        if ( entityConversions == null ) {
+            return null;
+        }
+
+        if ( id != null ) {
+            return entityConversions.byId == null ? null : entityConversions.byId.get( id.longValue() );
+        }
+
+        return entityConversions.byInstance == null ? null : entityConversions.byInstance.get( entity );
+    }
+
+    public void put( Class<?> entityClass, Object entity, Long id, Object dto ) {
+        Conversions entityConversions = getConversions( entityClass, true );
+        if ( id != null ) {
+            if ( entityConversions.byId == null ) {
+                entityConversions.byId = new LongObjectMap();
+            }
+
+            entityConversions.byId.put( id.longValue(), dto );
+        } else {
+            if ( entityConversions.byInstance == null ) {
+                entityConversions.byInstance = new IdentityHashMap<Object, Object>();
+            }
+
+            entityConversions.byInstance.put( entity, dto );
+        }
+    }
+
+    private Conversions getConversions( Class<?> entityClass, boolean create ) {
+        if ( entityClass == lastEntityClass ) {
+            return lastConversions;
+        }
+
+        Conversions result = conversions.get( entityClass );
+        if ( result == null ) {
+            if ( !create ) {
+                return null;
+            }
+
+            result = new Conversions();
+            conversions.put( entityClass, result );
+        }
+
+        lastEntityClass = entityClass;
+        lastConversions = result;
+        return result;
+    }
+
+    private static class Conversions {
+        LongObjectMap byId;
+        Map<Object, Object> byInstance;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.a5000.platform.api.annotations.conversion;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Open addressing map of non-null values by primitive long keys, so lookups by entity ids
+ * box nothing.
+ */
+final class LongObjectMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    public Object get( long key ) {
+        int mask = keys.length - 1;
+        for ( int i = hash(key) & mask; ; i = ( i + 1 ) & mask ) {
+            Object value = values[i];
+            if ( value == null || keys[i] == key ) {
+                return value;
+            }
+        }
+    }
+
+    public void put( long key, Object value ) {
+        if ( value == null ) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+
+        if ( insert( keys, values, key, value ) ) {
+            size++;
+            if ( size * 2 > keys.length ) {
+                resize( keys.length * 2 );
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize( int capacity ) {
+        long[] resizedKeys = new long[capacity];
+        Object[] resizedValues = new Object[capacity];
+        for ( int i = 0; i < keys.length; i++ ) {
+            if ( values[i] != null ) {
+                insert( resizedKeys, resizedValues, keys[i], values[i] );
+            }
+        }
+
+        keys = resizedKeys;
+        values = resizedValues;
+    }
+
+    /**
+     * @return true when the key has been added, false when the value of an existing key has been replaced
+     */
+    private static boolean insert( long[] keys, Object[] values, long key, Object value ) {
+        int mask = keys.length - 1;
+        for ( int i = hash(key) & mask; ; i = ( i + 1 ) & mask ) {
+            if ( values[i] == null ) {
+                keys[i] = key;
+                values[i] = value;
+                return true;
+            }
+
+            if ( keys[i] == key ) {
+                values[i] = value;
+                return false;
+            }
+        }
+    }
+
+    private static int hash( long key ) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) ( hash ^ ( hash >>> 32 ) );
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.a5000.platform.api.annotations.conversion;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Parallel conversion of large lists by the generated conversion services: records are split into chunks
+ * converted on an executor and the results are joined in the order of the records.
+ *
+ * Only detached entities may be converted by other threads, so lists are converted sequentially while a
+ * transaction is bound to the calling thread by Spring, or while some of the records are managed by a
+ * persistence context (an EntityManager or a Hibernate Session, e.g. the one of open-in-view) bound to it.
+ * Nothing is bound when spring-tx is not available.
+ */
+public final class ParallelConversion {
+
+    private static final String TRANSACTION_MANAGER_CLASS_NAME =
+            "org.springframework.transaction.support.TransactionSynchronizationManager";
+
+    /**
+     * Getters of the persistence contexts held by the resources bound by Spring: EntityManagerHolder
+     * and Hibernate SessionHolder
+     */
+    private static final String[] PERSISTENCE_CONTEXT_GETTERS = new String[] { "getEntityManager", "getSession" };
+
+    private static final ThreadLocal<Boolean> CONVERTING_CHUNK = new ThreadLocal<Boolean>();
+
+    private static final Method IS_TRANSACTION_ACTIVE_METHOD;
+    private static final Method GET_RESOURCE_MAP_METHOD;
+
+    static {
+        Method isTransactionActive = null;
+        Method getResourceMap = null;
+        try {
+            Class<?> managerClass = Class.forName( TRANSACTION_MANAGER_CLASS_NAME, false,
+                    ParallelConversion.class.getClassLoader() );
+            isTransactionActive = managerClass.getMethod("isActualTransactionActive");
+            getResourceMap = managerClass.getMethod("getResourceMap");
+        } catch ( ClassNotFoundException e ) {
+            // no transactions or persistence contexts are bound by Spring
+        } catch ( NoSuchMethodException e ) {
+            isTransactionActive = null;
+            getResourceMap = null;
+        } catch ( LinkageError e ) {
+            isTransactionActive = null;
+            getResourceMap = null;
+        }
+
+        IS_TRANSACTION_ACTIVE_METHOD = isTransactionActive;
+        GET_RESOURCE_MAP_METHOD = getResourceMap;
+    }
+
+    private ParallelConversion() {}
+
+    /**
+     * @param threshold least number of the records converted in parallel, parallel conversion is disabled when 0
+     * @return true when the records are converted in parallel: the call is not nested into another conversion
+     * and no records could be loaded lazily by the calling thread
+     */
+    public static boolean isParallel( Collection<?> records, int threshold ) {
+        return threshold > 0 && records.size() >= threshold
+                && CONVERTING_CHUNK.get() == null
+                && !ConversionContext.isEntered()
+                && !isPersistenceBound( records );
+    }
+
+    /**
+     * @return executor of the conversions when no other one is provided: a fork-join pool of daemon threads
+     * shared by all the conversions, created on the first use
+     */
+    public static Executor defaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Converts chunks of the records on the executor; chunks not started by the executor yet are converted
+     * by the calling thread, so a busy (or rejecting) executor does not stall the conversion.
+     *
+     * @return converted records in the order of the given ones
+     */
+    public static <T, V> List<V> convert( Collection<? extends T> records, int chunkSize, Executor executor,
+                                          final ChunkConverter<T, V> converter ) {
+        if ( chunkSize < 1 ) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        final List<? extends T> recordsList = records instanceof List && records instanceof RandomAccess ?
+                (List<? extends T>) records : new ArrayList<T>( records );
+
+        int size = recordsList.size();
+        List<FutureTask<List<V>>> tasks = new ArrayList<FutureTask<List<V>>>( ( size + chunkSize - 1 ) / chunkSize );
+        for ( int from = 0; from < size; from += chunkSize ) {
+            final List<? extends T> chunk = recordsList.subList( from, Math.min( size, from + chunkSize ) );
+            FutureTask<List<V>> task = new FutureTask<List<V>>( new Callable<List<V>>() {
+                @Override
+                public List<V> call() {
+                    return convertChunk( chunk, converter );
+                }
+            });
+            tasks.add( task );
+
+            try {
+                executor.execute( task );
+            } catch ( RejectedExecutionException e ) {
+                // converted by the calling thread
+            }
+        }
+
+        List<V> result = new ArrayList<V>( size );
+        for ( FutureTask<List<V>> task : tasks ) {
+            task.run();
+            result.addAll( getResult( task ) );
+        }
+
+        return result;
+    }
+
+    private static <T, V> List<V> convertChunk( List<? extends T> chunk, ChunkConverter<T, V> converter ) {
+        Boolean previous = CONVERTING_CHUNK.get();
+        CONVERTING_CHUNK.set( Boolean.TRUE );
+        try {
+            return converter.convert( chunk );
+        } finally {
+            if ( previous == null ) {
+                CONVERTING_CHUNK.remove();
+            } else {
+                CONVERTING_CHUNK.set( previous );
+            }
+        }
+    }
+
+    private static <V> List<V> getResult( FutureTask<List<V>> task ) {
+        try {
+            return task.get();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Conversion has been interrupted", e );
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+
+            if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+
+            throw new IllegalStateException( cause.getMessage(), cause );
+        }
+    }
+
+    /**
+     * @return true when Spring has bound a transaction to the calling thread, or some of the records are
+     * managed by a persistence context bound to it (or when it can not be checked), so the records may be
+     * loaded lazily by the calling thread only
+     */
+    private static boolean isPersistenceBound( Collection<?> records ) {
+        if ( IS_TRANSACTION_ACTIVE_METHOD == null ) {
+            return false;
+        }
+
+        try {
+            if ( Boolean.TRUE.equals( IS_TRANSACTION_ACTIVE_METHOD.invoke(null) ) ) {
+                return true;
+            }
+
+            for ( Object resource : ( (Map<?, ?>) GET_RESOURCE_MAP_METHOD.invoke(null) ).values() ) {
+                Object persistenceContext = getPersistenceContext( resource );
+                if ( persistenceContext != null && isManaged( persistenceContext, records ) ) {
+                    return true;
+                }
+            }
+
+            return false;
+        } catch ( IllegalAccessException e ) {
+            return true;
+        } catch ( InvocationTargetException e ) {
+            return true;
+        }
+    }
+
+    /**
+     * @return EntityManager or Session held by the resource, null for other resources (like JDBC connections)
+     */
+    private static Object getPersistenceContext( Object resource )
+            throws IllegalAccessException, InvocationTargetException {
+        for ( String getterName : PERSISTENCE_CONTEXT_GETTERS ) {
+            try {
+                return resource.getClass().getMethod( getterName ).invoke( resource );
+            } catch ( NoSuchMethodException e ) {
+                // not held by this resource
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true when some of the records are contained by the persistence context; records which are
+     * not entities are reported by the context as illegal arguments, so conversion stays sequential
+     */
+    private static boolean isManaged( Object persistenceContext, Collection<?> records )
+            throws IllegalAccessException, InvocationTargetException {
+        Method containsMethod;
+        try {
+            containsMethod = persistenceContext.getClass().getMethod( "contains", Object.class );
+        } catch ( NoSuchMethodException e ) {
+            return false;
+        }
+
+        for ( Object record : records ) {
+            if ( record != null && Boolean.TRUE.equals( containsMethod.invoke( persistenceContext, record ) ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Default executor is created on the first use only, fork-join pool threads are daemons
+     */
+    private static class DefaultExecutorHolder {
+        private static final Executor EXECUTOR = new ForkJoinPool();
+    }
+
+}
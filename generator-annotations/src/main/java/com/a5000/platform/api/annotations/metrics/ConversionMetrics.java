@@ -0,0 +1,45 @@
+package com.a5000.platform.api.annotations.metrics;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Receives metrics of the conversions performed by the generated conversion services (when they are
+ * generated with profiling enabled).
+ *
+ * Conversion service takes {@link #startTime()} and {@link #allocatedBytes()} marks before converting an
+ * entity and passes them to {@link #record(Class, long, long)} after the conversion; nested conversions
+ * are recorded separately and included into the enclosing one.
+ */
+public interface ConversionMetrics {
+
+    /**
+     * @return start mark of a conversion
+     */
+    long startTime();
+
+    /**
+     * @return bytes allocated by the current thread so far, or 0 when allocations are not tracked
+     */
+    long allocatedBytes();
+
+    /**
+     * @param entityClass converted entity class
+     * @param startTime mark returned by {@link #startTime()} before the conversion
+     * @param allocatedBytes mark returned by {@link #allocatedBytes()} before the conversion
+     */
+    void record( Class<?> entityClass, long startTime, long allocatedBytes );
+
+}
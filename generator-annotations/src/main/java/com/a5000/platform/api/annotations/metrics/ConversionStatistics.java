@@ -0,0 +1,102 @@
+package com.a5000.platform.api.annotations.metrics;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Snapshot of the conversions of an entity class recorded by {@link HistogramConversionMetrics}.
+ */
+public class ConversionStatistics {
+    private final Class<?> entityClass;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long allocatedBytes;
+    private final long[] buckets;
+
+    public ConversionStatistics( Class<?> entityClass, long count, long totalNanos, long maxNanos,
+                                 long allocatedBytes, long[] buckets ) {
+        this.entityClass = entityClass;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.buckets = buckets;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * @return total bytes allocated by the conversions, 0 when allocations are not tracked
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @param percentile percentile in the range from 0 to 100
+     * @return latency (in nanoseconds) which the given percentage of the conversions has not exceeded
+     */
+    public long getPercentileNanos( double percentile ) {
+        long total = 0;
+        for ( long bucket : buckets ) {
+            total += bucket;
+        }
+
+        if ( total == 0 ) {
+            return 0;
+        }
+
+        long threshold = Math.max( 1, (long) Math.ceil( total * Math.min( 100, Math.max( 0, percentile ) ) / 100 ) );
+        long counted = 0;
+        for ( int i = 0; i < buckets.length; i++ ) {
+            counted += buckets[i];
+            if ( counted >= threshold ) {
+                return Math.min( maxNanos, HistogramConversionMetrics.bucketUpperBound(i) );
+            }
+        }
+
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return entityClass.getName() + ": count=" + count
+                + ", mean=" + getMeanNanos() + "ns"
+                + ", p50=" + getPercentileNanos(50) + "ns"
+                + ", p99=" + getPercentileNanos(99) + "ns"
+                + ", max=" + maxNanos + "ns"
+                + ( allocatedBytes > 0 ? ", allocated=" + allocatedBytes + "B" : "" );
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.a5000.platform.api.annotations.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * In-memory conversion metrics: counts of the conversions per entity class, histograms of theirs
+ * latencies (in nanoseconds) and, optionally, bytes allocated by the converting threads.
+ *
+ * Latencies are kept in log-linear buckets (8 buckets per power of two, so values are reported
+ * within 12.5% precision) updated without locks; {@link #export()} takes a snapshot of the recorded values.
+ */
+public class HistogramConversionMetrics implements ConversionMetrics {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    static final int BUCKETS = ( Long.SIZE - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS;
+
+    private final ConcurrentMap<Class<?>, Recorder> recorders = new ConcurrentHashMap<Class<?>, Recorder>();
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    public HistogramConversionMetrics() {
+        this( false );
+    }
+
+    /**
+     * @param trackAllocations record bytes allocated by the conversions, when supported by the JVM
+     */
+    public HistogramConversionMetrics( boolean trackAllocations ) {
+        this.threadBean = trackAllocations ? getAllocationsBean() : null;
+    }
+
+    @Override
+    public long startTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return threadBean == null ? 0 : threadBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+    }
+
+    @Override
+    public void record( Class<?> entityClass, long startTime, long allocatedBytes ) {
+        long latency = System.nanoTime() - startTime;
+        long allocated = threadBean == null ? 0 : allocatedBytes() - allocatedBytes;
+
+        Recorder recorder = recorders.get( entityClass );
+        if ( recorder == null ) {
+            Recorder existing = recorders.putIfAbsent( entityClass, recorder = new Recorder() );
+            if ( existing != null ) {
+                recorder = existing;
+            }
+        }
+
+        recorder.record( Math.max( 0, latency ), Math.max( 0, allocated ) );
+    }
+
+    /**
+     * @return whether allocated bytes are recorded
+     */
+    public boolean isAllocationsTracked() {
+        return threadBean != null;
+    }
+
+    /**
+     * @return statistics of the conversions recorded so far, ordered by the entity class names
+     */
+    public List<ConversionStatistics> export() {
+        List<ConversionStatistics> result = new ArrayList<ConversionStatistics>();
+        for ( Map.Entry<Class<?>, Recorder> recorder : recorders.entrySet() ) {
+            result.add( recorder.getValue().snapshot( recorder.getKey() ) );
+        }
+
+        Collections.sort( result, new Comparator<ConversionStatistics>() {
+            @Override
+            public int compare( ConversionStatistics first, ConversionStatistics second ) {
+                return first.getEntityClass().getName().compareTo( second.getEntityClass().getName() );
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Drops all the recorded values
+     */
+    public void reset() {
+        recorders.clear();
+    }
+
+    static int bucketIndex( long value ) {
+        if ( value < SUB_BUCKETS ) {
+            return (int) value;
+        }
+
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+        return ( shift + 1 ) * SUB_BUCKETS + (int) ( ( value >>> shift ) & ( SUB_BUCKETS - 1 ) );
+    }
+
+    /**
+     * @return the largest value counted by the given bucket
+     */
+    static long bucketUpperBound( int index ) {
+        if ( index < SUB_BUCKETS ) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) ( SUB_BUCKETS + index % SUB_BUCKETS ) << shift;
+        return lowerBound + ( ( 1L << shift ) - 1 );
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationsBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if ( !( bean instanceof com.sun.management.ThreadMXBean ) ) {
+                return null;
+            }
+
+            com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean) bean;
+            if ( !result.isThreadAllocatedMemorySupported() ) {
+                return null;
+            }
+
+            if ( !result.isThreadAllocatedMemoryEnabled() ) {
+                result.setThreadAllocatedMemoryEnabled( true );
+            }
+
+            return result;
+        } catch ( UnsupportedOperationException e ) {
+            return null;
+        } catch ( LinkageError e ) {
+            return null;
+        }
+    }
+
+    private static class Recorder {
+        private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private final AtomicLong allocatedBytes = new AtomicLong();
+
+        public void record( long latency, long allocated ) {
+            buckets.incrementAndGet( bucketIndex(latency) );
+            count.incrementAndGet();
+            totalLatency.addAndGet( latency );
+            if ( allocated > 0 ) {
+                allocatedBytes.addAndGet( allocated );
+            }
+
+            long max = maxLatency.get();
+            while ( latency > max && !maxLatency.compareAndSet( max, latency ) ) {
+                max = maxLatency.get();
+            }
+        }
+
+        public ConversionStatistics snapshot( Class<?> entityClass ) {
+            long[] counts = new long[ buckets.length() ];
+            for ( int i = 0; i < counts.length; i++ ) {
+                counts[i] = buckets.get(i);
+            }
+
+            return new ConversionStatistics( entityClass, count.get(), totalLatency.get(), maxLatency.get(),
+                    allocatedBytes.get(), counts );
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.a5000.platform.api.annotations.metrics;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Default metrics of the generated conversion services, which records nothing.
+ */
+public final class NoopConversionMetrics implements ConversionMetrics {
+
+    public static final NoopConversionMetrics INSTANCE = new NoopConversionMetrics();
+
+    private NoopConversionMetrics() {}
+
+    @Override
+    public long startTime() {
+        return 0;
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return 0;
+    }
+
+    @Override
+    public void record( Class<?> entityClass, long startTime, long allocatedBytes ) {}
+
+}
@@ -0,0 +1,330 @@
+package com.a5000.platform.api.annotations.generators.jpa;
+
+import com.a5000.platform.api.annotations.generators.jpa.cache.FingerprintStore;
+import com.a5000.platform.api.annotations.generators.jpa.model.Metamodel;
+import com.a5000.platform.api.annotations.generators.jpa.model.TypeIndex;
+import com.sun.codemodel.JCodeModel;
+import com.thoughtworks.qdox.model.JavaClass;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Generator goal which produces classes entity by entity: supported entities are selected by
+ * {@link #isSupported(JavaClass)} and generated by {@link #generateClass(JavaClass)} sequentially,
+ * by parallel workers (copies of the generator with theirs own code models) or in the streaming mode.
+ */
+public abstract class AbstractEntityGeneratorMojo extends AbstractGeneratorMojo implements Cloneable {
+
+    protected AbstractEntityGeneratorMojo( String generatorName,
+                                           String generatorPrefix,
+                                           String generatorSuffix,
+                                           String generatorPostfix ) {
+        super( generatorName, generatorPrefix, generatorSuffix, generatorPostfix );
+    }
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        generate( Collections.singletonList( this ) );
+    }
+
+    protected abstract boolean isSupported( JavaClass entityClass );
+
+    protected abstract void generateClass( JavaClass entityClass ) throws MojoExecutionException;
+
+    /**
+     * Defines classes shared by all the entities generated in the current code model
+     */
+    protected void prepareModel() throws MojoExecutionException {}
+
+    protected void onExecutionFinished() {}
+
+    /**
+     * Entities which generated classes are used by the classes of other entities (e.g. repositories
+     * of the entity superclasses) are generated by this generator before the workers are started,
+     * the workers only refer to them
+     *
+     * @param entities entities to be generated
+     * @return entities to be generated before the others, in the order of generation
+     */
+    protected List<JavaClass> getSharedEntities( List<JavaClass> entities ) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return copy of this generator which has its own code model and per-run state
+     */
+    protected AbstractEntityGeneratorMojo createWorker() {
+        try {
+            AbstractEntityGeneratorMojo worker = (AbstractEntityGeneratorMojo) clone();
+            worker.codeModel = new JCodeModel();
+            worker.generatedClassNames = new ArrayList<String>();
+            worker.entityClassNames = null;
+            return worker;
+        } catch ( CloneNotSupportedException e ) {
+            throw new IllegalStateException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * @return false when generated classes share a state which could not be split between
+     * several code models
+     */
+    protected boolean isParallelSupported() {
+        return isIncrementalSupported();
+    }
+
+    /**
+     * @return false when the generator produces an aggregate output (like a single
+     * conversion service) which could not be updated partially
+     */
+    protected boolean isIncrementalSupported() {
+        return true;
+    }
+
+    /**
+     * Collects entities supported by this generator which have to be (re)generated
+     */
+    void collectStaleEntities( GenerationTask task, String[] classes ) throws MojoExecutionException {
+        List<JavaClass> entities = new ArrayList<JavaClass>();
+        for ( String className : classes ) {
+            JavaClass entityClass = getClassMetaBuilder().getClassByName( pathToName(className) );
+            if ( isSupported(entityClass) ) {
+                entities.add(entityClass);
+            }
+        }
+
+        FingerprintStore fingerprints = task.fingerprints;
+        boolean tracked = fingerprints != null;
+        boolean regenerateAll = !tracked
+                || !isIncrementalSupported()
+                || fingerprints.isConfigurationChanged();
+        Map<String, List<String>> descendants = tracked ? collectDescendants(entities) : null;
+
+        for ( JavaClass entityClass : entities ) {
+            String fingerprint = null;
+            if ( tracked ) {
+                fingerprint = computeFingerprint( entityClass, descendants );
+            }
+
+            if ( !regenerateAll && isUpToDate( fingerprints, entityClass, fingerprint ) ) {
+                getLog().debug("Skipping up-to-date class " + entityClass.getFullyQualifiedName() );
+                fingerprints.keepEntity( entityClass.getFullyQualifiedName() );
+                continue;
+            }
+
+            task.staleEntities.add( entityClass );
+            task.entityFingerprints.put( entityClass.getFullyQualifiedName(), fingerprint );
+        }
+    }
+
+    void generateTask( GenerationTask task ) throws MojoExecutionException {
+        List<JavaClass> staleEntities = task.staleEntities;
+
+        prepareModel();
+        task.codeModels.add( codeModel );
+
+        Map<String, List<String>> entityOutputs;
+        if ( task.streamingSupported && isParallelSupported()
+                && ( streaming || ( heapBudget != null && heapBudget > 0 ) ) ) {
+            entityOutputs = generateStreaming( staleEntities, task.codeModels );
+        } else if ( parallel && isParallelSupported() && staleEntities.size() > 1 ) {
+            entityOutputs = generateParallel( staleEntities, task.codeModels );
+        } else {
+            entityOutputs = new HashMap<String, List<String>>();
+            for ( JavaClass entityClass : staleEntities ) {
+                entityOutputs.put( entityClass.getFullyQualifiedName(), generateEntity(entityClass) );
+            }
+        }
+
+        task.entityOutputs.putAll( entityOutputs );
+        if ( task.fingerprints != null ) {
+            for ( JavaClass entityClass : staleEntities ) {
+                String className = entityClass.getFullyQualifiedName();
+                task.fingerprints.setEntity( className, task.entityFingerprints.get(className),
+                        entityOutputs.get(className) );
+            }
+        }
+
+        onExecutionFinished();
+
+        getLog().info( staleEntities.size() + " classes has been processed...");
+    }
+
+    /**
+     * Generates the given entities once more by a fresh worker over a freshly parsed sources model
+     * and compares rendered sources with the ones produced by the current run
+     */
+    void verifyReproducibility( List<JavaClass> entities, List<JCodeModel> codeModels )
+            throws MojoExecutionException, MojoFailureException {
+        getLog().info("Verifying generated sources reproducibility...");
+
+        // sources are parsed again, so a state cached in the model objects by the first pass
+        // could not make the second one produce the same results
+        AbstractEntityGeneratorMojo worker = createWorker();
+        worker.report = null;
+        worker.classMetaBuilder = createJavaDocBuilder();
+        worker.typeIndex = new TypeIndex( worker.classMetaBuilder );
+        worker.metamodel = new Metamodel();
+        worker.prepareModel();
+        for ( JavaClass entityClass : entities ) {
+            worker.generateEntity( worker.classMetaBuilder.getClassByName( entityClass.getFullyQualifiedName() ) );
+        }
+        worker.onExecutionFinished();
+
+        Map<String, byte[]> expected = render( codeModels );
+        Map<String, byte[]> actual = render( Collections.singletonList( worker.codeModel ) );
+
+        List<String> differences = new ArrayList<String>();
+        for ( Map.Entry<String, byte[]> file : expected.entrySet() ) {
+            if ( !Arrays.equals( file.getValue(), actual.remove( file.getKey() ) ) ) {
+                differences.add( file.getKey() );
+            }
+        }
+        differences.addAll( actual.keySet() );
+
+        if ( !differences.isEmpty() ) {
+            for ( String path : differences ) {
+                getLog().error("Non-reproducible generated source: " + path );
+            }
+
+            throw new MojoFailureException( differences.size() + " generated sources are not reproducible" );
+        }
+    }
+
+    /**
+     * @return list of top-level classes generated for the given entity
+     */
+    private List<String> generateEntity( JavaClass entityClass ) throws MojoExecutionException {
+        getLog().info("Processing class " + entityClass.getFullyQualifiedName() );
+
+        long startTime = System.nanoTime();
+        entityClassNames = new ArrayList<String>();
+        try {
+            generateClass(entityClass);
+            return entityClassNames;
+        } finally {
+            entityClassNames = null;
+            if ( report != null ) {
+                report.addEntity( entityClass.getFullyQualifiedName(), System.nanoTime() - startTime );
+            }
+        }
+    }
+
+    /**
+     * Resolves the sources model and generates the shared entities (see {@link #getSharedEntities(List)})
+     * on the calling thread, then splits the other entities evenly and generates them on a fork-join pool.
+     * Each worker is a copy of this mojo with its own code model.
+     */
+    private Map<String, List<String>> generateParallel( List<JavaClass> entities, List<JCodeModel> codeModels )
+            throws MojoExecutionException {
+        resolveModel( entities );
+
+        Map<String, List<String>> sharedOutputs = new HashMap<String, List<String>>();
+        List<JavaClass> remaining = new ArrayList<JavaClass>( entities );
+        for ( JavaClass entityClass : getSharedEntities( entities ) ) {
+            if ( remaining.remove( entityClass ) ) {
+                sharedOutputs.put( entityClass.getFullyQualifiedName(), generateEntity( entityClass ) );
+            } else {
+                // up-to-date entity, its classes are generated as outputs of the whole goal
+                generateClass( entityClass );
+            }
+        }
+
+        List<List<JavaClass>> partitions = partition( remaining, getThreadsCount() );
+        getLog().info("Generating " + entities.size() + " classes using " + partitions.size() + " workers...");
+
+        ForkJoinPool pool = new ForkJoinPool( partitions.size() );
+        try {
+            List<Future<Map<String, List<String>>>> results = new ArrayList<Future<Map<String, List<String>>>>();
+            for ( final List<JavaClass> partition : partitions ) {
+                final AbstractEntityGeneratorMojo worker = createWorker();
+                codeModels.add( worker.codeModel );
+                results.add( pool.submit( new Callable<Map<String, List<String>>>() {
+                    @Override
+                    public Map<String, List<String>> call() throws Exception {
+                        Map<String, List<String>> result = new HashMap<String, List<String>>();
+                        for ( JavaClass entityClass : partition ) {
+                            result.put( entityClass.getFullyQualifiedName(), worker.generateEntity(entityClass) );
+                        }
+
+                        return result;
+                    }
+                }) );
+            }
+
+            Map<String, List<String>> result = new HashMap<String, List<String>>( sharedOutputs );
+            for ( Future<Map<String, List<String>>> future : results ) {
+                result.putAll( future.get() );
+            }
+
+            return result;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Generation has been interrupted", e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof MojoExecutionException ) {
+                throw (MojoExecutionException) e.getCause();
+            }
+
+            throw new MojoExecutionException( e.getCause().getMessage(), e.getCause() );
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Generates entities hierarchy by hierarchy, each one by a fresh worker (as a generated class could
+     * depend on the ones of the parent entities). Classes of a hierarchy are written and released right
+     * after its generation in the streaming mode or once the used heap exceeds the budget, otherwise
+     * they are kept in the given code models till the end of the run.
+     */
+    private Map<String, List<String>> generateStreaming( List<JavaClass> entities, List<JCodeModel> codeModels )
+            throws MojoExecutionException {
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        List<JCodeModel> pending = new ArrayList<JCodeModel>();
+        boolean flushing = streaming;
+        for ( List<JavaClass> hierarchy : partitionByHierarchy( entities ) ) {
+            AbstractEntityGeneratorMojo worker = createWorker();
+            for ( JavaClass entityClass : hierarchy ) {
+                result.put( entityClass.getFullyQualifiedName(), worker.generateEntity(entityClass) );
+            }
+            pending.add( worker.codeModel );
+
+            if ( !flushing && isHeapBudgetExceeded() ) {
+                getLog().info("Used heap exceeds the budget of " + heapBudget + " MB, "
+                        + "generated classes are written as they are generated");
+                flushing = true;
+            }
+
+            if ( flushing ) {
+                writeClasses( pending );
+                pending.clear();
+            }
+        }
+
+        codeModels.addAll( pending );
+        return result;
+    }
+
+}
@@ -1,19 +1,36 @@
 package com.a5000.platform.api.annotations.generators.jpa;
 
+import com.a5000.platform.api.annotations.generators.jpa.cache.FingerprintStore;
+import com.a5000.platform.api.annotations.generators.jpa.cache.SessionModelCache;
+import com.a5000.platform.api.annotations.generators.jpa.discovery.ClassFileScanner;
+import com.a5000.platform.api.annotations.generators.jpa.discovery.SourceScanner;
+import com.a5000.platform.api.annotations.generators.jpa.model.*;
+import com.a5000.platform.api.annotations.generators.jpa.report.GenerationReport;
+import com.a5000.platform.api.annotations.generators.jpa.utils.Commons;
+import com.a5000.platform.api.annotations.generators.jpa.utils.Digests;
 import com.a5000.platform.api.annotations.generators.jpa.utils.StringUtils;
+import com.a5000.platform.api.annotations.generators.jpa.writer.ChangedFilesCodeWriter;
+import com.a5000.platform.api.annotations.generators.jpa.writer.ClassFileCompiler;
+import com.a5000.platform.api.annotations.generators.jpa.writer.MemoryCodeWriter;
 import com.sun.codemodel.*;
 import com.thoughtworks.qdox.JavaProjectBuilder;
 import com.thoughtworks.qdox.model.*;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.codehaus.plexus.util.DirectoryScanner;
 
 import javax.persistence.*;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
@@ -42,6 +59,10 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     public static final String DAO_GENERATOR_SUFFIX = "dao";
     public static final String DAO_GENERATOR_POSTFIX = "DAO";
 
+    public static final String CONVERTER_CLASSES_SINGLE = "single";
+    public static final String CONVERTER_CLASSES_ENTITY = "entity";
+    public static final String CONVERTER_CLASSES_PACKAGE = "package";
+
     public static final String ENTITY_ANNOTATION_CLASS_NAME
             = "javax.persistence.Entity";
     public static final String SERVICE_ANNOTATION_CLASS_NAME
@@ -63,13 +84,31 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     private static final String FLOAT_TYPE_NAME = "java.lang.Float";
     private static final String LONG_TYPE_NAME = "java.lang.Long";
     private static final String STRING_TYPE_NAME = "java.lang.String";
+    private static final String NO_ID_KEY_TYPE = "";
+
+    private static final String NATIVE_QUERIES_ANNOTATION_CLASS_NAME = "NativeQueries";
+    private static final String NATIVE_QUERY_ANNOTATION_CLASS_NAME = "NativeQuery";
+    private static final String CONVENTIONAL_QUERIES_ANNOTATION_CLASS_NAME = "ConventionalQueries";
+    private static final String CONVENTIONAL_QUERY_ANNOTATION_CLASS_NAME = "ConventionalQuery";
 
-    protected final JCodeModel codeModel;
+    protected JCodeModel codeModel;
     protected JavaProjectBuilder classMetaBuilder;
 
     @Parameter( property = "entityPattern", required = true )
     protected String entityPattern = "";
 
+    /**
+     * Additional patterns of the entities sources to be processed
+     */
+    @Parameter( property = "includes" )
+    protected String[] includes = new String[0];
+
+    /**
+     * Patterns of sources which should not be processed even when matched by the include patterns
+     */
+    @Parameter( property = "excludes" )
+    protected String[] excludes = new String[0];
+
     @Parameter( property = "basePackage", required = true)
     protected String basePackage;
 
@@ -97,9 +136,177 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     @Parameter( property = "convertersPackage", required = true )
     protected String convertersPackage;
 
-    private final AtomicBoolean classMetaBuilderCreated = new AtomicBoolean();
+    /**
+     * Regenerate only entities which sources (or sources of their parents and referenced types) have
+     * been changed since the previous run; skip the goal at all when nothing has been changed.
+     */
+    @Parameter( property = "incremental", defaultValue = "false" )
+    protected Boolean incremental = false;
+
+    /**
+     * Directory of the fingerprints and the generated outputs records of the incremental mode,
+     * relative paths are resolved against the project base directory
+     */
+    @Parameter( property = "incrementalStatePath", defaultValue = "${project.build.directory}/generation-kit" )
+    protected String incrementalStatePath;
+
+    @Parameter( defaultValue = "${plugin}", readonly = true )
+    protected PluginDescriptor plugin;
+
+    @Parameter( defaultValue = "${mojoExecution}", readonly = true )
+    protected MojoExecution mojoExecution;
+
+    /**
+     * Generate entities concurrently, each worker builds its own code model.
+     */
+    @Parameter( property = "parallel", defaultValue = "false" )
+    protected Boolean parallel = false;
+
+    /**
+     * Number of generation workers, number of available processors when not positive
+     */
+    @Parameter( property = "parallelThreads", defaultValue = "0" )
+    protected Integer parallelThreads = 0;
+
+    /**
+     * Write and release classes generated for each entities hierarchy right after its generation instead
+     * of keeping all of them till the end of the run; aggregated outputs (conversion services) are
+     * still written at the end
+     */
+    @Parameter( property = "streaming", defaultValue = "false" )
+    protected Boolean streaming = false;
+
+    /**
+     * Used heap size (in megabytes) above which generated classes are written and released as in
+     * the streaming mode, not limited when not positive
+     */
+    @Parameter( property = "heapBudget", defaultValue = "0" )
+    protected Integer heapBudget = 0;
+
+    /**
+     * Compile generated classes in-process straight into {@link #classesOutputPath}, so the project
+     * build has to compile hand-written sources only
+     */
+    @Parameter( property = "compileGenerated", defaultValue = "false" )
+    protected Boolean compileGenerated = false;
+
+    @Parameter( property = "classesOutputPath", defaultValue = "${project.build.outputDirectory}" )
+    protected String classesOutputPath = "target/classes";
+
+    /**
+     * Write generated sources into the output path; when the classes are compiled by the plugin
+     * sources are needed for debugging only and could be skipped
+     */
+    @Parameter( property = "writeSources", defaultValue = "true" )
+    protected Boolean writeSources = true;
+
+    /**
+     * Generate all the classes once more with a fresh code model and fail when the results differ
+     */
+    @Parameter( property = "verifyReproducibility", defaultValue = "false" )
+    protected Boolean verifyReproducibility = false;
+
+    /**
+     * Save metrics of the goal execution as a JSON report
+     */
+    @Parameter( property = "generationReport", defaultValue = "true" )
+    protected Boolean generationReport = true;
+
+    /**
+     * Directory of the generation reports, relative paths are resolved against the project base directory
+     */
+    @Parameter( property = "generationReportPath", defaultValue = "${project.build.directory}/generation-kit/reports" )
+    protected String generationReportPath;
+
+    /**
+     * Annotations of the generated DTO classes. Parameters of the DTO and converters generators are
+     * declared by the base goal, so the goals running these generators as delegates (gen-all) share them
+     */
+    @Parameter( property = "dtoAnnotationClasses")
+    protected String[] dtoAnnotationClasses = new String[] {};
+
+    @Parameter( property = "dtoInterfaceClasses")
+    protected String[] dtoInterfaceClasses = new String[] { "java.io.Serializable"};
+
+    @Parameter( property = "generateMethods", defaultValue = "true" )
+    protected Boolean generateMethods = true;
+
+    @Parameter( property = "annotationInclusionMask", defaultValue = "^javax\\.validation\\..+?")
+    protected String annotationInclusionMask = "^javax\\.validation\\..+?";
+
+    /**
+     * Interface of the entities handled by the generated conversion service
+     */
+    @Parameter( property = "jpaEntityInterface", defaultValue = "com.a5000.platform.api.model.domain.api.IStoredBean" )
+    protected String jpaEntityInterface = "com.a5000.platform.api.model.domain.api.IStoredBean";
+
+    @Parameter( property = "transactionalAnnotation",
+            defaultValue = "com.a5000.platform.api.services.A5TransactionalReadOnly" )
+    protected String transactionalAnnotation = "com.a5000.platform.api.services.A5TransactionalReadOnly";
+
+    /**
+     * Record metrics of each entity conversion through the ConversionMetrics of the generated conversion
+     * service (no-op unless set); no instrumentation is generated when disabled
+     */
+    @Parameter( property = "profilingEnabled", defaultValue = "false" )
+    protected Boolean profilingEnabled = false;
+
+    @Parameter( property = "transactionAnnotationOnConverterMethods", defaultValue = "false" )
+    protected boolean transactionAnnotationOnConverterMethods;
+
+    /**
+     * Layout of the generated conversion service: "single" puts all the converters into one class,
+     * "entity" and "package" generate a converter class per entity (per entities package), which is
+     * created by the conversion service on the first use
+     */
+    @Parameter( property = "converterClasses", defaultValue = CONVERTER_CLASSES_SINGLE )
+    protected String converterClasses = CONVERTER_CLASSES_SINGLE;
+
+    /**
+     * Convert each entity once per top-level call of the conversion service: entities reached several times
+     * (shared relations, cycles) are converted to the same DTO instance
+     */
+    @Parameter( property = "conversionContextEnabled", defaultValue = "false" )
+    protected boolean conversionContextEnabled;
+
+    /**
+     * Least size of the lists converted in parallel by the generated conversion service (on the executor
+     * bean named "dtoConversionExecutor" or a shared fork-join pool), 0 disables parallel conversion;
+     * the goal fails when it is set along with {@link #conversionContextEnabled}, as chunks converted by
+     * other threads would not share DTOs of the same entities
+     */
+    @Parameter( property = "parallelConversionThreshold", defaultValue = "0" )
+    protected int parallelConversionThreshold;
+
+    /**
+     * Number of the records converted by a single task of the parallel conversion
+     */
+    @Parameter( property = "parallelConversionChunkSize", defaultValue = "1024" )
+    protected int parallelConversionChunkSize = 1024;
+
+    Map<String, String> sourceHashes = new HashMap<String, String>();
+
+    Map<String, File> discoveredSources = new HashMap<String, File>();
+
+    List<String> generatedClassNames = new ArrayList<String>();
+
+    List<String> entityClassNames;
+
+    final AtomicBoolean classMetaBuilderCreated = new AtomicBoolean();
+
+    TypeIndex typeIndex;
+
+    Metamodel metamodel;
+
+    GenerationReport report;
+
+    boolean classesPreloaded;
+
+    private String sharedModelKey;
+
+    private final Set<File> compiledClassFiles = Collections.synchronizedSet( new HashSet<File>() );
 
-    private final String generatorName;
+    final String generatorName;
 
     private final String generatorPostfix;
 
@@ -124,7 +331,7 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     protected JavaProjectBuilder getClassMetaBuilder() {
         if ( classMetaBuilderCreated.compareAndSet(false, true) ) {
             try {
-                this.classMetaBuilder = createJavaDocBuilder();
+                this.classMetaBuilder = isSharedModel() ? getSharedModel() : createJavaDocBuilder();
             } catch (MojoExecutionException e) {
                 throw new IllegalStateException( e.getMessage(), e );
             }
@@ -133,56 +340,1159 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
         return this.classMetaBuilder;
     }
 
+    /**
+     * @return sources model shared with other executions of the build; the model is preloaded
+     * by the execution which builds it, so others only read it. Class loaders the model has been
+     * built over are closed along with the model, when the last module using it is finished
+     */
+    private JavaProjectBuilder getSharedModel() throws MojoExecutionException {
+        final String key = getModelKey();
+        final SessionModelCache cache = SessionModelCache.get( session.getRequest() );
+        final AtomicBoolean created = new AtomicBoolean();
+        sharedModelKey = key;
+        try {
+            JavaProjectBuilder result = cache.getModel( key, project,
+                    new Callable<JavaProjectBuilder>() {
+                        @Override
+                        public JavaProjectBuilder call() throws MojoExecutionException {
+                            JavaProjectBuilder builder = createJavaDocBuilder();
+                            synchronized ( builder ) {
+                                classMetaBuilder = builder;
+                                preloadClasses();
+                            }
+
+                            for ( IndexedClassLoader classLoader : takeClassLoaders() ) {
+                                cache.addResource( key, classLoader );
+                            }
+
+                            created.set( true );
+                            return builder;
+                        }
+                    });
+
+            if ( !created.get() ) {
+                getLog().info("Sources model shared with a previous execution of the build");
+            }
+
+            return result;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Sources model building has been interrupted", e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof MojoExecutionException ) {
+                throw (MojoExecutionException) e.getCause();
+            }
+
+            throw new MojoExecutionException( e.getCause().getMessage(), e.getCause() );
+        }
+    }
+
+    /**
+     * Index is built on the first request and shared with the parallel workers
+     */
+    protected TypeIndex getTypeIndex() {
+        if ( typeIndex == null ) {
+            typeIndex = new TypeIndex( getClassMetaBuilder() );
+        }
+
+        return typeIndex;
+    }
+
+    /**
+     * Metamodel is shared with the parallel workers and with other generators of the same run
+     */
+    protected Metamodel getMetamodel() {
+        if ( metamodel == null ) {
+            metamodel = new Metamodel();
+        }
+
+        return metamodel;
+    }
+
+    /**
+     * @return model of the given entity, built on the first request
+     */
+    protected EntityModel getEntityModel( JavaClass entityClass ) {
+        EntityModel result = getMetamodel().getEntity( entityClass.getFullyQualifiedName() );
+        if ( result == null ) {
+            result = getMetamodel().addEntity( createEntityModel( entityClass ) );
+        }
+
+        return result;
+    }
+
+    private EntityModel createEntityModel( JavaClass entityClass ) {
+        List<JavaField> fields = getTypeIndex().getAllFields( entityClass );
+        List<JavaField> relationFields = new ArrayList<JavaField>();
+        for ( JavaField field : fields ) {
+            for ( JavaAnnotation annotation : field.getAnnotations() ) {
+                if ( isJpaRelationType( annotation.getType() ) ) {
+                    relationFields.add( field );
+                    break;
+                }
+            }
+        }
+
+        List<ExtensionField> extensionFields = new ArrayList<ExtensionField>();
+        List<QueryModel> queries = new ArrayList<QueryModel>();
+        for ( JavaAnnotation annotation : entityClass.getAnnotations() ) {
+            JavaClass annotationType = annotation.getType();
+            if ( isA( annotationType, DTO_EXTENDS_ANNOTATION_CLASS_NAME ) ) {
+                for ( JavaAnnotation fieldAnnotation : getNestedAnnotations( annotation ) ) {
+                    extensionFields.add( createExtensionField( fieldAnnotation ) );
+                }
+            } else if ( isA( annotationType, NATIVE_QUERIES_ANNOTATION_CLASS_NAME )
+                    || isA( annotationType, CONVENTIONAL_QUERIES_ANNOTATION_CLASS_NAME ) ) {
+                for ( JavaAnnotation queryAnnotation : getNestedAnnotations( annotation ) ) {
+                    queries.add( createQuery( queryAnnotation ) );
+                }
+            } else if ( isA( annotationType, NATIVE_QUERY_ANNOTATION_CLASS_NAME )
+                    || isA( annotationType, CONVENTIONAL_QUERY_ANNOTATION_CLASS_NAME ) ) {
+                queries.add( createQuery( annotation ) );
+            }
+        }
+
+        String className = entityClass.getFullyQualifiedName();
+        return new EntityModel( entityClass, detectIdKeyType( entityClass ), fields, relationFields,
+                prepareClassName( dtoPackage, className, DTO_GENERATOR_PREFIX, DTO_GENERATOR_SUFFIX, DTO_GENERATOR_POSTFIX ),
+                prepareClassName( daoPackage, className, DAO_GENERATOR_PREFIX, DAO_GENERATOR_SUFFIX, DAO_GENERATOR_POSTFIX ),
+                extensionFields, queries );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<JavaAnnotation> getNestedAnnotations( JavaAnnotation annotation ) {
+        Object value = annotation.getNamedParameter("value");
+        if ( value == null ) {
+            return Collections.emptyList();
+        } else if ( value instanceof List ) {
+            return (List<JavaAnnotation>) value;
+        }
+
+        return Collections.singletonList( (JavaAnnotation) value );
+    }
+
+    @SuppressWarnings("unchecked")
+    private ExtensionField createExtensionField( JavaAnnotation annotation ) {
+        List<String> typeParameters = new ArrayList<String>();
+        Object typeParametersValue = annotation.getNamedParameter("typeParameters");
+        if ( typeParametersValue instanceof List ) {
+            for ( String className : (List<String>) typeParametersValue ) {
+                typeParameters.add( normalizeAnnotationValue(className).replace(".class", "") );
+            }
+        } else if ( typeParametersValue != null ) {
+            typeParameters.add( normalizeAnnotationValue( (String) typeParametersValue ).replace(".class", "") );
+        }
+
+        return new ExtensionField( annotation,
+                normalizeAnnotationValue( (String) annotation.getNamedParameter("value") ),
+                normalizeAnnotationValue( (String) annotation.getNamedParameter("type") ),
+                "true".equals( annotation.getNamedParameter("isArray") ),
+                Boolean.valueOf( normalizeAnnotationValue( (String) annotation.getNamedParameter("isEnum") ) ),
+                typeParameters );
+    }
+
+    @SuppressWarnings("unchecked")
+    private QueryModel createQuery( JavaAnnotation annotation ) {
+        boolean isNative = isA( annotation.getType(), NATIVE_QUERY_ANNOTATION_CLASS_NAME );
+
+        String resultType = normalizeAnnotationValue(
+                Commons.select((String) annotation.getNamedParameter("resultType"), "") ).replace(".class", "");
+
+        List<QueryParameter> parameters = new ArrayList<QueryParameter>();
+        Object parametersValue = Commons.select(annotation.getNamedParameter("parameters"),
+                new ArrayList<JavaAnnotation>());
+        if ( parametersValue instanceof List ) {
+            for ( JavaAnnotation parameterAnnotation : (List<JavaAnnotation>) parametersValue ) {
+                parameters.add( createQueryParameter(parameterAnnotation) );
+            }
+        } else {
+            parameters.add( createQueryParameter((JavaAnnotation) parametersValue) );
+        }
+
+        return new QueryModel(
+                normalizeAnnotationValue( Commons.select((String) annotation.getNamedParameter("name"), "") ),
+                isNative ? normalizeAnnotationValue( Commons.select((String) annotation.getNamedParameter("value"), "") ) : null,
+                resultType.isEmpty() ? null : resultType,
+                isNative,
+                Boolean.valueOf( Commons.select((String) annotation.getNamedParameter("isCollection"), "true") ),
+                Boolean.valueOf( Commons.select((String) annotation.getNamedParameter("isCacheable"), "false") ),
+                Boolean.valueOf( Commons.select((String) annotation.getNamedParameter("isPageable"), "false") ),
+                Boolean.valueOf( Commons.select((String) annotation.getNamedParameter("isSortable"), "false") ),
+                Boolean.valueOf( Commons.select((String) annotation.getNamedParameter("isTransactional"), "false") ),
+                Boolean.valueOf( Commons.select((String) annotation.getNamedParameter("isModifying"), "false") ),
+                parameters );
+    }
+
+    private QueryParameter createQueryParameter( JavaAnnotation annotation ) {
+        return new QueryParameter(
+                normalizeAnnotationValue( Commons.select((String) annotation.getNamedParameter("value"), "") ),
+                normalizeAnnotationValue( Commons.select((String) annotation.getNamedParameter("type"), "") )
+                        .replace(".class", ""),
+                Boolean.valueOf( Commons.select((String) annotation.getNamedParameter("isArray"), "false") ) );
+    }
+
+    /**
+     * Normalized values are memoized as the same annotations are read by all the generators
+     */
+    @Override
+    protected String normalizeAnnotationValue( String value ) {
+        if ( value == null ) {
+            return null;
+        }
+
+        String result = getMetamodel().getAnnotationValue( value );
+        if ( result == null ) {
+            result = super.normalizeAnnotationValue( value );
+            getMetamodel().putAnnotationValue( value, result );
+        }
+
+        return result;
+    }
+
+    /**
+     * QDox class library is not thread-safe, so all the lookups (which could lazily load
+     * classes into the library) are serialized.
+     */
+    protected JavaClass getClassByName( String className ) {
+        JavaProjectBuilder builder = getClassMetaBuilder();
+        synchronized ( builder ) {
+            return builder.getClassByName( className );
+        }
+    }
+
     protected boolean isA( JavaClass classType, String className ) {
-        return classType.getFullyQualifiedName().equals(className)
-                || classType.getPackageName().isEmpty() && classType.getName().endsWith( className )
-                || (classType.getFullyQualifiedName().substring(
-                        classType.getFullyQualifiedName().lastIndexOf(".") + 1).equals(className) );
+        return Metamodel.isA( classType, className );
     }
 
-    protected String[] findClasses( String sourceRoot, String classPattern ) {
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir( sourceRoot );
-        scanner.setIncludes( new String[] { classPattern } );
+    /**
+     * Generator packages are always in the scope as the previously generated classes
+     * (DTOs for instance) are looked up by the generators
+     */
+    @Override
+    protected Collection<String> getClasspathScope() {
+        Collection<String> result = super.getClasspathScope();
+        result.add( basePackage );
+        result.add( daoPackage );
+        result.add( dtoPackage );
+        result.add( convertersPackage );
+        return result;
+    }
 
-        scanner.scan();
+    /**
+     * @return paths (relative to theirs source roots) of the sources matching entities patterns
+     */
+    protected String[] findClasses() throws MojoExecutionException {
+        List<String> patterns = new ArrayList<String>();
+        patterns.add( entityPattern );
+        if ( includes != null ) {
+            patterns.addAll( Arrays.asList(includes) );
+        }
+
+        SourceScanner scanner = createSourceScanner( patterns,
+                excludes == null ? Collections.<String>emptyList() : Arrays.asList(excludes) );
+
+        discoveredSources.clear();
+        if ( isBytecodeModel() ) {
+            for ( ClassFileScanner.CompiledClass compiledClass : getCompiledClasses().values() ) {
+                String path = compiledClass.getSourcePath();
+                if ( compiledClass.getClassFile().isTopLevel() && scanner.accepts(path)
+                        && ( !entityPrefilter || isEntityCandidate( compiledClass.getClassFile() ) )
+                        && !discoveredSources.containsKey(path) ) {
+                    discoveredSources.put( path, compiledClass.getFile() );
+                }
+            }
+        } else {
+            for ( SourceScanner.Source source : scanSources( scanner, getEntityRoots() ) ) {
+                if ( !discoveredSources.containsKey( source.getPath() ) ) {
+                    discoveredSources.put( source.getPath(), source.getFile() );
+                }
+            }
+        }
 
-        String[] sources = scanner.getIncludedFiles();
-        if ( sources.length == 0 )
+        if ( discoveredSources.isEmpty() )
         {
             getLog().info("No source entities is suitable to be processed");
             return new String[0];
         }
 
+        String[] sources = discoveredSources.keySet().toArray( new String[discoveredSources.size()] );
+        Arrays.sort( sources );
         return sources;
     }
 
-    public void execute() throws MojoExecutionException, MojoFailureException {
-        getLog().info( String.format(WELCOME_MESSAGE, generatorName) );
-        getLog().info("Looking for classes matching '" + entityPattern + "' pattern in " + sourceRoot );
-        String[] classes = findClasses( sourceRoot, entityPattern );
+    /**
+     * Configures the given generator with the parameters of this goal, so it could be executed
+     * along with other generators by {@link #generate(List)}
+     */
+    protected <T extends AbstractGeneratorMojo> T delegate( T generator ) {
+        copyParameters( generator );
+        return generator;
+    }
+
+    @Override
+    protected void copyParameters( AbstractMojo target ) {
+        super.copyParameters( target );
+
+        if ( target instanceof AbstractGeneratorMojo ) {
+            AbstractGeneratorMojo generator = (AbstractGeneratorMojo) target;
+            generator.entityPattern = entityPattern;
+            generator.includes = includes;
+            generator.excludes = excludes;
+            generator.basePackage = basePackage;
+            generator.daoPackage = daoPackage;
+            generator.dtoPackage = dtoPackage;
+            generator.attachSuffixes = attachSuffixes;
+            generator.attachPrefixes = attachPrefixes;
+            generator.attachPostfixes = attachPostfixes;
+            generator.disableAffixesAttach = disableAffixesAttach;
+            generator.skipStaticFields = skipStaticFields;
+            generator.convertersPackage = convertersPackage;
+            generator.incremental = incremental;
+            generator.incrementalStatePath = incrementalStatePath;
+            generator.plugin = plugin;
+            generator.mojoExecution = mojoExecution;
+            generator.parallel = parallel;
+            generator.parallelThreads = parallelThreads;
+            generator.streaming = streaming;
+            generator.heapBudget = heapBudget;
+            generator.compileGenerated = compileGenerated;
+            generator.classesOutputPath = classesOutputPath;
+            generator.writeSources = writeSources;
+            generator.verifyReproducibility = verifyReproducibility;
+            generator.generationReport = generationReport;
+            generator.generationReportPath = generationReportPath;
+            generator.dtoAnnotationClasses = dtoAnnotationClasses;
+            generator.dtoInterfaceClasses = dtoInterfaceClasses;
+            generator.generateMethods = generateMethods;
+            generator.annotationInclusionMask = annotationInclusionMask;
+            generator.jpaEntityInterface = jpaEntityInterface;
+            generator.transactionalAnnotation = transactionalAnnotation;
+            generator.profilingEnabled = profilingEnabled;
+            generator.transactionAnnotationOnConverterMethods = transactionAnnotationOnConverterMethods;
+            generator.converterClasses = converterClasses;
+            generator.conversionContextEnabled = conversionContextEnabled;
+            generator.parallelConversionThreshold = parallelConversionThreshold;
+            generator.parallelConversionChunkSize = parallelConversionChunkSize;
+        }
+    }
+
+    /**
+     * Runs the given generators over a single sources model: sources are discovered, parsed and
+     * indexed once, generators are executed concurrently (each one with its own code models)
+     * and all the generated classes are written by a single pass. Classpath archives opened
+     * by the generation are closed once it is finished.
+     */
+    protected void generate( List<? extends AbstractEntityGeneratorMojo> generators )
+            throws MojoExecutionException, MojoFailureException {
+        try {
+            generateAll( generators );
+        } finally {
+            releaseClassLoaders();
+        }
+    }
 
-        int processed = 0;
-        for ( String className : classes ) {
-            JavaClass entityClass = getClassMetaBuilder().getClassByName( pathToName(className) );
-            if ( isSupported(entityClass) ) {
-                getLog().info("Processing class " + entityClass.getFullyQualifiedName() );
-                generateClass(entityClass);
-                processed += 1;
+    private void generateAll( List<? extends AbstractEntityGeneratorMojo> generators )
+            throws MojoExecutionException, MojoFailureException {
+        getLog().info( String.format(WELCOME_MESSAGE, generatorName) );
+        getLog().info("Looking for classes matching '" + entityPattern + "' pattern in "
+                + ( isBytecodeModel() ? getEntityClassesRoots() : sourceRoot ) );
+        report = new GenerationReport( getClass().getSimpleName(), generatorName );
+
+        long phaseStart = System.nanoTime();
+        String[] classes = findClasses();
+
+        List<GenerationTask> tasks = new ArrayList<GenerationTask>();
+        for ( AbstractEntityGeneratorMojo generator : generators ) {
+            generator.report = report;
+            generator.discoveredSources = discoveredSources;
+            generator.compiledClasses = compiledClasses;
+            generator.sourceHashes = sourceHashes;
+
+            FingerprintStore fingerprints = null;
+            if ( generator.isIncrementalRun() ) {
+                fingerprints = generator.openFingerprintStore( classes );
+                if ( !fingerprints.isConfigurationChanged()
+                        && !fingerprints.isSourcesChanged()
+                        && isOutputsExists( fingerprints.getPreviousOutputs() ) ) {
+                    getLog().debug("No changes detected for " + generator.generatorName );
+                    continue;
+                }
             }
+
+            GenerationTask task = new GenerationTask( generator, fingerprints );
+            task.streamingSupported = !generator.verifyReproducibility;
+            tasks.add( task );
+        }
+        report.addPhase( GenerationReport.PHASE_DISCOVERY, System.nanoTime() - phaseStart );
+
+        if ( tasks.isEmpty() ) {
+            getLog().info("No changes detected since the previous run, skipping generation...");
+            report.setSkipped( true );
+            saveReport();
+            return;
+        }
+
+        phaseStart = System.nanoTime();
+        getClassMetaBuilder();
+        for ( GenerationTask task : tasks ) {
+            task.generator.classMetaBuilder = getClassMetaBuilder();
+            task.generator.classMetaBuilderCreated.set( true );
+            task.generator.typeIndex = getTypeIndex();
+            task.generator.metamodel = getMetamodel();
+        }
+        report.addPhase( GenerationReport.PHASE_PARSING, System.nanoTime() - phaseStart );
+
+        phaseStart = System.nanoTime();
+        Set<JavaClass> staleEntities = new LinkedHashSet<JavaClass>();
+        for ( GenerationTask task : tasks ) {
+            task.generator.collectStaleEntities( task, classes );
+            staleEntities.addAll( task.staleEntities );
         }
 
-        onExecutionFinished();
+        getTypeIndex().prepare( staleEntities );
+        for ( JavaClass entityClass : staleEntities ) {
+            getEntityModel( entityClass );
+        }
+        report.addPhase( GenerationReport.PHASE_INDEXING, System.nanoTime() - phaseStart );
+
+        phaseStart = System.nanoTime();
+        if ( tasks.size() > 1 ) {
+            generateConcurrently( tasks );
+        } else {
+            tasks.get(0).generator.generateTask( tasks.get(0) );
+        }
+        report.addPhase( GenerationReport.PHASE_GENERATION, System.nanoTime() - phaseStart );
 
-        getLog().info( processed + " classes has been processed...");
+        for ( GenerationTask task : tasks ) {
+            if ( task.generator.verifyReproducibility ) {
+                phaseStart = System.nanoTime();
+                task.generator.verifyReproducibility( task.staleEntities, task.codeModels );
+                report.addPhase( GenerationReport.PHASE_VERIFICATION, System.nanoTime() - phaseStart );
+            }
+        }
 
+        phaseStart = System.nanoTime();
         getLog().info( "Flushing code model contents..." );
-        writeClasses();
+        List<JCodeModel> codeModels = new ArrayList<JCodeModel>();
+        for ( GenerationTask task : tasks ) {
+            codeModels.addAll( task.codeModels );
+        }
+        writeClasses( codeModels );
+
+        for ( GenerationTask task : tasks ) {
+            if ( task.fingerprints != null ) {
+                task.fingerprints.setOutputs( task.generator.generatedClassNames );
+                task.generator.deleteOrphanedOutputs( task.fingerprints );
+                saveFingerprintStore( task.fingerprints );
+            }
+        }
+        report.addPhase( GenerationReport.PHASE_WRITING, System.nanoTime() - phaseStart );
+
+        saveReport();
+    }
+
+    /**
+     * Runs the given generators over a sources model built by the caller (e.g. by the annotation processor),
+     * which is responsible for the entities discovery, incremental state and writing of the results.
+     *
+     * @param entities entities to generate classes for
+     * @param knownEntities all the entities of the model, generators without incremental generation
+     *                      support (which aggregate all the entities) are executed over them
+     * @param outputs filled with the names of the top-level classes generated for each entity
+     * @return generated sources contents by theirs paths
+     */
+    protected Map<String, byte[]> generate( List<? extends AbstractEntityGeneratorMojo> generators,
+                                            JavaProjectBuilder builder,
+                                            Collection<String> entities,
+                                            Collection<String> knownEntities,
+                                            Map<String, List<String>> outputs ) throws MojoExecutionException {
+        getLog().info( String.format(WELCOME_MESSAGE, generatorName) );
+        classMetaBuilder = builder;
+        classMetaBuilderCreated.set( true );
+
+        List<GenerationTask> tasks = new ArrayList<GenerationTask>();
+        Set<JavaClass> staleEntities = new LinkedHashSet<JavaClass>();
+        for ( AbstractEntityGeneratorMojo generator : generators ) {
+            generator.classMetaBuilder = builder;
+            generator.classMetaBuilderCreated.set( true );
+            generator.typeIndex = getTypeIndex();
+            generator.metamodel = getMetamodel();
+
+            GenerationTask task = new GenerationTask( generator, null );
+            for ( String className : generator.isIncrementalSupported() ? entities : knownEntities ) {
+                JavaClass entityClass = builder.getClassByName( className );
+                if ( generator.isSupported( entityClass ) ) {
+                    task.staleEntities.add( entityClass );
+                }
+            }
+
+            if ( !task.staleEntities.isEmpty() ) {
+                tasks.add( task );
+                staleEntities.addAll( task.staleEntities );
+            }
+        }
+
+        if ( tasks.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+
+        getTypeIndex().prepare( staleEntities );
+        for ( JavaClass entityClass : staleEntities ) {
+            getEntityModel( entityClass );
+        }
+
+        if ( tasks.size() > 1 ) {
+            generateConcurrently( tasks );
+        } else {
+            tasks.get(0).generator.generateTask( tasks.get(0) );
+        }
+
+        List<JCodeModel> codeModels = new ArrayList<JCodeModel>();
+        for ( GenerationTask task : tasks ) {
+            codeModels.addAll( task.codeModels );
+            for ( Map.Entry<String, List<String>> entityOutputs : task.entityOutputs.entrySet() ) {
+                List<String> classNames = outputs.get( entityOutputs.getKey() );
+                if ( classNames == null ) {
+                    outputs.put( entityOutputs.getKey(), classNames = new ArrayList<String>() );
+                }
+
+                classNames.addAll( entityOutputs.getValue() );
+            }
+        }
+
+        return render( codeModels );
+    }
+
+    /**
+     * Drops the sources model and the state derived from it, so the next {@link #generate(List)}
+     * re-reads the changed files (the rest of the model is restored from the sources model snapshot
+     * when it is enabled)
+     *
+     * @param changedFiles changed sources or class files, null when any file could be changed
+     */
+    protected void invalidateSources( Collection<File> changedFiles ) {
+        if ( sharedModelKey != null ) {
+            SessionModelCache.get( session.getRequest() ).invalidate( sharedModelKey );
+            sharedModelKey = null;
+        }
+
+        classMetaBuilder = null;
+        classMetaBuilderCreated.set( false );
+        typeIndex = null;
+        metamodel = null;
+        compiledClasses = null;
+        classesPreloaded = false;
+
+        if ( changedFiles == null ) {
+            sourceHashes.clear();
+            return;
+        }
+
+        for ( File file : changedFiles ) {
+            sourceHashes.remove( file.getAbsolutePath() );
+        }
+    }
+
+    /**
+     * Executes generators on a dedicated thread each; shared sources model is resolved beforehand,
+     * so generators only read it.
+     */
+    private void generateConcurrently( List<GenerationTask> tasks ) throws MojoExecutionException {
+        Set<JavaClass> entities = new LinkedHashSet<JavaClass>();
+        for ( GenerationTask task : tasks ) {
+            entities.addAll( task.staleEntities );
+        }
+
+        resolveModel( entities );
+        for ( GenerationTask task : tasks ) {
+            task.generator.classesPreloaded = true;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( tasks.size() );
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for ( final GenerationTask task : tasks ) {
+                results.add( executor.submit( new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        task.generator.generateTask( task );
+                        return null;
+                    }
+                }) );
+            }
+
+            for ( Future<Void> result : results ) {
+                result.get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Generation has been interrupted", e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof MojoExecutionException ) {
+                throw (MojoExecutionException) e.getCause();
+            }
+
+            throw new MojoExecutionException( e.getCause().getMessage(), e.getCause() );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void saveReport() {
+        if ( !generationReport ) {
+            return;
+        }
+
+        File reportFile = new File( resolveBuildPath( generationReportPath, "generation-kit/reports" ),
+                getClass().getSimpleName() + ".json" );
+        try {
+            report.save( reportFile );
+            getLog().debug("Generation report saved to " + reportFile.getAbsolutePath() );
+        } catch ( IOException e ) {
+            getLog().warn("Failed to save generation report: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Removes files generated by the previous run which are not produced anymore (like classes of the
+     * entities no longer present); only the current output paths are looked into, so files left under
+     * other paths (of other executions for instance) are never touched
+     */
+    void deleteOrphanedOutputs( FingerprintStore store ) {
+        Set<File> outputFiles = new HashSet<File>();
+        for ( String className : store.getOutputs() ) {
+            outputFiles.addAll( getOutputFiles( className, true ) );
+        }
+
+        for ( String className : store.getPreviousOutputs() ) {
+            for ( File outputFile : getOutputFiles( className, true ) ) {
+                if ( !outputFiles.contains( outputFile ) && outputFile.exists() ) {
+                    getLog().info("Removing orphaned file " + outputFile );
+                    if ( outputFile.delete() ) {
+                        report.addRemovedFile();
+                    } else {
+                        getLog().warn("Failed to remove " + outputFile.getAbsolutePath() );
+                    }
+                }
+            }
+        }
+    }
+
+    Map<String, byte[]> render( List<JCodeModel> codeModels ) throws MojoExecutionException {
+        Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        for ( JCodeModel model : codeModels ) {
+            MemoryCodeWriter writer = new MemoryCodeWriter();
+            try {
+                model.build( writer );
+            } catch ( IOException e ) {
+                throw new MojoExecutionException("Failed to render code model contents...", e );
+            }
+
+            result.putAll( writer.getFiles() );
+        }
+
+        return result;
+    }
+
+    boolean isHeapBudgetExceeded() {
+        if ( heapBudget == null || heapBudget <= 0 ) {
+            return false;
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() > heapBudget * 1024L * 1024L;
+    }
+
+    static List<List<JavaClass>> partition( List<JavaClass> entities, int workers ) {
+        int count = Math.max( 1, Math.min( workers, entities.size() ) );
+        List<List<JavaClass>> result = new ArrayList<List<JavaClass>>( count );
+        for ( int i = 0; i < count; i++ ) {
+            result.add( new ArrayList<JavaClass>() );
+        }
+
+        for ( int i = 0; i < entities.size(); i++ ) {
+            result.get( i % count ).add( entities.get(i) );
+        }
+
+        return result;
+    }
+
+    List<List<JavaClass>> partitionByHierarchy( List<JavaClass> entities ) {
+        Map<String, List<JavaClass>> hierarchies = new LinkedHashMap<String, List<JavaClass>>();
+        for ( JavaClass entityClass : entities ) {
+            JavaClass root = entityClass;
+            while ( root.getSuperJavaClass() != null
+                    && !root.getSuperJavaClass().getFullyQualifiedName().equals( Object.class.getName() ) ) {
+                root = root.getSuperJavaClass();
+            }
+
+            List<JavaClass> hierarchy = hierarchies.get( root.getFullyQualifiedName() );
+            if ( hierarchy == null ) {
+                hierarchies.put( root.getFullyQualifiedName(), hierarchy = new ArrayList<JavaClass>() );
+            }
+
+            hierarchy.add( entityClass );
+        }
+
+        return new ArrayList<List<JavaClass>>( hierarchies.values() );
+    }
+
+    /**
+     * Resolves all the types QDox loads lazily on the calling thread: hierarchies and annotation types of
+     * the parsed classes and of the types they reference, types of the fields and methods signatures of the
+     * parsed classes (with theirs type arguments), so workers only read already populated class library.
+     */
+    private void preloadClasses() {
+        JavaProjectBuilder builder = getClassMetaBuilder();
+        synchronized ( builder ) {
+            Set<String> parsedClasses = new HashSet<String>();
+            for ( JavaClass javaClass : builder.getClasses() ) {
+                parsedClasses.add( javaClass.getFullyQualifiedName() );
+            }
+
+            Set<String> preloaded = new HashSet<String>();
+            Deque<JavaClass> pending = new ArrayDeque<JavaClass>( builder.getClasses() );
+            while ( !pending.isEmpty() ) {
+                JavaClass javaClass = pending.pop();
+                if ( preloaded.add( javaClass.getFullyQualifiedName() ) ) {
+                    preloadClass( javaClass, parsedClasses.contains( javaClass.getFullyQualifiedName() ), pending );
+                }
+            }
+        }
+    }
+
+    /**
+     * @param members resolve types of the class members as well
+     * @param pending filled with the types referenced by the class
+     */
+    private void preloadClass( JavaClass javaClass, boolean members, Deque<JavaClass> pending ) {
+        preloadAnnotations( javaClass, pending );
+
+        JavaClass superClass = javaClass.getSuperJavaClass();
+        if ( superClass != null ) {
+            pending.push( superClass );
+        }
+
+        for ( JavaClass implementedType : javaClass.getImplementedInterfaces() ) {
+            pending.push( implementedType );
+        }
+
+        if ( !members ) {
+            return;
+        }
+
+        for ( JavaField field : javaClass.getFields() ) {
+            preloadType( field.getType(), pending );
+            preloadAnnotations( field, pending );
+        }
+
+        for ( JavaMethod method : javaClass.getMethods() ) {
+            preloadType( method.getReturnType(), pending );
+            for ( JavaParameter parameter : method.getParameters() ) {
+                preloadType( parameter.getType(), pending );
+            }
+
+            preloadAnnotations( method, pending );
+        }
+    }
+
+    private void preloadAnnotations( JavaAnnotatedElement element, Deque<JavaClass> pending ) {
+        for ( JavaAnnotation annotation : element.getAnnotations() ) {
+            pending.push( annotation.getType() );
+        }
+    }
+
+    private void preloadType( JavaType type, Deque<JavaClass> pending ) {
+        if ( type instanceof JavaParameterizedType ) {
+            for ( JavaType argument : ( (JavaParameterizedType) type ).getActualTypeArguments() ) {
+                preloadType( argument, pending );
+            }
+        }
+
+        if ( !( type instanceof JavaClass ) || type instanceof JavaTypeVariable || type instanceof JavaWildcardType ) {
+            return;
+        }
+
+        JavaClass componentType = (JavaClass) type;
+        while ( componentType.isArray() ) {
+            componentType = componentType.getComponentType();
+        }
+
+        if ( !componentType.isPrimitive() ) {
+            pending.push( getClassByName( componentType.getFullyQualifiedName() ) );
+        }
+    }
+
+    /**
+     * Resolves the sources model on the calling thread before the workers are started: lazily loaded
+     * types, the type index of the parsed classes and models of the given entities and of theirs
+     * entity superclasses, so the workers only read the model
+     */
+    void resolveModel( Collection<JavaClass> entities ) {
+        if ( !classesPreloaded ) {
+            preloadClasses();
+            classesPreloaded = true;
+        }
+
+        JavaProjectBuilder builder = getClassMetaBuilder();
+        synchronized ( builder ) {
+            getTypeIndex().prepare( builder.getClasses() );
+            for ( JavaClass entityClass : entities ) {
+                for ( JavaClass type : getTypeIndex().getHierarchy( entityClass ) ) {
+                    if ( type == entityClass || isJpaEntity( type ) && !isMappedSuperclassEntity( type ) ) {
+                        getEntityModel( type );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Values of the generator parameters which affect the generated code. Any change in them
+     * invalidates all the results of a previous incremental run.
+     */
+    protected void collectConfiguration( List<Object> values ) {
+        values.add( getClass().getName() );
+        values.add( getPluginVersion() );
+        values.add( entityPattern );
+        values.add( includes );
+        values.add( excludes );
+        values.add( getEntityRoots() );
+        values.add( getEntityClassesRoots() );
+        values.add( entityPrefilter );
+        values.add( scopedClasspath ? getClasspathScope() : null );
+        values.add( basePackage );
+        values.add( daoPackage );
+        values.add( dtoPackage );
+        values.add( convertersPackage );
+        values.add( attachSuffixes );
+        values.add( attachPrefixes );
+        values.add( attachPostfixes );
+        values.add( disableAffixesAttach );
+        values.add( skipStaticFields );
+        values.add( getSourcesOutputRoot() );
+        values.add( getClassesOutputRoot() );
+    }
+
+    /**
+     * @return version of the plugin, as generated classes could differ between the versions
+     */
+    protected String getPluginVersion() {
+        if ( plugin != null ) {
+            return plugin.getVersion();
+        }
+
+        return AbstractGeneratorMojo.class.getPackage().getImplementationVersion();
+    }
+
+    /**
+     * Registers generated top-level class to be tracked as an output of the currently
+     * processed entity (or of the whole goal when no entity is being processed).
+     */
+    protected void registerGeneratedClass( String fullName ) {
+        if ( entityClassNames != null ) {
+            entityClassNames.add( fullName );
+        } else {
+            generatedClassNames.add( fullName );
+        }
+    }
+
+    /**
+     * @return true when up-to-date entities are not regenerated
+     */
+    boolean isIncrementalRun() {
+        return incremental && !verifyReproducibility;
+    }
+
+    /**
+     * Each execution of a goal keeps its own store (see {@link #getFingerprintStoreFile()}), so executions
+     * of the same goal with different sources or outputs never see the outputs of each other.
+     * Non-incremental runs do not track anything, so they never delete files generated before.
+     */
+    FingerprintStore openFingerprintStore( String[] classes ) throws MojoExecutionException {
+        List<Object> configuration = new ArrayList<Object>();
+        collectConfiguration( configuration );
+
+        MessageDigest configurationDigest = Digests.create();
+        for ( Object value : configuration ) {
+            Digests.update( configurationDigest, value instanceof Object[] ?
+                    Arrays.toString( (Object[]) value ) : String.valueOf(value) );
+        }
+
+        FingerprintStore store = new FingerprintStore( getFingerprintStoreFile() );
+
+        try {
+            store.load();
+            store.setConfiguration( Digests.toHex( configurationDigest.digest() ) );
+            for ( String className : classes ) {
+                store.setSource( className, getSourceHash( discoveredSources.get(className) ) );
+            }
+        } catch ( IOException e ) {
+            throw new MojoExecutionException("Failed to read incremental generation state", e );
+        }
+
+        return store;
+    }
+
+    /**
+     * @return store file of the goal execution, keyed by the execution id (when executed by Maven),
+     * the entities roots and the output roots
+     */
+    File getFingerprintStoreFile() {
+        MessageDigest digest = Digests.create();
+        Digests.update( digest, mojoExecution == null ? null : mojoExecution.getExecutionId() );
+        Digests.update( digest, String.valueOf( getEntityRoots() ) );
+        Digests.update( digest, String.valueOf( getEntityClassesRoots() ) );
+        Digests.update( digest, getSourcesOutputRoot() );
+        Digests.update( digest, getClassesOutputRoot() );
+
+        return new File( resolveBuildPath( incrementalStatePath, "generation-kit" ),
+                getClass().getSimpleName() + "-" + Digests.toHex( digest.digest() ) + ".properties" );
+    }
+
+    private void saveFingerprintStore( FingerprintStore store ) throws MojoExecutionException {
+        try {
+            store.save();
+        } catch ( IOException e ) {
+            store.discard();
+            throw new MojoExecutionException("Failed to save incremental generation state", e );
+        }
+    }
+
+    boolean isUpToDate( FingerprintStore store, JavaClass entityClass, String fingerprint ) {
+        String className = entityClass.getFullyQualifiedName();
+        return fingerprint.equals( store.getPreviousEntityFingerprint(className) )
+                && isOutputsExists( store.getPreviousEntityOutputs(className) );
+    }
+
+    private boolean isOutputsExists( Collection<String> classNames ) {
+        for ( String className : classNames ) {
+            for ( File outputFile : getOutputFiles( className, false ) ) {
+                if ( !outputFile.exists() ) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param nestedClasses include class files of the nested classes
+     * @return source and (when compiled by the plugin) class files of the given generated class
+     */
+    protected List<File> getOutputFiles( String className, boolean nestedClasses ) {
+        return getOutputFiles( className, nestedClasses, toFile( getSourcesOutputRoot() ),
+                toFile( getClassesOutputRoot() ) );
+    }
+
+    /**
+     * @param sourcesRoot root of the written sources, null when sources are not written
+     * @param classesRoot root of the compiled classes, null when classes are not compiled
+     */
+    private List<File> getOutputFiles( String className, boolean nestedClasses, File sourcesRoot, File classesRoot ) {
+        String path = className.replace('.', File.separatorChar);
+        List<File> result = new ArrayList<File>();
+        if ( sourcesRoot != null ) {
+            result.add( new File( sourcesRoot, path + ".java" ) );
+        }
+
+        if ( classesRoot != null ) {
+            final File classFile = new File( classesRoot, path + ".class" );
+            result.add( classFile );
+
+            File[] nestedClassFiles = nestedClasses ? classFile.getParentFile().listFiles( new FileFilter() {
+                @Override
+                public boolean accept( File file ) {
+                    return file.getName().startsWith( classFile.getName().replace(".class", "$") );
+                }
+            }) : null;
+            if ( nestedClassFiles != null ) {
+                result.addAll( Arrays.asList( nestedClassFiles ) );
+            }
+        }
+
+        return result;
+    }
+
+    private boolean isSourcesWritten() {
+        return writeSources || !compileGenerated;
+    }
+
+    private String getSourcesOutputRoot() {
+        return isSourcesWritten() ? new File(outputPath).getAbsolutePath() : null;
+    }
+
+    private String getClassesOutputRoot() {
+        return compileGenerated ? new File(classesOutputPath).getAbsolutePath() : null;
+    }
+
+    private static File toFile( String path ) {
+        return path == null ? null : new File( path );
+    }
+
+    Map<String, List<String>> collectDescendants( List<JavaClass> entities ) {
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        for ( JavaClass entityClass : entities ) {
+            JavaClass parent = entityClass.getSuperJavaClass();
+            if ( parent == null ) {
+                continue;
+            }
+
+            List<String> children = result.get( parent.getFullyQualifiedName() );
+            if ( children == null ) {
+                result.put( parent.getFullyQualifiedName(), children = new ArrayList<String>() );
+            }
+
+            children.add( entityClass.getFullyQualifiedName() );
+        }
+
+        return result;
+    }
+
+    /**
+     * Entity fingerprint covers its own source, sources of the superclasses chain, types of
+     * the used annotations, the list of known descendants (which affects generic signatures
+     * of the generated repositories) and the same of the project types referenced by fields and
+     * methods of the entity (related entities, embeddables, enums), which the generated classes
+     * depend on.
+     */
+    protected String computeFingerprint( JavaClass entityClass, Map<String, List<String>> descendants )
+            throws MojoExecutionException {
+        MessageDigest digest = Digests.create();
+
+        List<String> children = descendants.get( entityClass.getFullyQualifiedName() );
+        if ( children != null ) {
+            List<String> sortedChildren = new ArrayList<String>(children);
+            Collections.sort(sortedChildren);
+            for ( String child : sortedChildren ) {
+                Digests.update( digest, child );
+            }
+        }
+
+        Set<String> digested = new HashSet<String>();
+        updateHierarchyDigest( digest, entityClass, digested );
+
+        Set<String> referencedTypes = new TreeSet<String>();
+        JavaClass parent = entityClass;
+        while ( parent != null && !parent.getFullyQualifiedName().equals( Object.class.getName() ) ) {
+            for ( JavaField field : parent.getFields() ) {
+                collectReferencedTypes( field.getType(), referencedTypes );
+            }
+
+            for ( JavaMethod method : parent.getMethods() ) {
+                collectReferencedTypes( method.getReturnType(), referencedTypes );
+            }
+
+            parent = parent.getSuperJavaClass();
+        }
+
+        for ( String typeName : referencedTypes ) {
+            JavaClass type = getClassByName( typeName );
+            if ( type != null && getSourceHash( type ) != null ) {
+                updateHierarchyDigest( digest, type, digested );
+            }
+        }
+
+        return Digests.toHex( digest.digest() );
+    }
+
+    private void updateHierarchyDigest( MessageDigest digest, JavaClass javaClass, Set<String> digested )
+            throws MojoExecutionException {
+        JavaClass parent = javaClass;
+        while ( parent != null && !parent.getFullyQualifiedName().equals( Object.class.getName() )
+                && digested.add( parent.getFullyQualifiedName() ) ) {
+            Digests.update( digest, parent.getFullyQualifiedName() );
+            Digests.update( digest, getSourceHash(parent) );
+            for ( JavaAnnotation annotation : parent.getAnnotations() ) {
+                Digests.update( digest, annotation.getType().getFullyQualifiedName() );
+            }
+
+            parent = parent.getSuperJavaClass();
+        }
     }
 
-    protected void onExecutionFinished() {}
+    private static void collectReferencedTypes( JavaType type, Set<String> result ) {
+        if ( type == null ) {
+            return;
+        }
+
+        JavaType componentType = type;
+        while ( componentType instanceof JavaClass && ( (JavaClass) componentType ).isArray() ) {
+            componentType = ( (JavaClass) componentType ).getComponentType();
+        }
+
+        if ( componentType instanceof JavaClass && !( (JavaClass) componentType ).isPrimitive() ) {
+            result.add( componentType.getFullyQualifiedName() );
+        }
+
+        if ( componentType instanceof JavaParameterizedType ) {
+            for ( JavaType argument : ( (JavaParameterizedType) componentType ).getActualTypeArguments() ) {
+                collectReferencedTypes( argument, result );
+            }
+        }
+    }
+
+    private String getSourceHash( JavaClass javaClass ) throws MojoExecutionException {
+        JavaSource source = javaClass.getSource();
+        URL url = source == null ? null : source.getURL();
+        if ( url == null || !"file".equals( url.getProtocol() ) ) {
+            File classFile = getCompiledClassFile( javaClass.getFullyQualifiedName() );
+            return classFile == null ? null : getSourceHash( classFile );
+        }
+
+        try {
+            return getSourceHash( new File( url.toURI() ) );
+        } catch ( Exception e ) {
+            throw new MojoExecutionException("Failed to read source of " + javaClass.getFullyQualifiedName(), e );
+        }
+    }
+
+    private String getSourceHash( File sourceFile ) throws MojoExecutionException {
+        String path = sourceFile.getAbsolutePath();
+        String result = sourceHashes.get( path );
+        if ( result == null ) {
+            try {
+                result = Digests.hash( sourceFile );
+            } catch ( IOException e ) {
+                throw new MojoExecutionException("Failed to read source file " + path, e );
+            }
+
+            sourceHashes.put( path, result );
+        }
+
+        return result;
+    }
 
     protected void writeClasses() throws MojoExecutionException {
+        writeClasses( codeModel );
+    }
+
+    protected void writeClasses( JCodeModel codeModel ) throws MojoExecutionException {
+        writeClasses( Collections.singletonList( codeModel ) );
+    }
+
+    /**
+     * Renders all the given code models and writes theirs classes by a single pass
+     */
+    protected void writeClasses( List<JCodeModel> codeModels ) throws MojoExecutionException {
+        Map<String, byte[]> files = render( codeModels );
+        if ( isSourcesWritten() ) {
+            writeSources( files );
+        }
+
+        if ( compileGenerated ) {
+            compileClasses( files );
+        }
+
+        if ( report != null ) {
+            for ( JCodeModel codeModel : codeModels ) {
+                reportClasses( codeModel, files );
+            }
+        }
+    }
+
+    private void writeSources( Map<String, byte[]> files ) throws MojoExecutionException {
         File outputDirectory = new File(outputPath);
         outputDirectory.mkdirs();
 
@@ -194,33 +1504,138 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
             throw new MojoExecutionException("Output path must be a directory type!");
         }
 
+        ChangedFilesCodeWriter writer = new ChangedFilesCodeWriter( outputDirectory, getThreadsCount() );
         try {
-            codeModel.build( outputDirectory, (PrintStream) null );
+            writer.writeFiles( files );
         } catch ( IOException e ) {
             throw new MojoExecutionException("Failed to save code model contents...", e );
         }
+
+        getLog().debug( writer.getWrittenCount() + " files written, "
+                + writer.getUnchangedCount() + " files left unchanged" );
+
+        if ( report != null ) {
+            report.addWrittenFiles( writer.getWrittenCount(), writer.getUnchangedCount() );
+        }
     }
 
-    private String pathToName( String path ) {
-        return path.replaceAll(Pattern.quote(File.separator), ".").replace(".java", "").trim();
+    /**
+     * Compiles the rendered sources into the classes output path; entities and other project types
+     * are resolved from the project classpath, entity classes roots and the source trees
+     */
+    private void compileClasses( Map<String, byte[]> files ) throws MojoExecutionException {
+        List<File> classpath = new ArrayList<File>();
+        try {
+            classpath.addAll( getClasspathElements() );
+        } catch ( DependencyResolutionRequiredException e ) {
+            throw new MojoExecutionException("Failed to resolve project classpath", e );
+        }
+        classpath.addAll( getEntityClassesRoots() );
+
+        ClassFileCompiler compiler = new ClassFileCompiler( new File(classesOutputPath).getAbsoluteFile(), classpath,
+                isBytecodeModel() ? Collections.<File>emptyList() : getSourceTrees(), getCompilerOptions(),
+                Charset.defaultCharset() );
+
+        List<String> errors;
+        try {
+            errors = compiler.compile( files );
+        } catch ( IOException e ) {
+            throw new MojoExecutionException("Failed to compile generated classes: " + e.getMessage(), e );
+        }
+
+        if ( !errors.isEmpty() ) {
+            for ( String error : errors ) {
+                getLog().error( error );
+            }
+
+            throw new MojoExecutionException( errors.size() + " errors found while compiling generated classes" );
+        }
+
+        compiledClassFiles.addAll( compiler.getWrittenFiles() );
+        getLog().debug( compiler.getWrittenFiles().size() + " class files compiled into " + classesOutputPath );
     }
 
-    protected boolean hasDescendants( JavaClass clazz ) {
-        boolean result = false;
-        for ( JavaClass classItem : getClassMetaBuilder().getClasses() ) {
-            if ( !classItem.isA( clazz )
-                    || clazz.equals(classItem)
-                    || classItem.getFullyQualifiedName().equals(Object.class.getCanonicalName()) ) {
-                continue;
+    /**
+     * @return release (or source and target) level of the project compiler, when configured by
+     * the conventional properties
+     */
+    private List<String> getCompilerOptions() {
+        List<String> result = new ArrayList<String>();
+        Properties properties = project == null ? null : project.getProperties();
+        if ( properties == null ) {
+            return result;
+        }
+
+        String release = properties.getProperty("maven.compiler.release");
+        if ( release != null ) {
+            result.add("--release");
+            result.add( release );
+            return result;
+        }
+
+        String source = properties.getProperty("maven.compiler.source");
+        if ( source != null ) {
+            result.add("-source");
+            result.add( source );
+        }
+
+        String target = properties.getProperty("maven.compiler.target");
+        if ( target != null ) {
+            result.add("-target");
+            result.add( target );
+        }
+
+        return result;
+    }
+
+    /**
+     * @return class files written by the plugin since the start of the execution
+     */
+    protected Set<File> getCompiledClassFiles() {
+        return compiledClassFiles;
+    }
+
+    private void reportClasses( JCodeModel codeModel, Map<String, byte[]> files ) {
+        Iterator<JPackage> packages = codeModel.packages();
+        while ( packages.hasNext() ) {
+            Iterator<JDefinedClass> classes = packages.next().classes();
+            while ( classes.hasNext() ) {
+                JDefinedClass definedClass = classes.next();
+                byte[] content = files.get( definedClass.fullName().replace('.', '/') + ".java" );
+                report.addClass( definedClass.fullName(), countMethods(definedClass), content == null ? 0 : content.length );
             }
+        }
+    }
 
-            result = true;
-            break;
+    private static int countMethods( JDefinedClass definedClass ) {
+        int result = definedClass.methods().size();
+        Iterator<JMethod> constructors = definedClass.constructors();
+        while ( constructors.hasNext() ) {
+            constructors.next();
+            result++;
+        }
+
+        Iterator<JDefinedClass> nestedClasses = definedClass.classes();
+        while ( nestedClasses.hasNext() ) {
+            result += countMethods( nestedClasses.next() );
         }
 
         return result;
     }
 
+    int getThreadsCount() {
+        return parallelThreads != null && parallelThreads > 0 ?
+                parallelThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    String pathToName( String path ) {
+        return path.replaceAll(Pattern.quote(File.separator), ".").replace(".java", "").trim();
+    }
+
+    protected boolean hasDescendants( JavaClass clazz ) {
+        return getTypeIndex().hasDescendants( clazz );
+    }
+
     protected List<String> resolveSyntheticFieldGetter(JavaAnnotation syntheticFieldAnnotation) {
         String expression = normalizeAnnotationValue(
                 (String) syntheticFieldAnnotation.getNamedParameter("expression")
@@ -282,7 +1697,7 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     }
 
     protected boolean isInterface(String fullyQualifiedName) {
-        return !classMetaBuilder.getClassByName( fullyQualifiedName ).isInterface();
+        return !getClassByName( fullyQualifiedName ).isInterface();
     }
 
     protected boolean isJpaRelationType(JavaClass annotationTypeName) {
@@ -293,22 +1708,15 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     }
 
     protected boolean isSimpleType( JavaType type ) {
-        return this.isSimpleType(classMetaBuilder.getClassByName(type.getFullyQualifiedName()));
+        return this.isSimpleType(getClassByName(type.getFullyQualifiedName()));
     }
 
     protected boolean isSimpleType( JavaClass type ) {
-        try {
-            JType.parse(codeModel, type.getFullyQualifiedName());
-            return true;
-        } catch ( IllegalArgumentException e ) {
-            return type.isEnum()
-                    || type.getCanonicalName().equals( Date.class.getCanonicalName() )
-                    || type.getFullyQualifiedName().startsWith("java.lang");
-        }
+        return getMetamodel().getTypeKind( type ).isSimple();
     }
 
     protected boolean isDtoType( JavaType type ) {
-        return this.isDtoType(classMetaBuilder.getClassByName(type.getFullyQualifiedName()));
+        return this.isDtoType(getClassByName(type.getFullyQualifiedName()));
     }
 
     protected boolean isDtoType( JavaClass type ) {
@@ -335,29 +1743,13 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     protected boolean isMethodExists( String methodName, String className,
                                       final boolean deepSearch,
                                       final boolean publicOnly ) {
-        JavaClass javaClazz = classMetaBuilder.getClassByName(className);
+        JavaClass javaClazz = getClassByName(className);
         if ( javaClazz == null ) {
             throw new IllegalArgumentException("Class not found: "
                     + javaClazz.getFullyQualifiedName() );
         }
 
-        boolean result = false;
-        JavaClass parentClass = javaClazz;
-        do {
-            for ( JavaMethod method : parentClass.getMethods() ) {
-                if ( !method.getName().equals( methodName )
-                        || ( publicOnly && !method.isPublic() ) ) {
-                    continue;
-                }
-
-                result = true;
-                break;
-            }
-
-            parentClass = parentClass.getSuperJavaClass();
-        } while ( deepSearch && !result && parentClass != null );
-
-        return result;
+        return getTypeIndex().hasMethod( javaClazz, methodName, deepSearch, publicOnly );
     }
 
     protected boolean isListType( JavaClass classType ) {
@@ -365,7 +1757,7 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     }
 
     protected boolean isListType( String classType ) {
-        return isListType( classMetaBuilder.getClassByName(classType) );
+        return isListType( getClassByName(classType) );
     }
 
     protected boolean isSetType( JavaClass classType ) {
@@ -373,11 +1765,11 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     }
 
     protected boolean isSetType( String className ) {
-        return isSetType( classMetaBuilder.getClassByName(className) );
+        return isSetType( getClassByName(className) );
     }
 
     protected boolean isCollectionType( String className ) {
-        return isCollectionType( classMetaBuilder.getClassByName(className) );
+        return isCollectionType( getClassByName(className) );
     }
 
     protected boolean isCollectionType( JavaClass classType ) {
@@ -403,7 +1795,7 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     }
 
     protected boolean hasAnnotation(String clazz, String className ) {
-        return hasAnnotation( classMetaBuilder.getClassByName(className), className, false );
+        return hasAnnotation( getClassByName(className), className, false );
     }
 
     protected boolean hasAnnotation(JavaAnnotatedElement clazz, String className ) {
@@ -485,6 +1877,16 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     }
 
     protected String detectIdKeyType( JavaClass entityClass ) {
+        String result = getMetamodel().getIdKeyType( entityClass.getFullyQualifiedName() );
+        if ( result == null ) {
+            result = findIdKeyType( entityClass );
+            getMetamodel().putIdKeyType( entityClass.getFullyQualifiedName(), result == null ? NO_ID_KEY_TYPE : result );
+        }
+
+        return NO_ID_KEY_TYPE.equals(result) ? null : result;
+    }
+
+    private String findIdKeyType( JavaClass entityClass ) {
         String result = null;
 
         for ( JavaField field : entityClass.getFields() ) {
@@ -513,15 +1915,7 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
     }
 
     protected Set<JavaField> collectAllFields( JavaClass javaClass ) {
-        Set<JavaField> result = new HashSet<JavaField>();
-
-        JavaClass parent = javaClass;
-        while ( parent != null ) {
-            result.addAll(parent.getFields());
-            parent = parent.getSuperJavaClass();
-        }
-
-        return result;
+        return new LinkedHashSet<JavaField>( getTypeIndex().getAllFields(javaClass) );
     }
 
     protected void generateAccessors(JavaField originalField, JDefinedClass clazz, JFieldVar clazzField) {
@@ -550,7 +1944,7 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
 
         JExpression returnStm = JExpr.refthis( clazzField.name() );
         if ( clazzField.type().isReference()
-                && isSimpleType( classMetaBuilder.getClassByName(clazzField.type().fullName()) ) ) {
+                && isSimpleType( getClassByName(clazzField.type().fullName()) ) ) {
             JConditional nullHandler = getterMethod.body()._if(returnStm.eq(JExpr._null()));
 
             String typeName = clazzField.type().fullName();
@@ -642,8 +2036,10 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
             flags |= JMod.ABSTRACT;
         }
 
-        return codeModel._package( packagePart )
+        JDefinedClass result = codeModel._package( packagePart )
                 ._class(flags,  classPart, type);
+        registerGeneratedClass( result.fullName() );
+        return result;
     }
 
     protected String prepareClassName( String generatedPackage, String name ) {
@@ -656,6 +2052,18 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
 
     protected String prepareClassName( String generatedPackage, String name,
                                        String prefix, String suffix, String postfix) {
+        String key = generatedPackage + '|' + name + '|' + prefix + '|' + suffix + '|' + postfix;
+        String result = getMetamodel().getClassName( key );
+        if ( result == null ) {
+            result = resolveClassName( generatedPackage, name, prefix, suffix, postfix );
+            getMetamodel().putClassName( key, result );
+        }
+
+        return result;
+    }
+
+    private String resolveClassName( String generatedPackage, String name,
+                                     String prefix, String suffix, String postfix) {
         name = name.replace(basePackage, generatedPackage);
 
         if ( suffix != null && !disableAffixesAttach && attachSuffixes ) {
@@ -674,8 +2082,22 @@ public abstract class AbstractGeneratorMojo extends AbstractMojo {
         return name;
     }
 
-    protected abstract boolean isSupported( JavaClass entityClass );
-
-    protected abstract void generateClass( JavaClass entityClass ) throws MojoExecutionException;
+    /**
+     * State of a generator execution within {@link #generate(List)}
+     */
+    static class GenerationTask {
+        final AbstractEntityGeneratorMojo generator;
+        final FingerprintStore fingerprints;
+        final List<JavaClass> staleEntities = new ArrayList<JavaClass>();
+        final Map<String, String> entityFingerprints = new HashMap<String, String>();
+        final List<JCodeModel> codeModels = new ArrayList<JCodeModel>();
+        final Map<String, List<String>> entityOutputs = new HashMap<String, List<String>>();
+        boolean streamingSupported;
+
+        GenerationTask( AbstractEntityGeneratorMojo generator, FingerprintStore fingerprints ) {
+            this.generator = generator;
+            this.fingerprints = fingerprints;
+        }
+    }
 
 }
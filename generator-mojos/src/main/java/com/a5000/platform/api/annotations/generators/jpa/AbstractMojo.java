@@ -1,18 +1,31 @@
 package com.a5000.platform.api.annotations.generators.jpa;
 
+import com.a5000.platform.api.annotations.generators.jpa.bytecode.ClassFile;
+import com.a5000.platform.api.annotations.generators.jpa.bytecode.StubSourceWriter;
+import com.a5000.platform.api.annotations.generators.jpa.cache.ClasspathIndex;
+import com.a5000.platform.api.annotations.generators.jpa.cache.SourceModelSnapshot;
+import com.a5000.platform.api.annotations.generators.jpa.discovery.ClassFileScanner;
+import com.a5000.platform.api.annotations.generators.jpa.discovery.SourceScanner;
+import com.a5000.platform.api.annotations.generators.jpa.utils.Digests;
 import com.a5000.platform.api.annotations.generators.jpa.utils.StringUtils;
 import com.thoughtworks.qdox.JavaProjectBuilder;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.List;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 /**
  * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
@@ -31,19 +44,146 @@ import java.util.List;
  */
 public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo {
 
+    /**
+     * Tokens which every JPA entity or mapped superclass source contains
+     */
+    protected static final List<String> ENTITY_PREFILTER_TOKENS = Collections.unmodifiableList(
+            Arrays.asList( "@Entity", "@MappedSuperclass", ".Entity", ".MappedSuperclass" ) );
+
+    /**
+     * Annotations which every JPA entity or mapped superclass class file contains
+     */
+    protected static final List<String> ENTITY_ANNOTATIONS = Collections.unmodifiableList(
+            Arrays.asList( "javax.persistence.Entity", "javax.persistence.MappedSuperclass" ) );
+
+    /**
+     * Packages which are always resolvable when the classpath scope is limited
+     */
+    protected static final List<String> DEFAULT_CLASSPATH_SCOPE = Collections.unmodifiableList(
+            Arrays.asList( "javax.persistence", "com.a5000.platform.api.annotations" ) );
+
+    private static final String SOURCE_FILE_PATTERN = "**/*.java";
+
+    private static final Pattern STRING_CONCATENATION = Pattern.compile("\" \\+ \"");
+
     @Parameter( property = "project" )
     protected MavenProject project;
 
+    @Parameter( property = "session" )
+    protected MavenSession session;
+
     @Parameter( property = "outputPath", required = true, defaultValue = "target/")
     protected String outputPath = "target/";
 
     @Parameter( property = "sourceRoot" )
     protected String sourceRoot;
 
+    /**
+     * Additional roots to look for entities in
+     */
+    @Parameter( property = "sourceRoots" )
+    protected String[] sourceRoots = new String[0];
+
+    /**
+     * Look up entities only among the sources (or compiled classes) which contain @Entity or @MappedSuperclass;
+     * the sources model is still built from all the sources, so enums, embeddables and id classes are resolved
+     */
+    @Parameter( property = "entityPrefilter", defaultValue = "false" )
+    protected Boolean entityPrefilter = false;
+
+    /**
+     * Resolve types through the project classpath only when they belong to the generator packages,
+     * persistence API or to one of {@link #classpathScope} packages; other types are kept unresolved
+     */
+    @Parameter( property = "scopedClasspath", defaultValue = "false" )
+    protected Boolean scopedClasspath = false;
+
+    @Parameter( property = "classpathScope" )
+    protected String[] classpathScope = new String[0];
+
+    /**
+     * Locate classpath types through a persistent index of the classpath archives entries
+     */
+    @Parameter( property = "classpathIndex", defaultValue = "true" )
+    protected Boolean classpathIndex = true;
+
+    /**
+     * Directory of the classpath index, relative paths are resolved against the project base directory
+     * (defaults to generation-kit/classpath-index under the project build directory)
+     */
+    @Parameter( property = "classpathIndexPath", defaultValue = "${project.build.directory}/generation-kit/classpath-index" )
+    protected String classpathIndexPath;
+
+    /**
+     * Cache contents of the parsed sources between the goals and builds, so unchanged sources are
+     * not read one by one (all the sources are parsed anyway)
+     */
+    @Parameter( property = "sourceModelSnapshot", defaultValue = "true" )
+    protected Boolean sourceModelSnapshot = true;
+
+    /**
+     * Directory of the sources model snapshot, relative paths are resolved against the project base
+     * directory (defaults to generation-kit/source-model under the project build directory)
+     */
+    @Parameter( property = "sourceModelSnapshotPath", defaultValue = "${project.build.directory}/generation-kit/source-model" )
+    protected String sourceModelSnapshotPath;
+
+    /**
+     * Share parsed sources models between all the plugin executions of a build (modules and goals),
+     * so the same entity sources are parsed once per build; the executions get the model built
+     * by the first of them, with its compile source roots and classpath
+     */
+    @Parameter( property = "sharedModel", defaultValue = "false" )
+    protected Boolean sharedModel = false;
+
+    /**
+     * Directories or jar archives with compiled entities; when specified, entities model is built
+     * from the class files and no sources are parsed
+     */
+    @Parameter( property = "entityClassesRoots" )
+    protected String[] entityClassesRoots = new String[0];
+
+    /**
+     * Classes found under the entity classes roots by theirs names, scanned once per execution
+     */
+    protected Map<String, ClassFileScanner.CompiledClass> compiledClasses;
+
+    /**
+     * Indexed class loaders created by this execution, theirs archives are released by
+     * {@link #releaseClassLoaders()}
+     */
+    private final List<IndexedClassLoader> classLoaders = new CopyOnWriteArrayList<IndexedClassLoader>();
+
     public void setProject(MavenProject project) {
         this.project = project;
     }
 
+    public void setSession(MavenSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Configures the given mojo with the parameters of this one
+     */
+    protected void copyParameters( AbstractMojo target ) {
+        target.project = project;
+        target.outputPath = outputPath;
+        target.sourceRoot = sourceRoot;
+        target.sourceRoots = sourceRoots;
+        target.entityPrefilter = entityPrefilter;
+        target.scopedClasspath = scopedClasspath;
+        target.classpathScope = classpathScope;
+        target.classpathIndex = classpathIndex;
+        target.classpathIndexPath = classpathIndexPath;
+        target.sourceModelSnapshot = sourceModelSnapshot;
+        target.sourceModelSnapshotPath = sourceModelSnapshotPath;
+        target.sharedModel = sharedModel;
+        target.session = session;
+        target.entityClassesRoots = entityClassesRoots;
+        target.setLog( getLog() );
+        target.setPluginContext( getPluginContext() );
+    }
+
     @SuppressWarnings("unchecked")
     protected String getTopLevelClassName( String sourceFile )
     {
@@ -58,18 +198,97 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
      */
     protected ClassLoader getProjectClassLoader()
             throws DependencyResolutionRequiredException, MalformedURLException {
-        List<?> compile = project.getCompileClasspathElements();
-        URL[] urls = new URL[compile.size()];
+        List<File> elements = getClasspathElements();
+        if ( classpathIndex ) {
+            ClasspathIndex index = new ClasspathIndex(
+                    resolveBuildPath( classpathIndexPath, "generation-kit/classpath-index" ) );
+            try {
+                index.build( elements );
+                getLog().debug("Classpath index: " + index.getReusedCount() + " archives reused, "
+                        + index.getIndexedCount() + " archives indexed" );
+                IndexedClassLoader classLoader = new IndexedClassLoader( index, ClassLoader.getSystemClassLoader() );
+                classLoaders.add( classLoader );
+                return classLoader;
+            } catch ( IOException e ) {
+                getLog().warn("Failed to build classpath index: " + e.getMessage() );
+            }
+        }
+
+        URL[] urls = new URL[elements.size()];
         int i = 0;
-        for ( Object object : compile ) {
+        for ( File element : elements ) {
+            urls[i++] = element.toURI().toURL();
+        }
+        return new URLClassLoader( urls, ClassLoader.getSystemClassLoader() );
+    }
+
+    /**
+     * Closes archives opened by the class loaders of this execution; the loaders stay usable,
+     * so models which have been built over them could still be resolved by other executions
+     */
+    protected void releaseClassLoaders() {
+        for ( IndexedClassLoader classLoader : classLoaders ) {
+            try {
+                classLoader.close();
+            } catch ( IOException e ) {
+                getLog().warn("Failed to close classpath archives: " + e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * Hands the class loaders created by this execution over to the caller, which becomes
+     * responsible for closing them
+     */
+    protected List<IndexedClassLoader> takeClassLoaders() {
+        List<IndexedClassLoader> result = new ArrayList<IndexedClassLoader>( classLoaders );
+        classLoaders.removeAll( result );
+        return result;
+    }
+
+    /**
+     * @param path configured path, relative ones are resolved against the project base directory
+     * @param defaultPath path under the project build directory to use when none is configured
+     */
+    protected File resolveBuildPath( String path, String defaultPath ) {
+        if ( path == null ) {
+            return new File( getBuildDirectory(), defaultPath );
+        }
+
+        File result = new File( path );
+        return result.isAbsolute() ? result : new File( getBaseDirectory(), path );
+    }
+
+    /**
+     * @return project build directory, "target" under the base directory when the project has none
+     */
+    protected File getBuildDirectory() {
+        if ( project == null || project.getBuild() == null || project.getBuild().getDirectory() == null ) {
+            return new File( getBaseDirectory(), "target" );
+        }
+
+        return resolveBuildPath( project.getBuild().getDirectory(), null );
+    }
+
+    private File getBaseDirectory() {
+        if ( project == null || project.getBasedir() == null ) {
+            return new File("").getAbsoluteFile();
+        }
+
+        return project.getBasedir();
+    }
+
+    protected List<File> getClasspathElements() throws DependencyResolutionRequiredException {
+        List<File> result = new ArrayList<File>();
+        for ( Object object : project.getCompileClasspathElements() ) {
             if ( object instanceof Artifact) {
-                urls[i] = ( (Artifact) object ).getFile().toURI().toURL();
+                result.add( ( (Artifact) object ).getFile() );
             } else {
-                urls[i] = new File( (String) object ).toURI().toURL();
+                result.add( new File( (String) object ) );
             }
-            i++;
         }
-        return new URLClassLoader( urls, ClassLoader.getSystemClassLoader() );
+
+        return result;
     }
 
     protected String normalizeAnnotationValue( String value ) {
@@ -81,7 +300,7 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
         value = StringUtils.trim(value, "\"");
         value = StringUtils.trim(value, "/");
         value = StringUtils.trim(value, "\\");
-        value = value.replaceAll("\" \\+ \"", "");
+        value = STRING_CONCATENATION.matcher(value).replaceAll("");
         return value;
     }
 
@@ -94,14 +313,40 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
 
     protected JavaProjectBuilder createJavaDocBuilder() throws MojoExecutionException {
         try {
-            JavaProjectBuilder builder =new JavaProjectBuilder();
-            builder.addSourceTree(new File(sourceRoot));
-            builder.addSourceTree(new File("target/classes"));
-            builder.addClassLoader( getProjectClassLoader() );
-            for ( String sourceRoot : project.getCompileSourceRoots() ) {
-                getLog().info("Sources root = " + sourceRoot );
-                builder.addSourceTree( new File( sourceRoot ) );
+            Collection<File> sourceTrees = getSourceTrees();
+            ClassLoader classLoader = getProjectClassLoader();
+            if ( scopedClasspath ) {
+                classLoader = new ScopedClassLoader( classLoader, getClasspathScope() );
+            }
+
+            if ( isBytecodeModel() ) {
+                return createBytecodeBuilder( classLoader );
             }
+
+            SourceScanner scanner = new SourceScanner( Collections.singletonList(SOURCE_FILE_PATTERN),
+                    Collections.<String>emptyList(), null, Runtime.getRuntime().availableProcessors() );
+
+            for ( File sourceTree : sourceTrees ) {
+                getLog().info("Sources root = " + sourceTree );
+            }
+
+            if ( sourceModelSnapshot ) {
+                JavaProjectBuilder builder = buildFromSnapshot( sourceTrees, scanner, classLoader );
+                if ( builder != null ) {
+                    return builder;
+                }
+            }
+
+            JavaProjectBuilder builder = new JavaProjectBuilder();
+            for ( SourceScanner.Source source : scanSources( scanner, sourceTrees ) ) {
+                try {
+                    builder.addSource( source.getFile() );
+                } catch ( IOException e ) {
+                    throw new MojoExecutionException("Failed to parse source " + source.getFile(), e );
+                }
+            }
+            builder.addClassLoader( classLoader );
+
             return builder;
         } catch ( MalformedURLException e ) {
             throw new MojoExecutionException( "Failed to resolve project classpath", e );
@@ -110,4 +355,261 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
         }
     }
 
+    /**
+     * Builds the model from the stubs rendered for the compiled classes: only declarations and
+     * annotations (including the ones not retained at runtime) are available, methods bodies are not
+     */
+    private JavaProjectBuilder createBytecodeBuilder( ClassLoader classLoader ) throws MojoExecutionException {
+        for ( File root : getEntityClassesRoots() ) {
+            getLog().info("Classes root = " + root );
+        }
+
+        final Map<String, ClassFile> classFiles = new HashMap<String, ClassFile>();
+        List<ClassFile> topLevelClasses = new ArrayList<ClassFile>();
+        for ( ClassFileScanner.CompiledClass compiledClass : getCompiledClasses().values() ) {
+            ClassFile classFile = compiledClass.getClassFile();
+            classFiles.put( classFile.getName(), classFile );
+            if ( classFile.isTopLevel() && !classFile.isSynthetic() ) {
+                topLevelClasses.add( classFile );
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+        try {
+            List<Future<String>> stubs = new ArrayList<Future<String>>();
+            for ( final ClassFile classFile : topLevelClasses ) {
+                stubs.add( executor.submit( new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return StubSourceWriter.write( classFile, classFiles );
+                    }
+                }) );
+            }
+
+            JavaProjectBuilder builder = new JavaProjectBuilder();
+            for ( int i = 0; i < stubs.size(); i++ ) {
+                String className = topLevelClasses.get(i).getName().replace('/', '.');
+                try {
+                    builder.addSource( new StringReader( stubs.get(i).get() ) );
+                } catch ( RuntimeException e ) {
+                    // the class is still resolvable through the class loader, but without its class file annotations
+                    getLog().warn("Failed to build model of the compiled class " + className + ": " + e.getMessage() );
+                } catch ( ExecutionException e ) {
+                    throw new MojoExecutionException("Failed to read compiled class " + className, e.getCause() );
+                }
+            }
+            builder.addClassLoader( classLoader );
+
+            getLog().info("Entities model built from " + topLevelClasses.size() + " compiled classes");
+            return builder;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Compiled classes reading has been interrupted", e );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true when the sources model could be shared with other executions of the same build
+     */
+    protected boolean isSharedModel() {
+        return sharedModel && session != null && session.getRequest() != null;
+    }
+
+    /**
+     * @return key of the sources model built by {@link #createJavaDocBuilder()}: the entity sources set,
+     * which is the entity roots (or classes roots). Compile source roots and the classpath (including
+     * the project classes directory changed by every module) are not taken into account
+     */
+    protected String getModelKey() throws MojoExecutionException {
+        MessageDigest digest = Digests.create();
+        try {
+            Digests.update( digest, String.valueOf( isBytecodeModel() ) );
+            for ( File root : isBytecodeModel() ? getEntityClassesRoots() : getEntityRoots() ) {
+                Digests.update( digest, root.getCanonicalPath() );
+            }
+        } catch ( IOException e ) {
+            throw new MojoExecutionException("Failed to resolve entity roots", e );
+        }
+
+        return Digests.toHex( digest.digest() );
+    }
+
+    protected boolean isBytecodeModel() {
+        return entityClassesRoots != null && entityClassesRoots.length > 0;
+    }
+
+    protected static boolean isEntityCandidate( ClassFile classFile ) {
+        for ( String annotation : ENTITY_ANNOTATIONS ) {
+            if ( classFile.isAnnotatedWith(annotation) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return classes found under the entity classes roots by theirs names, the first one wins
+     * when a class is present in several roots
+     */
+    protected Map<String, ClassFileScanner.CompiledClass> getCompiledClasses() throws MojoExecutionException {
+        if ( compiledClasses == null ) {
+            Map<String, ClassFileScanner.CompiledClass> result = new LinkedHashMap<String, ClassFileScanner.CompiledClass>();
+            try {
+                ClassFileScanner scanner = new ClassFileScanner( Runtime.getRuntime().availableProcessors() );
+                for ( ClassFileScanner.CompiledClass compiledClass : scanner.scan( getEntityClassesRoots() ) ) {
+                    if ( !result.containsKey( compiledClass.getClassName() ) ) {
+                        result.put( compiledClass.getClassName(), compiledClass );
+                    }
+                }
+            } catch ( IOException e ) {
+                throw new MojoExecutionException("Failed to scan compiled classes", e );
+            }
+
+            compiledClasses = result;
+        }
+
+        return compiledClasses;
+    }
+
+    /**
+     * @return class file (or the archive containing it) of the given class, or null when
+     * the class is not found in the entity classes roots
+     */
+    protected File getCompiledClassFile( String className ) throws MojoExecutionException {
+        if ( !isBytecodeModel() ) {
+            return null;
+        }
+
+        ClassFileScanner.CompiledClass compiledClass = getCompiledClasses().get( className );
+        return compiledClass == null ? null : compiledClass.getFile();
+    }
+
+    /**
+     * @return packages (with theirs sub-packages) which types are resolved through the project
+     * classpath in the scoped mode
+     */
+    protected Collection<String> getClasspathScope() {
+        Set<String> result = new LinkedHashSet<String>( DEFAULT_CLASSPATH_SCOPE );
+        if ( classpathScope != null ) {
+            result.addAll( Arrays.asList(classpathScope) );
+        }
+
+        return result;
+    }
+
+    /**
+     * @return scanner over the entity source files, which accepts only entities candidates when
+     * the prefilter is enabled
+     */
+    protected SourceScanner createSourceScanner( Collection<String> includes, Collection<String> excludes ) {
+        return new SourceScanner( includes, excludes, entityPrefilter ? ENTITY_PREFILTER_TOKENS : null,
+                Runtime.getRuntime().availableProcessors() );
+    }
+
+    protected List<SourceScanner.Source> scanSources( SourceScanner scanner, Collection<File> roots )
+            throws MojoExecutionException {
+        try {
+            return scanner.scan( roots );
+        } catch ( IOException e ) {
+            throw new MojoExecutionException("Failed to scan sources", e );
+        }
+    }
+
+    /**
+     * @return model parsed through the snapshot, or null when the snapshot could not be used
+     */
+    private JavaProjectBuilder buildFromSnapshot( Collection<File> sourceTrees, SourceScanner scanner,
+                                                  ClassLoader classLoader ) throws DependencyResolutionRequiredException {
+        SourceModelSnapshot snapshot;
+        JavaProjectBuilder builder;
+        try {
+            snapshot = new SourceModelSnapshot( resolveBuildPath( sourceModelSnapshotPath, "generation-kit/source-model" ),
+                    sourceTrees, scanner, getDependenciesKey() );
+            builder = snapshot.build( classLoader );
+        } catch ( IOException e ) {
+            getLog().warn("Failed to use sources model snapshot: " + e.getMessage() );
+            return null;
+        }
+
+        getLog().info("Sources model rebuilt from the snapshot, "
+                + snapshot.getChangedSources().size() + " changed sources read" );
+        if ( snapshot.isModified() ) {
+            try {
+                snapshot.save();
+            } catch ( IOException e ) {
+                getLog().warn("Failed to save sources model snapshot: " + e.getMessage() );
+            }
+        }
+
+        return builder;
+    }
+
+    /**
+     * @return distinct source trees to be parsed: entity roots, compiled classes directory
+     * (unless classpath is scoped) and project compile source roots
+     */
+    protected Collection<File> getSourceTrees() {
+        Set<File> result = new LinkedHashSet<File>();
+        result.addAll( getEntityRoots() );
+        if ( !scopedClasspath ) {
+            result.add( new File("target/classes").getAbsoluteFile() );
+        }
+        for ( String sourceRoot : project.getCompileSourceRoots() ) {
+            result.add( new File( sourceRoot ).getAbsoluteFile() );
+        }
+
+        return result;
+    }
+
+    /**
+     * @return distinct roots to look for entities in: generator source root and additional source roots
+     */
+    protected Collection<File> getEntityRoots() {
+        Set<File> result = new LinkedHashSet<File>();
+        if ( sourceRoot != null ) {
+            result.add( new File(sourceRoot).getAbsoluteFile() );
+        }
+        if ( sourceRoots != null ) {
+            for ( String root : sourceRoots ) {
+                result.add( new File(root).getAbsoluteFile() );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return distinct directories and archives to read compiled entities from
+     */
+    protected Collection<File> getEntityClassesRoots() {
+        Set<File> result = new LinkedHashSet<File>();
+        if ( entityClassesRoots != null ) {
+            for ( String root : entityClassesRoots ) {
+                result.add( new File(root).getAbsoluteFile() );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return hash of the paths, sizes and modification times of the project dependency archives (which
+     * contents are never read), directories (like the project own classes directory) are not taken
+     * into account
+     */
+    protected String getDependenciesKey() throws DependencyResolutionRequiredException {
+        MessageDigest digest = Digests.create();
+        for ( File file : getClasspathElements() ) {
+            if ( file.isFile() ) {
+                Digests.update( digest, file.getAbsolutePath() );
+                Digests.update( digest, file.length() + ":" + file.lastModified() );
+            }
+        }
+
+        return Digests.toHex( digest.digest() );
+    }
+
 }
@@ -0,0 +1,201 @@
+package com.a5000.platform.api.annotations.generators.jpa;
+
+import com.a5000.platform.api.annotations.generators.jpa.cache.ClasspathIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Class loader over the project classpath which locates classes and sources through
+ * the {@link ClasspathIndex}: missing types are rejected without probing the classpath
+ * elements, an archive is opened only when a class is actually loaded from it.
+ *
+ * Closing the loader releases the opened archives only: the loader stays usable and reopens
+ * an archive when another class is loaded from it, so a model which resolves types lazily
+ * could outlive the execution which has closed it.
+ */
+public class IndexedClassLoader extends ClassLoader implements Closeable {
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final ClasspathIndex index;
+    private final Map<File, JarFile> archives = new HashMap<File, JarFile>();
+    private final Set<String> definedPackages = new HashSet<String>();
+
+    public IndexedClassLoader( ClasspathIndex index, ClassLoader parent ) {
+        super(parent);
+
+        this.index = index;
+    }
+
+    @Override
+    protected Class<?> findClass( String name ) throws ClassNotFoundException {
+        String entryName = name.replace('.', '/') + CLASS_FILE_EXTENSION;
+        File location = index.getLocation( entryName );
+        if ( location == null ) {
+            throw new ClassNotFoundException(name);
+        }
+
+        byte[] bytes;
+        try {
+            bytes = readEntry( location, entryName );
+        } catch ( IOException e ) {
+            throw new ClassNotFoundException( name, e );
+        }
+
+        int packageSeparator = name.lastIndexOf('.');
+        if ( packageSeparator != -1 ) {
+            definePackageIfAbsent( name.substring( 0, packageSeparator ) );
+        }
+
+        return defineClass( name, bytes, 0, bytes.length );
+    }
+
+    @Override
+    protected URL findResource( String name ) {
+        File location = index.getLocation( name );
+        return location == null ? null : createURL( location, name );
+    }
+
+    /**
+     * Resources found in all the classpath elements containing the entry, in the classpath order
+     */
+    @Override
+    protected Enumeration<URL> findResources( String name ) {
+        List<URL> result = new ArrayList<URL>();
+        for ( File location : index.getLocations( name ) ) {
+            URL url = createURL( location, name );
+            if ( url != null ) {
+                result.add( url );
+            }
+        }
+
+        return Collections.enumeration( result );
+    }
+
+    /**
+     * Closes the archives opened so far
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        synchronized ( archives ) {
+            for ( JarFile archive : archives.values() ) {
+                try {
+                    archive.close();
+                } catch ( IOException e ) {
+                    failure = e;
+                }
+            }
+
+            archives.clear();
+        }
+
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return number of the currently opened archives
+     */
+    public int getOpenedArchivesCount() {
+        synchronized ( archives ) {
+            return archives.size();
+        }
+    }
+
+    private static URL createURL( File location, String name ) {
+        try {
+            if ( location.isDirectory() ) {
+                return new File( location, name ).toURI().toURL();
+            }
+
+            return new URL( "jar:" + location.toURI() + "!/" + name );
+        } catch ( MalformedURLException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * Packages are tracked by the loader itself, as the lookup through {@link #getPackage(String)} is deprecated
+     * and {@code ClassLoader.getDefinedPackage} is not available before Java 9
+     */
+    private void definePackageIfAbsent( String packageName ) {
+        synchronized ( definedPackages ) {
+            if ( !definedPackages.add( packageName ) ) {
+                return;
+            }
+
+            try {
+                definePackage( packageName, null, null, null, null, null, null, null );
+            } catch ( IllegalArgumentException e ) {
+                // already defined by one of the parents (before Java 9)
+            }
+        }
+    }
+
+    private byte[] readEntry( File location, String entryName ) throws IOException {
+        if ( location.isDirectory() ) {
+            return Files.readAllBytes( new File( location, entryName ).toPath() );
+        }
+
+        InputStream stream;
+        synchronized ( archives ) {
+            JarFile archive = archives.get( location );
+            if ( archive == null ) {
+                archive = new JarFile( location );
+                archives.put( location, archive );
+            }
+
+            ZipEntry entry = archive.getEntry( entryName );
+            if ( entry == null ) {
+                throw new IOException("Entry " + entryName + " not found in " + location );
+            }
+
+            stream = archive.getInputStream( entry );
+        }
+
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( ( read = stream.read(buffer) ) != -1 ) {
+                result.write( buffer, 0, read );
+            }
+
+            return result.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.a5000.platform.api.annotations.generators.jpa;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Class loader which exposes classes and sources of the delegate class loader only
+ * when they belong to one of the given packages (or theirs sub-packages); JDK classes
+ * are always visible.
+ *
+ * Being used as QDox class library it makes types outside of the scope unresolved,
+ * so they are kept as plain references and the project dependencies are not probed for them.
+ */
+public class ScopedClassLoader extends ClassLoader {
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+    private static final String SOURCE_FILE_EXTENSION = ".java";
+
+    private final ClassLoader delegate;
+    private final List<String> packages = new ArrayList<String>();
+
+    public ScopedClassLoader( ClassLoader delegate, Collection<String> packages ) {
+        super(null);
+
+        this.delegate = delegate;
+        for ( String packageName : packages ) {
+            if ( packageName != null && !packageName.trim().isEmpty() ) {
+                this.packages.add( packageName.trim() );
+            }
+        }
+    }
+
+    public boolean isInScope( String className ) {
+        for ( String packageName : packages ) {
+            if ( className.equals(packageName)
+                    || ( className.startsWith(packageName) && className.charAt( packageName.length() ) == '.' ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    protected Class<?> findClass( String name ) throws ClassNotFoundException {
+        if ( !isInScope(name) ) {
+            throw new ClassNotFoundException(name);
+        }
+
+        return delegate.loadClass(name);
+    }
+
+    @Override
+    protected URL findResource( String name ) {
+        return isResourceInScope(name) ? delegate.getResource(name) : null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources( String name ) throws IOException {
+        if ( !isResourceInScope(name) ) {
+            return Collections.enumeration( Collections.<URL>emptyList() );
+        }
+
+        return delegate.getResources(name);
+    }
+
+    private boolean isResourceInScope( String name ) {
+        String className = name;
+        if ( className.endsWith(CLASS_FILE_EXTENSION) ) {
+            className = className.substring( 0, className.length() - CLASS_FILE_EXTENSION.length() );
+        } else if ( className.endsWith(SOURCE_FILE_EXTENSION) ) {
+            className = className.substring( 0, className.length() - SOURCE_FILE_EXTENSION.length() );
+        }
+
+        return isInScope( className.replace('/', '.') );
+    }
+
+}
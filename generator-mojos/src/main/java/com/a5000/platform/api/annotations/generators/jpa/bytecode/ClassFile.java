@@ -0,0 +1,157 @@
+package com.a5000.platform.api.annotations.generators.jpa.bytecode;
+
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Declarations of a compiled class read by {@link ClassFileReader}: modifiers, generic signatures,
+ * annotations (including the ones retained only in the class file) of the class and its members.
+ */
+public class ClassFile {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SYNCHRONIZED = 0x0020;
+    public static final int ACC_VOLATILE = 0x0040;
+    public static final int ACC_BRIDGE = 0x0040;
+    public static final int ACC_TRANSIENT = 0x0080;
+    public static final int ACC_VARARGS = 0x0080;
+    public static final int ACC_NATIVE = 0x0100;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+    public static final int ACC_SYNTHETIC = 0x1000;
+    public static final int ACC_ANNOTATION = 0x2000;
+    public static final int ACC_ENUM = 0x4000;
+
+    final int access;
+    final String name;
+    final String superName;
+    final List<String> interfaces;
+    String signature;
+    final List<Annotation> annotations = new ArrayList<Annotation>();
+    final List<Member> fields = new ArrayList<Member>();
+    final List<Member> methods = new ArrayList<Member>();
+    final List<InnerClass> innerClasses = new ArrayList<InnerClass>();
+
+    ClassFile( int access, String name, String superName, List<String> interfaces ) {
+        this.access = access;
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    /**
+     * @return internal ('/' separated) name of the class
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return false for nested, local and anonymous classes
+     */
+    public boolean isTopLevel() {
+        return getInnerClass( name ) == null;
+    }
+
+    public boolean isSynthetic() {
+        return ( access & ACC_SYNTHETIC ) != 0;
+    }
+
+    /**
+     * @param typeName fully qualified name of the annotation type
+     */
+    public boolean isAnnotatedWith( String typeName ) {
+        String descriptor = "L" + typeName.replace('.', '/') + ";";
+        for ( Annotation annotation : annotations ) {
+            if ( annotation.descriptor.equals( descriptor ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    InnerClass getInnerClass( String innerName ) {
+        for ( InnerClass innerClass : innerClasses ) {
+            if ( innerClass.name.equals( innerName ) ) {
+                return innerClass;
+            }
+        }
+
+        return null;
+    }
+
+    static class Member {
+        final int access;
+        final String name;
+        final String descriptor;
+        String signature;
+        List<String> parameterNames = Collections.emptyList();
+        final Map<Integer, String> localVariables = new HashMap<Integer, String>();
+        final List<Annotation> annotations = new ArrayList<Annotation>();
+
+        Member( int access, String name, String descriptor ) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+    }
+
+    static class Annotation {
+        final String descriptor;
+        final List<String> names = new ArrayList<String>();
+        final List<ElementValue> values = new ArrayList<ElementValue>();
+
+        Annotation( String descriptor ) {
+            this.descriptor = descriptor;
+        }
+    }
+
+    /**
+     * Value of an annotation element; its kind is defined by the tag as in the class file format:
+     * constants (B, C, D, F, I, J, S, Z, s), enum constant (e), class (c), annotation (@) or array ([)
+     */
+    static class ElementValue {
+        final char tag;
+        Object value;
+        String enumDescriptor;
+        Annotation annotation;
+        List<ElementValue> values;
+
+        ElementValue( char tag ) {
+            this.tag = tag;
+        }
+    }
+
+    static class InnerClass {
+        final String name;
+        final String outerName;
+        final String simpleName;
+        final int access;
+
+        InnerClass( String name, String outerName, String simpleName, int access ) {
+            this.name = name;
+            this.outerName = outerName;
+            this.simpleName = simpleName;
+            this.access = access;
+        }
+    }
+}
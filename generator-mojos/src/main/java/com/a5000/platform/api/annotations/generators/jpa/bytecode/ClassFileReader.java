@@ -0,0 +1,285 @@
+package com.a5000.platform.api.annotations.generators.jpa.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Lightweight class file reader which extracts only declarations: the class header, fields,
+ * methods signatures, annotations and inner classes table. Method bodies are skipped.
+ */
+public class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final String SIGNATURE_ATTRIBUTE = "Signature";
+    private static final String VISIBLE_ANNOTATIONS_ATTRIBUTE = "RuntimeVisibleAnnotations";
+    private static final String INVISIBLE_ANNOTATIONS_ATTRIBUTE = "RuntimeInvisibleAnnotations";
+    private static final String INNER_CLASSES_ATTRIBUTE = "InnerClasses";
+    private static final String METHOD_PARAMETERS_ATTRIBUTE = "MethodParameters";
+    private static final String CODE_ATTRIBUTE = "Code";
+    private static final String LOCAL_VARIABLE_TABLE_ATTRIBUTE = "LocalVariableTable";
+
+    private final DataInputStream input;
+    private Object[] constants;
+
+    private ClassFileReader( byte[] bytes ) {
+        this.input = new DataInputStream( new ByteArrayInputStream(bytes) );
+    }
+
+    public static ClassFile read( byte[] bytes ) throws IOException {
+        return new ClassFileReader( bytes ).read();
+    }
+
+    private ClassFile read() throws IOException {
+        if ( input.readInt() != MAGIC ) {
+            throw new IOException("Not a class file");
+        }
+
+        input.readUnsignedShort();
+        input.readUnsignedShort();
+        readConstants();
+
+        int access = input.readUnsignedShort();
+        String name = getClassName( input.readUnsignedShort() );
+        String superName = getClassName( input.readUnsignedShort() );
+
+        int interfacesCount = input.readUnsignedShort();
+        List<String> interfaces = new ArrayList<String>( interfacesCount );
+        for ( int i = 0; i < interfacesCount; i++ ) {
+            interfaces.add( getClassName( input.readUnsignedShort() ) );
+        }
+
+        ClassFile result = new ClassFile( access, name, superName, interfaces );
+
+        int fieldsCount = input.readUnsignedShort();
+        for ( int i = 0; i < fieldsCount; i++ ) {
+            result.fields.add( readMember() );
+        }
+
+        int methodsCount = input.readUnsignedShort();
+        for ( int i = 0; i < methodsCount; i++ ) {
+            result.methods.add( readMember() );
+        }
+
+        int attributesCount = input.readUnsignedShort();
+        for ( int i = 0; i < attributesCount; i++ ) {
+            String attributeName = getUtf8( input.readUnsignedShort() );
+            int length = input.readInt();
+            if ( SIGNATURE_ATTRIBUTE.equals( attributeName ) ) {
+                result.signature = getUtf8( input.readUnsignedShort() );
+            } else if ( VISIBLE_ANNOTATIONS_ATTRIBUTE.equals( attributeName )
+                    || INVISIBLE_ANNOTATIONS_ATTRIBUTE.equals( attributeName ) ) {
+                readAnnotations( result.annotations );
+            } else if ( INNER_CLASSES_ATTRIBUTE.equals( attributeName ) ) {
+                int count = input.readUnsignedShort();
+                for ( int j = 0; j < count; j++ ) {
+                    String innerName = getClassName( input.readUnsignedShort() );
+                    String outerName = getClassName( input.readUnsignedShort() );
+                    String simpleName = getUtf8( input.readUnsignedShort() );
+                    result.innerClasses.add( new ClassFile.InnerClass( innerName, outerName, simpleName,
+                            input.readUnsignedShort() ) );
+                }
+            } else {
+                skip( length );
+            }
+        }
+
+        return result;
+    }
+
+    private ClassFile.Member readMember() throws IOException {
+        ClassFile.Member member = new ClassFile.Member( input.readUnsignedShort(),
+                getUtf8( input.readUnsignedShort() ), getUtf8( input.readUnsignedShort() ) );
+
+        int attributesCount = input.readUnsignedShort();
+        for ( int i = 0; i < attributesCount; i++ ) {
+            String attributeName = getUtf8( input.readUnsignedShort() );
+            int length = input.readInt();
+            if ( SIGNATURE_ATTRIBUTE.equals( attributeName ) ) {
+                member.signature = getUtf8( input.readUnsignedShort() );
+            } else if ( VISIBLE_ANNOTATIONS_ATTRIBUTE.equals( attributeName )
+                    || INVISIBLE_ANNOTATIONS_ATTRIBUTE.equals( attributeName ) ) {
+                readAnnotations( member.annotations );
+            } else if ( METHOD_PARAMETERS_ATTRIBUTE.equals( attributeName ) ) {
+                int count = input.readUnsignedByte();
+                member.parameterNames = new ArrayList<String>( count );
+                for ( int j = 0; j < count; j++ ) {
+                    member.parameterNames.add( getUtf8( input.readUnsignedShort() ) );
+                    input.readUnsignedShort();
+                }
+            } else if ( CODE_ATTRIBUTE.equals( attributeName ) ) {
+                readLocalVariables( member );
+            } else {
+                skip( length );
+            }
+        }
+
+        return member;
+    }
+
+    /**
+     * Reads names of the variables available from the method start (which includes its parameters)
+     * from the debug information, the bytecode itself is skipped
+     */
+    private void readLocalVariables( ClassFile.Member member ) throws IOException {
+        skip( 4 );
+        skip( input.readInt() );
+        skip( input.readUnsignedShort() * 8 );
+
+        int attributesCount = input.readUnsignedShort();
+        for ( int i = 0; i < attributesCount; i++ ) {
+            String attributeName = getUtf8( input.readUnsignedShort() );
+            int length = input.readInt();
+            if ( !LOCAL_VARIABLE_TABLE_ATTRIBUTE.equals( attributeName ) ) {
+                skip( length );
+                continue;
+            }
+
+            int count = input.readUnsignedShort();
+            for ( int j = 0; j < count; j++ ) {
+                int startPc = input.readUnsignedShort();
+                input.readUnsignedShort();
+                String name = getUtf8( input.readUnsignedShort() );
+                input.readUnsignedShort();
+                int index = input.readUnsignedShort();
+                if ( startPc == 0 ) {
+                    member.localVariables.put( index, name );
+                }
+            }
+        }
+    }
+
+    private void readAnnotations( List<ClassFile.Annotation> result ) throws IOException {
+        int count = input.readUnsignedShort();
+        for ( int i = 0; i < count; i++ ) {
+            result.add( readAnnotation() );
+        }
+    }
+
+    private ClassFile.Annotation readAnnotation() throws IOException {
+        ClassFile.Annotation annotation = new ClassFile.Annotation( getUtf8( input.readUnsignedShort() ) );
+        int count = input.readUnsignedShort();
+        for ( int i = 0; i < count; i++ ) {
+            annotation.names.add( getUtf8( input.readUnsignedShort() ) );
+            annotation.values.add( readElementValue() );
+        }
+
+        return annotation;
+    }
+
+    private ClassFile.ElementValue readElementValue() throws IOException {
+        ClassFile.ElementValue result = new ClassFile.ElementValue( (char) input.readUnsignedByte() );
+        switch ( result.tag ) {
+            case 'e':
+                result.enumDescriptor = getUtf8( input.readUnsignedShort() );
+                result.value = getUtf8( input.readUnsignedShort() );
+                break;
+            case 'c':
+            case 's':
+                result.value = getUtf8( input.readUnsignedShort() );
+                break;
+            case '@':
+                result.annotation = readAnnotation();
+                break;
+            case '[':
+                int count = input.readUnsignedShort();
+                result.values = new ArrayList<ClassFile.ElementValue>( count );
+                for ( int i = 0; i < count; i++ ) {
+                    result.values.add( readElementValue() );
+                }
+                break;
+            default:
+                result.value = constants[ input.readUnsignedShort() ];
+        }
+
+        return result;
+    }
+
+    private void readConstants() throws IOException {
+        int count = input.readUnsignedShort();
+        constants = new Object[count];
+        for ( int i = 1; i < count; i++ ) {
+            int tag = input.readUnsignedByte();
+            switch ( tag ) {
+                case CONSTANT_UTF8:
+                    constants[i] = input.readUTF();
+                    break;
+                case CONSTANT_INTEGER:
+                    constants[i] = input.readInt();
+                    break;
+                case CONSTANT_FLOAT:
+                    constants[i] = input.readFloat();
+                    break;
+                case CONSTANT_LONG:
+                    constants[i++] = input.readLong();
+                    break;
+                case CONSTANT_DOUBLE:
+                    constants[i++] = input.readDouble();
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    constants[i] = new ConstantReference( input.readUnsignedShort() );
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skip( 3 );
+                    break;
+                default:
+                    // field, method and interface method references, name and type, dynamic constants
+                    skip( 4 );
+            }
+        }
+    }
+
+    private String getUtf8( int index ) {
+        return index == 0 ? null : (String) constants[index];
+    }
+
+    private String getClassName( int index ) {
+        return index == 0 ? null : getUtf8( ( (ConstantReference) constants[index] ).index );
+    }
+
+    private void skip( int length ) throws IOException {
+        input.skipBytes( length );
+    }
+
+    private static class ConstantReference {
+        final int index;
+
+        ConstantReference( int index ) {
+            this.index = index;
+        }
+    }
+}
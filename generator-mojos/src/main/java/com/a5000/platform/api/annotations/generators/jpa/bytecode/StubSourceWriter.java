@@ -0,0 +1,623 @@
+package com.a5000.platform.api.annotations.generators.jpa.bytecode;
+
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Renders a compiled class as a declarations-only Java source (a stub), so it could be added to the
+ * sources model as if it were parsed from the original source. Member classes are rendered inside
+ * of the declaring class; synthetic members, anonymous and local classes are omitted.
+ *
+ * Bodies of the methods are not available in the class files and are replaced by {@link #STUB_BODY}.
+ */
+public class StubSourceWriter {
+
+    public static final String STUB_BODY = "{ throw new UnsupportedOperationException(); }";
+
+    private static final String INDENT = "    ";
+    private static final String OBJECT_CLASS = "java/lang/Object";
+    private static final String ENUM_CLASS = "java/lang/Enum";
+    private static final String ANNOTATION_CLASS = "java/lang/annotation/Annotation";
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String STATIC_INITIALIZER_NAME = "<clinit>";
+
+    private final Map<String, ClassFile> classes;
+    private final Map<String, ClassFile.InnerClass> innerClasses = new HashMap<String, ClassFile.InnerClass>();
+    private final Map<String, String> imports = new TreeMap<String, String>();
+    private final StringBuilder builder = new StringBuilder();
+    private final String simpleName;
+
+    private StubSourceWriter( Map<String, ClassFile> classes, String simpleName ) {
+        this.classes = classes;
+        this.simpleName = simpleName;
+    }
+
+    /**
+     * @param classFile top-level class
+     * @param classes compiled classes by theirs internal names, used to lookup member classes
+     */
+    public static String write( ClassFile classFile, Map<String, ClassFile> classes ) {
+        int packageEnd = classFile.name.lastIndexOf('/');
+        StubSourceWriter writer = new StubSourceWriter( classes, classFile.name.substring( packageEnd + 1 ) );
+        writer.writeClass( classFile, classFile.access, writer.simpleName, "" );
+
+        StringBuilder header = new StringBuilder();
+        if ( packageEnd != -1 ) {
+            header.append("package ").append( classFile.name.substring( 0, packageEnd ).replace('/', '.') )
+                    .append(";\n\n");
+        }
+
+        return header.append( writeImports( writer.imports ) ).append( writer.builder ).toString();
+    }
+
+    /**
+     * Enum constants are referenced by the simple name of theirs type (as they are usually written
+     * in the entities sources), since the generators compare annotation values textually,
+     * e.g. with "AggregationType.ID".
+     *
+     * @param imports imported classes by theirs simple names
+     */
+    public static String writeImports( Map<String, String> imports ) {
+        StringBuilder result = new StringBuilder();
+        for ( String className : imports.values() ) {
+            result.append("import ").append( className ).append(";\n");
+        }
+
+        return imports.isEmpty() ? "" : result.append("\n").toString();
+    }
+
+    /**
+     * @param imports imported classes by theirs simple names, updated when the top-level class
+     *                could be imported without a conflict
+     * @param topLevelName fully qualified name of the top-level class
+     * @param canonicalName canonical name of the referenced (possibly member) class
+     * @param ownName simple name of the class being rendered
+     * @return name to reference the class with
+     */
+    public static String importName( Map<String, String> imports, String topLevelName, String canonicalName,
+                                     String ownName ) {
+        String simpleTopLevelName = topLevelName.substring( topLevelName.lastIndexOf('.') + 1 );
+        String imported = imports.get( simpleTopLevelName );
+        if ( imported == null && !simpleTopLevelName.equals( ownName ) ) {
+            imports.put( simpleTopLevelName, topLevelName );
+            imported = topLevelName;
+        }
+
+        if ( !topLevelName.equals( imported ) || !canonicalName.startsWith( topLevelName ) ) {
+            return canonicalName;
+        }
+
+        return simpleTopLevelName + canonicalName.substring( topLevelName.length() );
+    }
+
+    private void writeClass( ClassFile classFile, int access, String simpleName, String indent ) {
+        for ( ClassFile.InnerClass innerClass : classFile.innerClasses ) {
+            innerClasses.put( innerClass.name, innerClass );
+        }
+
+        boolean isAnnotation = ( access & ClassFile.ACC_ANNOTATION ) != 0;
+        boolean isInterface = ( access & ClassFile.ACC_INTERFACE ) != 0;
+        boolean isEnum = ( access & ClassFile.ACC_ENUM ) != 0;
+        boolean isNested = !indent.isEmpty();
+
+        writeAnnotations( classFile.annotations, indent, "\n" );
+        builder.append(indent);
+        writeVisibility( access );
+        if ( isAnnotation ) {
+            builder.append("@interface ");
+        } else if ( isInterface ) {
+            builder.append("interface ");
+        } else if ( isEnum ) {
+            builder.append("enum ");
+        } else {
+            if ( isNested && ( access & ClassFile.ACC_STATIC ) != 0 ) {
+                builder.append("static ");
+            }
+            if ( ( access & ClassFile.ACC_ABSTRACT ) != 0 ) {
+                builder.append("abstract ");
+            }
+            if ( ( access & ClassFile.ACC_FINAL ) != 0 ) {
+                builder.append("final ");
+            }
+            builder.append("class ");
+        }
+        builder.append(simpleName);
+
+        String superName = null;
+        List<String> interfaces = new ArrayList<String>();
+        if ( classFile.signature != null ) {
+            SignatureReader reader = new SignatureReader( classFile.signature );
+            builder.append( reader.readTypeParameters() );
+            superName = reader.readType();
+            while ( reader.hasMore() ) {
+                interfaces.add( reader.readType() );
+            }
+        } else {
+            if ( classFile.superName != null ) {
+                superName = toSourceName( classFile.superName );
+            }
+            for ( String interfaceName : classFile.interfaces ) {
+                interfaces.add( toSourceName(interfaceName) );
+            }
+        }
+
+        if ( isInterface ) {
+            interfaces.remove( toSourceName(ANNOTATION_CLASS) );
+            writeTypes( isAnnotation ? Collections.<String>emptyList() : interfaces, " extends " );
+        } else {
+            if ( !isEnum && superName != null && !superName.equals( toSourceName(OBJECT_CLASS) ) ) {
+                builder.append(" extends ").append(superName);
+            }
+            writeTypes( interfaces, " implements " );
+        }
+        builder.append(" {\n");
+
+        String memberIndent = indent + INDENT;
+        if ( isEnum ) {
+            String separator = "";
+            for ( ClassFile.Member field : classFile.fields ) {
+                if ( ( field.access & ClassFile.ACC_ENUM ) != 0 ) {
+                    builder.append(separator);
+                    writeAnnotations( field.annotations, memberIndent, "\n" );
+                    builder.append(memberIndent).append( field.name );
+                    separator = ",\n";
+                }
+            }
+            builder.append(";\n");
+        }
+
+        for ( ClassFile.Member field : classFile.fields ) {
+            if ( ( field.access & ( ClassFile.ACC_SYNTHETIC | ClassFile.ACC_ENUM ) ) == 0 ) {
+                writeField( field, isInterface, memberIndent );
+            }
+        }
+
+        for ( ClassFile.Member method : classFile.methods ) {
+            if ( isStubMethod( classFile, method, access ) ) {
+                writeMethod( method, simpleName, isInterface, isAnnotation, memberIndent );
+            }
+        }
+
+        for ( ClassFile.InnerClass innerClass : classFile.innerClasses ) {
+            ClassFile memberClass = classes.get( innerClass.name );
+            if ( classFile.name.equals( innerClass.outerName ) && innerClass.simpleName != null
+                    && memberClass != null && ( innerClass.access & ClassFile.ACC_SYNTHETIC ) == 0 ) {
+                builder.append("\n");
+                writeClass( memberClass, innerClass.access, innerClass.simpleName, memberIndent );
+            }
+        }
+
+        builder.append(indent).append("}\n");
+    }
+
+    private boolean isStubMethod( ClassFile classFile, ClassFile.Member method, int classAccess ) {
+        if ( ( method.access & ( ClassFile.ACC_SYNTHETIC | ClassFile.ACC_BRIDGE ) ) != 0
+                || STATIC_INITIALIZER_NAME.equals( method.name ) ) {
+            return false;
+        }
+
+        boolean isEnum = ( classAccess & ClassFile.ACC_ENUM ) != 0;
+        if ( CONSTRUCTOR_NAME.equals( method.name ) ) {
+            // constructors of enums and inner classes have implicit parameters
+            ClassFile.InnerClass innerClass = innerClasses.get( classFile.name );
+            return !isEnum && ( innerClass == null || ( classAccess & ClassFile.ACC_STATIC ) != 0 );
+        }
+
+        if ( isEnum && ( method.access & ClassFile.ACC_STATIC ) != 0 ) {
+            String enumDescriptor = "L" + classFile.name + ";";
+            if ( ( "values".equals( method.name ) && method.descriptor.equals( "()[" + enumDescriptor ) )
+                    || ( "valueOf".equals( method.name )
+                        && method.descriptor.equals( "(Ljava/lang/String;)" + enumDescriptor ) ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void writeField( ClassFile.Member field, boolean isInterface, String indent ) {
+        writeAnnotations( field.annotations, indent, "\n" );
+        builder.append(indent);
+        if ( !isInterface ) {
+            writeVisibility( field.access );
+            if ( ( field.access & ClassFile.ACC_STATIC ) != 0 ) {
+                builder.append("static ");
+            }
+            if ( ( field.access & ClassFile.ACC_FINAL ) != 0 ) {
+                builder.append("final ");
+            }
+            if ( ( field.access & ClassFile.ACC_TRANSIENT ) != 0 ) {
+                builder.append("transient ");
+            }
+            if ( ( field.access & ClassFile.ACC_VOLATILE ) != 0 ) {
+                builder.append("volatile ");
+            }
+        }
+
+        String type = new SignatureReader( field.signature != null ? field.signature : field.descriptor ).readType();
+        builder.append(type).append(' ').append( field.name ).append(";\n");
+    }
+
+    private void writeMethod( ClassFile.Member method, String className, boolean isInterface,
+                              boolean isAnnotation, String indent ) {
+        writeAnnotations( method.annotations, indent, "\n" );
+        builder.append(indent);
+
+        boolean isAbstract = ( method.access & ClassFile.ACC_ABSTRACT ) != 0;
+        boolean isStatic = ( method.access & ClassFile.ACC_STATIC ) != 0;
+        boolean hasBody = !isAbstract && ( method.access & ClassFile.ACC_NATIVE ) == 0;
+        if ( !isInterface ) {
+            writeVisibility( method.access );
+            if ( isAbstract ) {
+                builder.append("abstract ");
+            }
+        } else if ( ( method.access & ClassFile.ACC_PRIVATE ) != 0 ) {
+            builder.append("private ");
+        } else if ( hasBody && !isStatic ) {
+            builder.append("default ");
+        }
+        if ( isStatic ) {
+            builder.append("static ");
+        }
+        if ( ( method.access & ClassFile.ACC_FINAL ) != 0 ) {
+            builder.append("final ");
+        }
+        if ( ( method.access & ClassFile.ACC_SYNCHRONIZED ) != 0 ) {
+            builder.append("synchronized ");
+        }
+        if ( ( method.access & ClassFile.ACC_NATIVE ) != 0 ) {
+            builder.append("native ");
+        }
+
+        SignatureReader reader = new SignatureReader( method.signature != null ? method.signature : method.descriptor );
+        String typeParameters = reader.readTypeParameters();
+        if ( !typeParameters.isEmpty() ) {
+            builder.append( typeParameters ).append(' ');
+        }
+
+        List<String> parameterTypes = new ArrayList<String>();
+        reader.expect('(');
+        while ( !reader.hasNext(')') ) {
+            parameterTypes.add( reader.readType() );
+        }
+        reader.expect(')');
+
+        if ( CONSTRUCTOR_NAME.equals( method.name ) ) {
+            builder.append(className);
+        } else {
+            builder.append( reader.readType() ).append(' ').append( method.name );
+        }
+
+        builder.append("(");
+        int slot = isStatic ? 0 : 1;
+        for ( int i = 0; i < parameterTypes.size(); i++ ) {
+            String type = parameterTypes.get(i);
+            if ( i == parameterTypes.size() - 1 && ( method.access & ClassFile.ACC_VARARGS ) != 0
+                    && type.endsWith("[]") ) {
+                type = type.substring( 0, type.length() - 2 ) + "...";
+            }
+
+            String name = method.parameterNames.size() == parameterTypes.size()
+                    ? method.parameterNames.get(i) : method.localVariables.get(slot);
+            builder.append( i == 0 ? " " : ", " ).append(type).append(' ')
+                    .append( name == null ? "arg" + i : name );
+            slot += "long".equals(type) || "double".equals(type) ? 2 : 1;
+        }
+        builder.append( parameterTypes.isEmpty() ? ")" : " )" );
+
+        builder.append( hasBody && !isAnnotation ? " " + STUB_BODY + "\n" : ";\n" );
+    }
+
+    private void writeVisibility( int access ) {
+        if ( ( access & ClassFile.ACC_PUBLIC ) != 0 ) {
+            builder.append("public ");
+        } else if ( ( access & ClassFile.ACC_PROTECTED ) != 0 ) {
+            builder.append("protected ");
+        } else if ( ( access & ClassFile.ACC_PRIVATE ) != 0 ) {
+            builder.append("private ");
+        }
+    }
+
+    private void writeTypes( List<String> types, String keyword ) {
+        String separator = keyword;
+        for ( String type : types ) {
+            builder.append(separator).append(type);
+            separator = ", ";
+        }
+    }
+
+    private void writeAnnotations( List<ClassFile.Annotation> annotations, String indent, String separator ) {
+        for ( ClassFile.Annotation annotation : annotations ) {
+            builder.append(indent);
+            writeAnnotation( annotation );
+            builder.append(separator);
+        }
+    }
+
+    private void writeAnnotation( ClassFile.Annotation annotation ) {
+        builder.append('@').append( new SignatureReader( annotation.descriptor ).readType() );
+        if ( annotation.names.isEmpty() ) {
+            return;
+        }
+
+        builder.append("( ");
+        for ( int i = 0; i < annotation.names.size(); i++ ) {
+            if ( i > 0 ) {
+                builder.append(", ");
+            }
+            builder.append( annotation.names.get(i) ).append(" = ");
+            writeElementValue( annotation.values.get(i) );
+        }
+        builder.append(" )");
+    }
+
+    private void writeElementValue( ClassFile.ElementValue value ) {
+        switch ( value.tag ) {
+            case 's':
+                builder.append( quote( (String) value.value ) );
+                break;
+            case 'C':
+                builder.append( quote( (char) ( (Integer) value.value ).intValue() ) );
+                break;
+            case 'Z':
+                builder.append( ( (Integer) value.value ) != 0 );
+                break;
+            case 'J':
+                builder.append( value.value ).append('L');
+                break;
+            case 'F':
+                builder.append( toLiteral( ( (Float) value.value ).doubleValue(), "java.lang.Float", "f" ) );
+                break;
+            case 'D':
+                builder.append( toLiteral( (Double) value.value, "java.lang.Double", "d" ) );
+                break;
+            case 'e':
+                String enumName = value.enumDescriptor.substring( 1, value.enumDescriptor.length() - 1 );
+                int nestedStart = enumName.indexOf( '$', enumName.lastIndexOf('/') + 1 );
+                String topLevelName = ( nestedStart == -1 ? enumName : enumName.substring( 0, nestedStart ) )
+                        .replace('/', '.');
+                builder.append( importName( imports, topLevelName, toSourceName( enumName ), simpleName ) )
+                        .append('.').append( value.value );
+                break;
+            case 'c':
+                builder.append( new SignatureReader( (String) value.value ).readType() ).append(".class");
+                break;
+            case '@':
+                writeAnnotation( value.annotation );
+                break;
+            case '[':
+                builder.append("{");
+                for ( int i = 0; i < value.values.size(); i++ ) {
+                    builder.append( i == 0 ? " " : ", " );
+                    writeElementValue( value.values.get(i) );
+                }
+                builder.append( value.values.isEmpty() ? "}" : " }" );
+                break;
+            default:
+                builder.append( value.value );
+        }
+    }
+
+    /**
+     * @return Java string literal of the given value
+     */
+    public static String quote( String value ) {
+        return '"' + escape(value) + '"';
+    }
+
+    /**
+     * @return Java character literal of the given value
+     */
+    public static String quote( char value ) {
+        return '\'' + escape( String.valueOf(value) ) + '\'';
+    }
+
+    /**
+     * @return Java literal of the given floating point value, non-finite values are referenced
+     * by the constants of the given wrapper type
+     */
+    public static String toLiteral( double value, String type, String suffix ) {
+        if ( Double.isNaN(value) ) {
+            return type + ".NaN";
+        } else if ( Double.isInfinite(value) ) {
+            return type + ( value > 0 ? ".POSITIVE_INFINITY" : ".NEGATIVE_INFINITY" );
+        }
+
+        return ( "f".equals(suffix) ? String.valueOf( (float) value ) : String.valueOf(value) ) + suffix;
+    }
+
+    private static String escape( String value ) {
+        StringBuilder result = new StringBuilder();
+        for ( char c : value.toCharArray() ) {
+            switch ( c ) {
+                case '"': result.append("\\\""); break;
+                case '\'': result.append("\\'"); break;
+                case '\\': result.append("\\\\"); break;
+                case '\n': result.append("\\n"); break;
+                case '\r': result.append("\\r"); break;
+                case '\t': result.append("\\t"); break;
+                default:
+                    if ( c < 0x20 ) {
+                        result.append( String.format( "\\u%04x", (int) c ) );
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * @param internalName '/' separated binary name of a class
+     * @return canonical name of the class when it is a member class known from the inner classes
+     * tables, or the binary name otherwise
+     */
+    private String toSourceName( String internalName ) {
+        ClassFile.InnerClass innerClass = innerClasses.get( internalName );
+        if ( innerClass != null && innerClass.outerName != null && innerClass.simpleName != null ) {
+            return toSourceName( innerClass.outerName ) + "." + innerClass.simpleName;
+        }
+
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * Reads types from the field and method descriptors and generic signatures (JVMS 4.7.9.1)
+     */
+    private class SignatureReader {
+        private final String signature;
+        private int position;
+
+        SignatureReader( String signature ) {
+            this.signature = signature;
+        }
+
+        boolean hasMore() {
+            return position < signature.length();
+        }
+
+        boolean hasNext( char c ) {
+            return hasMore() && signature.charAt(position) == c;
+        }
+
+        void expect( char c ) {
+            if ( !hasNext(c) ) {
+                throw new IllegalArgumentException("Malformed signature '" + signature + "' at " + position );
+            }
+            position++;
+        }
+
+        /**
+         * @return type parameters declaration including angle brackets, or an empty string
+         */
+        String readTypeParameters() {
+            if ( !hasNext('<') ) {
+                return "";
+            }
+
+            position++;
+            StringBuilder result = new StringBuilder("<");
+            while ( !hasNext('>') ) {
+                if ( result.length() > 1 ) {
+                    result.append(", ");
+                }
+
+                int nameEnd = signature.indexOf( ':', position );
+                result.append( signature, position, nameEnd );
+                position = nameEnd;
+
+                List<String> bounds = new ArrayList<String>();
+                while ( hasNext(':') ) {
+                    position++;
+                    if ( !hasNext(':') ) {
+                        String bound = readType();
+                        if ( !bound.equals( toSourceName(OBJECT_CLASS) ) ) {
+                            bounds.add(bound);
+                        }
+                    }
+                }
+
+                String separator = " extends ";
+                for ( String bound : bounds ) {
+                    result.append(separator).append(bound);
+                    separator = " & ";
+                }
+            }
+            position++;
+
+            return result.append('>').toString();
+        }
+
+        String readType() {
+            char c = signature.charAt( position++ );
+            switch ( c ) {
+                case 'B': return "byte";
+                case 'C': return "char";
+                case 'D': return "double";
+                case 'F': return "float";
+                case 'I': return "int";
+                case 'J': return "long";
+                case 'S': return "short";
+                case 'Z': return "boolean";
+                case 'V': return "void";
+                case '[': return readType() + "[]";
+                case 'T': {
+                    int end = signature.indexOf( ';', position );
+                    String name = signature.substring( position, end );
+                    position = end + 1;
+                    return name;
+                }
+                case 'L': return readClassType();
+                default:
+                    throw new IllegalArgumentException("Malformed signature '" + signature + "' at " + position );
+            }
+        }
+
+        private String readClassType() {
+            StringBuilder result = new StringBuilder( toSourceName( readIdentifier() ) );
+            result.append( readTypeArguments() );
+            while ( hasNext('.') ) {
+                position++;
+                result.append('.').append( readIdentifier() ).append( readTypeArguments() );
+            }
+            expect(';');
+
+            return result.toString();
+        }
+
+        private String readIdentifier() {
+            int start = position;
+            while ( !hasNext('<') && !hasNext('.') && !hasNext(';') ) {
+                position++;
+            }
+
+            return signature.substring( start, position );
+        }
+
+        private String readTypeArguments() {
+            if ( !hasNext('<') ) {
+                return "";
+            }
+
+            position++;
+            StringBuilder result = new StringBuilder("<");
+            while ( !hasNext('>') ) {
+                if ( result.length() > 1 ) {
+                    result.append(", ");
+                }
+
+                if ( hasNext('*') ) {
+                    position++;
+                    result.append('?');
+                } else if ( hasNext('+') ) {
+                    position++;
+                    result.append("? extends ").append( readType() );
+                } else if ( hasNext('-') ) {
+                    position++;
+                    result.append("? super ").append( readType() );
+                } else {
+                    result.append( readType() );
+                }
+            }
+            position++;
+
+            return result.append('>').toString();
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+package com.a5000.platform.api.annotations.generators.jpa.cache;
+
+import com.a5000.platform.api.annotations.generators.jpa.utils.Digests;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Index of classes, sources and resources available on a classpath, which maps an entry name
+ * to the classpath elements containing it.
+ *
+ * Entries of an archive are read from its zip central directory without inflating anything
+ * and are stored in the index directory under a key of the archive path, size and modification
+ * time, so unchanged archives are not opened by the next runs. Directories are always re-scanned.
+ */
+public class ClasspathIndex {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String INDEX_FILE_EXTENSION = ".entries";
+    private static final String CLASS_FILE_EXTENSION = ".class";
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+
+    private final File directory;
+    private final Map<String, File> locations = new HashMap<String, File>();
+    private final Map<String, List<File>> shadowedLocations = new HashMap<String, List<File>>();
+
+    private int reusedCount;
+    private int indexedCount;
+
+    public ClasspathIndex( File directory ) {
+        this.directory = directory;
+    }
+
+    /**
+     * Indexes the given classpath elements, an entry is mapped to the first element containing it
+     */
+    public void build( Collection<File> elements ) throws IOException {
+        locations.clear();
+        shadowedLocations.clear();
+        reusedCount = 0;
+        indexedCount = 0;
+
+        Set<File> indexFiles = new HashSet<File>();
+        for ( File element : elements ) {
+            Collection<String> entries;
+            if ( element.isDirectory() ) {
+                entries = scanDirectory( element );
+            } else if ( element.isFile() ) {
+                File indexFile = getIndexFile( element );
+                indexFiles.add( indexFile );
+                entries = loadEntries( element, indexFile );
+            } else {
+                continue;
+            }
+
+            for ( String entry : entries ) {
+                if ( !locations.containsKey(entry) ) {
+                    locations.put( entry, element );
+                } else {
+                    List<File> shadowed = shadowedLocations.get( entry );
+                    if ( shadowed == null ) {
+                        shadowedLocations.put( entry, shadowed = new ArrayList<File>() );
+                    }
+
+                    shadowed.add( element );
+                }
+            }
+        }
+
+        removeStaleIndexFiles( indexFiles );
+    }
+
+    /**
+     * @return classpath element containing the given entry (like "java/lang/Object.class"), or null
+     */
+    public File getLocation( String entryName ) {
+        return locations.get( entryName );
+    }
+
+    /**
+     * @return all the classpath elements containing the given entry, in the classpath order
+     */
+    public List<File> getLocations( String entryName ) {
+        File location = locations.get( entryName );
+        if ( location == null ) {
+            return Collections.emptyList();
+        }
+
+        List<File> result = new ArrayList<File>();
+        result.add( location );
+        List<File> shadowed = shadowedLocations.get( entryName );
+        if ( shadowed != null ) {
+            result.addAll( shadowed );
+        }
+
+        return result;
+    }
+
+    public boolean containsClass( String className ) {
+        return locations.containsKey( className.replace('.', '/') + CLASS_FILE_EXTENSION );
+    }
+
+    /**
+     * @return number of archives which entries have been restored from the index
+     */
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * @return number of archives which have been read during the last build
+     */
+    public int getIndexedCount() {
+        return indexedCount;
+    }
+
+    private File getIndexFile( File archive ) {
+        return new File( directory, Digests.hash( FORMAT_VERSION + ":" + archive.getAbsolutePath()
+                + ":" + archive.length() + ":" + archive.lastModified() ) + INDEX_FILE_EXTENSION );
+    }
+
+    private Collection<String> loadEntries( File archive, File indexFile ) throws IOException {
+        if ( indexFile.exists() ) {
+            List<String> entries = new ArrayList<String>();
+            BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream(indexFile), UTF_8 ) );
+            try {
+                String line;
+                while ( ( line = reader.readLine() ) != null ) {
+                    if ( !line.isEmpty() ) {
+                        entries.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+
+            reusedCount++;
+            return entries;
+        }
+
+        List<String> entries = readArchiveEntries( archive );
+        indexedCount++;
+
+        directory.mkdirs();
+        File tempFile = File.createTempFile( indexFile.getName(), ".tmp", directory );
+        try {
+            Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream(tempFile), UTF_8 ) );
+            try {
+                for ( String entry : entries ) {
+                    writer.write( entry );
+                    writer.write( '\n' );
+                }
+            } finally {
+                writer.close();
+            }
+
+            Files.move( tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        } finally {
+            tempFile.delete();
+        }
+
+        return entries;
+    }
+
+    private void removeStaleIndexFiles( Set<File> indexFiles ) {
+        File[] files = directory.listFiles();
+        if ( files == null ) {
+            return;
+        }
+
+        for ( File file : files ) {
+            if ( file.getName().endsWith(INDEX_FILE_EXTENSION) && !indexFiles.contains(file) ) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads entries names from the archive central directory, falls back to {@link ZipFile} for
+     * archives which central directory could not be located (like ZIP64 ones)
+     */
+    static List<String> readArchiveEntries( File archive ) throws IOException {
+        FileChannel channel = FileChannel.open( archive.toPath(), StandardOpenOption.READ );
+        try {
+            long size = channel.size();
+            if ( size >= END_OF_CENTRAL_DIRECTORY_SIZE ) {
+                long tailSize = Math.min( size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE );
+                MappedByteBuffer tail = channel.map( FileChannel.MapMode.READ_ONLY, size - tailSize, tailSize );
+                tail.order( ByteOrder.LITTLE_ENDIAN );
+
+                for ( int i = (int) tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i-- ) {
+                    if ( tail.getInt(i) != END_OF_CENTRAL_DIRECTORY_SIGNATURE ) {
+                        continue;
+                    }
+
+                    int entriesCount = tail.getShort( i + 10 ) & 0xFFFF;
+                    long directorySize = tail.getInt( i + 12 ) & 0xFFFFFFFFL;
+                    long directoryOffset = tail.getInt( i + 16 ) & 0xFFFFFFFFL;
+                    if ( entriesCount == 0xFFFF || directoryOffset == 0xFFFFFFFFL
+                            || directoryOffset + directorySize > size ) {
+                        break;
+                    }
+
+                    List<String> result = readCentralDirectory(
+                            channel.map( FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize ),
+                            entriesCount );
+                    if ( result != null ) {
+                        return result;
+                    }
+
+                    break;
+                }
+            }
+        } finally {
+            channel.close();
+        }
+
+        return readZipEntries( archive );
+    }
+
+    private static List<String> readCentralDirectory( MappedByteBuffer buffer, int entriesCount ) {
+        buffer.order( ByteOrder.LITTLE_ENDIAN );
+
+        List<String> result = new ArrayList<String>();
+        int position = 0;
+        for ( int i = 0; i < entriesCount; i++ ) {
+            if ( position + CENTRAL_DIRECTORY_ENTRY_SIZE > buffer.limit()
+                    || buffer.getInt(position) != CENTRAL_DIRECTORY_ENTRY_SIGNATURE ) {
+                return null;
+            }
+
+            int nameLength = buffer.getShort( position + 28 ) & 0xFFFF;
+            int extraLength = buffer.getShort( position + 30 ) & 0xFFFF;
+            int commentLength = buffer.getShort( position + 32 ) & 0xFFFF;
+            if ( position + CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength > buffer.limit() ) {
+                return null;
+            }
+
+            byte[] name = new byte[nameLength];
+            for ( int j = 0; j < nameLength; j++ ) {
+                name[j] = buffer.get( position + CENTRAL_DIRECTORY_ENTRY_SIZE + j );
+            }
+
+            addEntry( result, new String( name, UTF_8 ) );
+            position += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return result;
+    }
+
+    private static List<String> readZipEntries( File archive ) throws IOException {
+        List<String> result = new ArrayList<String>();
+        ZipFile zipFile = new ZipFile( archive );
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while ( entries.hasMoreElements() ) {
+                addEntry( result, entries.nextElement().getName() );
+            }
+        } finally {
+            zipFile.close();
+        }
+
+        return result;
+    }
+
+    private static Collection<String> scanDirectory( File directory ) throws IOException {
+        final List<String> result = new ArrayList<String>();
+        final Path root = directory.toPath();
+        Files.walkFileTree( root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) {
+                addEntry( result, root.relativize(file).toString().replace( File.separatorChar, '/' ) );
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Directory entries of archives are skipped, files of any kind are indexed
+     */
+    private static void addEntry( List<String> entries, String name ) {
+        if ( !name.isEmpty() && !name.endsWith("/") ) {
+            entries.add( name );
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.a5000.platform.api.annotations.generators.jpa.cache;
+
+import com.a5000.platform.api.annotations.generators.jpa.utils.StringUtils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Persistent state of the previous generator run: configuration hash, hashes of the scanned sources, per-entity fingerprints and the classes generated for every entity.
+ *
+ * The previous state is kept read-only, the next one is collected during the current run
+ * and replaces the store file contents on {@link #save()}.
+ */
+public class FingerprintStore {
+
+    private static final String CONFIGURATION_KEY = "configuration";
+    private static final String SOURCE_KEY_PREFIX = "source.";
+    private static final String ENTITY_KEY_PREFIX = "entity.";
+    private static final String OUTPUTS_KEY_PREFIX = "outputs.";
+    private static final String GLOBAL_OUTPUTS_KEY = "outputs";
+    private static final String OUTPUTS_SEPARATOR = ",";
+
+    private final File storeFile;
+    private final Properties previous = new Properties();
+    private final Properties next = new Properties();
+
+    public FingerprintStore( File storeFile ) {
+        this.storeFile = storeFile;
+    }
+
+    public File getStoreFile() {
+        return storeFile;
+    }
+
+    public void load() throws IOException {
+        previous.clear();
+        if ( !storeFile.exists() ) {
+            return;
+        }
+
+        InputStream stream = new BufferedInputStream( new FileInputStream(storeFile) );
+        try {
+            previous.load(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    public void save() throws IOException {
+        File parent = storeFile.getParentFile();
+        if ( parent != null ) {
+            parent.mkdirs();
+        }
+
+        OutputStream stream = new BufferedOutputStream( new FileOutputStream(storeFile) );
+        try {
+            next.store(stream, null);
+        } finally {
+            stream.close();
+        }
+    }
+
+    public void discard() {
+        storeFile.delete();
+    }
+
+    public void setConfiguration( String hash ) {
+        next.setProperty( CONFIGURATION_KEY, hash );
+    }
+
+    public boolean isConfigurationChanged() {
+        return !isEqual( previous.getProperty(CONFIGURATION_KEY), next.getProperty(CONFIGURATION_KEY) );
+    }
+
+    public void setSource( String path, String hash ) {
+        next.setProperty( SOURCE_KEY_PREFIX + path, hash );
+    }
+
+    /**
+     * @return true when the set of scanned sources or the contents of any of them differs
+     * from the previous run
+     */
+    public boolean isSourcesChanged() {
+        Set<String> previousSources = keysWithPrefix( previous, SOURCE_KEY_PREFIX );
+        Set<String> nextSources = keysWithPrefix( next, SOURCE_KEY_PREFIX );
+        if ( !previousSources.equals(nextSources) ) {
+            return true;
+        }
+
+        for ( String key : nextSources ) {
+            if ( !next.getProperty(key).equals( previous.getProperty(key) ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public String getPreviousEntityFingerprint( String className ) {
+        return previous.getProperty( ENTITY_KEY_PREFIX + className );
+    }
+
+    public Collection<String> getPreviousEntityOutputs( String className ) {
+        return splitOutputs( previous.getProperty( OUTPUTS_KEY_PREFIX + className ) );
+    }
+
+    public Collection<String> getPreviousOutputs() {
+        return collectOutputs( previous );
+    }
+
+    /**
+     * @return classes generated (or kept) by the current run
+     */
+    public Collection<String> getOutputs() {
+        return collectOutputs( next );
+    }
+
+    public Collection<String> getPreviousEntities() {
+        Set<String> result = new LinkedHashSet<String>();
+        for ( String key : keysWithPrefix( previous, ENTITY_KEY_PREFIX ) ) {
+            result.add( key.substring( ENTITY_KEY_PREFIX.length() ) );
+        }
+
+        return result;
+    }
+
+    public void setEntity( String className, String fingerprint, Collection<String> outputs ) {
+        next.setProperty( ENTITY_KEY_PREFIX + className, fingerprint );
+        next.setProperty( OUTPUTS_KEY_PREFIX + className, StringUtils.join( outputs, OUTPUTS_SEPARATOR ) );
+    }
+
+    /**
+     * Carries the state of an entity which has not been regenerated during the current run
+     */
+    public void keepEntity( String className ) {
+        String fingerprint = getPreviousEntityFingerprint(className);
+        if ( fingerprint == null ) {
+            return;
+        }
+
+        setEntity( className, fingerprint, getPreviousEntityOutputs(className) );
+    }
+
+    public void setOutputs( Collection<String> outputs ) {
+        next.setProperty( GLOBAL_OUTPUTS_KEY, StringUtils.join( outputs, OUTPUTS_SEPARATOR ) );
+    }
+
+    private static Collection<String> collectOutputs( Properties properties ) {
+        Set<String> result = new LinkedHashSet<String>();
+        result.addAll( splitOutputs( properties.getProperty(GLOBAL_OUTPUTS_KEY) ) );
+        for ( String key : keysWithPrefix( properties, OUTPUTS_KEY_PREFIX ) ) {
+            result.addAll( splitOutputs( properties.getProperty(key) ) );
+        }
+
+        return result;
+    }
+
+    private static Collection<String> splitOutputs( String value ) {
+        if ( value == null || value.isEmpty() ) {
+            return Collections.emptyList();
+        }
+
+        return Arrays.asList( value.split(OUTPUTS_SEPARATOR) );
+    }
+
+    private static Set<String> keysWithPrefix( Properties properties, String prefix ) {
+        Set<String> result = new TreeSet<String>();
+        for ( String key : properties.stringPropertyNames() ) {
+            if ( key.startsWith(prefix) ) {
+                result.add(key);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isEqual( String first, String second ) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+}
@@ -0,0 +1,312 @@
+package com.a5000.platform.api.annotations.generators.jpa.cache;
+
+import com.thoughtworks.qdox.JavaProjectBuilder;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Sources models shared by all the plugin executions of a build. Plugin class realm is shared
+ * between the modules of a reactor, so the caches are kept statically and bound to the execution
+ * request (released along with it).
+ *
+ * A model is built once per key: concurrent executions requesting the same key wait for the
+ * one which builds it. Each model is held by the modules which have requested it and is evicted,
+ * with its resources (like the class loaders it resolves types through) closed, as soon as the last
+ * of them is finished; modules are followed by the execution listener of the request.
+ */
+public class SessionModelCache {
+
+    private static final Map<MavenExecutionRequest, SessionModelCache> CACHES =
+            new WeakHashMap<MavenExecutionRequest, SessionModelCache>();
+
+    private final ConcurrentMap<String, CachedModel> models = new ConcurrentHashMap<String, CachedModel>();
+
+    public static SessionModelCache get( MavenExecutionRequest request ) {
+        synchronized ( CACHES ) {
+            SessionModelCache result = CACHES.get( request );
+            if ( result == null ) {
+                CACHES.put( request, result = new SessionModelCache() );
+                request.setExecutionListener( new ReleasingListener( result, request.getExecutionListener() ) );
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * @param owner module using the model, it is held until the module is finished
+     * @param factory builds the model on the calling thread when it is not cached yet; failed
+     *                builds are not cached
+     */
+    public JavaProjectBuilder getModel( String key, Object owner, Callable<JavaProjectBuilder> factory )
+            throws InterruptedException, ExecutionException {
+        CachedModel model;
+        boolean created = false;
+        synchronized ( models ) {
+            model = models.get( key );
+            if ( model == null ) {
+                models.put( key, model = new CachedModel( factory ) );
+                created = true;
+            }
+
+            model.owners.add( owner );
+        }
+
+        if ( created ) {
+            model.task.run();
+        }
+
+        try {
+            return model.task.get();
+        } catch ( ExecutionException e ) {
+            evict( key, model );
+            throw e;
+        }
+    }
+
+    /**
+     * Registers resource to be closed when the model is evicted, the model has to be requested
+     * by {@link #getModel(String, Object, Callable)} first
+     */
+    public void addResource( String key, Closeable resource ) {
+        CachedModel model = models.get( key );
+        if ( model == null ) {
+            throw new IllegalStateException("No model is cached by the key " + key );
+        }
+
+        model.resources.add( resource );
+    }
+
+    /**
+     * Drops the model and closes its resources, so the next request builds it again
+     */
+    public void invalidate( String key ) {
+        CachedModel model = models.get( key );
+        if ( model != null ) {
+            evict( key, model );
+        }
+    }
+
+    /**
+     * Evicts models which are held only by the given module
+     *
+     * @param owner finished module
+     */
+    public void release( Object owner ) {
+        List<Map.Entry<String, CachedModel>> released = new ArrayList<Map.Entry<String, CachedModel>>();
+        synchronized ( models ) {
+            for ( Map.Entry<String, CachedModel> entry : models.entrySet() ) {
+                if ( entry.getValue().owners.remove( owner ) && entry.getValue().owners.isEmpty() ) {
+                    released.add( entry );
+                }
+            }
+        }
+
+        for ( Map.Entry<String, CachedModel> entry : released ) {
+            evict( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * Evicts all the models
+     */
+    public void clear() {
+        for ( Map.Entry<String, CachedModel> entry : new ArrayList<Map.Entry<String, CachedModel>>( models.entrySet() ) ) {
+            evict( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * @return number of the models currently cached
+     */
+    public int size() {
+        return models.size();
+    }
+
+    /**
+     * Failures of closing the resources are ignored, as the model could be evicted when there is
+     * no execution to report them
+     */
+    private void evict( String key, CachedModel model ) {
+        if ( !models.remove( key, model ) ) {
+            return;
+        }
+
+        for ( Closeable resource : model.resources ) {
+            try {
+                resource.close();
+            } catch ( IOException e ) {
+                // the resource is not used anymore
+            }
+        }
+    }
+
+    private static class CachedModel {
+        private final FutureTask<JavaProjectBuilder> task;
+        private final Set<Object> owners = Collections.newSetFromMap( new IdentityHashMap<Object, Boolean>() );
+        private final List<Closeable> resources = new CopyOnWriteArrayList<Closeable>();
+
+        public CachedModel( Callable<JavaProjectBuilder> factory ) {
+            this.task = new FutureTask<JavaProjectBuilder>( factory );
+        }
+    }
+
+    /**
+     * Releases the models of the finished modules and delegates all the events to the listener
+     * it has replaced
+     */
+    private static class ReleasingListener implements ExecutionListener {
+        private final SessionModelCache cache;
+        private final ExecutionListener delegate;
+
+        public ReleasingListener( SessionModelCache cache, ExecutionListener delegate ) {
+            this.cache = cache;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void projectDiscoveryStarted( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.projectDiscoveryStarted( event );
+            }
+        }
+
+        @Override
+        public void sessionStarted( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.sessionStarted( event );
+            }
+        }
+
+        @Override
+        public void sessionEnded( ExecutionEvent event ) {
+            cache.clear();
+            if ( delegate != null ) {
+                delegate.sessionEnded( event );
+            }
+        }
+
+        @Override
+        public void projectSkipped( ExecutionEvent event ) {
+            cache.release( event.getProject() );
+            if ( delegate != null ) {
+                delegate.projectSkipped( event );
+            }
+        }
+
+        @Override
+        public void projectStarted( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.projectStarted( event );
+            }
+        }
+
+        @Override
+        public void projectSucceeded( ExecutionEvent event ) {
+            cache.release( event.getProject() );
+            if ( delegate != null ) {
+                delegate.projectSucceeded( event );
+            }
+        }
+
+        @Override
+        public void projectFailed( ExecutionEvent event ) {
+            cache.release( event.getProject() );
+            if ( delegate != null ) {
+                delegate.projectFailed( event );
+            }
+        }
+
+        @Override
+        public void mojoSkipped( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.mojoSkipped( event );
+            }
+        }
+
+        @Override
+        public void mojoStarted( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.mojoStarted( event );
+            }
+        }
+
+        @Override
+        public void mojoSucceeded( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.mojoSucceeded( event );
+            }
+        }
+
+        @Override
+        public void mojoFailed( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.mojoFailed( event );
+            }
+        }
+
+        @Override
+        public void forkStarted( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.forkStarted( event );
+            }
+        }
+
+        @Override
+        public void forkSucceeded( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.forkSucceeded( event );
+            }
+        }
+
+        @Override
+        public void forkFailed( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.forkFailed( event );
+            }
+        }
+
+        @Override
+        public void forkedProjectStarted( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.forkedProjectStarted( event );
+            }
+        }
+
+        @Override
+        public void forkedProjectSucceeded( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.forkedProjectSucceeded( event );
+            }
+        }
+
+        @Override
+        public void forkedProjectFailed( ExecutionEvent event ) {
+            if ( delegate != null ) {
+                delegate.forkedProjectFailed( event );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.a5000.platform.api.annotations.generators.jpa.cache;
+
+import com.a5000.platform.api.annotations.generators.jpa.discovery.SourceScanner;
+import com.a5000.platform.api.annotations.generators.jpa.utils.Digests;
+import com.thoughtworks.qdox.JavaProjectBuilder;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Cached contents of the sources parsed from the given source trees, so the model is rebuilt by
+ * reading a single file instead of every source of the trees.
+ *
+ * The snapshot saves reading the sources, not parsing them: QDox could neither add already parsed
+ * sources to a new model nor replace resolved classes of a model, and its serialized models are not
+ * kept as they depend on QDox internals. So the model is always parsed from the current set of
+ * sources: cached contents are used for the sources which size and modification time are unchanged,
+ * other sources are read from the disk (and compared to the cached contents), removed ones are not
+ * parsed at all. Parsed sources keep theirs file URLs. The cache is dropped when any dependency
+ * archive the snapshot has been taken with changes its path, size or modification time, and is
+ * replaced by every save, so no superseded files are kept.
+ */
+public class SourceModelSnapshot {
+
+    private static final String SNAPSHOT_FILE_EXTENSION = ".snapshot";
+    private static final String[] LEGACY_FILE_EXTENSIONS = new String[] { ".model", ".sources" };
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Sources which {@link JavaProjectBuilder#addSource(File)} handles apart from the types ones
+     */
+    private static final Set<String> DESCRIPTOR_SOURCES = new HashSet<String>(
+            Arrays.asList( "package-info.java", "module-info.java" ) );
+
+    private final File directory;
+    private final File snapshotFile;
+    private final Collection<File> sourceTrees;
+    private final SourceScanner scanner;
+    private final String dependenciesKey;
+
+    private final Map<String, CachedSource> sources = new LinkedHashMap<String, CachedSource>();
+    private final List<File> changedSources = new ArrayList<File>();
+    private boolean modified;
+
+    /**
+     * @param dependenciesKey key of the dependency archives the sources are resolved against
+     */
+    public SourceModelSnapshot( File directory, Collection<File> sourceTrees, SourceScanner scanner,
+                                String dependenciesKey ) {
+        MessageDigest digest = Digests.create();
+        for ( File sourceTree : sourceTrees ) {
+            Digests.update( digest, sourceTree.getAbsolutePath() );
+        }
+        Digests.update( digest, scanner.getDescriptor() );
+
+        this.directory = directory;
+        this.snapshotFile = new File( directory, Digests.toHex( digest.digest() ) + SNAPSHOT_FILE_EXTENSION );
+        this.sourceTrees = sourceTrees;
+        this.scanner = scanner;
+        this.dependenciesKey = dependenciesKey;
+    }
+
+    /**
+     * Parses the sources currently found under the snapshot source trees, reading the unchanged
+     * ones from the snapshot
+     */
+    public JavaProjectBuilder build( ClassLoader classLoader ) throws IOException {
+        Map<String, CachedSource> cachedSources = load();
+
+        sources.clear();
+        changedSources.clear();
+        modified = cachedSources.isEmpty();
+
+        // sources are decoded the same way as the files added to a builder
+        JavaProjectBuilder builder = new JavaProjectBuilder().setEncoding( Charset.defaultCharset().name() );
+        for ( SourceScanner.Source scannedSource : scanner.scan( sourceTrees ) ) {
+            File file = scannedSource.getFile();
+            String path = file.getAbsolutePath();
+            CachedSource source = cachedSources.remove( path );
+            if ( source == null || source.length != file.length() || source.lastModified != file.lastModified() ) {
+                byte[] content = Files.readAllBytes( file.toPath() );
+                if ( source == null || !Arrays.equals( source.content, content ) ) {
+                    changedSources.add( file );
+                }
+
+                source = new CachedSource( file.length(), file.lastModified(), content );
+                modified = true;
+            }
+
+            sources.put( path, source );
+            if ( DESCRIPTOR_SOURCES.contains( file.getName() ) ) {
+                builder.addSource( file );
+            } else {
+                builder.addSource( createURL( file, source.content ) );
+            }
+        }
+
+        if ( !cachedSources.isEmpty() ) {
+            modified = true;
+        }
+
+        builder.addClassLoader( classLoader );
+        return builder;
+    }
+
+    /**
+     * @return sources which have been added or modified since the snapshot was taken
+     */
+    public List<File> getChangedSources() {
+        return changedSources;
+    }
+
+    /**
+     * @return true when the sources parsed by {@link #build(ClassLoader)} differ from the saved ones
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Saves contents of the sources parsed by {@link #build(ClassLoader)}, replacing the previous
+     * snapshot and removing files of the snapshot formats which are not used anymore
+     */
+    public void save() throws IOException {
+        directory.mkdirs();
+
+        File tempFile = File.createTempFile( snapshotFile.getName(), ".tmp", directory );
+        try {
+            DataOutputStream stream = new DataOutputStream(
+                    new BufferedOutputStream( new FileOutputStream(tempFile) ) );
+            try {
+                stream.writeInt( FORMAT_VERSION );
+                stream.writeUTF( dependenciesKey );
+                stream.writeInt( sources.size() );
+                for ( Map.Entry<String, CachedSource> source : sources.entrySet() ) {
+                    stream.writeUTF( source.getKey() );
+                    stream.writeLong( source.getValue().length );
+                    stream.writeLong( source.getValue().lastModified );
+                    stream.writeInt( source.getValue().content.length );
+                    stream.write( source.getValue().content );
+                }
+            } finally {
+                stream.close();
+            }
+
+            replace( tempFile, snapshotFile );
+        } finally {
+            tempFile.delete();
+        }
+
+        removeLegacyFiles();
+        modified = false;
+    }
+
+    /**
+     * @return sources of the snapshot by theirs paths, empty when there is no snapshot taken
+     * with the same dependencies
+     */
+    private Map<String, CachedSource> load() throws IOException {
+        Map<String, CachedSource> result = new HashMap<String, CachedSource>();
+        if ( !snapshotFile.exists() ) {
+            return result;
+        }
+
+        DataInputStream stream = new DataInputStream( new BufferedInputStream( new FileInputStream(snapshotFile) ) );
+        try {
+            if ( stream.readInt() != FORMAT_VERSION || !dependenciesKey.equals( stream.readUTF() ) ) {
+                return result;
+            }
+
+            int count = stream.readInt();
+            for ( int i = 0; i < count; i++ ) {
+                String path = stream.readUTF();
+                long length = stream.readLong();
+                long lastModified = stream.readLong();
+                byte[] content = new byte[ stream.readInt() ];
+                stream.readFully( content );
+                result.put( path, new CachedSource( length, lastModified, content ) );
+            }
+        } catch ( EOFException e ) {
+            result.clear();
+        } finally {
+            stream.close();
+        }
+
+        return result;
+    }
+
+    private void removeLegacyFiles() {
+        File[] files = directory.listFiles();
+        if ( files == null ) {
+            return;
+        }
+
+        for ( File file : files ) {
+            for ( String extension : LEGACY_FILE_EXTENSIONS ) {
+                if ( file.getName().endsWith( extension ) ) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return file URL of the source, which contents are read from the given buffer
+     */
+    private static URL createURL( File file, final byte[] content ) throws IOException {
+        return new URL( null, file.toURI().toString(), new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection( URL url ) {
+                return new URLConnection( url ) {
+                    @Override
+                    public void connect() {}
+
+                    @Override
+                    public InputStream getInputStream() {
+                        return new ByteArrayInputStream( content );
+                    }
+                };
+            }
+        });
+    }
+
+    private static void replace( File source, File target ) throws IOException {
+        try {
+            Files.move( source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } catch ( AtomicMoveNotSupportedException e ) {
+            Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    private static class CachedSource {
+        private final long length;
+        private final long lastModified;
+        private final byte[] content;
+
+        public CachedSource( long length, long lastModified, byte[] content ) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.a5000.platform.api.annotations.generators.jpa.discovery;
+
+import com.a5000.platform.api.annotations.generators.jpa.bytecode.ClassFile;
+import com.a5000.platform.api.annotations.generators.jpa.bytecode.ClassFileReader;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Finds and reads class files under the given roots, which could be either directories
+ * or jar archives; class files are read and parsed concurrently.
+ */
+public class ClassFileScanner {
+
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String SOURCE_EXTENSION = ".java";
+    private static final String PACKAGE_INFO = "package-info" + CLASS_EXTENSION;
+    private static final String MODULE_INFO = "module-info" + CLASS_EXTENSION;
+
+    private final int threads;
+
+    public ClassFileScanner( int threads ) {
+        this.threads = Math.max( 1, threads );
+    }
+
+    /**
+     * @return classes found under the given roots ordered by root and then by relative path
+     */
+    public List<CompiledClass> scan( Collection<File> roots ) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        List<ZipFile> archives = new ArrayList<ZipFile>();
+        try {
+            List<Future<CompiledClass>> reads = new ArrayList<Future<CompiledClass>>();
+            for ( final File root : roots ) {
+                if ( root.isDirectory() ) {
+                    for ( final String path : walk( root ) ) {
+                        reads.add( executor.submit( new Callable<CompiledClass>() {
+                            @Override
+                            public CompiledClass call() throws IOException {
+                                File file = new File( root, path );
+                                return read( root, path, file, Files.readAllBytes( file.toPath() ) );
+                            }
+                        }) );
+                    }
+                } else if ( root.isFile() ) {
+                    final ZipFile archive = new ZipFile( root );
+                    archives.add( archive );
+                    for ( final ZipEntry entry : listEntries( archive ) ) {
+                        reads.add( executor.submit( new Callable<CompiledClass>() {
+                            @Override
+                            public CompiledClass call() throws IOException {
+                                return read( root, entry.getName(), root, readEntry( archive, entry ) );
+                            }
+                        }) );
+                    }
+                }
+            }
+
+            List<CompiledClass> result = new ArrayList<CompiledClass>( reads.size() );
+            for ( Future<CompiledClass> read : reads ) {
+                result.add( read.get() );
+            }
+
+            return result;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Class files scanning has been interrupted", e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof IOException ) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException( e.getCause().getMessage(), e.getCause() );
+        } finally {
+            executor.shutdownNow();
+            for ( ZipFile archive : archives ) {
+                archive.close();
+            }
+        }
+    }
+
+    private static CompiledClass read( File root, String path, File file, byte[] bytes ) throws IOException {
+        try {
+            return new CompiledClass( root, path, file, ClassFileReader.read(bytes) );
+        } catch ( RuntimeException e ) {
+            throw new IOException( "Unable to read class file " + path + " from " + root, e );
+        }
+    }
+
+    private static List<String> walk( File root ) throws IOException {
+        final List<String> result = new ArrayList<String>();
+        final Path rootPath = root.toPath();
+        Files.walkFileTree( rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) {
+                String path = rootPath.relativize( file ).toString().replace( File.separatorChar, '/' );
+                if ( attrs.isRegularFile() && isClassFile(path) ) {
+                    result.add( path );
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort( result );
+        return result;
+    }
+
+    private static List<ZipEntry> listEntries( ZipFile archive ) {
+        List<ZipEntry> result = new ArrayList<ZipEntry>();
+        Enumeration<? extends ZipEntry> entries = archive.entries();
+        while ( entries.hasMoreElements() ) {
+            ZipEntry entry = entries.nextElement();
+            if ( !entry.isDirectory() && isClassFile( entry.getName() ) && !entry.getName().startsWith("META-INF/") ) {
+                result.add( entry );
+            }
+        }
+
+        Collections.sort( result, new Comparator<ZipEntry>() {
+            @Override
+            public int compare( ZipEntry first, ZipEntry second ) {
+                return first.getName().compareTo( second.getName() );
+            }
+        });
+
+        return result;
+    }
+
+    private static byte[] readEntry( ZipFile archive, ZipEntry entry ) throws IOException {
+        InputStream input = archive.getInputStream( entry );
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream( (int) Math.max( 0, entry.getSize() ) );
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( ( read = input.read(buffer) ) != -1 ) {
+                result.write( buffer, 0, read );
+            }
+
+            return result.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static boolean isClassFile( String path ) {
+        return path.endsWith(CLASS_EXTENSION) && !path.endsWith(PACKAGE_INFO) && !path.endsWith(MODULE_INFO);
+    }
+
+    public static class CompiledClass {
+        private final File root;
+        private final String path;
+        private final File file;
+        private final ClassFile classFile;
+
+        public CompiledClass( File root, String path, File file, ClassFile classFile ) {
+            this.root = root;
+            this.path = path;
+            this.file = file;
+            this.classFile = classFile;
+        }
+
+        public File getRoot() {
+            return root;
+        }
+
+        /**
+         * @return '/' separated path of the class file relative to the root
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return path of the corresponding source file relative to a source root
+         */
+        public String getSourcePath() {
+            return path.substring( 0, path.length() - CLASS_EXTENSION.length() ) + SOURCE_EXTENSION;
+        }
+
+        /**
+         * @return the class file or the archive containing it
+         */
+        public File getFile() {
+            return file;
+        }
+
+        public ClassFile getClassFile() {
+            return classFile;
+        }
+
+        public String getClassName() {
+            return classFile.getName().replace('/', '.');
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package com.a5000.platform.api.annotations.generators.jpa.discovery;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Finds sources matching include/exclude glob patterns under the given roots; roots are
+ * walked and candidates are checked concurrently.
+ *
+ * When tokens are specified, only the sources containing any of them (as a whole word)
+ * are accepted, the check is done over the file contents without parsing it. Whitespace
+ * (including line breaks) is allowed after a leading '@' or '.' of a token, like Java does
+ * between an annotation sign or a qualified name dot and the following identifier.
+ */
+public class SourceScanner {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ANY_DIRECTORY_PREFIX = "**/";
+
+    private final List<PathMatcher> includes = new ArrayList<PathMatcher>();
+    private final List<PathMatcher> excludes = new ArrayList<PathMatcher>();
+    private final List<byte[]> tokens = new ArrayList<byte[]>();
+    private final String descriptor;
+    private final int threads;
+
+    public SourceScanner( Collection<String> includes, Collection<String> excludes,
+                          Collection<String> tokens, int threads ) {
+        for ( String include : includes ) {
+            addMatchers( this.includes, include );
+        }
+
+        for ( String exclude : excludes ) {
+            addMatchers( this.excludes, exclude );
+        }
+
+        if ( tokens != null ) {
+            for ( String token : tokens ) {
+                this.tokens.add( token.getBytes(UTF_8) );
+            }
+        }
+
+        this.descriptor = includes + ";" + excludes + ";" + ( tokens == null ? "" : tokens );
+        this.threads = Math.max( 1, threads );
+    }
+
+    /**
+     * @return patterns and tokens used by the scanner, sources found by scanners with
+     * an equal descriptor are the same
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @param path '/' separated path relative to a root
+     * @return true when the path matches include patterns and does not match exclude ones
+     */
+    public boolean accepts( String path ) {
+        Path relativePath = Paths.get( path );
+        return matches( includes, relativePath ) && !matches( excludes, relativePath );
+    }
+
+    /**
+     * @return sources found under the given roots ordered by root and then by relative path
+     */
+    public List<Source> scan( Collection<File> roots ) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            List<Future<List<Source>>> walks = new ArrayList<Future<List<Source>>>();
+            for ( final File root : roots ) {
+                walks.add( executor.submit( new Callable<List<Source>>() {
+                    @Override
+                    public List<Source> call() throws IOException {
+                        return walk( root );
+                    }
+                }) );
+            }
+
+            List<Source> candidates = new ArrayList<Source>();
+            for ( Future<List<Source>> walk : walks ) {
+                candidates.addAll( walk.get() );
+            }
+
+            if ( tokens.isEmpty() ) {
+                return candidates;
+            }
+
+            List<Future<Boolean>> checks = new ArrayList<Future<Boolean>>();
+            for ( final Source candidate : candidates ) {
+                checks.add( executor.submit( new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        return containsToken( candidate.getFile().toPath() );
+                    }
+                }) );
+            }
+
+            List<Source> result = new ArrayList<Source>();
+            for ( int i = 0; i < candidates.size(); i++ ) {
+                if ( checks.get(i).get() ) {
+                    result.add( candidates.get(i) );
+                }
+            }
+
+            return result;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sources scanning has been interrupted", e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof IOException ) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException( e.getCause().getMessage(), e.getCause() );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Source> walk( final File root ) throws IOException {
+        final List<Source> result = new ArrayList<Source>();
+        if ( !root.isDirectory() ) {
+            return result;
+        }
+
+        final Path rootPath = root.toPath();
+        Files.walkFileTree( rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) {
+                Path relativePath = rootPath.relativize( file );
+                if ( attrs.isRegularFile()
+                        && matches( includes, relativePath )
+                        && !matches( excludes, relativePath ) ) {
+                    result.add( new Source( root, relativePath.toString(), file.toFile() ) );
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort( result, new Comparator<Source>() {
+            @Override
+            public int compare( Source first, Source second ) {
+                return first.getPath().compareTo( second.getPath() );
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Files are read through a plain stream rather than mapped, so they are not kept locked
+     * (on Windows) until the mapping is garbage collected
+     */
+    private boolean containsToken( Path path ) throws IOException {
+        byte[] content = Files.readAllBytes( path );
+        for ( byte[] token : tokens ) {
+            if ( containsToken( content, token ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean containsToken( byte[] content, byte[] token ) {
+        boolean separated = !Character.isJavaIdentifierPart( (char) token[0] );
+        for ( int i = 0; i < content.length; i++ ) {
+            if ( content[i] != token[0] ) {
+                continue;
+            }
+
+            int position = i + 1;
+            if ( separated ) {
+                while ( position < content.length && isWhitespace( content[position] ) ) {
+                    position++;
+                }
+            }
+
+            int j = 1;
+            while ( j < token.length && position < content.length && content[position] == token[j] ) {
+                j++;
+                position++;
+            }
+
+            if ( j == token.length
+                    && ( position == content.length || !Character.isJavaIdentifierPart( (char) content[position] ) ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isWhitespace( byte value ) {
+        return value == ' ' || value == '\t' || value == '\n' || value == '\r' || value == '\f';
+    }
+
+    private static boolean matches( List<PathMatcher> matchers, Path path ) {
+        for ( PathMatcher matcher : matchers ) {
+            if ( matcher.matches(path) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Glob "**&#47;" requires at least one directory, while Ant-like patterns used by the plugin
+     * configuration matches files in the root as well
+     */
+    private static void addMatchers( List<PathMatcher> matchers, String pattern ) {
+        FileSystem fileSystem = FileSystems.getDefault();
+        matchers.add( fileSystem.getPathMatcher( "glob:" + pattern ) );
+        if ( pattern.startsWith(ANY_DIRECTORY_PREFIX) ) {
+            matchers.add( fileSystem.getPathMatcher( "glob:" + pattern.substring( ANY_DIRECTORY_PREFIX.length() ) ) );
+        }
+    }
+
+    public static class Source {
+        private final File root;
+        private final String path;
+        private final File file;
+
+        public Source( File root, String path, File file ) {
+            this.root = root;
+            this.path = path;
+            this.file = file;
+        }
+
+        public File getRoot() {
+            return root;
+        }
+
+        /**
+         * @return path relative to the source root
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+
+}
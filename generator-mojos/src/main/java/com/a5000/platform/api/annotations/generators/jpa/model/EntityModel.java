@@ -0,0 +1,101 @@
+package com.a5000.platform.api.annotations.generators.jpa.model;
+
+import com.thoughtworks.qdox.model.JavaClass;
+import com.thoughtworks.qdox.model.JavaField;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Facts about an entity which are derived once per run and shared by all the generators:
+ * its fields, id type, names of the classes generated for it and declared DTO extensions
+ * and repository queries.
+ */
+public class EntityModel {
+
+    private final JavaClass javaClass;
+    private final String idKeyType;
+    private final List<JavaField> fields;
+    private final List<JavaField> relationFields;
+    private final String dtoClassName;
+    private final String daoClassName;
+    private final List<ExtensionField> extensionFields;
+    private final List<QueryModel> queries;
+
+    public EntityModel( JavaClass javaClass, String idKeyType,
+                        List<JavaField> fields, List<JavaField> relationFields,
+                        String dtoClassName, String daoClassName,
+                        List<ExtensionField> extensionFields, List<QueryModel> queries ) {
+        this.javaClass = javaClass;
+        this.idKeyType = idKeyType;
+        this.fields = Collections.unmodifiableList( fields );
+        this.relationFields = Collections.unmodifiableList( relationFields );
+        this.dtoClassName = dtoClassName;
+        this.daoClassName = daoClassName;
+        this.extensionFields = Collections.unmodifiableList( extensionFields );
+        this.queries = Collections.unmodifiableList( queries );
+    }
+
+    public JavaClass getJavaClass() {
+        return javaClass;
+    }
+
+    public String getClassName() {
+        return javaClass.getFullyQualifiedName();
+    }
+
+    /**
+     * @return type of the @Id field (declared by the entity or its parents), null when there is no such field
+     */
+    public String getIdKeyType() {
+        return idKeyType;
+    }
+
+    /**
+     * @return own and inherited fields, own fields go first
+     */
+    public List<JavaField> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return fields annotated as JPA relations
+     */
+    public List<JavaField> getRelationFields() {
+        return relationFields;
+    }
+
+    public String getDtoClassName() {
+        return dtoClassName;
+    }
+
+    public String getDaoClassName() {
+        return daoClassName;
+    }
+
+    /**
+     * @return synthetic fields declared by the entity itself (not by its parents)
+     */
+    public List<ExtensionField> getExtensionFields() {
+        return extensionFields;
+    }
+
+    public List<QueryModel> getQueries() {
+        return queries;
+    }
+}
@@ -0,0 +1,84 @@
+package com.a5000.platform.api.annotations.generators.jpa.model;
+
+import com.thoughtworks.qdox.model.JavaAnnotation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Synthetic DTO field declared by @DtoExtend annotation of an entity.
+ */
+public class ExtensionField {
+
+    private final JavaAnnotation annotation;
+    private final String name;
+    private final String type;
+    private final boolean array;
+    private final boolean enumType;
+    private final List<String> typeParameters;
+
+    public ExtensionField( JavaAnnotation annotation, String name, String type,
+                           boolean array, boolean enumType, List<String> typeParameters ) {
+        this.annotation = annotation;
+        this.name = name;
+        this.type = type;
+        this.array = array;
+        this.enumType = enumType;
+        this.typeParameters = Collections.unmodifiableList( typeParameters );
+    }
+
+    /**
+     * @return annotation which declares the field
+     */
+    public JavaAnnotation getAnnotation() {
+        return annotation;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return type as it has been declared by the annotation (class literal)
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return type class name
+     */
+    public String getTypeName() {
+        return type == null ? null : type.replace(".class", "");
+    }
+
+    public boolean isArray() {
+        return array;
+    }
+
+    public boolean isEnum() {
+        return enumType;
+    }
+
+    /**
+     * @return class names of the type arguments
+     */
+    public List<String> getTypeParameters() {
+        return typeParameters;
+    }
+}
@@ -0,0 +1,133 @@
+package com.a5000.platform.api.annotations.generators.jpa.model;
+
+import com.thoughtworks.qdox.model.JavaClass;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Typed model of the processed entities which is built once per run and shared by all
+ * the generators (and theirs parallel workers), along with memoized results of the type
+ * classification, generated class names resolution and annotation values normalization.
+ */
+public class Metamodel {
+
+    private static final Set<String> PRIMITIVE_TYPES = new HashSet<String>( Arrays.asList(
+            "void", "boolean", "byte", "char", "short", "int", "long", "float", "double" ) );
+
+    private static final String DATE_CLASS_NAME = Date.class.getCanonicalName();
+
+    private static final String LANG_PACKAGE = "java.lang";
+
+    private final ConcurrentMap<String, EntityModel> entities = new ConcurrentHashMap<String, EntityModel>();
+    private final ConcurrentMap<String, TypeKind> typeKinds = new ConcurrentHashMap<String, TypeKind>();
+    private final ConcurrentMap<String, String> classNames = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, String> annotationValues = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, String> idKeyTypes = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @return model of the given entity, null when it has not been built yet
+     */
+    public EntityModel getEntity( String className ) {
+        return entities.get( className );
+    }
+
+    /**
+     * @return the given model or the one which has been registered for the same entity before
+     */
+    public EntityModel addEntity( EntityModel model ) {
+        EntityModel previous = entities.putIfAbsent( model.getClassName(), model );
+        return previous != null ? previous : model;
+    }
+
+    public TypeKind getTypeKind( JavaClass type ) {
+        TypeKind result = typeKinds.get( type.getFullyQualifiedName() );
+        if ( result == null ) {
+            result = classify( type );
+            typeKinds.put( type.getFullyQualifiedName(), result );
+        }
+
+        return result;
+    }
+
+    private static TypeKind classify( JavaClass type ) {
+        String typeName = type.getFullyQualifiedName();
+        if ( PRIMITIVE_TYPES.contains( typeName ) ) {
+            return TypeKind.PRIMITIVE;
+        } else if ( type.isEnum() ) {
+            return TypeKind.ENUM;
+        } else if ( DATE_CLASS_NAME.equals( type.getCanonicalName() ) ) {
+            return TypeKind.DATE;
+        } else if ( typeName.startsWith( LANG_PACKAGE ) ) {
+            return TypeKind.LANG;
+        }
+
+        return TypeKind.COMPLEX;
+    }
+
+    /**
+     * @param key source class name along with the target package and affixes
+     * @return name of the generated class, null when it has not been resolved yet
+     */
+    public String getClassName( String key ) {
+        return classNames.get( key );
+    }
+
+    public void putClassName( String key, String className ) {
+        classNames.put( key, className );
+    }
+
+    public String getAnnotationValue( String value ) {
+        return annotationValues.get( value );
+    }
+
+    public void putAnnotationValue( String value, String normalizedValue ) {
+        annotationValues.put( value, normalizedValue );
+    }
+
+    /**
+     * @return type of the @Id field, empty string when the class has no such field, null when
+     * it has not been detected yet
+     */
+    public String getIdKeyType( String className ) {
+        return idKeyTypes.get( className );
+    }
+
+    public void putIdKeyType( String className, String idKeyType ) {
+        idKeyTypes.put( className, idKeyType );
+    }
+
+    /**
+     * Compares the type with the given fully qualified or simple class name
+     */
+    public static boolean isA( JavaClass classType, String className ) {
+        String typeName = classType.getFullyQualifiedName();
+        if ( typeName.equals( className ) ) {
+            return true;
+        }
+
+        if ( classType.getPackageName().isEmpty() && classType.getName().endsWith( className ) ) {
+            return true;
+        }
+
+        int nameStart = typeName.lastIndexOf('.') + 1;
+        return typeName.length() - nameStart == className.length()
+                && typeName.regionMatches( nameStart, className, 0, className.length() );
+    }
+}
@@ -0,0 +1,104 @@
+package com.a5000.platform.api.annotations.generators.jpa.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Repository query declared by @NativeQuery or @ConventionalQuery annotation of an entity.
+ */
+public class QueryModel {
+
+    private final String name;
+    private final String value;
+    private final String resultType;
+    private final boolean nativeQuery;
+    private final boolean collection;
+    private final boolean cacheable;
+    private final boolean pageable;
+    private final boolean sortable;
+    private final boolean transactional;
+    private final boolean modifying;
+    private final List<QueryParameter> parameters;
+
+    public QueryModel( String name, String value, String resultType,
+                       boolean nativeQuery, boolean collection, boolean cacheable,
+                       boolean pageable, boolean sortable, boolean transactional,
+                       boolean modifying, List<QueryParameter> parameters ) {
+        this.name = name;
+        this.value = value;
+        this.resultType = resultType;
+        this.nativeQuery = nativeQuery;
+        this.collection = collection;
+        this.cacheable = cacheable;
+        this.pageable = pageable;
+        this.sortable = sortable;
+        this.transactional = transactional;
+        this.modifying = modifying;
+        this.parameters = Collections.unmodifiableList( parameters );
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return query text, only native queries have it
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return result type class name, null when the query returns entities
+     */
+    public String getResultType() {
+        return resultType;
+    }
+
+    public boolean isNative() {
+        return nativeQuery;
+    }
+
+    public boolean isCollection() {
+        return collection;
+    }
+
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public boolean isPageable() {
+        return pageable;
+    }
+
+    public boolean isSortable() {
+        return sortable;
+    }
+
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    public boolean isModifying() {
+        return modifying;
+    }
+
+    public List<QueryParameter> getParameters() {
+        return parameters;
+    }
+}
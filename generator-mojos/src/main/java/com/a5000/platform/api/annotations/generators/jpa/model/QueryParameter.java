@@ -0,0 +1,44 @@
+package com.a5000.platform.api.annotations.generators.jpa.model;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Parameter of a repository query declared by an entity.
+ */
+public class QueryParameter {
+
+    private final String name;
+    private final String type;
+    private final boolean array;
+
+    public QueryParameter( String name, String type, boolean array ) {
+        this.name = name;
+        this.type = type;
+        this.array = array;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isArray() {
+        return array;
+    }
+}
@@ -0,0 +1,203 @@
+package com.a5000.platform.api.annotations.generators.jpa.model;
+
+import com.thoughtworks.qdox.JavaProjectBuilder;
+import com.thoughtworks.qdox.model.JavaClass;
+import com.thoughtworks.qdox.model.JavaField;
+import com.thoughtworks.qdox.model.JavaMethod;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Index over the parsed classes which is built once per generator run: types having
+ * descendants, superclasses chains and class members (including inherited ones) by name.
+ *
+ * Members of a class are indexed on the first request and could be accessed concurrently.
+ */
+public class TypeIndex {
+
+    private static final String OBJECT_CLASS_NAME = Object.class.getName();
+
+    private final JavaProjectBuilder builder;
+
+    private volatile Set<String> typesWithDescendants;
+
+    private final ConcurrentMap<String, List<JavaClass>> hierarchies
+            = new ConcurrentHashMap<String, List<JavaClass>>();
+
+    private final ConcurrentMap<String, ClassMembers> members
+            = new ConcurrentHashMap<String, ClassMembers>();
+
+    public TypeIndex( JavaProjectBuilder builder ) {
+        this.builder = builder;
+    }
+
+    /**
+     * Builds descendants index and indexes members of the given classes, so the following
+     * lookups for them are read-only
+     */
+    public void prepare( Collection<JavaClass> classes ) {
+        getTypesWithDescendants();
+        for ( JavaClass clazz : classes ) {
+            getHierarchy( clazz );
+            getMembers( clazz );
+        }
+    }
+
+    /**
+     * @return true when any of parsed classes extends or implements the given one
+     */
+    public boolean hasDescendants( JavaClass clazz ) {
+        return getTypesWithDescendants().contains( clazz.getFullyQualifiedName() );
+    }
+
+    /**
+     * @return the given class followed by all of its superclasses
+     */
+    public List<JavaClass> getHierarchy( JavaClass clazz ) {
+        List<JavaClass> result = hierarchies.get( clazz.getFullyQualifiedName() );
+        if ( result == null ) {
+            result = new ArrayList<JavaClass>();
+            JavaClass parent = clazz;
+            while ( parent != null ) {
+                result.add( parent );
+                parent = parent.getSuperJavaClass();
+            }
+
+            result = Collections.unmodifiableList( result );
+            hierarchies.putIfAbsent( clazz.getFullyQualifiedName(), result );
+        }
+
+        return result;
+    }
+
+    /**
+     * @return fields declared by the class and its superclasses, in the declaration order
+     * starting from the given class
+     */
+    public List<JavaField> getAllFields( JavaClass clazz ) {
+        return getMembers( clazz ).allFields;
+    }
+
+    /**
+     * @return the nearest field with the given name declared by the class or its superclasses
+     */
+    public JavaField getField( JavaClass clazz, String fieldName ) {
+        return getMembers( clazz ).fieldsByName.get( fieldName );
+    }
+
+    public boolean hasMethod( JavaClass clazz, String methodName, boolean deepSearch, boolean publicOnly ) {
+        ClassMembers classMembers = getMembers( clazz );
+        if ( deepSearch ) {
+            return publicOnly ? classMembers.allPublicMethods.contains( methodName )
+                    : classMembers.allMethods.contains( methodName );
+        }
+
+        return publicOnly ? classMembers.publicMethods.contains( methodName )
+                : classMembers.methods.contains( methodName );
+    }
+
+    private ClassMembers getMembers( JavaClass clazz ) {
+        ClassMembers result = members.get( clazz.getFullyQualifiedName() );
+        if ( result == null ) {
+            JavaClass parent = clazz.getSuperJavaClass();
+            result = new ClassMembers( clazz, parent == null ? null : getMembers( parent ) );
+            members.putIfAbsent( clazz.getFullyQualifiedName(), result );
+        }
+
+        return result;
+    }
+
+    private Set<String> getTypesWithDescendants() {
+        Set<String> result = typesWithDescendants;
+        if ( result == null ) {
+            synchronized ( this ) {
+                result = typesWithDescendants;
+                if ( result == null ) {
+                    result = new HashSet<String>();
+                    for ( JavaClass classItem : builder.getClasses() ) {
+                        if ( classItem.getFullyQualifiedName().equals( OBJECT_CLASS_NAME ) ) {
+                            continue;
+                        }
+
+                        collectAncestors( classItem, classItem, result, new HashSet<String>() );
+                    }
+
+                    typesWithDescendants = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void collectAncestors( JavaClass origin, JavaClass clazz, Set<String> result, Set<String> visited ) {
+        if ( clazz == null || !visited.add( clazz.getFullyQualifiedName() ) ) {
+            return;
+        }
+
+        if ( clazz != origin ) {
+            result.add( clazz.getFullyQualifiedName() );
+        }
+
+        collectAncestors( origin, clazz.getSuperJavaClass(), result, visited );
+        for ( JavaClass implementedType : clazz.getInterfaces() ) {
+            collectAncestors( origin, implementedType, result, visited );
+        }
+    }
+
+    private static class ClassMembers {
+        final List<JavaField> allFields;
+        final Map<String, JavaField> fieldsByName;
+        final Set<String> methods = new HashSet<String>();
+        final Set<String> publicMethods = new HashSet<String>();
+        final Set<String> allMethods;
+        final Set<String> allPublicMethods;
+
+        ClassMembers( JavaClass clazz, ClassMembers parent ) {
+            for ( JavaMethod method : clazz.getMethods() ) {
+                methods.add( method.getName() );
+                if ( method.isPublic() ) {
+                    publicMethods.add( method.getName() );
+                }
+            }
+
+            List<JavaField> fields = new ArrayList<JavaField>( clazz.getFields() );
+            Map<String, JavaField> fieldsMap = new HashMap<String, JavaField>();
+            Set<String> methodsSet = new HashSet<String>( methods );
+            Set<String> publicMethodsSet = new HashSet<String>( publicMethods );
+            if ( parent != null ) {
+                fields.addAll( parent.allFields );
+                fieldsMap.putAll( parent.fieldsByName );
+                methodsSet.addAll( parent.allMethods );
+                publicMethodsSet.addAll( parent.allPublicMethods );
+            }
+
+            for ( JavaField field : clazz.getFields() ) {
+                fieldsMap.put( field.getName(), field );
+            }
+
+            this.allFields = Collections.unmodifiableList( fields );
+            this.fieldsByName = fieldsMap;
+            this.allMethods = methodsSet;
+            this.allPublicMethods = publicMethodsSet;
+        }
+    }
+
+}
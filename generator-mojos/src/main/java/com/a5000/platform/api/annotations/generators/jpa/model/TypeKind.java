@@ -0,0 +1,34 @@
+package com.a5000.platform.api.annotations.generators.jpa.model;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Classification of a type referenced by an entity.
+ */
+public enum TypeKind {
+    PRIMITIVE,
+    ENUM,
+    DATE,
+    LANG,
+    COMPLEX;
+
+    /**
+     * @return true when values of the type are copied to a DTO as is
+     */
+    public boolean isSimple() {
+        return this != COMPLEX;
+    }
+}
@@ -0,0 +1,96 @@
+package com.a5000.platform.api.annotations.generators.jpa.mojo;
+
+import com.a5000.platform.api.annotations.generators.jpa.AbstractEntityGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.AbstractGeneratorMojo;
+import com.thoughtworks.qdox.JavaProjectBuilder;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Runs DAO, DTO and JPA to DTO converters generators over a single parsed sources model,
+ * generators are executed concurrently and theirs results are written by a single pass.
+ * Parameters of the generators are declared by {@link AbstractGeneratorMojo}, so the delegates
+ * are configured the same way as the standalone goals.
+ */
+@Mojo( name = "gen-all", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true )
+public class GenAllMojo extends AbstractGeneratorMojo {
+
+    @Parameter( property = "generateDao", defaultValue = "true" )
+    private Boolean generateDao = true;
+
+    @Parameter( property = "generateDto", defaultValue = "true" )
+    private Boolean generateDto = true;
+
+    @Parameter( property = "generateConverters", defaultValue = "true" )
+    private Boolean generateConverters = true;
+
+    public GenAllMojo() {
+        super("DAO, DTO and conversion services generator", "", "", "");
+    }
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        List<AbstractEntityGeneratorMojo> generators = createGenerators();
+        if ( generators.isEmpty() ) {
+            getLog().info("All the generators are disabled, skipping generation...");
+            return;
+        }
+
+        generate( generators );
+    }
+
+    /**
+     * Runs the enabled generators over the given sources model, which is built by the annotation processor
+     *
+     * @see AbstractGeneratorMojo#generate(List, JavaProjectBuilder, Collection, Collection, Map)
+     */
+    public Map<String, byte[]> generate( JavaProjectBuilder builder, Collection<String> entities,
+                                         Collection<String> knownEntities, Map<String, List<String>> outputs )
+            throws MojoExecutionException {
+        return generate( createGenerators(), builder, entities, knownEntities, outputs );
+    }
+
+    /**
+     * @return enabled generators, configured by the parameters of this goal
+     */
+    private List<AbstractEntityGeneratorMojo> createGenerators() {
+        List<AbstractEntityGeneratorMojo> generators = new ArrayList<AbstractEntityGeneratorMojo>();
+        if ( generateDao ) {
+            generators.add( delegate( new GenDaoMojo() ) );
+        }
+
+        if ( generateDto ) {
+            generators.add( delegate( new GenDtoMojo() ) );
+        }
+
+        if ( generateConverters ) {
+            generators.add( delegate( new GenJpaToDtoConverterMojo() ) );
+        }
+
+        return generators;
+    }
+
+}
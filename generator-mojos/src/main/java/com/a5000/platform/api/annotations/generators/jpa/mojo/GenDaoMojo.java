@@ -1,16 +1,17 @@
 package com.a5000.platform.api.annotations.generators.jpa.mojo;
 
-import com.a5000.platform.api.annotations.generators.jpa.AbstractGeneratorMojo;
-import com.a5000.platform.api.annotations.generators.jpa.utils.Commons;
+import com.a5000.platform.api.annotations.generators.jpa.AbstractEntityGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.model.QueryModel;
+import com.a5000.platform.api.annotations.generators.jpa.model.QueryParameter;
 import com.a5000.platform.api.annotations.generators.jpa.utils.StringUtils;
 import com.sun.codemodel.*;
-import com.thoughtworks.qdox.model.JavaAnnotation;
 import com.thoughtworks.qdox.model.JavaClass;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
@@ -27,8 +28,8 @@ import java.util.*;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-@Mojo( name = "gen-dao", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = false )
-public class GenDaoMojo extends AbstractGeneratorMojo {
+@Mojo( name = "gen-dao", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true )
+public class GenDaoMojo extends AbstractEntityGeneratorMojo {
 
     public static final String JPA_REPOSITORY_CLASS_NAME
             =  "org.springframework.data.jpa.repository.JpaRepository";
@@ -48,15 +49,6 @@ public class GenDaoMojo extends AbstractGeneratorMojo {
     public static final String TRANSACTIONAL_ANNOTATION_CLASS_NAME
             = "org.springframework.transaction.annotation.Transactional";
 
-    private static final String NATIVE_QUERIES_ANNOTATION_CLASS_NAME
-            = "NativeQueries";
-    private static final String NATIVE_QUERY_ANNOTATION_CLASS_NAME
-            = "NativeQuery";
-    private static final String CONVENTIONAL_QUERIES_ANNOTATION_CLASS_NAME
-            = "ConventionalQueries";
-    private static final String CONVENTIONAL_QUERY_ANNOTATION_CLASS_NAME
-            = "ConventionalQuery";
-
     private static final String PAGE_CLASS_NAME
             = "org.springframework.data.domain.Page";
     private static final String PAGEABLE_CLASS_NAME
@@ -64,13 +56,50 @@ public class GenDaoMojo extends AbstractGeneratorMojo {
     private static final String SORT_CLASS_NAME
             = "org.springframework.data.domain.Sort";
 
-    private final Map<String, String> cache = new HashMap<String, String>();
+    private Map<String, String> cache = new ConcurrentHashMap<String, String>();
 
     public GenDaoMojo() {
         super("Spring Data repositories generator", DAO_GENERATOR_PREFIX, DAO_GENERATOR_SUFFIX,
                 DAO_GENERATOR_POSTFIX);
     }
 
+    /**
+     * Worker keeps its own registry of generated DAOs as they are defined in its own code model,
+     * DAOs generated by this generator before the worker has been created are referred by it
+     */
+    @Override
+    protected AbstractEntityGeneratorMojo createWorker() {
+        GenDaoMojo worker = (GenDaoMojo) super.createWorker();
+        worker.cache = new ConcurrentHashMap<String, String>( cache );
+        return worker;
+    }
+
+    /**
+     * DAOs of the entity superclasses are extended by the DAOs of theirs descendants, so they are
+     * generated once (root first) instead of by every worker processing a descendant
+     */
+    @Override
+    protected List<JavaClass> getSharedEntities( List<JavaClass> entities ) {
+        Set<String> names = new HashSet<String>();
+        List<JavaClass> result = new ArrayList<JavaClass>();
+        for ( JavaClass entityClass : entities ) {
+            List<JavaClass> parents = new ArrayList<JavaClass>();
+            JavaClass parent = entityClass.getSuperJavaClass();
+            while ( parent != null && isJpaEntity( parent ) && !isMappedSuperclassEntity( parent ) ) {
+                parents.add( 0, parent );
+                parent = parent.getSuperJavaClass();
+            }
+
+            for ( JavaClass parentClass : parents ) {
+                if ( names.add( parentClass.getFullyQualifiedName() ) ) {
+                    result.add( parentClass );
+                }
+            }
+        }
+
+        return result;
+    }
+
     @Override
     protected boolean isSupported(JavaClass entityClass) {
         return isJpaEntity(entityClass) && !isMappedSuperclassEntity(entityClass);
@@ -78,24 +107,22 @@ public class GenDaoMojo extends AbstractGeneratorMojo {
 
     @Override
     protected void generateClass(JavaClass entityClazz) throws MojoExecutionException {
-        synchronized (entityClazz.getFullyQualifiedName().intern()) {
-            if ( cache.containsKey(entityClazz.getFullyQualifiedName()) ) {
-                getLog().info("Skipping already processed class " + entityClazz.getFullyQualifiedName() );
-                return;
-            }
+        if ( cache.containsKey(entityClazz.getFullyQualifiedName()) ) {
+            getLog().info("Skipping already processed class " + entityClazz.getFullyQualifiedName() );
+            return;
+        }
 
-            try {
-                JDefinedClass definedClass = defineDaoClass(entityClazz);
-                generateQueryMethods(entityClazz, definedClass);
-            } catch (JClassAlreadyExistsException e) {
-                throw new MojoExecutionException( e.getMessage(), e );
-            }
+        try {
+            JDefinedClass definedClass = defineDaoClass(entityClazz);
+            generateQueryMethods(entityClazz, definedClass);
+        } catch (JClassAlreadyExistsException e) {
+            throw new MojoExecutionException( e.getMessage(), e );
         }
     }
 
     protected JDefinedClass defineDaoClass( JavaClass entityClazz )
             throws MojoExecutionException, JClassAlreadyExistsException {
-        String entityIdClassName = detectIdKeyType(entityClazz);
+        String entityIdClassName = getEntityModel(entityClazz).getIdKeyType();
         if ( entityIdClassName == null && !entityClazz.isAbstract() ) {
             throw new MojoExecutionException("No @Id field found for class: "
                     + entityClazz.getFullyQualifiedName() );
@@ -142,29 +169,20 @@ public class GenDaoMojo extends AbstractGeneratorMojo {
     }
 
     protected void generateQueryMethods(JavaClass entityClazz, JDefinedClass daoClazz) {
-        List<QuerySpec> querySpecList = new ArrayList<QuerySpec>();
-        for ( JavaAnnotation annotation : entityClazz.getAnnotations() ) {
-            if ( !isSupportedAnnotation(annotation.getType()) ) {
-                continue;
-            }
-
-            querySpecList.addAll(processAnnotation(annotation));
-        }
-
-        for ( QuerySpec spec : querySpecList ) {
+        for ( QueryModel spec : getEntityModel(entityClazz).getQueries() ) {
             generateQueryMethod( entityClazz, daoClazz, spec, false, false);
 
-            if ( spec.isPageable && spec.isSortable ) {
+            if ( spec.isPageable() && spec.isSortable() ) {
                 generateQueryMethod( entityClazz, daoClazz, spec, true, true );
-            } else if ( spec.isPageable ) {
+            } else if ( spec.isPageable() ) {
                 generateQueryMethod(entityClazz, daoClazz, spec, true, false);
-            } else if ( spec.isSortable ) {
+            } else if ( spec.isSortable() ) {
                 generateQueryMethod( entityClazz, daoClazz, spec, false, true );
             }
         }
     }
 
-    protected void generateQueryMethod(JavaClass entityClazz, JDefinedClass daoClazz, QuerySpec spec,
+    protected void generateQueryMethod(JavaClass entityClazz, JDefinedClass daoClazz, QueryModel spec,
                                        boolean appendPagerParam,
                                        boolean appendSortingParam ) {
         JClass returnType;
@@ -178,36 +196,36 @@ public class GenDaoMojo extends AbstractGeneratorMojo {
             returnType = codeModel.ref( PAGE_CLASS_NAME )
                     .narrow( returnType );
         } else {
-            if ( spec.resultType != null ) {
-                if ( spec.isCollection ) {
+            if ( spec.getResultType() != null ) {
+                if ( spec.isCollection() ) {
                     returnType = codeModel.ref( List.class ).narrow(
-                        codeModel.ref(spec.resultType)
+                        codeModel.ref(spec.getResultType())
                     );
                 } else {
-                    returnType = codeModel.ref(spec.resultType);
+                    returnType = codeModel.ref(spec.getResultType());
                 }
-            } else if ( spec.isCollection ) {
+            } else if ( spec.isCollection() ) {
                 returnType = codeModel.ref(List.class)
                         .narrow( returnType );
             }
         }
 
-        JMethod method = daoClazz.method(JMod.PUBLIC, returnType, spec.name );
+        JMethod method = daoClazz.method(JMod.PUBLIC, returnType, spec.getName() );
 
         JAnnotationUse queryAnnotation = method.annotate( codeModel.ref(QUERY_ANNOTATION_CLASS_NAME) );
-        if ( spec.isNative ) {
-            queryAnnotation.param("value", spec.value);
+        if ( spec.isNative() ) {
+            queryAnnotation.param("value", spec.getValue());
         }
 
-        if ( spec.isModifying ) {
+        if ( spec.isModifying() ) {
             method.annotate( codeModel.ref(MODIFYING_ANNOTATION_CLASS_NAME) );
         }
 
-        if ( spec.isTransactional ) {
+        if ( spec.isTransactional() ) {
             method.annotate( codeModel.ref(TRANSACTIONAL_ANNOTATION_CLASS_NAME) );
         }
 
-        if ( spec.isCacheable ) {
+        if ( spec.isCacheable() ) {
             JAnnotationUse hintsAnnotation = method.annotate(
                     codeModel.ref(QUERY_HINTS_ANNOTATION_CLASS_NAME)
             );
@@ -218,129 +236,50 @@ public class GenDaoMojo extends AbstractGeneratorMojo {
                     .param("value", "true");
         }
 
+        List<String> parameterNames = new ArrayList<String>();
+        for ( QueryParameter param : spec.getParameters() ) {
+            parameterNames.add( param.getName() );
+        }
+
         Set<String> processedParaNames = new HashSet<String>();
-        for ( QuerySpecParam param : spec.parameters ) {
-            if ( param.name == null ) {
-                param.name = selectNonConflictingName(spec.parameters, "param");
+        for ( int i = 0; i < spec.getParameters().size(); i++ ) {
+            QueryParameter param = spec.getParameters().get(i);
+
+            String name = parameterNames.get(i);
+            if ( name == null ) {
+                name = selectNonConflictingName(parameterNames, "param");
             }
 
-            if ( processedParaNames.contains(param.name) ) {
-                param.name = selectNonConflictingName(spec.parameters, param.name);
+            if ( processedParaNames.contains(name) ) {
+                name = selectNonConflictingName(parameterNames, name);
             } else {
-                processedParaNames.add( param.name );
+                processedParaNames.add( name );
             }
+            parameterNames.set( i, name );
 
-            JVar methodParam = method.param( param.isArray ? codeModel.ref( param.type).array() : codeModel.ref(param.type),
-                    param.name );
+            JVar methodParam = method.param( param.isArray() ? codeModel.ref( param.getType()).array() : codeModel.ref(param.getType()),
+                    name );
             JAnnotationUse paramAnnotation = methodParam.annotate( codeModel.ref(PARAM_ANNOTATION_CLASS_NAME) );
-            paramAnnotation.param("value", param.name );
+            paramAnnotation.param("value", name );
         }
 
         if ( appendPagerParam ) {
             method.param( codeModel.ref(PAGEABLE_CLASS_NAME),
-                    selectNonConflictingName( spec.parameters, "pageable" ) );
+                    selectNonConflictingName( parameterNames, "pageable" ) );
         }
 
         if ( appendSortingParam ) {
             method.param( codeModel.ref(SORT_CLASS_NAME),
-                    selectNonConflictingName( spec.parameters, "sort" ) );
-        }
-    }
-
-    protected List<QuerySpec> processAnnotation( JavaAnnotation annotation ) {
-        List<QuerySpec> querySpec = new ArrayList<QuerySpec>();
-        if ( isAnnotationsList(annotation.getType()) ) {
-            Object value = annotation.getNamedParameter("value");
-            if ( value instanceof List) {
-                for ( JavaAnnotation childAnnotation : (List<JavaAnnotation>) value) {
-                    querySpec.add( createQuerySpec( childAnnotation ) );
-                }
-            } else {
-               querySpec.add(createQuerySpec((JavaAnnotation) value));
-            }
-        } else {
-            querySpec.add( createQuerySpec(annotation) );
+                    selectNonConflictingName( parameterNames, "sort" ) );
         }
-
-        return querySpec;
     }
 
-    protected QuerySpec createQuerySpec( JavaAnnotation annotation ) {
-        QuerySpec spec = new QuerySpec();
-        spec.name = normalizeAnnotationValue(
-                Commons.select((String) annotation.getNamedParameter("name"), ""));
-        spec.isNative = isNativeQuery(annotation);
-        spec.resultType = normalizeAnnotationValue(
-                Commons.select((String) annotation.getNamedParameter("resultType"), "") )
-                    .replace(".class", "");
-        if ( spec.resultType.isEmpty() ) {
-            spec.resultType = null;
-        }
-        if ( spec.isNative ) {
-            spec.value = normalizeAnnotationValue(
-                Commons.select((String) annotation.getNamedParameter("value"), "")
-            );
-        }
-
-        spec.isModifying = Boolean.valueOf(
-                Commons.select((String) annotation.getNamedParameter("isModifying"), "false")) ;
-        spec.isCacheable = Boolean.valueOf(
-                Commons.select((String) annotation.getNamedParameter("isCacheable"), "false")) ;
-        spec.isSortable = Boolean.valueOf(
-                Commons.select((String) annotation.getNamedParameter("isSortable"), "false")) ;
-        spec.isTransactional = Boolean.valueOf(
-                Commons.select((String) annotation.getNamedParameter("isTransactional"), "false"));
-        spec.isCollection = Boolean.valueOf(
-                Commons.select((String) annotation.getNamedParameter("isCollection"), "true"));
-        spec.isPageable = Boolean.valueOf(
-                Commons.select((String) annotation.getNamedParameter("isPageable"), "false"));
-
-        Object parametersValue = Commons.select(annotation.getNamedParameter("parameters"),
-                new ArrayList<JavaAnnotation>());
-        if ( parametersValue instanceof List) {
-            for ( JavaAnnotation parameterAnnotation : (List<JavaAnnotation>) parametersValue ) {
-                spec.parameters.add( createQuerySpecParam(parameterAnnotation) );
-            }
-        } else {
-            spec.parameters.add( createQuerySpecParam((JavaAnnotation) parametersValue) );
-        }
-
-        return spec;
-    }
-
-    protected QuerySpecParam createQuerySpecParam( JavaAnnotation annotation ) {
-        QuerySpecParam result = new QuerySpecParam();
-        result.isArray = Boolean.valueOf(Commons.select((String) annotation.getNamedParameter("isArray"), "false"));
-        result.name = normalizeAnnotationValue(Commons.select((String) annotation.getNamedParameter("value"), ""));
-        result.type = normalizeAnnotationValue(
-                Commons.select((String) annotation.getNamedParameter("type"), "") ).replace(".class", "");
-
-        return result;
-    }
-
-    protected boolean isNativeQuery( JavaAnnotation annotation ) {
-        return isA(annotation.getType(),
-                NATIVE_QUERY_ANNOTATION_CLASS_NAME);
-    }
-
-    protected boolean isAnnotationsList( JavaClass annotationClassName  ) {
-        return isA( annotationClassName, NATIVE_QUERIES_ANNOTATION_CLASS_NAME )
-                || isA( annotationClassName, CONVENTIONAL_QUERIES_ANNOTATION_CLASS_NAME );
-    }
-
-    protected boolean isSupportedAnnotation( JavaClass annotationClassName ) {
-        return isA(annotationClassName, NATIVE_QUERIES_ANNOTATION_CLASS_NAME)
-                || isA(annotationClassName, NATIVE_QUERY_ANNOTATION_CLASS_NAME)
-                || isA(annotationClassName, CONVENTIONAL_QUERIES_ANNOTATION_CLASS_NAME)
-                || isA(annotationClassName, CONVENTIONAL_QUERY_ANNOTATION_CLASS_NAME);
-    }
-
-    protected String selectNonConflictingName( List<QuerySpecParam> parameters, String name ) {
+    protected String selectNonConflictingName( List<String> parameterNames, String name ) {
         int i = 0;
         boolean conflicting = false;
         do {
-            for ( QuerySpecParam param : parameters ) {
-                if ( param.name.equals(name) ) {
+            for ( String parameterName : parameterNames ) {
+                if ( parameterName.equals(name) ) {
                     conflicting = true;
                     break;
                 }
@@ -355,26 +294,4 @@ public class GenDaoMojo extends AbstractGeneratorMojo {
         return name;
     }
 
-    public class QuerySpec {
-        boolean isCollection;
-        boolean isNative;
-        boolean isCacheable;
-        boolean isPageable;
-        boolean isTransactional;
-        boolean isSortable;
-        boolean isModifying;
-
-        String name;
-        String value;
-        String resultType;
-
-        List<QuerySpecParam> parameters = new ArrayList<QuerySpecParam>();
-    }
-
-    public class QuerySpecParam {
-        boolean isArray;
-        String name;
-        String type;
-    }
-
 }
@@ -1,6 +1,7 @@
 package com.a5000.platform.api.annotations.generators.jpa.mojo;
 
-import com.a5000.platform.api.annotations.generators.jpa.AbstractGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.AbstractEntityGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.model.ExtensionField;
 import com.a5000.platform.api.annotations.generators.jpa.utils.Commons;
 import com.sun.codemodel.*;
 import com.thoughtworks.qdox.model.*;
@@ -27,25 +28,22 @@ import java.util.*;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-@Mojo( name = "gen-dto", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = false)
-public class GenDtoMojo extends AbstractGeneratorMojo {
-
-    @Parameter( property = "dtoAnnotationClasses")
-    private String[] dtoAnnotationClasses = new String[] {};
-
-    @Parameter( property = "dtoInterfaceClasses")
-    private String[] dtoInterfaceClasses = new String[] { "java.io.Serializable"};
-
-    @Parameter( property = "generateMethods", defaultValue = "true" )
-    private Boolean generateMethods = true;
-
-    @Parameter( property = "annotationInclusionMask", defaultValue = "^javax\\.validation\\..+?")
-    private String annotationInclusionMask = "^javax\\.validation\\..+?";
+@Mojo( name = "gen-dto", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
+public class GenDtoMojo extends AbstractEntityGeneratorMojo {
 
     public GenDtoMojo() {
         super("DTO generator", DTO_GENERATOR_PREFIX, DTO_GENERATOR_SUFFIX, DTO_GENERATOR_POSTFIX);
     }
 
+    @Override
+    protected void collectConfiguration( List<Object> values ) {
+        super.collectConfiguration( values );
+        values.add( dtoAnnotationClasses );
+        values.add( dtoInterfaceClasses );
+        values.add( generateMethods );
+        values.add( annotationInclusionMask );
+    }
+
     @Override
     protected void generateClass(JavaClass entityClazz) throws MojoExecutionException {
         try {
@@ -135,7 +133,7 @@ public class GenDtoMojo extends AbstractGeneratorMojo {
                 continue;
             }
 
-            getLog().info("Generating DTO method " + method.getName()
+            getLog().debug("Generating DTO method " + method.getName()
                     + " for DTO " + dtoClazz.fullName() );
             generateDtoMethod(dtoClazz, entityClazz, method);
         }
@@ -149,7 +147,7 @@ public class GenDtoMojo extends AbstractGeneratorMojo {
         }
 
         boolean skip = false;
-        Map<String, JType> parameters = new HashMap<String, JType>();
+        Map<String, JType> parameters = new LinkedHashMap<String, JType>();
         for ( JavaParameter parameter : method.getParameters() ) {
             JType parameterType = convertType( entityClazz, parameter.getType() );
             if ( parameterType == null ) {
@@ -193,62 +191,28 @@ public class GenDtoMojo extends AbstractGeneratorMojo {
     protected void processClassAnnotations( JDefinedClass dtoClazz,
                                             JavaClass entityClazz )
         throws MojoExecutionException {
-        for ( JavaAnnotation annotation : entityClazz.getAnnotations() ) {
-            if ( isA( annotation.getType(),
-                    DTO_EXTENDS_ANNOTATION_CLASS_NAME) ) {
-                processExtendsAnnotation( dtoClazz, annotation );
-            }
+        for ( ExtensionField field : getEntityModel(entityClazz).getExtensionFields() ) {
+            processExtensionField( dtoClazz, field );
         }
     }
 
-    protected void processExtendsAnnotation( JDefinedClass dtoClazz,
-                                             JavaAnnotation extendsAnnotation )
+    protected void processExtensionField( JDefinedClass dtoClazz,
+                                          ExtensionField field )
         throws MojoExecutionException {
-        Object value = extendsAnnotation.getNamedParameter("value");
-        if ( value == null ) {
-            return;
-        }
-
-        if ( value instanceof List) {
-            for ( JavaAnnotation parameterAnnotation : (List<JavaAnnotation>) value ) {
-                processExtendsParameterAnnotation(dtoClazz, parameterAnnotation);
-            }
-        } else {
-            processExtendsParameterAnnotation( dtoClazz, (JavaAnnotation) value );
-        }
-    }
-
-    protected void processExtendsParameterAnnotation( JDefinedClass dtoClazz,
-                                                      JavaAnnotation annotation )
-        throws MojoExecutionException {
-        String fieldName = normalizeAnnotationValue(
-                (String) annotation.getNamedParameter("value"));
-
-        String fieldType = normalizeAnnotationValue(
-                (String) annotation.getNamedParameter("type") ).replace(".class", "");
-
-        JClass fieldTypeClass = codeModel.ref(fieldType);
-        if ( annotation.getNamedParameter("isArray") != null
-                && annotation.getNamedParameter("isArray").equals("true") ) {
+        JClass fieldTypeClass = codeModel.ref(field.getTypeName());
+        if ( field.isArray() ) {
             fieldTypeClass = fieldTypeClass.array();
         }
 
         List<JClass> typeParameters = new ArrayList<JClass>();
-        Object typeParametersValue = annotation.getNamedParameter("typeParameters");
-        if ( typeParametersValue != null ) {
-            if (typeParametersValue instanceof List) {
-                for (String className : (List<String>) typeParametersValue) {
-                    typeParameters.add(codeModel.ref( normalizeAnnotationValue(className).replace(".class", "") ));
-                }
-            } else {
-                typeParameters.add( codeModel.ref( normalizeAnnotationValue( (String) typeParametersValue).replace(".class", "") ) );
-            }
+        for ( String className : field.getTypeParameters() ) {
+            typeParameters.add( codeModel.ref(className) );
         }
 
         _generateClassField( null, dtoClazz, JMod.PRIVATE,
                 new ArrayList<JavaAnnotation>(),
                 typeParameters.isEmpty() ? fieldTypeClass :
-                        fieldTypeClass.narrow(typeParameters), null, fieldName );
+                        fieldTypeClass.narrow(typeParameters), null, field.getName() );
     }
 
     protected void generateClassFields( JDefinedClass dtoClazz,
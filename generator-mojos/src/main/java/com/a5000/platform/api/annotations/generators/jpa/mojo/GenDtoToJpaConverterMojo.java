@@ -1,6 +1,6 @@
 package com.a5000.platform.api.annotations.generators.jpa.mojo;
 
-import com.a5000.platform.api.annotations.generators.jpa.AbstractGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.AbstractEntityGeneratorMojo;
 import com.sun.codemodel.JClassAlreadyExistsException;
 import com.sun.codemodel.JDefinedClass;
 import com.thoughtworks.qdox.model.JavaClass;
@@ -24,7 +24,7 @@ import org.apache.maven.plugins.annotations.Mojo;
  * limitations under the License.
  */
 @Mojo( name = "gen-dto-converter", threadSafe = true )
-public class GenDtoToJpaConverterMojo extends AbstractGeneratorMojo {
+public class GenDtoToJpaConverterMojo extends AbstractEntityGeneratorMojo {
 
     private static final String CONVERTER_CLASS_NAME = "JpaHydrationService";
 
@@ -83,6 +83,7 @@ public class GenDtoToJpaConverterMojo extends AbstractGeneratorMojo {
         try {
             this.converterService = codeModel._package(convertersPackage)
                ._class(CONVERTER_CLASS_NAME);
+            registerGeneratedClass( this.converterService.fullName() );
         } catch (JClassAlreadyExistsException e) {
             throw new MojoExecutionException( e.getMessage(), e );
         }
@@ -92,6 +93,11 @@ public class GenDtoToJpaConverterMojo extends AbstractGeneratorMojo {
 
     }
 
+    @Override
+    protected boolean isIncrementalSupported() {
+        return false;
+    }
+
     @Override
     protected boolean isSupported(JavaClass entityClass) {
         return isJpaEntity(entityClass);
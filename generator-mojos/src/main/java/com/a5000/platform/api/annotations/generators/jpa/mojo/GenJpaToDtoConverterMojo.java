@@ -1,15 +1,17 @@
 package com.a5000.platform.api.annotations.generators.jpa.mojo;
 
-import com.a5000.platform.api.annotations.generators.jpa.AbstractGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.AbstractEntityGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.model.ExtensionField;
+import com.a5000.platform.api.annotations.generators.jpa.utils.StringUtils;
 import com.sun.codemodel.*;
 import com.thoughtworks.qdox.model.*;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -27,38 +29,51 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-@Mojo( name = "gen-jpa-converter", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = false)
-public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
+@Mojo( name = "gen-jpa-converter", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
+public class GenJpaToDtoConverterMojo extends AbstractEntityGeneratorMojo {
 
     private static final String CONVERTER_CLASS_NAME = "DtoConversionService";
     private static final String CONVERTER_METHOD_NAME = "convertToDto";
     private static final String DTO_INCLUDE_ANNOTATION_CLASS_NAME = "DtoInclude";
     private static final String DTO_EXCLUDE_ANNOTATION_CLASS_NAME = "DtoExclude";
     private static final String METHODS_CACHE_FIELD_NAME = "METHODS";
-    private static final String CONVERSATION_METHOD_NOT_FOUND_EXCEPTION = "Conversion method not found: %s";
+    private static final String CONVERTERS_CACHE_FIELD_NAME = "CONVERTERS";
+    private static final String CONVERSATION_METHOD_NOT_FOUND_EXCEPTION = "Conversion method not found: ";
     private static final String LIST_CONVERTER_METHOD_NAME = "convertToDtoList";
     private static final String CONVERT_TO_IDS_LIST_METHOD_NAME = "convertToIdsList";
     private static final String CONVERTER_INVOKE_TYPE_CLASS_NAME = "ConverterInvoke";
+    private static final String CONVERTER_CLASS_POSTFIX = "Converter";
+    private static final String RESOLVE_CONVERTER_METHOD_NAME = "resolveConverter";
+    private static final String GET_CONVERTER_INVOKE_METHOD_NAME = "getConverterInvoke";
+    private static final String SERVICE_FIELD_NAME = "service";
+    private static final String CONVERSION_METRICS_CLASS_NAME = "com.a5000.platform.api.annotations.metrics.ConversionMetrics";
+    private static final String NOOP_CONVERSION_METRICS_CLASS_NAME = "com.a5000.platform.api.annotations.metrics.NoopConversionMetrics";
+    private static final String AUTOWIRED_ANNOTATION_CLASS_NAME = "org.springframework.beans.factory.annotation.Autowired";
+    private static final String CONVERSION_METRICS_FIELD_NAME = "conversionMetrics";
+    private static final String GET_CONVERSION_METRICS_METHOD_NAME = "getConversionMetrics";
+    private static final String CONVERSION_CONTEXT_CLASS_NAME = "com.a5000.platform.api.annotations.conversion.ConversionContext";
+    private static final String CONVERSION_CONTEXT_VAR_NAME = "context";
+    private static final String PARALLEL_CONVERSION_CLASS_NAME = "com.a5000.platform.api.annotations.conversion.ParallelConversion";
+    private static final String CHUNK_CONVERTER_CLASS_NAME = "com.a5000.platform.api.annotations.conversion.ChunkConverter";
+    private static final String QUALIFIER_ANNOTATION_CLASS_NAME = "org.springframework.beans.factory.annotation.Qualifier";
+    private static final String CONVERSION_EXECUTOR_FIELD_NAME = "conversionExecutor";
+    private static final String CONVERSION_EXECUTOR_BEAN_NAME = "dtoConversionExecutor";
+    private static final String GET_CONVERSION_EXECUTOR_METHOD_NAME = "getConversionExecutor";
 
-    @Parameter( property = "jpaEntityInterface", required = true )
-    protected String jpaEntityInterface = "com.a5000.platform.api.model.domain.api.IStoredBean";
-
-    @Parameter( property = "jpaEntityInterface", required = true,
-            defaultValue = "com.a5000.platform.api.model.domain.api.IStoredBean")
-    protected String transactionalAnnotation;
-
-    @Parameter( property = "profilingEnabled", required = false, defaultValue = "false")
-    protected Boolean profilingEnabled = false;
-
-    @Parameter( property = "transactionAnnotationOnConverterMethods",
-            required = true, defaultValue = "com.a5000.platform.api.services.A5TransactionalReadOnly")
-    protected boolean transactionAnnotationOnConverterMethods;
+    /**
+     * Number of entities checked by a single converter resolution method, so each of them stays
+     * small enough to be compiled by JIT
+     */
+    private static final int RESOLVE_CONVERTER_CHUNK_SIZE = 64;
 
-    private final AtomicBoolean initialized = new AtomicBoolean(false);
+    private AtomicBoolean initialized = new AtomicBoolean(false);
 
     private JDefinedClass converterClazz;
     private JFieldVar cacheField;
-    private Map<JavaClass, JClass> converterInvokeList = new HashMap();
+    private JFieldVar convertersCacheField;
+    private JDefinedClass converterInvokeInterface;
+    private Map<JavaClass, JClass> converterInvokeList = new LinkedHashMap<JavaClass, JClass>();
+    private Map<String, ConverterGroup> converterGroups = new LinkedHashMap<String, ConverterGroup>();
 
     public GenJpaToDtoConverterMojo() {
         super("JPA to DTO conversion services generator", "", "", "");
@@ -73,6 +88,7 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
                 ._class( JMod.PUBLIC, CONVERTER_CLASS_NAME );
         this.converterClazz.annotate( codeModel.ref(SERVICE_ANNOTATION_CLASS_NAME) )
                 .param("value", "DtoConversionServiceImpl");
+        registerGeneratedClass( this.converterClazz.fullName() );
     }
     @Override
     protected void generateClass(JavaClass entityClazz) throws MojoExecutionException {
@@ -85,25 +101,90 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
     }
 
     @Override
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void prepareModel() throws MojoExecutionException {
+        if ( !CONVERTER_CLASSES_SINGLE.equals(converterClasses) && !CONVERTER_CLASSES_ENTITY.equals(converterClasses)
+                && !CONVERTER_CLASSES_PACKAGE.equals(converterClasses) ) {
+            throw new MojoExecutionException("Unsupported converter classes layout: " + converterClasses );
+        }
+
+        if ( parallelConversionThreshold > 0 && parallelConversionChunkSize < 1 ) {
+            throw new MojoExecutionException("Parallel conversion chunk size must be positive: "
+                    + parallelConversionChunkSize );
+        }
+
+        if ( parallelConversionThreshold > 0 && conversionContextEnabled ) {
+            throw new MojoExecutionException("Parallel conversion could not be used along with the conversion "
+                    + "context: chunks converted by other threads would not share its DTOs");
+        }
+
         try {
             init();
 
-            defineCacheField(converterClazz);
+            if ( !isSplitConverters() ) {
+                defineCacheField(converterClazz);
+            }
             generateTemplateConvertInvokeClass(converterClazz);
+            defineConvertersCacheField(converterClazz);
             generateConvertToIdsListMethod(converterClazz);
+            if ( profilingEnabled ) {
+                defineConversionMetrics(converterClazz);
+            }
+            if ( isParallelConversion() ) {
+                defineConversionExecutor(converterClazz);
+            }
             generateTemplateConvertMethod(converterClazz);
             generateTemplateListConvertMethod(converterClazz);
-
-            super.execute();
         } catch (JClassAlreadyExistsException e) {
             throw new MojoExecutionException( e.getMessage(), e );
         }
     }
 
+    @Override
+    protected AbstractEntityGeneratorMojo createWorker() {
+        GenJpaToDtoConverterMojo worker = (GenJpaToDtoConverterMojo) super.createWorker();
+        worker.initialized = new AtomicBoolean(false);
+        worker.converterClazz = null;
+        worker.cacheField = null;
+        worker.convertersCacheField = null;
+        worker.converterInvokeInterface = null;
+        worker.converterInvokeList = new LinkedHashMap<JavaClass, JClass>();
+        worker.converterGroups = new LinkedHashMap<String, ConverterGroup>();
+        return worker;
+    }
+
+    @Override
+    protected boolean isIncrementalSupported() {
+        return false;
+    }
+
+    @Override
+    protected void collectConfiguration( List<Object> values ) {
+        super.collectConfiguration( values );
+        values.add( jpaEntityInterface );
+        values.add( transactionalAnnotation );
+        values.add( profilingEnabled );
+        values.add( transactionAnnotationOnConverterMethods );
+        values.add( converterClasses );
+        values.add( conversionContextEnabled );
+        values.add( parallelConversionThreshold );
+        values.add( parallelConversionChunkSize );
+    }
+
     @Override
     protected void onExecutionFinished() {
-        defineConverterMethodsCache(converterClazz);
+        if ( isSplitConverters() ) {
+            defineConverterResolution(converterClazz);
+        } else {
+            defineConverterMethodsCache(converterClazz);
+        }
+    }
+
+    private boolean isSplitConverters() {
+        return !CONVERTER_CLASSES_SINGLE.equals(converterClasses);
+    }
+
+    private boolean isParallelConversion() {
+        return parallelConversionThreshold > 0;
     }
 
     protected void defineCacheField(JDefinedClass converterClazz) {
@@ -118,6 +199,35 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
         );
     }
 
+    /**
+     * Defines converters of the runtime classes: a class is resolved once to the converter of its nearest
+     * superclass having one (so subclasses and proxies of the entities are converted by the entity
+     * converters), then the resolved converter is kept by the class value
+     */
+    protected void defineConvertersCacheField(JDefinedClass converterClazz) {
+        JClass methodType = codeModel.ref(CONVERTER_INVOKE_TYPE_CLASS_NAME);
+        JClass cacheType = codeModel.ref(ClassValue.class).narrow(methodType);
+
+        JDefinedClass cacheClass = codeModel.anonymousClass(cacheType);
+        JMethod computeMethod = cacheClass.method(JMod.PROTECTED, methodType, "computeValue");
+        computeMethod.annotate(Override.class);
+        JVar typeParam = computeMethod.param(codeModel.ref(Class.class), "type");
+
+        JForLoop loop = computeMethod.body()._for();
+        JVar currentVar = loop.init(codeModel.ref(Class.class), "current", typeParam);
+        loop.test(currentVar.ne(JExpr._null()));
+        loop.update(currentVar.assign(currentVar.invoke("getSuperclass")));
+
+        JVar resultVar = loop.body().decl(methodType, "result", isSplitConverters() ?
+                JExpr.invoke(RESOLVE_CONVERTER_METHOD_NAME).arg(currentVar) :
+                cacheField.invoke("get").arg(currentVar));
+        loop.body()._if(resultVar.ne(JExpr._null()))._then()._return(resultVar);
+        computeMethod.body()._return(JExpr._null());
+
+        this.convertersCacheField = converterClazz.field(JMod.FINAL | JMod.PRIVATE, cacheType,
+                CONVERTERS_CACHE_FIELD_NAME, JExpr._new(cacheClass));
+    }
+
     protected void generateTemplateConvertInvokeClass( JDefinedClass converterClazz )
             throws JClassAlreadyExistsException {
         JDefinedClass converterInvokeClass =
@@ -127,10 +237,56 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
 
         converterInvokeClass.method(JMod.NONE, codeModel.ref("V"), "convert")
                 .param( codeModel.ref("T"), "arg");
+        this.converterInvokeInterface = converterInvokeClass;
+    }
+
+    /**
+     * Defines metrics of the conversion service, which are injected by Spring when a metrics bean
+     * is available
+     */
+    protected void defineConversionMetrics( JDefinedClass converterClazz ) {
+        JClass metricsType = codeModel.ref(CONVERSION_METRICS_CLASS_NAME);
+        JExpression noopMetrics = codeModel.ref(NOOP_CONVERSION_METRICS_CLASS_NAME).staticRef("INSTANCE");
+
+        JFieldVar metricsField = converterClazz.field( JMod.PRIVATE | JMod.VOLATILE, metricsType,
+                CONVERSION_METRICS_FIELD_NAME, noopMetrics );
+
+        JMethod getter = converterClazz.method( JMod.PUBLIC, metricsType, GET_CONVERSION_METRICS_METHOD_NAME );
+        getter.body()._return( metricsField );
+
+        JMethod setter = converterClazz.method( JMod.PUBLIC, codeModel.VOID,
+                generateSetterName(CONVERSION_METRICS_FIELD_NAME) );
+        setter.annotate( codeModel.ref(AUTOWIRED_ANNOTATION_CLASS_NAME) ).param("required", false);
+        JVar metricsParam = setter.param( metricsType, CONVERSION_METRICS_FIELD_NAME );
+        setter.body().assign( JExpr._this().ref(metricsField),
+                JOp.cond( metricsParam.eq( JExpr._null() ), noopMetrics, metricsParam ) );
+    }
+
+    /**
+     * Defines executor of the parallel conversions, which is injected by Spring when a bean named
+     * {@link #CONVERSION_EXECUTOR_BEAN_NAME} is available
+     */
+    protected void defineConversionExecutor( JDefinedClass converterClazz ) {
+        JClass executorType = codeModel.ref(Executor.class);
+        JExpression defaultExecutor = codeModel.ref(PARALLEL_CONVERSION_CLASS_NAME).staticInvoke("defaultExecutor");
+
+        JFieldVar executorField = converterClazz.field( JMod.PRIVATE | JMod.VOLATILE, executorType,
+                CONVERSION_EXECUTOR_FIELD_NAME, defaultExecutor );
+
+        JMethod getter = converterClazz.method( JMod.PUBLIC, executorType, GET_CONVERSION_EXECUTOR_METHOD_NAME );
+        getter.body()._return( executorField );
+
+        JMethod setter = converterClazz.method( JMod.PUBLIC, codeModel.VOID,
+                generateSetterName(CONVERSION_EXECUTOR_FIELD_NAME) );
+        setter.annotate( codeModel.ref(AUTOWIRED_ANNOTATION_CLASS_NAME) ).param("required", false);
+        setter.annotate( codeModel.ref(QUALIFIER_ANNOTATION_CLASS_NAME) ).param("value", CONVERSION_EXECUTOR_BEAN_NAME);
+        JVar executorParam = setter.param( executorType, CONVERSION_EXECUTOR_FIELD_NAME );
+        setter.body().assign( JExpr._this().ref(executorField),
+                JOp.cond( executorParam.eq( JExpr._null() ), defaultExecutor, executorParam ) );
     }
 
     protected void generateConvertToIdsListMethod( JDefinedClass converterClazz ) {
-        JMethod converterMethod = converterClazz.method(JMod.PRIVATE | JMod.STATIC,
+        JMethod converterMethod = converterClazz.method( ( isSplitConverters() ? JMod.NONE : JMod.PRIVATE ) | JMod.STATIC,
                 codeModel.ref(List.class).narrow(Long.class),
                 CONVERT_TO_IDS_LIST_METHOD_NAME );
         JClass entityTypeRef = codeModel.ref(jpaEntityInterface);
@@ -154,38 +310,33 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
     }
 
     protected void generateConverter( JavaClass entityClazz ) throws MojoExecutionException {
+        JClass entityClazzModel = codeModel.ref( entityClazz.getFullyQualifiedName() );
+        JClass dtoRef = codeModel.ref( getEntityModel(entityClazz).getDtoClassName() );
+
+        JDefinedClass targetClazz = converterClazz;
+        ConverterGroup group = null;
+        JExpression serviceRef = JExpr._this();
+        JInvocation idsListInvocation = JExpr._this().invoke(CONVERT_TO_IDS_LIST_METHOD_NAME);
         try {
-            generateConverterInvokeClass(converterClazz, entityClazz);
+            if ( isSplitConverters() ) {
+                group = getConverterGroup(entityClazz);
+                group.entities.add( entityClazz );
+                targetClazz = group.converterClass;
+                serviceRef = JExpr.refthis(SERVICE_FIELD_NAME);
+                idsListInvocation = converterClazz.staticInvoke(CONVERT_TO_IDS_LIST_METHOD_NAME);
+
+                JMethod delegateMethod = converterClazz.method(JMod.PUBLIC | JMod.FINAL, dtoRef, CONVERTER_METHOD_NAME);
+                JVar delegateParam = delegateMethod.param( entityClazzModel, "value" );
+                delegateMethod.body()._return( JExpr.invoke(group.getter).invoke(CONVERTER_METHOD_NAME).arg(delegateParam) );
+            }
+
+            generateConverterInvokeClass(targetClazz, entityClazz);
+            generateTypedListConvertMethod(converterClazz, entityClazz, group);
         } catch ( JClassAlreadyExistsException e ) {
             throw new MojoExecutionException( e.getMessage(), e );
         }
 
-        JClass entityClazzModel = codeModel.ref( entityClazz.getFullyQualifiedName() );
-        JClass dtoRef = codeModel.ref(
-            prepareClassName(
-                dtoPackage,
-                entityClazz.getFullyQualifiedName(),
-                DTO_GENERATOR_PREFIX,
-                DTO_GENERATOR_SUFFIX,
-                DTO_GENERATOR_POSTFIX
-            )
-        );
-
-        JMethod converterMethod = converterClazz.method(JMod.PUBLIC | JMod.FINAL,
-                codeModel.ref(prepareClassName(dtoPackage, entityClazz.getFullyQualifiedName(),
-                        DTO_GENERATOR_PREFIX, DTO_GENERATOR_SUFFIX, DTO_GENERATOR_POSTFIX)),
-                CONVERTER_METHOD_NAME);
-
-        JVar startedVar = null;
-        if ( profilingEnabled ) {
-            startedVar = converterMethod.body().decl(codeModel.ref("long"), "started", codeModel.ref("java.lang.System")
-                    .staticInvoke("currentTimeMillis"));
-            converterMethod.body().add(
-                    codeModel.ref("java.lang.System").staticRef("out").invoke("println").arg(
-                            entityClazzModel.dotclass().invoke("toString").invoke("concat").arg(" Method Invoked")
-                    )
-            );
-        }
+        JMethod converterMethod = targetClazz.method(JMod.PUBLIC | JMod.FINAL, dtoRef, CONVERTER_METHOD_NAME);
 
         JVar converterMethodParam = converterMethod.param( entityClazzModel, "value" );
         JBlock block = converterMethod.body();
@@ -193,7 +344,34 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
         block._if( converterMethodParam.eq( JExpr._null() ) )
                 ._then()._return( JExpr._null() );
 
+        JExpression entityIdExpr = JExpr._null();
+        if ( conversionContextEnabled ) {
+            block = enterConversionContext(block).body();
+            if ( hasLongId(entityClazz) ) {
+                entityIdExpr = block.decl( codeModel.ref(Long.class), "entityId", converterMethodParam.invoke("getId") );
+            }
+
+            JVar convertedVar = block.decl( dtoRef, "converted",
+                    JExpr.cast( dtoRef, JExpr.ref(CONVERSION_CONTEXT_VAR_NAME).invoke("get")
+                            .arg( entityClazzModel.dotclass() ).arg( converterMethodParam ).arg( entityIdExpr ) ) );
+            block._if( convertedVar.ne( JExpr._null() ) )._then()._return( convertedVar );
+        }
+
+        JVar metricsVar = null;
+        JVar startedVar = null;
+        JVar allocatedVar = null;
+        if ( profilingEnabled ) {
+            metricsVar = block.decl( codeModel.ref(CONVERSION_METRICS_CLASS_NAME), "metrics",
+                    serviceRef.invoke(GET_CONVERSION_METRICS_METHOD_NAME) );
+            startedVar = block.decl( codeModel.LONG, "started", metricsVar.invoke("startTime") );
+            allocatedVar = block.decl( codeModel.LONG, "allocated", metricsVar.invoke("allocatedBytes") );
+        }
+
         JVar dtoInstance = block.decl( dtoRef, "result", JExpr._new(dtoRef) );
+        if ( conversionContextEnabled ) {
+            block.add( JExpr.ref(CONVERSION_CONTEXT_VAR_NAME).invoke("put")
+                    .arg( entityClazzModel.dotclass() ).arg( converterMethodParam ).arg( entityIdExpr ).arg( dtoInstance ) );
+        }
 
         Set<CollectedJavaField> collectedFields = collectConvertibleFields(entityClazz);
         for ( CollectedJavaField collectedField : collectedFields ) {
@@ -244,7 +422,7 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
 
                         valueExpr = JExpr.cast(
                                 resultType,
-                                JExpr._this().invoke(CONVERTER_METHOD_NAME).arg(
+                                serviceRef.invoke(CONVERTER_METHOD_NAME).arg(
                                         converterMethodParam.invoke(getterName = generateGetterName(collectedField.name))
                                 )
                         );
@@ -269,7 +447,7 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
                 } else {
                     fieldName = collectedField.name + "Id";
 
-                    if (classMetaBuilder.getClassByName(collectedField.type.getFullyQualifiedName())
+                    if (getClassByName(collectedField.type.getFullyQualifiedName())
                             .isA(List.class.getCanonicalName()) ) {
                         resultType = codeModel.ref(List.class).narrow(Long.class);
                         isList = true;
@@ -285,7 +463,7 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
                             valueAccessInvocation.invoke(generateGetterName("id")),
                             JExpr._null()
                         ) :
-                        JExpr._this().invoke(CONVERT_TO_IDS_LIST_METHOD_NAME).arg( valueAccessInvocation );
+                        idsListInvocation.arg( valueAccessInvocation );
                 }
             } else  {
                 fieldName = collectedField.name;
@@ -344,7 +522,7 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
                             JOp.cond(
                                     npeCheckExpr,
                                     ((isConvertibleCollection || collectedField.isConvertible) ?
-                                            JExpr._this().invoke(CONVERTER_METHOD_NAME).arg(valueExpr)
+                                            serviceRef.invoke(CONVERTER_METHOD_NAME).arg(valueExpr)
                                             : valueExpr),
                                     JExpr._null()
                         )
@@ -366,46 +544,123 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
 
             JInvocation setterInvocation = dtoInstance.invoke( setterName );
             if ( collectedField.isConvertible ) {
-                getLog().info("Generation value setter for convertible field " + collectedField.name + " of type " + collectedField.type.getCanonicalName()
-                        + " = isEnum(" + collectedField.type.isEnum() + ") = annotations (" + collectedField.type.getAnnotations()
-                        + ") = synthetic(" + collectedField.isSynthetic + ") " +
-                        " = convertible( " + collectedField.isConvertible + ") = isArray(" + collectedField.isArray + ")" +
-                        " = parent ( " + collectedField.type.getFullyQualifiedName() + ")");
+                if ( getLog().isDebugEnabled() ) {
+                    getLog().debug("Generation value setter for convertible field " + collectedField.name + " of type " + collectedField.type.getCanonicalName()
+                            + " = isEnum(" + collectedField.type.isEnum() + ") = annotations (" + collectedField.type.getAnnotations()
+                            + ") = synthetic(" + collectedField.isSynthetic + ") " +
+                            " = convertible( " + collectedField.isConvertible + ") = isArray(" + collectedField.isArray + ")" +
+                            " = parent ( " + collectedField.type.getFullyQualifiedName() + ")");
+                }
                 JVar convertedValueVar = block.decl( resultType, fieldName + "Converted" )
                         .init( valueExpr );
 
                 block._if( JOp.not( convertedValueVar.eq(JExpr._null()) ) )
                         ._then().add( setterInvocation.arg(convertedValueVar) );
             } else {
-                getLog().info("Generation value setter for non-convertible field " + collectedField.name + " of type " + collectedField.type.getCanonicalName()
-                        + " = isEnum(" + collectedField.type.isEnum() + ") = annotations (" + collectedField.type.getAnnotations()
-                        + ") = synthetic(" + collectedField.isSynthetic + ") " +
-                        " = convertible( " + collectedField.isConvertible + ") = isArray(" + collectedField.isArray + ")" +
-                        " = parent ( " + collectedField.type.getSuperClass().getFullyQualifiedName() + ")");
+                if ( getLog().isDebugEnabled() ) {
+                    getLog().debug("Generation value setter for non-convertible field " + collectedField.name + " of type " + collectedField.type.getCanonicalName()
+                            + " = isEnum(" + collectedField.type.isEnum() + ") = annotations (" + collectedField.type.getAnnotations()
+                            + ") = synthetic(" + collectedField.isSynthetic + ") " +
+                            " = convertible( " + collectedField.isConvertible + ") = isArray(" + collectedField.isArray + ")" +
+                            " = parent ( " + collectedField.type.getSuperClass().getFullyQualifiedName() + ")");
+                }
                 block.add( setterInvocation.arg( valueExpr ) );
             }
         }
 
         if ( profilingEnabled ) {
-            converterMethod.body().add(
-                    codeModel.ref("java.lang.System").staticRef("out").invoke("println").arg(
-                            codeModel.ref("java.lang.String").staticInvoke("valueOf").arg(
-                                    codeModel.ref("java.lang.System").staticInvoke("currentTimeMillis").minus(startedVar)
-                            ).invoke("concat").arg(" ms")
-                    )
-            );
+            block.add( metricsVar.invoke("record")
+                    .arg( entityClazzModel.dotclass() ).arg( startedVar ).arg( allocatedVar ) );
         }
 
         block._return(dtoInstance);
     }
 
+    /**
+     * Converts the records by chunks of {@link #parallelConversionChunkSize} on the conversion executor
+     * when there are enough of them (and the entities can not be loaded lazily), each chunk is converted
+     * by the given list conversion method called by the chunk converter class
+     */
+    private void convertInParallel( JDefinedClass converterClazz, JBlock block, JMethod listMethod,
+                                    JVar recordsParam, JClass recordType, JClass resultType,
+                                    String chunkConverterName ) throws JClassAlreadyExistsException {
+        JClass parallelConversionType = codeModel.ref(PARALLEL_CONVERSION_CLASS_NAME);
+        JClass listType = codeModel.ref(List.class);
+
+        JDefinedClass chunkConverterClass = converterClazz._class( JMod.PRIVATE | JMod.FINAL,
+                    getNestedClassName( converterClazz, chunkConverterName ) )
+                ._implements( codeModel.ref(CHUNK_CONVERTER_CLASS_NAME).narrow(recordType).narrow(resultType) );
+        JMethod convertMethod = chunkConverterClass.method( JMod.PUBLIC, listType.narrow(resultType), "convert" );
+        convertMethod.annotate(Override.class);
+        JVar chunkParam = convertMethod.param( listType.narrow( recordType.wildcard() ), "chunk" );
+        convertMethod.body()._return( JExpr.invoke(listMethod).arg(chunkParam) );
+
+        JExpression result = parallelConversionType.staticInvoke("convert")
+                .arg( recordsParam )
+                .arg( JExpr.lit(parallelConversionChunkSize) )
+                .arg( JExpr.invoke(GET_CONVERSION_EXECUTOR_METHOD_NAME) )
+                .arg( JExpr._new(chunkConverterClass) );
+
+        block._if( parallelConversionType.staticInvoke("isParallel")
+                    .arg( recordsParam ).arg( JExpr.lit(parallelConversionThreshold) ) )
+                ._then()._return( listMethod.type().equals( listType.narrow(resultType) ) ? result :
+                    JExpr.cast( listMethod.type(), result ) );
+    }
+
+    /**
+     * @return given name, suffixed by a number when the outer class already has a nested class of
+     * this name (like the chunk converter of an entity named "List")
+     */
+    private String getNestedClassName( JDefinedClass outerClazz, String name ) {
+        Set<String> usedNames = new HashSet<String>();
+        Iterator<JDefinedClass> nestedClasses = outerClazz.classes();
+        while ( nestedClasses.hasNext() ) {
+            usedNames.add( nestedClasses.next().name() );
+        }
+
+        String result = name;
+        for ( int i = 1; usedNames.contains(result); i++ ) {
+            result = name + i;
+        }
+
+        return result;
+    }
+
+    /**
+     * Enters the conversion context in the given block, so shared entities of the conversions made
+     * by the returned try block are converted once
+     */
+    private JTryBlock enterConversionContext( JBlock block ) {
+        JVar contextVar = block.decl( codeModel.ref(CONVERSION_CONTEXT_CLASS_NAME), CONVERSION_CONTEXT_VAR_NAME,
+                codeModel.ref(CONVERSION_CONTEXT_CLASS_NAME).staticInvoke("enter") );
+        JTryBlock result = block._try();
+        result._finally().invoke( contextVar, "exit" );
+        return result;
+    }
+
+    /**
+     * @return true when the entity has an id getter of the Long type, so its conversions are matched by ids
+     */
+    private boolean hasLongId( JavaClass entityClazz ) {
+        for ( JavaClass type : getTypeIndex().getHierarchy(entityClazz) ) {
+            for ( JavaMethod method : type.getMethods() ) {
+                if ( "getId".equals( method.getName() ) && method.getParameters().isEmpty() ) {
+                    return Long.class.getName().equals( method.getReturnType().getFullyQualifiedName() );
+                }
+            }
+        }
+
+        return false;
+    }
+
     private void generateConverterInvokeClass(JDefinedClass converterClazz, JavaClass entityClazz) throws JClassAlreadyExistsException {
-        JClass dtoClassType = codeModel.ref(prepareClassName(dtoPackage, entityClazz.getFullyQualifiedName(),
-                DTO_GENERATOR_PREFIX, DTO_GENERATOR_SUFFIX, DTO_GENERATOR_POSTFIX));
+        JClass dtoClassType = codeModel.ref( getEntityModel(entityClazz).getDtoClassName() );
         JClass originalType = codeModel.ref( entityClazz.getFullyQualifiedName() );
+        JClass converterInvokeType = isSplitConverters() ?
+                converterInvokeInterface : codeModel.ref(CONVERTER_INVOKE_TYPE_CLASS_NAME);
         JDefinedClass converterInvokeClass =
                 converterClazz._class(JMod.PRIVATE | JMod.FINAL, entityClazz.getName() + "ConverterInvoke", ClassType.CLASS)
-                ._implements(codeModel.ref(CONVERTER_INVOKE_TYPE_CLASS_NAME)
+                ._implements(converterInvokeType
                         .narrow(originalType)
                         .narrow(dtoClassType));
 
@@ -420,9 +675,14 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
     }
 
     /**
+     * Generates conversion of the collections: converter is resolved once per a run of the records of
+     * the same class (so a homogeneous list is resolved once), records of the other types (e.g. nested
+     * collections) are converted by the generic method
+     *
      * @param converterClazz
      */
-    protected void generateTemplateListConvertMethod( JDefinedClass converterClazz ) {
+    protected void generateTemplateListConvertMethod( JDefinedClass converterClazz )
+            throws JClassAlreadyExistsException {
         JMethod method = converterClazz.method(
             JMod.PUBLIC,
             codeModel.ref(List.class).narrow( codeModel.ref("T") ),
@@ -447,21 +707,53 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
                         JExpr._new( codeModel.ref( IllegalStateException.class ) )
                         .arg("<null>") );
 
+        if ( isParallelConversion() ) {
+            convertInParallel( converterClazz, methodBody, method, methodParam, codeModel.ref(Object.class),
+                    codeModel.ref(Object.class), "ListChunkConverter" );
+        }
+
+        if ( conversionContextEnabled ) {
+            methodBody = enterConversionContext(methodBody).body();
+        }
+
         JVar result = methodBody.decl( codeModel.ref(List.class), "result")
-                .init( JExpr._new( codeModel.ref(ArrayList.class) ) );
+                .init( JExpr._new( codeModel.ref(ArrayList.class) ).arg( methodParam.invoke("size") ) );
+        JVar lastTypeVar = methodBody.decl( codeModel.ref(Class.class), "lastType", JExpr._null() );
+        JVar converterVar = methodBody.decl( codeModel.ref(CONVERTER_INVOKE_TYPE_CLASS_NAME), "converter",
+                JExpr._null() );
+
         JForEach recordsIterator = methodBody.forEach(
                 codeModel.ref(Object.class), "record", methodParam );
-        recordsIterator.body()
-                ._if( recordsIterator.var().eq( JExpr._null() ) )
+        JBlock loopBody = recordsIterator.body();
+        loopBody._if( recordsIterator.var().eq( JExpr._null() ) )
                     ._then()
                         ._continue();
-        recordsIterator.body()
-            .invoke( result, "add" )
+
+        JBlock resolveBlock = loopBody._if( recordsIterator.var().invoke("getClass").ne( lastTypeVar ) )._then();
+        resolveBlock.assign( lastTypeVar, recordsIterator.var().invoke("getClass") );
+        resolveBlock.assign( converterVar, convertersCacheField.invoke("get").arg( lastTypeVar ) );
+
+        JBlock genericBlock = loopBody._if( converterVar.eq( JExpr._null() ) )._then();
+        genericBlock.invoke( result, "add" )
                 .arg(
                     JExpr._this()
                          .invoke(CONVERTER_METHOD_NAME)
                          .arg( recordsIterator.var() )
                 );
+        genericBlock._continue();
+
+        JTryBlock convertBlock = loopBody._try();
+        convertBlock.body().invoke( result, "add" )
+                .arg( converterVar.invoke("convert").arg( recordsIterator.var() ) );
+
+        JCatchBlock convertBlockCatch = convertBlock._catch( codeModel.ref(Exception.class) );
+        JVar param = convertBlockCatch.param("e");
+        convertBlockCatch.body()
+            ._throw(
+                JExpr._new( codeModel.ref(IllegalStateException.class) )
+                    .arg( param.invoke("getMessage") )
+                    .arg( param )
+            );
 
         methodBody._return(
             JExpr.cast(
@@ -471,23 +763,95 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
         );
     }
 
+    /**
+     * Generates conversion of a list of the entity records: records of the entity class itself are
+     * converted by its converter directly, the converter of the subclasses (and proxies) records is
+     * resolved once per run of records of the same class
+     */
+    protected void generateTypedListConvertMethod( JDefinedClass converterClazz, JavaClass entityClazz,
+                                                   ConverterGroup group ) throws JClassAlreadyExistsException {
+        JClass entityClazzModel = codeModel.ref( entityClazz.getFullyQualifiedName() );
+        JClass dtoRef = codeModel.ref( getEntityModel(entityClazz).getDtoClassName() );
+
+        JMethod method = converterClazz.method( JMod.PUBLIC | JMod.FINAL, codeModel.ref(List.class).narrow(dtoRef),
+                "convert" + entityClazz.getName() + "ToDtoList" );
+
+        if ( transactionAnnotationOnConverterMethods ) {
+            method.annotate(codeModel.ref(transactionalAnnotation));
+        }
+
+        JVar methodParam = method.param( codeModel.ref(Collection.class).narrow( entityClazzModel.wildcard() ),
+                "records" );
+
+        JBlock methodBody = method.body();
+        methodBody._if( methodParam.eq( JExpr._null() ) )
+                ._then()
+                    ._throw(
+                        JExpr._new( codeModel.ref( IllegalStateException.class ) )
+                        .arg("<null>") );
+
+        if ( isParallelConversion() ) {
+            convertInParallel( converterClazz, methodBody, method, methodParam, entityClazzModel, dtoRef,
+                    entityClazz.getName() + "ChunkConverter" );
+        }
+
+        if ( conversionContextEnabled ) {
+            methodBody = enterConversionContext(methodBody).body();
+        }
+
+        JVar result = methodBody.decl( codeModel.ref(List.class).narrow(dtoRef), "result",
+                JExpr._new( codeModel.ref(ArrayList.class).narrow(dtoRef) ).arg( methodParam.invoke("size") ) );
+        JExpression converterRef = group == null ? JExpr._this() :
+                methodBody.decl( group.converterClass, "converter", JExpr.invoke(group.getter) );
+
+        JVar lastTypeVar = methodBody.decl( codeModel.ref(Class.class), "lastType", JExpr._null() );
+        JVar converterVar = methodBody.decl( codeModel.ref(CONVERTER_INVOKE_TYPE_CLASS_NAME), "converterInvoke",
+                JExpr._null() );
+
+        JForEach recordsIterator = methodBody.forEach( entityClazzModel, "record", methodParam );
+        JBlock loopBody = recordsIterator.body();
+        loopBody._if( recordsIterator.var().eq( JExpr._null() ) )
+                    ._then()
+                        ._continue();
+
+        JBlock exactBlock = loopBody._if( recordsIterator.var().invoke("getClass").eq( entityClazzModel.dotclass() ) )
+                ._then();
+        exactBlock.invoke( result, "add" )
+                .arg( converterRef.invoke(CONVERTER_METHOD_NAME).arg( recordsIterator.var() ) );
+        exactBlock._continue();
+
+        JBlock resolveBlock = loopBody._if( recordsIterator.var().invoke("getClass").ne( lastTypeVar ) )._then();
+        resolveBlock.assign( lastTypeVar, recordsIterator.var().invoke("getClass") );
+        resolveBlock.assign( converterVar, convertersCacheField.invoke("get").arg( lastTypeVar ) );
+
+        JBlock genericBlock = loopBody._if( converterVar.eq( JExpr._null() ) )._then();
+        genericBlock.invoke( result, "add" )
+                .arg( JExpr.cast( dtoRef, JExpr._this().invoke(CONVERTER_METHOD_NAME)
+                        .arg( JExpr.cast( codeModel.ref(Object.class), recordsIterator.var() ) ) ) );
+        genericBlock._continue();
+
+        JTryBlock convertBlock = loopBody._try();
+        convertBlock.body().invoke( result, "add" )
+                .arg( JExpr.cast( dtoRef, converterVar.invoke("convert").arg( recordsIterator.var() ) ) );
+
+        JCatchBlock convertBlockCatch = convertBlock._catch( codeModel.ref(Exception.class) );
+        JVar param = convertBlockCatch.param("e");
+        convertBlockCatch.body()
+            ._throw(
+                JExpr._new( codeModel.ref(IllegalStateException.class) )
+                    .arg( param.invoke("getMessage") )
+                    .arg( param )
+            );
+
+        methodBody._return( result );
+    }
+
     protected void generateTemplateConvertMethod( JDefinedClass converterClazz ) {
         JMethod method = converterClazz.method(JMod.PUBLIC, codeModel.ref("T"), "convertToDto");
         JTypeVar typeVar = method.generify("T");
 
         JVar methodParam = method.param( codeModel.ref(Object.class), "value" );
 
-        JVar startedVar = null;
-        if ( profilingEnabled ) {
-            startedVar = method.body().decl(codeModel.ref("long"), "started", codeModel.ref("java.lang.System")
-                    .staticInvoke("currentTimeMillis"));
-            method.body().add(
-                    codeModel.ref("java.lang.System").staticRef("out").invoke("println").arg(
-                            methodParam.invoke("getClass").invoke("toString").invoke("concat").arg(" Method Invoked")
-                    )
-            );
-        }
-
         method.body()._if( methodParam.eq( JExpr._null() ) )
             ._then()
                 ._return(JExpr._null());
@@ -505,13 +869,13 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
         JVar methodDeclaration = method.body().decl(
                 codeModel.ref(CONVERTER_INVOKE_TYPE_CLASS_NAME),
                 "converter",
-                cacheField.invoke("get").arg( methodParam.invoke("getClass") ) );
+                convertersCacheField.invoke("get").arg( methodParam.invoke("getClass") ) );
         method.body()._if(
             methodDeclaration.eq( JExpr._null() ) )
                 ._then()._throw(
                     JExpr._new( codeModel.ref(IllegalStateException.class) )
-                        .arg( String.format(CONVERSATION_METHOD_NOT_FOUND_EXCEPTION,
-                                methodParam.invoke("getClass").invoke("getCanonicalName") ) )
+                        .arg( JExpr.lit(CONVERSATION_METHOD_NOT_FOUND_EXCEPTION)
+                                .plus( methodParam.invoke("getClass").invoke("getCanonicalName") ) )
                 );
 
         JTryBlock convertBlock = method.body()._try();
@@ -520,16 +884,6 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
                     .arg(methodParam))
         );
 
-        if ( profilingEnabled ) {
-            convertBlock.body().add(
-                    codeModel.ref("java.lang.System").staticRef("out").invoke("println").arg(
-                            codeModel.ref("java.lang.String").staticInvoke("valueOf").arg(
-                                    codeModel.ref("java.lang.System").staticInvoke("currentTimeMillis").minus(startedVar)
-                            ).invoke("concat").arg(" ms")
-                    )
-            );
-        }
-
         convertBlock.body()._return( resultVar );
 
         JCatchBlock covertBlockCatch = convertBlock._catch( codeModel.ref(Exception.class) );
@@ -552,6 +906,123 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
         }
     }
 
+    /**
+     * @return converter class of the entity for the split layout, created on the first request
+     */
+    private ConverterGroup getConverterGroup( JavaClass entityClazz ) throws JClassAlreadyExistsException {
+        String key = CONVERTER_CLASSES_ENTITY.equals(converterClasses) ?
+                entityClazz.getFullyQualifiedName() : entityClazz.getPackageName();
+        ConverterGroup group = converterGroups.get( key );
+        if ( group != null ) {
+            return group;
+        }
+
+        String baseName;
+        if ( CONVERTER_CLASSES_ENTITY.equals(converterClasses) ) {
+            baseName = entityClazz.getName();
+        } else {
+            String packageName = entityClazz.getPackageName();
+            baseName = StringUtils.ucfirst( packageName.substring( packageName.lastIndexOf('.') + 1 ) );
+        }
+
+        String className = baseName + CONVERTER_CLASS_POSTFIX;
+        for ( int i = 2; isConverterClassNameUsed( className ); i++ ) {
+            className = baseName + i + CONVERTER_CLASS_POSTFIX;
+        }
+
+        JDefinedClass groupClass = codeModel._package(convertersPackage)._class( JMod.FINAL, className );
+        registerGeneratedClass( groupClass.fullName() );
+
+        JFieldVar serviceField = groupClass.field( JMod.PRIVATE | JMod.FINAL, converterClazz, SERVICE_FIELD_NAME );
+        JMethod constructor = groupClass.constructor( JMod.NONE );
+        constructor.body().assign( JExpr.refthis(SERVICE_FIELD_NAME), constructor.param( converterClazz, SERVICE_FIELD_NAME ) );
+
+        // converters are stateless, so a concurrent creation only costs an extra instance
+        String instanceFieldName = StringUtils.lcfirst( className );
+        JFieldVar instanceField = converterClazz.field( JMod.PRIVATE | JMod.VOLATILE, groupClass, instanceFieldName );
+        JMethod getter = converterClazz.method( JMod.PRIVATE, groupClass, generateGetterName(instanceFieldName) );
+        JVar instanceVar = getter.body().decl( groupClass, "result", instanceField );
+        JBlock createBlock = getter.body()._if( instanceVar.eq( JExpr._null() ) )._then();
+        createBlock.assign( instanceVar, JExpr._new(groupClass).arg( JExpr._this() ) );
+        createBlock.assign( instanceField, instanceVar );
+        getter.body()._return( instanceVar );
+
+        group = new ConverterGroup( groupClass, getter );
+        converterGroups.put( key, group );
+        return group;
+    }
+
+    private boolean isConverterClassNameUsed( String className ) {
+        if ( className.equals( converterClazz.name() ) ) {
+            return true;
+        }
+
+        for ( ConverterGroup group : converterGroups.values() ) {
+            if ( group.converterClass.name().equals( className ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Defines resolution of the converters by the entity classes for the split layout: each converter
+     * class resolves its entities, conversion service resolves the converter class (split into the
+     * methods of {@link #RESOLVE_CONVERTER_CHUNK_SIZE} entities)
+     */
+    protected void defineConverterResolution( JDefinedClass converterClazz ) {
+        JClass converterInvokeType = codeModel.ref(CONVERTER_INVOKE_TYPE_CLASS_NAME);
+
+        List<JMethod> chunks = new ArrayList<JMethod>();
+        JBlock chunkBlock = null;
+        JVar chunkParam = null;
+        int chunkSize = 0;
+        for ( ConverterGroup group : converterGroups.values() ) {
+            JMethod resolveMethod = group.converterClass.method( JMod.NONE, converterInvokeInterface,
+                    GET_CONVERTER_INVOKE_METHOD_NAME );
+            JVar typeParam = resolveMethod.param( codeModel.ref(Class.class), "type" );
+            for ( JavaClass entityClazz : group.entities ) {
+                JClass entityType = codeModel.ref( entityClazz.getFullyQualifiedName() );
+                resolveMethod.body()._if( typeParam.eq( entityType.dotclass() ) )
+                        ._then()._return( JExpr._new( converterInvokeList.get(entityClazz) ) );
+
+                if ( chunkBlock == null || chunkSize == RESOLVE_CONVERTER_CHUNK_SIZE ) {
+                    JMethod chunk = converterClazz.method( JMod.PRIVATE, converterInvokeType,
+                            RESOLVE_CONVERTER_METHOD_NAME + chunks.size() );
+                    chunkParam = chunk.param( codeModel.ref(Class.class), "type" );
+                    chunkBlock = chunk.body();
+                    chunks.add( chunk );
+                    chunkSize = 0;
+                }
+
+                chunkBlock._if( chunkParam.eq( entityType.dotclass() ) )
+                        ._then()._return( JExpr.invoke(group.getter).invoke(GET_CONVERTER_INVOKE_METHOD_NAME).arg(chunkParam) );
+                chunkSize++;
+            }
+            resolveMethod.body()._return( JExpr._null() );
+        }
+
+        for ( JMethod chunk : chunks ) {
+            chunk.body()._return( JExpr._null() );
+        }
+
+        JMethod resolveMethod = converterClazz.method( JMod.PRIVATE, converterInvokeType, RESOLVE_CONVERTER_METHOD_NAME );
+        JVar typeParam = resolveMethod.param( codeModel.ref(Class.class), "type" );
+        if ( chunks.isEmpty() ) {
+            resolveMethod.body()._return( JExpr._null() );
+            return;
+        }
+
+        JVar resultVar = resolveMethod.body().decl( converterInvokeType, "result",
+                JExpr.invoke( chunks.get(0) ).arg(typeParam) );
+        for ( JMethod chunk : chunks.subList( 1, chunks.size() ) ) {
+            resolveMethod.body()._if( resultVar.eq( JExpr._null() ) )
+                    ._then().assign( resultVar, JExpr.invoke(chunk).arg(typeParam) );
+        }
+        resolveMethod.body()._return( resultVar );
+    }
+
     protected boolean isConvertibleField( JavaClass type ) {
         return !this.isSimpleType(type) && !type.isEnum() && !hasAnnotation(type, DTO_EXCLUDE_ANNOTATION_CLASS_NAME);
     }
@@ -563,7 +1034,7 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
 
     protected Set<CollectedJavaField> collectConvertibleFields(JavaClass javaClass) {
         Set<JavaField> fields = super.collectAllFields(javaClass);
-        Set<CollectedJavaField> result = new HashSet<CollectedJavaField>();
+        Set<CollectedJavaField> result = new LinkedHashSet<CollectedJavaField>();
         for ( JavaField field : fields ) {
             if ( field.isStatic() && skipStaticFields ) {
                 continue;
@@ -585,24 +1056,12 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
     }
 
     protected Collection<CollectedJavaField> collectSyntheticFields( JavaClass javaClass ) {
-        Collection<CollectedJavaField> result = new HashSet<CollectedJavaField>();
+        Collection<CollectedJavaField> result = new LinkedHashSet<CollectedJavaField>();
 
         JavaClass parent = javaClass;
         while ( parent != null ) {
-            for ( JavaAnnotation annotation : parent.getAnnotations() ) {
-                if ( !isA(annotation.getType(),
-                        DTO_EXTENDS_ANNOTATION_CLASS_NAME) ) {
-                    continue;
-                }
-
-                Object value = annotation.getNamedParameter("value");
-                if ( value instanceof List ) {
-                    for ( JavaAnnotation paramAnnotation : (List<JavaAnnotation>) value ) {
-                        result.add( collectSyntheticField(javaClass, paramAnnotation) );
-                    }
-                } else {
-                    result.add(collectSyntheticField(javaClass, value));
-                }
+            for ( ExtensionField field : getEntityModel(parent).getExtensionFields() ) {
+                result.add( collectSyntheticField( field ) );
             }
 
             parent = parent.getSuperJavaClass();
@@ -611,28 +1070,28 @@ public class GenJpaToDtoConverterMojo extends AbstractGeneratorMojo {
         return result;
     }
 
-    protected CollectedJavaField collectSyntheticField(JavaClass javaClass, Object value) {
-        JavaClass fieldType = classMetaBuilder.getClassByName(
-            normalizeAnnotationValue(
-                (String) ((JavaAnnotation) value).getNamedParameter("type")
-            )
-        );
-        String fieldName = normalizeAnnotationValue(
-            (String) ((JavaAnnotation) value).getNamedParameter("value")
-        );
-        boolean isEnum = Boolean.valueOf(normalizeAnnotationValue(
-                (String) ((JavaAnnotation) value).getNamedParameter("isEnum")
-        ));
-
-        return new CollectedJavaField((JavaAnnotation)value,
-            fieldType, fieldName,
-            ((JavaAnnotation) value).getNamedParameter("isArray") != null
-                    && ((JavaAnnotation) value).getNamedParameter("isArray").equals("true"),
-            !isEnum && isConvertibleField(fieldType),
+    protected CollectedJavaField collectSyntheticField( ExtensionField field ) {
+        JavaClass fieldType = getClassByName( field.getType() );
+
+        return new CollectedJavaField(field.getAnnotation(),
+            fieldType, field.getName(),
+            field.isArray(),
+            !field.isEnum() && isConvertibleField(fieldType),
             true,
             new JavaAnnotation[] {});
     }
 
+    private static class ConverterGroup {
+        final JDefinedClass converterClass;
+        final JMethod getter;
+        final List<JavaClass> entities = new ArrayList<JavaClass>();
+
+        public ConverterGroup( JDefinedClass converterClass, JMethod getter ) {
+            this.converterClass = converterClass;
+            this.getter = getter;
+        }
+    }
+
     class CollectedJavaField {
         final boolean isSynthetic;
         final boolean isConvertible;
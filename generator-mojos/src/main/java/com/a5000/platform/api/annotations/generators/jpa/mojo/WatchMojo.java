@@ -0,0 +1,267 @@
+package com.a5000.platform.api.annotations.generators.jpa.mojo;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Long-running variant of gen-all: after the initial generation watches the source trees (or the
+ * entity classes roots) and re-runs the generators on every change until interrupted.
+ *
+ * Project class loader and classpath index are kept for the whole session, archives opened by the
+ * class loader are closed after each regeneration. QDox could not replace
+ * already resolved classes of a model, so the model is rebuilt on each change with only the changed
+ * sources re-parsed on top of the sources model snapshot, and only the entities which fingerprints
+ * have been changed are regenerated (with incremental generation enabled). Class files compiled
+ * by the goal itself are not treated as changes.
+ */
+@Mojo( name = "watch", threadSafe = true )
+public class WatchMojo extends GenAllMojo {
+
+    private static final String SOURCE_FILE_EXTENSION = ".java";
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    /**
+     * Time (in milliseconds) to wait for the subsequent changes before the regeneration, so a batch
+     * of files saved by an IDE is processed at once
+     */
+    @Parameter( property = "watchDelay", defaultValue = "200" )
+    private Integer watchDelay = 200;
+
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+    private ClassLoader projectClassLoader;
+
+    private Path excludedDirectory;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch ( IOException e ) {
+            throw new MojoExecutionException("Failed to start file system watcher", e );
+        }
+
+        try {
+            Collection<File> roots = getWatchedRoots();
+            excludedDirectory = getExcludedDirectory( roots );
+            for ( File root : roots ) {
+                if ( root.isDirectory() ) {
+                    register( watchService, root.toPath() );
+                }
+            }
+
+            regenerate();
+            getLog().info("Watching " + roots + " for changes...");
+
+            while ( !Thread.currentThread().isInterrupted() ) {
+                Set<File> changedFiles = new LinkedHashSet<File>();
+                boolean overflow = awaitChanges( watchService, changedFiles );
+                if ( !overflow && changedFiles.isEmpty() ) {
+                    continue;
+                }
+
+                getLog().info( ( overflow ? "Too many" : String.valueOf( changedFiles.size() ) )
+                        + " files changed, regenerating..." );
+                invalidateSources( overflow ? null : changedFiles );
+                regenerate();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } catch ( ClosedWatchServiceException e ) {
+            // stopped by closing the watcher
+        } catch ( IOException e ) {
+            throw new MojoExecutionException("Failed to watch source trees", e );
+        } finally {
+            try {
+                watchService.close();
+            } catch ( IOException e ) {
+                getLog().warn("Failed to stop file system watcher: " + e.getMessage() );
+            }
+        }
+
+        getLog().info("Watching stopped");
+    }
+
+    /**
+     * Generation failures (e.g. a source which is being edited is not parsable yet) are reported
+     * without stopping the watcher
+     */
+    private void regenerate() {
+        long startTime = System.nanoTime();
+        try {
+            super.execute();
+            getLog().info("Generation finished in "
+                    + TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime ) + " ms");
+        } catch ( MojoExecutionException e ) {
+            reportFailure( e );
+        } catch ( MojoFailureException e ) {
+            reportFailure( e );
+        } catch ( RuntimeException e ) {
+            reportFailure( e );
+        }
+    }
+
+    /**
+     * Stopping the watcher interrupts the regeneration in progress, which is not a failure
+     */
+    private void reportFailure( Exception e ) {
+        if ( isInterruption( e ) ) {
+            Thread.currentThread().interrupt();
+            getLog().debug("Generation interrupted", e );
+        } else {
+            getLog().error("Generation failed: " + e.getMessage(), e );
+        }
+    }
+
+    private static boolean isInterruption( Throwable error ) {
+        for ( Throwable cause = error; cause != null; cause = cause.getCause() ) {
+            if ( cause instanceof InterruptedException || cause instanceof ClosedByInterruptException ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Blocks until the first change and collects the changes which follow it within {@link #watchDelay}
+     *
+     * @return true when some events have been lost and any file could be changed
+     */
+    private boolean awaitChanges( WatchService watchService, Set<File> changedFiles )
+            throws InterruptedException, IOException {
+        boolean overflow = false;
+        WatchKey key = watchService.take();
+        while ( key != null ) {
+            Path directory = directories.get( key );
+            for ( WatchEvent<?> event : key.pollEvents() ) {
+                if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                    overflow = true;
+                    continue;
+                }
+
+                if ( directory == null ) {
+                    continue;
+                }
+
+                Path path = directory.resolve( (Path) event.context() );
+                if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path) ) {
+                    changedFiles.addAll( register( watchService, path ) );
+                } else if ( isWatchedFile(path) && !getCompiledClassFiles().contains( path.toFile() ) ) {
+                    changedFiles.add( path.toFile() );
+                }
+            }
+
+            if ( !key.reset() ) {
+                directories.remove( key );
+            }
+
+            key = watchService.poll( watchDelay, TimeUnit.MILLISECONDS );
+        }
+
+        return overflow;
+    }
+
+    /**
+     * Registers the given directory and all its subdirectories
+     *
+     * @return watched files found in the registered directories
+     */
+    private List<File> register( final WatchService watchService, Path root ) throws IOException {
+        final List<File> result = new ArrayList<File>();
+        Files.walkFileTree( root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory( Path directory, BasicFileAttributes attributes )
+                    throws IOException {
+                if ( directory.equals( excludedDirectory ) ) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                directories.put( directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE ), directory );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) {
+                if ( isWatchedFile(file) ) {
+                    result.add( file.toFile() );
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return result;
+    }
+
+    private boolean isWatchedFile( Path path ) {
+        return path.getFileName().toString().endsWith(
+                isBytecodeModel() ? CLASS_FILE_EXTENSION : SOURCE_FILE_EXTENSION );
+    }
+
+    /**
+     * @return entity classes roots directories in the bytecode mode or the parsed source trees otherwise
+     */
+    private Collection<File> getWatchedRoots() {
+        return isBytecodeModel() ? getEntityClassesRoots() : getSourceTrees();
+    }
+
+    /**
+     * @return output directory when it is not an ancestor of the watched roots, so the generated
+     * sources do not trigger the regeneration
+     */
+    private Path getExcludedDirectory( Collection<File> roots ) {
+        Path result = new File( outputPath ).getAbsoluteFile().toPath().normalize();
+        for ( File root : roots ) {
+            if ( root.toPath().normalize().startsWith( result ) ) {
+                return null;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Project class loader is created once per session, changes of the project dependencies
+     * require the goal restart
+     */
+    @Override
+    protected ClassLoader getProjectClassLoader()
+            throws DependencyResolutionRequiredException, MalformedURLException {
+        if ( projectClassLoader == null ) {
+            projectClassLoader = super.getProjectClassLoader();
+        }
+
+        return projectClassLoader;
+    }
+
+}
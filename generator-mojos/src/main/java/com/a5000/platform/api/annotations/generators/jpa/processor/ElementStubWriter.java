@@ -0,0 +1,408 @@
+package com.a5000.platform.api.annotations.generators.jpa.processor;
+
+import com.a5000.platform.api.annotations.generators.jpa.bytecode.StubSourceWriter;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.SimpleAnnotationValueVisitor8;
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Renders a type element of the compilation as a declarations-only Java source (a stub), so it could be
+ * added to the sources model as if it were parsed from the original source. Annotations are rendered
+ * with the explicitly specified values only; bodies of the methods are taken from the {@link BodyReader}
+ * when it knows them, or replaced by {@link StubSourceWriter#STUB_BODY}.
+ */
+public class ElementStubWriter {
+
+    private static final String INDENT = "    ";
+    private static final String OBJECT_CLASS = "java.lang.Object";
+
+    private static final Set<String> SOURCE_MODIFIERS = new HashSet<String>( Arrays.asList(
+            "public", "protected", "private", "abstract", "static", "final", "transient", "volatile",
+            "synchronized", "native", "strictfp", "default" ) );
+
+    /**
+     * Source of the methods bodies, e.g. the compiler syntax trees
+     */
+    public interface BodyReader {
+
+        /**
+         * @return body of the method with the enclosing braces or null when it is not available
+         */
+        String getBody( ExecutableElement method );
+
+    }
+
+    private final Map<String, String> imports = new TreeMap<String, String>();
+    private final StringBuilder builder = new StringBuilder();
+    private final BodyReader bodyReader;
+    private final String simpleName;
+
+    private final SimpleAnnotationValueVisitor8<Void, Void> valueWriter = new SimpleAnnotationValueVisitor8<Void, Void>() {
+        @Override
+        public Void visitBoolean( boolean value, Void parameter ) {
+            builder.append(value);
+            return null;
+        }
+
+        @Override
+        public Void visitChar( char value, Void parameter ) {
+            builder.append( StubSourceWriter.quote(value) );
+            return null;
+        }
+
+        @Override
+        public Void visitDouble( double value, Void parameter ) {
+            builder.append( StubSourceWriter.toLiteral( value, "java.lang.Double", "d" ) );
+            return null;
+        }
+
+        @Override
+        public Void visitFloat( float value, Void parameter ) {
+            builder.append( StubSourceWriter.toLiteral( value, "java.lang.Float", "f" ) );
+            return null;
+        }
+
+        @Override
+        public Void visitLong( long value, Void parameter ) {
+            builder.append(value).append('L');
+            return null;
+        }
+
+        @Override
+        public Void visitString( String value, Void parameter ) {
+            builder.append( StubSourceWriter.quote(value) );
+            return null;
+        }
+
+        @Override
+        public Void visitType( TypeMirror type, Void parameter ) {
+            builder.append( toSourceName(type) ).append(".class");
+            return null;
+        }
+
+        @Override
+        public Void visitEnumConstant( VariableElement constant, Void parameter ) {
+            TypeElement enumType = (TypeElement) constant.getEnclosingElement();
+            TypeElement topLevelType = enumType;
+            while ( topLevelType.getEnclosingElement() instanceof TypeElement ) {
+                topLevelType = (TypeElement) topLevelType.getEnclosingElement();
+            }
+
+            builder.append( StubSourceWriter.importName( imports, topLevelType.getQualifiedName().toString(),
+                    enumType.getQualifiedName().toString(), simpleName ) )
+                    .append('.').append( constant.getSimpleName() );
+            return null;
+        }
+
+        @Override
+        public Void visitAnnotation( AnnotationMirror annotation, Void parameter ) {
+            writeAnnotation( annotation );
+            return null;
+        }
+
+        @Override
+        public Void visitArray( List<? extends AnnotationValue> values, Void parameter ) {
+            builder.append("{");
+            for ( int i = 0; i < values.size(); i++ ) {
+                builder.append( i == 0 ? " " : ", " );
+                values.get(i).accept( this, null );
+            }
+            builder.append( values.isEmpty() ? "}" : " }" );
+            return null;
+        }
+
+        @Override
+        protected Void defaultAction( Object value, Void parameter ) {
+            // byte, short and int values
+            builder.append(value);
+            return null;
+        }
+    };
+
+    private ElementStubWriter( BodyReader bodyReader, String simpleName ) {
+        this.bodyReader = bodyReader;
+        this.simpleName = simpleName;
+    }
+
+    /**
+     * @param element top-level type
+     * @param bodyReader source of the methods bodies, could be null
+     */
+    public static String write( TypeElement element, BodyReader bodyReader ) {
+        ElementStubWriter writer = new ElementStubWriter( bodyReader, element.getSimpleName().toString() );
+        writer.writeType( element, "" );
+
+        StringBuilder header = new StringBuilder();
+        Element enclosingElement = element.getEnclosingElement();
+        if ( enclosingElement instanceof PackageElement && !( (PackageElement) enclosingElement ).isUnnamed() ) {
+            header.append("package ").append( ( (PackageElement) enclosingElement ).getQualifiedName() )
+                    .append(";\n\n");
+        }
+
+        return header.append( StubSourceWriter.writeImports( writer.imports ) ).append( writer.builder ).toString();
+    }
+
+    private void writeType( TypeElement element, String indent ) {
+        ElementKind kind = element.getKind();
+        boolean isInterface = kind == ElementKind.INTERFACE || kind == ElementKind.ANNOTATION_TYPE;
+        boolean isEnum = kind == ElementKind.ENUM;
+
+        writeAnnotations( element.getAnnotationMirrors(), indent );
+        builder.append(indent);
+        Set<Modifier> modifiers = new HashSet<Modifier>( element.getModifiers() );
+        if ( isInterface || isEnum ) {
+            modifiers.remove( Modifier.ABSTRACT );
+            modifiers.remove( Modifier.FINAL );
+        }
+        writeModifiers( modifiers );
+
+        if ( kind == ElementKind.ANNOTATION_TYPE ) {
+            builder.append("@interface ");
+        } else if ( isInterface ) {
+            builder.append("interface ");
+        } else if ( isEnum ) {
+            builder.append("enum ");
+        } else {
+            builder.append("class ");
+        }
+        builder.append( element.getSimpleName() );
+        writeTypeParameters( element.getTypeParameters(), "" );
+
+        TypeMirror superclass = element.getSuperclass();
+        if ( !isInterface && !isEnum && superclass.getKind() == TypeKind.DECLARED
+                && !OBJECT_CLASS.equals( toSourceName(superclass) ) ) {
+            builder.append(" extends ").append( toSourceName(superclass) );
+        }
+
+        if ( kind != ElementKind.ANNOTATION_TYPE ) {
+            String separator = isInterface ? " extends " : " implements ";
+            for ( TypeMirror interfaceType : element.getInterfaces() ) {
+                builder.append(separator).append( toSourceName(interfaceType) );
+                separator = ", ";
+            }
+        }
+        builder.append(" {\n");
+
+        String memberIndent = indent + INDENT;
+        if ( isEnum ) {
+            String separator = "";
+            for ( Element member : element.getEnclosedElements() ) {
+                if ( member.getKind() == ElementKind.ENUM_CONSTANT ) {
+                    builder.append(separator);
+                    writeAnnotations( member.getAnnotationMirrors(), memberIndent );
+                    builder.append(memberIndent).append( member.getSimpleName() );
+                    separator = ",\n";
+                }
+            }
+            builder.append(";\n");
+        }
+
+        for ( Element member : element.getEnclosedElements() ) {
+            if ( member.getKind() == ElementKind.FIELD ) {
+                writeAnnotations( member.getAnnotationMirrors(), memberIndent );
+                builder.append(memberIndent);
+                if ( !isInterface ) {
+                    writeModifiers( member.getModifiers() );
+                }
+                builder.append( toSourceName( member.asType() ) ).append(' ').append( member.getSimpleName() )
+                        .append(";\n");
+            }
+        }
+
+        for ( Element member : element.getEnclosedElements() ) {
+            if ( ( member.getKind() == ElementKind.METHOD
+                    && !( isEnum && isEnumMethod( element, (ExecutableElement) member ) ) )
+                    || ( member.getKind() == ElementKind.CONSTRUCTOR && !isEnum ) ) {
+                writeMethod( element, (ExecutableElement) member, isInterface, memberIndent );
+            }
+        }
+
+        for ( Element member : element.getEnclosedElements() ) {
+            if ( member instanceof TypeElement ) {
+                builder.append("\n");
+                writeType( (TypeElement) member, memberIndent );
+            }
+        }
+
+        builder.append(indent).append("}\n");
+    }
+
+    private void writeMethod( TypeElement type, ExecutableElement method, boolean isInterface, String indent ) {
+        writeAnnotations( method.getAnnotationMirrors(), indent );
+        builder.append(indent);
+
+        Set<Modifier> modifiers = new HashSet<Modifier>( method.getModifiers() );
+        if ( isInterface ) {
+            modifiers.remove( Modifier.PUBLIC );
+            modifiers.remove( Modifier.ABSTRACT );
+        }
+        writeModifiers( modifiers );
+        writeTypeParameters( method.getTypeParameters(), " " );
+
+        if ( method.getKind() == ElementKind.CONSTRUCTOR ) {
+            builder.append( type.getSimpleName() );
+        } else {
+            builder.append( toSourceName( method.getReturnType() ) ).append(' ').append( method.getSimpleName() );
+        }
+
+        builder.append("(");
+        List<? extends VariableElement> parameters = method.getParameters();
+        for ( int i = 0; i < parameters.size(); i++ ) {
+            String parameterType = toSourceName( parameters.get(i).asType() );
+            if ( i == parameters.size() - 1 && method.isVarArgs() && parameterType.endsWith("[]") ) {
+                parameterType = parameterType.substring( 0, parameterType.length() - 2 ) + "...";
+            }
+
+            builder.append( i == 0 ? " " : ", " ).append(parameterType).append(' ')
+                    .append( parameters.get(i).getSimpleName() );
+        }
+        builder.append( parameters.isEmpty() ? ")" : " )" );
+
+        boolean hasBody = !method.getModifiers().contains( Modifier.ABSTRACT )
+                && !method.getModifiers().contains( Modifier.NATIVE )
+                && type.getKind() != ElementKind.ANNOTATION_TYPE;
+        if ( !hasBody ) {
+            builder.append(";\n");
+            return;
+        }
+
+        String body = bodyReader == null ? null : bodyReader.getBody(method);
+        builder.append(' ').append( body == null ? StubSourceWriter.STUB_BODY : body ).append("\n");
+    }
+
+    /**
+     * @return true for the implicitly declared values() and valueOf(String) methods of the enum
+     */
+    private static boolean isEnumMethod( TypeElement type, ExecutableElement method ) {
+        if ( !method.getModifiers().contains( Modifier.STATIC ) ) {
+            return false;
+        }
+
+        String name = method.getSimpleName().toString();
+        List<? extends VariableElement> parameters = method.getParameters();
+        return ( "values".equals(name) && parameters.isEmpty() )
+                || ( "valueOf".equals(name) && parameters.size() == 1
+                    && String.class.getName().equals( toSourceName( parameters.get(0).asType() ) ) );
+    }
+
+    private void writeModifiers( Set<Modifier> modifiers ) {
+        for ( Modifier modifier : Modifier.values() ) {
+            if ( modifiers.contains(modifier) && SOURCE_MODIFIERS.contains( modifier.toString() ) ) {
+                builder.append(modifier).append(' ');
+            }
+        }
+    }
+
+    private void writeTypeParameters( List<? extends TypeParameterElement> parameters, String suffix ) {
+        if ( parameters.isEmpty() ) {
+            return;
+        }
+
+        builder.append('<');
+        for ( int i = 0; i < parameters.size(); i++ ) {
+            TypeParameterElement parameter = parameters.get(i);
+            builder.append( i == 0 ? "" : ", " ).append( parameter.getSimpleName() );
+
+            String separator = " extends ";
+            for ( TypeMirror bound : parameter.getBounds() ) {
+                String boundName = toSourceName(bound);
+                if ( !OBJECT_CLASS.equals(boundName) ) {
+                    builder.append(separator).append(boundName);
+                    separator = " & ";
+                }
+            }
+        }
+        builder.append('>').append(suffix);
+    }
+
+    private void writeAnnotations( List<? extends AnnotationMirror> annotations, String indent ) {
+        for ( AnnotationMirror annotation : annotations ) {
+            builder.append(indent);
+            writeAnnotation( annotation );
+            builder.append("\n");
+        }
+    }
+
+    private void writeAnnotation( AnnotationMirror annotation ) {
+        builder.append('@').append( toSourceName( annotation.getAnnotationType() ) );
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = annotation.getElementValues();
+        if ( values.isEmpty() ) {
+            return;
+        }
+
+        builder.append("( ");
+        String separator = "";
+        for ( Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : values.entrySet() ) {
+            builder.append(separator).append( value.getKey().getSimpleName() ).append(" = ");
+            value.getValue().accept( valueWriter, null );
+            separator = ", ";
+        }
+        builder.append(" )");
+    }
+
+    /**
+     * @return canonical name of the given type with the type arguments; type annotations are omitted
+     */
+    static String toSourceName( TypeMirror type ) {
+        switch ( type.getKind() ) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case CHAR:
+            case FLOAT:
+            case DOUBLE:
+            case VOID:
+                return type.getKind().name().toLowerCase( Locale.ENGLISH );
+            case ARRAY:
+                return toSourceName( ( (ArrayType) type ).getComponentType() ) + "[]";
+            case TYPEVAR:
+                return ( (TypeVariable) type ).asElement().getSimpleName().toString();
+            case WILDCARD: {
+                WildcardType wildcard = (WildcardType) type;
+                if ( wildcard.getExtendsBound() != null ) {
+                    return "? extends " + toSourceName( wildcard.getExtendsBound() );
+                } else if ( wildcard.getSuperBound() != null ) {
+                    return "? super " + toSourceName( wildcard.getSuperBound() );
+                }
+                return "?";
+            }
+            case DECLARED: {
+                DeclaredType declaredType = (DeclaredType) type;
+                StringBuilder result = new StringBuilder(
+                        ( (TypeElement) declaredType.asElement() ).getQualifiedName() );
+                List<? extends TypeMirror> arguments = declaredType.getTypeArguments();
+                if ( !arguments.isEmpty() ) {
+                    result.append('<');
+                    for ( int i = 0; i < arguments.size(); i++ ) {
+                        result.append( i == 0 ? "" : ", " ).append( toSourceName( arguments.get(i) ) );
+                    }
+                    result.append('>');
+                }
+                return result.toString();
+            }
+            default:
+                // unresolved types (e.g. the ones to be generated) are kept as they are referenced
+                return type.toString();
+        }
+    }
+
+}
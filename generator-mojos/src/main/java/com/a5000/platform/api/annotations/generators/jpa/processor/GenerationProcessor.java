@@ -0,0 +1,434 @@
+package com.a5000.platform.api.annotations.generators.jpa.processor;
+
+import com.a5000.platform.api.annotations.generators.jpa.mojo.GenAllMojo;
+import com.thoughtworks.qdox.JavaProjectBuilder;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.util.Trees;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Annotation processor which runs DAO, DTO and JPA to DTO converters generators (as the gen-all goal does)
+ * inside of the compiler over the entities being compiled, so no separate sources parsing pass is required.
+ *
+ * Entities and the project types they reference are rendered as stubs into the sources model used by the
+ * generators. Classes generated for an entity are originated by it; classes aggregating all the entities
+ * (the conversion service) are originated by every entity and are regenerated over all the entities known
+ * by this and previous compilations, which are listed in {@link #ENTITIES_INDEX}.
+ *
+ * Processor is disabled unless -AgenerationKit.enabled=true is specified; generators parameters are passed
+ * by the options with the same prefix, e.g. -AgenerationKit.daoPackage=com.example.dao
+ *
+ * Generators are the plugin goals, so maven-core (an optional dependency of the plugin, provided by Maven
+ * to the goals) has to be put on the processor path next to generator-mojos.
+ */
+@SupportedAnnotationTypes({ "javax.persistence.Entity", "javax.persistence.MappedSuperclass" })
+public class GenerationProcessor extends AbstractProcessor {
+
+    public static final String OPTIONS_PREFIX = "generationKit.";
+    public static final String ENABLED_OPTION = OPTIONS_PREFIX + "enabled";
+    public static final String VERBOSE_OPTION = OPTIONS_PREFIX + "verbose";
+
+    public static final String ENTITIES_INDEX = "META-INF/generation-kit/entities";
+
+    private static final String SOURCE_EXTENSION = ".java";
+
+    private boolean enabled;
+    private boolean verbose;
+    private ElementStubWriter.BodyReader bodyReader;
+
+    private final Set<String> knownEntities = new TreeSet<String>();
+    private final Set<String> generatedClasses = new HashSet<String>();
+    private final Map<String, Boolean> projectTypes = new HashMap<String, Boolean>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> result = new TreeSet<String>();
+        result.add( ENABLED_OPTION );
+        result.add( VERBOSE_OPTION );
+        for ( String name : getConfigurableFields().keySet() ) {
+            result.add( OPTIONS_PREFIX + name );
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized void init( ProcessingEnvironment processingEnv ) {
+        super.init( processingEnv );
+
+        enabled = Boolean.parseBoolean( processingEnv.getOptions().get( ENABLED_OPTION ) );
+        verbose = Boolean.parseBoolean( processingEnv.getOptions().get( VERBOSE_OPTION ) );
+        if ( enabled ) {
+            knownEntities.addAll( readIndex() );
+            bodyReader = createBodyReader();
+        }
+    }
+
+    /**
+     * Methods bodies (required by the @DtoMethod declarations) are available through the javac syntax
+     * trees only, other compilers get the stub bodies
+     */
+    private ElementStubWriter.BodyReader createBodyReader() {
+        final Trees trees;
+        try {
+            trees = Trees.instance( processingEnv );
+        } catch ( IllegalArgumentException e ) {
+            return null;
+        } catch ( NoClassDefFoundError e ) {
+            return null;
+        }
+
+        return new ElementStubWriter.BodyReader() {
+            @Override
+            public String getBody( ExecutableElement method ) {
+                MethodTree tree = trees.getTree(method);
+                return tree == null || tree.getBody() == null ? null : tree.getBody().toString();
+            }
+        };
+    }
+
+    @Override
+    public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv ) {
+        if ( !enabled ) {
+            return false;
+        }
+
+        if ( roundEnv.processingOver() ) {
+            writeIndex();
+            return false;
+        }
+
+        Map<String, TypeElement> entities = new LinkedHashMap<String, TypeElement>();
+        for ( TypeElement annotation : annotations ) {
+            for ( Element element : roundEnv.getElementsAnnotatedWith(annotation) ) {
+                if ( element instanceof TypeElement ) {
+                    entities.put( ( (TypeElement) element ).getQualifiedName().toString(), (TypeElement) element );
+                }
+            }
+        }
+
+        if ( entities.isEmpty() ) {
+            return false;
+        }
+
+        try {
+            generate( entities );
+        } catch ( Exception e ) {
+            processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR,
+                    "Entities generation failed: " + MessagerLog.getStackTrace(e) );
+        } catch ( LinkageError e ) {
+            processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR,
+                    "Entities generation failed, maven-core has to be on the processor path: "
+                            + MessagerLog.getStackTrace(e) );
+        }
+
+        return false;
+    }
+
+    private void generate( Map<String, TypeElement> entities ) throws Exception {
+        knownEntities.addAll( entities.keySet() );
+
+        Map<String, TypeElement> allEntities = new LinkedHashMap<String, TypeElement>();
+        for ( String className : new ArrayList<String>( knownEntities ) ) {
+            TypeElement element = entities.get( className );
+            if ( element == null ) {
+                element = processingEnv.getElementUtils().getTypeElement( className );
+            }
+
+            if ( element != null && isEntity(element) ) {
+                allEntities.put( className, element );
+            } else {
+                knownEntities.remove( className );
+            }
+        }
+
+        Map<String, List<String>> outputs = new HashMap<String, List<String>>();
+        Map<String, byte[]> files = configure( new GenAllMojo() ).generate( buildModel( allEntities.values() ),
+                entities.keySet(), allEntities.keySet(), outputs );
+
+        Filer filer = processingEnv.getFiler();
+        for ( Map.Entry<String, byte[]> file : files.entrySet() ) {
+            String path = file.getKey();
+            String className = path.substring( 0, path.length() - SOURCE_EXTENSION.length() ).replace('/', '.');
+            if ( !generatedClasses.add( className ) ) {
+                processingEnv.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                        "Class " + className + " has been already generated by the previous round" );
+                continue;
+            }
+
+            List<Element> origins = new ArrayList<Element>();
+            for ( Map.Entry<String, List<String>> entityOutputs : outputs.entrySet() ) {
+                if ( entityOutputs.getValue().contains( className ) ) {
+                    origins.add( allEntities.get( entityOutputs.getKey() ) );
+                }
+            }
+            if ( origins.isEmpty() ) {
+                origins.addAll( allEntities.values() );
+            }
+
+            JavaFileObject source = filer.createSourceFile( className, origins.toArray( new Element[origins.size()] ) );
+            OutputStream output = source.openOutputStream();
+            try {
+                output.write( file.getValue() );
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Builds sources model of the given entities along with the project types referenced by theirs
+     * declarations (supertypes and fields types), other types are resolved through the processor class loader
+     */
+    private JavaProjectBuilder buildModel( Collection<TypeElement> entities ) {
+        Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+        Deque<TypeElement> queue = new ArrayDeque<TypeElement>( entities );
+        while ( !queue.isEmpty() ) {
+            TypeElement type = getTopLevelType( queue.poll() );
+            if ( types.add(type) ) {
+                collectReferencedTypes( type, queue );
+            }
+        }
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        for ( TypeElement type : types ) {
+            try {
+                builder.addSource( new StringReader( ElementStubWriter.write( type, bodyReader ) ) );
+            } catch ( RuntimeException e ) {
+                processingEnv.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                        "Failed to build model of " + type.getQualifiedName() + ": " + e.getMessage() );
+            }
+        }
+        builder.addClassLoader( getClass().getClassLoader() );
+
+        return builder;
+    }
+
+    private void collectReferencedTypes( TypeElement type, Collection<TypeElement> result ) {
+        collectReferencedTypes( type.getSuperclass(), result );
+        for ( TypeMirror interfaceType : type.getInterfaces() ) {
+            collectReferencedTypes( interfaceType, result );
+        }
+
+        for ( Element member : type.getEnclosedElements() ) {
+            if ( member.getKind() == ElementKind.FIELD ) {
+                collectReferencedTypes( member.asType(), result );
+            } else if ( member instanceof TypeElement ) {
+                collectReferencedTypes( (TypeElement) member, result );
+            }
+        }
+    }
+
+    private void collectReferencedTypes( TypeMirror type, Collection<TypeElement> result ) {
+        switch ( type.getKind() ) {
+            case ARRAY:
+                collectReferencedTypes( ( (ArrayType) type ).getComponentType(), result );
+                break;
+            case WILDCARD:
+                WildcardType wildcard = (WildcardType) type;
+                if ( wildcard.getExtendsBound() != null ) {
+                    collectReferencedTypes( wildcard.getExtendsBound(), result );
+                }
+                if ( wildcard.getSuperBound() != null ) {
+                    collectReferencedTypes( wildcard.getSuperBound(), result );
+                }
+                break;
+            case DECLARED:
+                DeclaredType declaredType = (DeclaredType) type;
+                TypeElement element = (TypeElement) declaredType.asElement();
+                if ( isProjectType(element) ) {
+                    result.add( element );
+                }
+                for ( TypeMirror argument : declaredType.getTypeArguments() ) {
+                    collectReferencedTypes( argument, result );
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * @return true when the type is not available through the processor class loader (e.g. it is
+     * a part of the compiled project)
+     */
+    private boolean isProjectType( TypeElement type ) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        Boolean result = projectTypes.get( binaryName );
+        if ( result == null ) {
+            try {
+                Class.forName( binaryName, false, getClass().getClassLoader() );
+                result = false;
+            } catch ( ClassNotFoundException e ) {
+                result = true;
+            } catch ( LinkageError e ) {
+                result = true;
+            }
+
+            projectTypes.put( binaryName, result );
+        }
+
+        return result;
+    }
+
+    private static TypeElement getTopLevelType( TypeElement type ) {
+        TypeElement result = type;
+        while ( result.getEnclosingElement() instanceof TypeElement ) {
+            result = (TypeElement) result.getEnclosingElement();
+        }
+
+        return result;
+    }
+
+    private boolean isEntity( TypeElement type ) {
+        for ( AnnotationMirror annotation : type.getAnnotationMirrors() ) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if ( getSupportedAnnotationTypes().contains( annotationType.getQualifiedName().toString() ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets parameters of the given goal from the processor options
+     */
+    private GenAllMojo configure( GenAllMojo mojo ) throws IllegalAccessException {
+        mojo.setLog( new MessagerLog( processingEnv.getMessager(), verbose ) );
+
+        Map<String, Field> fields = getConfigurableFields();
+        for ( Map.Entry<String, String> option : processingEnv.getOptions().entrySet() ) {
+            if ( !option.getKey().startsWith(OPTIONS_PREFIX)
+                    || option.getKey().equals(ENABLED_OPTION) || option.getKey().equals(VERBOSE_OPTION) ) {
+                continue;
+            }
+
+            Field field = fields.get( option.getKey().substring( OPTIONS_PREFIX.length() ) );
+            if ( field == null ) {
+                processingEnv.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                        "Unknown generator parameter " + option.getKey() );
+                continue;
+            }
+
+            field.set( mojo, convert( field.getType(), option.getValue() ) );
+        }
+
+        return mojo;
+    }
+
+    private static Object convert( Class<?> type, String value ) {
+        if ( type == Boolean.class || type == boolean.class ) {
+            return Boolean.valueOf( value );
+        } else if ( type == Integer.class || type == int.class ) {
+            return Integer.valueOf( value );
+        } else if ( type == String[].class ) {
+            return value == null || value.trim().isEmpty() ? new String[0] : value.trim().split("\\s*,\\s*");
+        }
+
+        return value;
+    }
+
+    /**
+     * @return fields of the gen-all goal (and of its superclasses) which could be configured by
+     * the processor options by theirs names
+     */
+    private static Map<String, Field> getConfigurableFields() {
+        List<Class<?>> supportedTypes = Arrays.<Class<?>>asList( String.class, String[].class, Boolean.class,
+                boolean.class, Integer.class, int.class );
+
+        Map<String, Field> result = new HashMap<String, Field>();
+        for ( Class<?> type = GenAllMojo.class; type != null && type != Object.class; type = type.getSuperclass() ) {
+            for ( Field field : type.getDeclaredFields() ) {
+                int modifiers = field.getModifiers();
+                if ( !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)
+                        && supportedTypes.contains( field.getType() ) && !result.containsKey( field.getName() ) ) {
+                    field.setAccessible( true );
+                    result.put( field.getName(), field );
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private Set<String> readIndex() {
+        Set<String> result = new TreeSet<String>();
+        try {
+            FileObject resource = processingEnv.getFiler().getResource( StandardLocation.CLASS_OUTPUT, "", ENTITIES_INDEX );
+            BufferedReader reader = new BufferedReader( resource.openReader(true) );
+            try {
+                String line;
+                while ( ( line = reader.readLine() ) != null ) {
+                    if ( !line.trim().isEmpty() ) {
+                        result.add( line.trim() );
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch ( IOException e ) {
+            // no entities are known by the previous compilations
+        } catch ( IllegalArgumentException e ) {
+            // class output location is not supported
+        }
+
+        return result;
+    }
+
+    private void writeIndex() {
+        if ( knownEntities.isEmpty() ) {
+            return;
+        }
+
+        try {
+            FileObject resource = processingEnv.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", ENTITIES_INDEX );
+            Writer writer = resource.openWriter();
+            try {
+                for ( String className : knownEntities ) {
+                    writer.write( className + "\n" );
+                }
+            } finally {
+                writer.close();
+            }
+        } catch ( IOException e ) {
+            processingEnv.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                    "Failed to save entities index: " + e.getMessage() );
+        }
+    }
+
+}
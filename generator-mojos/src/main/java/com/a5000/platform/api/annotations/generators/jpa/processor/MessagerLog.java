@@ -0,0 +1,148 @@
+package com.a5000.platform.api.annotations.generators.jpa.processor;
+
+import org.apache.maven.plugin.logging.Log;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Routes generators log to the compiler messages. Errors reported by the generators are not fatal
+ * for the goals, so they are reported as warnings to not fail the compilation; debug and info
+ * messages are reported only in the verbose mode.
+ */
+public class MessagerLog implements Log {
+
+    private final Messager messager;
+    private final boolean verbose;
+
+    public MessagerLog( Messager messager, boolean verbose ) {
+        this.messager = messager;
+        this.verbose = verbose;
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return verbose;
+    }
+
+    @Override
+    public void debug( CharSequence content ) {
+        print( Diagnostic.Kind.NOTE, content, null, verbose );
+    }
+
+    @Override
+    public void debug( CharSequence content, Throwable error ) {
+        print( Diagnostic.Kind.NOTE, content, error, verbose );
+    }
+
+    @Override
+    public void debug( Throwable error ) {
+        print( Diagnostic.Kind.NOTE, null, error, verbose );
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return verbose;
+    }
+
+    @Override
+    public void info( CharSequence content ) {
+        print( Diagnostic.Kind.NOTE, content, null, verbose );
+    }
+
+    @Override
+    public void info( CharSequence content, Throwable error ) {
+        print( Diagnostic.Kind.NOTE, content, error, verbose );
+    }
+
+    @Override
+    public void info( Throwable error ) {
+        print( Diagnostic.Kind.NOTE, null, error, verbose );
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return true;
+    }
+
+    @Override
+    public void warn( CharSequence content ) {
+        print( Diagnostic.Kind.WARNING, content, null, true );
+    }
+
+    @Override
+    public void warn( CharSequence content, Throwable error ) {
+        print( Diagnostic.Kind.WARNING, content, error, true );
+    }
+
+    @Override
+    public void warn( Throwable error ) {
+        print( Diagnostic.Kind.WARNING, null, error, true );
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return true;
+    }
+
+    @Override
+    public void error( CharSequence content ) {
+        print( Diagnostic.Kind.WARNING, content, null, true );
+    }
+
+    @Override
+    public void error( CharSequence content, Throwable error ) {
+        print( Diagnostic.Kind.WARNING, content, error, true );
+    }
+
+    @Override
+    public void error( Throwable error ) {
+        print( Diagnostic.Kind.WARNING, null, error, true );
+    }
+
+    private void print( Diagnostic.Kind kind, CharSequence content, Throwable error, boolean enabled ) {
+        if ( !enabled ) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder();
+        if ( content != null ) {
+            message.append(content);
+        }
+        if ( error != null ) {
+            message.append( message.length() == 0 ? "" : ": " ).append( getStackTrace(error) );
+        }
+
+        messager.printMessage( kind, message );
+    }
+
+    /**
+     * @return stack trace of the error including its causes, as the compiler messages are the only
+     * place the processor failures are reported to
+     */
+    static String getStackTrace( Throwable error ) {
+        StringWriter result = new StringWriter();
+        PrintWriter writer = new PrintWriter( result );
+        error.printStackTrace( writer );
+        writer.flush();
+        return result.toString();
+    }
+
+}
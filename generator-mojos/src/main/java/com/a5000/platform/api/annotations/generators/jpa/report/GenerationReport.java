@@ -0,0 +1,208 @@
+package com.a5000.platform.api.annotations.generators.jpa.report;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Metrics of a generator goal execution: time spent in each phase, generation time of
+ * every entity and statistics of the generated classes; saved as a JSON document.
+ *
+ * Entities and classes could be registered concurrently by the generation workers.
+ */
+public class GenerationReport {
+
+    public static final String PHASE_DISCOVERY = "discovery";
+    public static final String PHASE_PARSING = "parsing";
+    public static final String PHASE_INDEXING = "indexing";
+    public static final String PHASE_GENERATION = "generation";
+    public static final String PHASE_VERIFICATION = "verification";
+    public static final String PHASE_WRITING = "writing";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int LARGEST_CLASSES_LIMIT = 20;
+
+    private final String goal;
+    private final String generator;
+    private final long startTime = System.nanoTime();
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> entities = new LinkedHashMap<String, Long>();
+    private final List<ClassStats> classes = new ArrayList<ClassStats>();
+
+    private boolean skipped;
+    private int writtenFiles;
+    private int unchangedFiles;
+    private int removedFiles;
+
+    public GenerationReport( String goal, String generator ) {
+        this.goal = goal;
+        this.generator = generator;
+    }
+
+    /**
+     * @param time phase duration in nanoseconds, added to the previously registered duration
+     *             of the same phase
+     */
+    public synchronized void addPhase( String name, long time ) {
+        Long previous = phases.get(name);
+        phases.put( name, previous == null ? time : previous + time );
+    }
+
+    /**
+     * @param time generation time in nanoseconds, added to the time spent on the same entity
+     *             by other generators
+     */
+    public synchronized void addEntity( String className, long time ) {
+        Long previous = entities.get(className);
+        entities.put( className, previous == null ? time : previous + time );
+    }
+
+    public synchronized void addClass( String className, int methods, int size ) {
+        classes.add( new ClassStats( className, methods, size ) );
+    }
+
+    public synchronized void addWrittenFiles( int written, int unchanged ) {
+        this.writtenFiles += written;
+        this.unchangedFiles += unchanged;
+    }
+
+    public synchronized void addRemovedFile() {
+        this.removedFiles++;
+    }
+
+    public synchronized void setSkipped( boolean skipped ) {
+        this.skipped = skipped;
+    }
+
+    public synchronized void save( File file ) throws IOException {
+        File parent = file.getParentFile();
+        if ( parent != null ) {
+            parent.mkdirs();
+        }
+
+        Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream(file), UTF_8 ) );
+        try {
+            write( writer );
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void write( Writer writer ) throws IOException {
+        int methods = 0;
+        for ( ClassStats stats : classes ) {
+            methods += stats.methods;
+        }
+
+        writer.write("{\n");
+        writer.write("  \"goal\": " + quote(goal) + ",\n");
+        writer.write("  \"generator\": " + quote(generator) + ",\n");
+        writer.write("  \"skipped\": " + skipped + ",\n");
+        writer.write("  \"totalTime\": " + toMillis( System.nanoTime() - startTime ) + ",\n");
+
+        writer.write("  \"phases\": {");
+        String separator = "\n";
+        for ( Map.Entry<String, Long> phase : phases.entrySet() ) {
+            writer.write( separator + "    " + quote( phase.getKey() ) + ": " + toMillis( phase.getValue() ) );
+            separator = ",\n";
+        }
+        writer.write( phases.isEmpty() ? "},\n" : "\n  },\n" );
+
+        writer.write("  \"entitiesCount\": " + entities.size() + ",\n");
+        writer.write("  \"generatedClassesCount\": " + classes.size() + ",\n");
+        writer.write("  \"generatedMethodsCount\": " + methods + ",\n");
+        writer.write("  \"writtenFilesCount\": " + writtenFiles + ",\n");
+        writer.write("  \"unchangedFilesCount\": " + unchangedFiles + ",\n");
+        writer.write("  \"removedFilesCount\": " + removedFiles + ",\n");
+
+        List<Map.Entry<String, Long>> entityTimes = new ArrayList<Map.Entry<String, Long>>( entities.entrySet() );
+        Collections.sort( entityTimes, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare( Map.Entry<String, Long> first, Map.Entry<String, Long> second ) {
+                return second.getValue().compareTo( first.getValue() );
+            }
+        });
+
+        writer.write("  \"entities\": [");
+        separator = "\n";
+        for ( Map.Entry<String, Long> entity : entityTimes ) {
+            writer.write( separator + "    { \"name\": " + quote( entity.getKey() )
+                    + ", \"time\": " + toMillis( entity.getValue() ) + " }" );
+            separator = ",\n";
+        }
+        writer.write( entityTimes.isEmpty() ? "],\n" : "\n  ],\n" );
+
+        List<ClassStats> largestClasses = new ArrayList<ClassStats>( classes );
+        Collections.sort( largestClasses, new Comparator<ClassStats>() {
+            @Override
+            public int compare( ClassStats first, ClassStats second ) {
+                return second.size - first.size;
+            }
+        });
+
+        writer.write("  \"largestClasses\": [");
+        separator = "\n";
+        for ( ClassStats stats : largestClasses.subList( 0, Math.min( LARGEST_CLASSES_LIMIT, largestClasses.size() ) ) ) {
+            writer.write( separator + "    { \"name\": " + quote( stats.className )
+                    + ", \"size\": " + stats.size + ", \"methods\": " + stats.methods + " }" );
+            separator = ",\n";
+        }
+        writer.write( largestClasses.isEmpty() ? "]\n" : "\n  ]\n" );
+        writer.write("}\n");
+    }
+
+    private static long toMillis( long nanos ) {
+        return TimeUnit.NANOSECONDS.toMillis( nanos );
+    }
+
+    private static String quote( String value ) {
+        StringBuilder result = new StringBuilder("\"");
+        for ( char c : value.toCharArray() ) {
+            switch ( c ) {
+                case '"': result.append("\\\""); break;
+                case '\\': result.append("\\\\"); break;
+                case '\n': result.append("\\n"); break;
+                case '\r': result.append("\\r"); break;
+                case '\t': result.append("\\t"); break;
+                default:
+                    if ( c < 0x20 ) {
+                        result.append( String.format( "\\u%04x", (int) c ) );
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+
+        return result.append('"').toString();
+    }
+
+    private static class ClassStats {
+        final String className;
+        final int methods;
+        final int size;
+
+        ClassStats( String className, int methods, int size ) {
+            this.className = className;
+            this.methods = methods;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.a5000.platform.api.annotations.generators.jpa.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Content hashing helpers used to fingerprint sources and generated artifacts.
+ */
+public final class Digests {
+
+    private static final String ALGORITHM = "SHA-1";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    private Digests() {}
+
+    public static MessageDigest create() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( ALGORITHM + " is not supported by the runtime", e );
+        }
+    }
+
+    public static void update( MessageDigest digest, String value ) {
+        if ( value != null ) {
+            digest.update( value.getBytes(UTF_8) );
+        }
+
+        digest.update( (byte) 0 );
+    }
+
+    public static String hash( String value ) {
+        MessageDigest digest = create();
+        update( digest, value );
+        return toHex( digest.digest() );
+    }
+
+    public static String hash( byte[] value ) {
+        return toHex( create().digest(value) );
+    }
+
+    public static String hash( File file ) throws IOException {
+        MessageDigest digest = create();
+        byte[] buffer = new byte[8192];
+        InputStream stream = new FileInputStream(file);
+        try {
+            int read;
+            while ( ( read = stream.read(buffer) ) != -1 ) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            stream.close();
+        }
+
+        return toHex( digest.digest() );
+    }
+
+    public static String toHex( byte[] bytes ) {
+        char[] result = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ ) {
+            result[i * 2] = HEX_CHARS[ ( bytes[i] >> 4 ) & 0x0F ];
+            result[i * 2 + 1] = HEX_CHARS[ bytes[i] & 0x0F ];
+        }
+
+        return new String(result);
+    }
+
+}
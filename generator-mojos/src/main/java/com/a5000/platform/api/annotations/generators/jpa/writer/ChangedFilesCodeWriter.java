@@ -0,0 +1,126 @@
+package com.a5000.platform.api.annotations.generators.jpa.writer;
+
+import com.a5000.platform.api.annotations.generators.jpa.utils.Digests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Code writer which renders generated files into memory and on {@link #close()} writes
+ * only those of them which contents differ from the files already present in the output
+ * directory, so the unchanged files keep their modification time and are not recompiled.
+ */
+public class ChangedFilesCodeWriter extends MemoryCodeWriter {
+
+    private final File outputDirectory;
+    private final int threads;
+
+    private final AtomicInteger writtenCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+    private final Map<String, Integer> fileSizes = new LinkedHashMap<String, Integer>();
+
+    public ChangedFilesCodeWriter( File outputDirectory, int threads ) {
+        this.outputDirectory = outputDirectory;
+        this.threads = threads;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeFiles( getFiles() );
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Writes the given files (which could be rendered from several code models) by paths relative
+     * to the output directory
+     */
+    public void writeFiles( Map<String, byte[]> files ) throws IOException {
+        if ( files.isEmpty() ) {
+            return;
+        }
+
+        for ( Map.Entry<String, byte[]> file : files.entrySet() ) {
+            fileSizes.put( file.getKey(), file.getValue().length );
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( threads, files.size() ) ) );
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for ( final Map.Entry<String, byte[]> file : files.entrySet() ) {
+                results.add( executor.submit( new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        write( new File( outputDirectory, file.getKey() ).toPath(), file.getValue() );
+                        return null;
+                    }
+                }) );
+            }
+
+            for ( Future<Void> result : results ) {
+                result.get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generated files writing has been interrupted", e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof IOException ) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException( e.getCause().getMessage(), e.getCause() );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public int getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public int getUnchangedCount() {
+        return unchangedCount.get();
+    }
+
+    /**
+     * @return sizes of the rendered files by theirs paths ('/' separated)
+     */
+    public Map<String, Integer> getFileSizes() {
+        return fileSizes;
+    }
+
+    private void write( Path path, byte[] content ) throws IOException {
+        if ( Files.isRegularFile(path) && Files.size(path) == content.length
+                && Digests.hash(content).equals( Digests.hash( path.toFile() ) ) ) {
+            unchangedCount.incrementAndGet();
+            return;
+        }
+
+        Files.createDirectories( path.getParent() );
+        Files.write( path, content );
+        writtenCount.incrementAndGet();
+    }
+
+}
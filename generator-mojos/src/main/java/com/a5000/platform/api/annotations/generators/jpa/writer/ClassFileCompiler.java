@@ -0,0 +1,167 @@
+package com.a5000.platform.api.annotations.generators.jpa.writer;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Compiles rendered sources in memory by the system Java compiler and writes class files
+ * straight into the output directory.
+ *
+ * Types referenced by the generated sources are resolved from the output directory, the classpath
+ * and the source path; sources found on the source path (e.g. entities of the same module) are
+ * only attributed, no class files are written for them.
+ */
+public class ClassFileCompiler {
+
+    private final File outputDirectory;
+    private final List<File> classpath;
+    private final Collection<File> sourcepath;
+    private final List<String> options;
+    private final Charset charset;
+
+    private final List<File> writtenFiles = new ArrayList<File>();
+
+    /**
+     * @param options additional compiler options (e.g. target release)
+     * @param charset charset the sources have been rendered with
+     */
+    public ClassFileCompiler( File outputDirectory, List<File> classpath, Collection<File> sourcepath,
+                              List<String> options, Charset charset ) {
+        this.outputDirectory = outputDirectory;
+        this.classpath = classpath;
+        this.sourcepath = sourcepath;
+        this.options = options;
+        this.charset = charset;
+    }
+
+    /**
+     * @param sources rendered sources by theirs paths ('/' separated)
+     * @return compilation errors, empty when all the sources have been compiled
+     */
+    public List<String> compile( Map<String, byte[]> sources ) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if ( compiler == null ) {
+            throw new IOException("Java compiler is not available, the build must be run by a JDK");
+        }
+
+        List<JavaFileObject> compilationUnits = new ArrayList<JavaFileObject>();
+        for ( Map.Entry<String, byte[]> source : sources.entrySet() ) {
+            if ( source.getKey().endsWith( JavaFileObject.Kind.SOURCE.extension ) ) {
+                compilationUnits.add( new RenderedSource( source.getKey(), new String( source.getValue(), charset ) ) );
+            }
+        }
+
+        if ( compilationUnits.isEmpty() ) {
+            return Collections.emptyList();
+        }
+
+        if ( !outputDirectory.isDirectory() && !outputDirectory.mkdirs() ) {
+            throw new IOException("Failed to create classes output directory " + outputDirectory );
+        }
+
+        List<File> compileClasspath = new ArrayList<File>();
+        compileClasspath.add( outputDirectory );
+        compileClasspath.addAll( classpath );
+
+        List<String> compilerOptions = new ArrayList<String>();
+        compilerOptions.add("-proc:none");
+        compilerOptions.add("-implicit:none");
+        compilerOptions.add("-g");
+        compilerOptions.add("-nowarn");
+        compilerOptions.addAll( options );
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager( diagnostics, null, charset );
+        try {
+            fileManager.setLocation( StandardLocation.CLASS_OUTPUT, Collections.singletonList( outputDirectory ) );
+            fileManager.setLocation( StandardLocation.CLASS_PATH, compileClasspath );
+            fileManager.setLocation( StandardLocation.SOURCE_PATH, existing( sourcepath ) );
+
+            compiler.getTask( null, new RecordingFileManager( fileManager ), diagnostics, compilerOptions, null,
+                    compilationUnits ).call();
+        } finally {
+            fileManager.close();
+        }
+
+        List<String> result = new ArrayList<String>();
+        for ( Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics() ) {
+            if ( diagnostic.getKind() == Diagnostic.Kind.ERROR ) {
+                result.add( ( diagnostic.getSource() == null ? "" :
+                        diagnostic.getSource().getName() + ":" + diagnostic.getLineNumber() + ": " )
+                        + diagnostic.getMessage( null ) );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return class files written by the previous compilations
+     */
+    public List<File> getWrittenFiles() {
+        return writtenFiles;
+    }
+
+    private static List<File> existing( Collection<File> files ) {
+        List<File> result = new ArrayList<File>();
+        for ( File file : files ) {
+            if ( file.exists() ) {
+                result.add( file );
+            }
+        }
+
+        return result;
+    }
+
+    private class RecordingFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        public RecordingFileManager( StandardJavaFileManager fileManager ) {
+            super( fileManager );
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput( Location location, String className, JavaFileObject.Kind kind,
+                                                    FileObject sibling ) throws IOException {
+            JavaFileObject result = super.getJavaFileForOutput( location, className, kind, sibling );
+            if ( kind == JavaFileObject.Kind.CLASS && "file".equals( result.toUri().getScheme() ) ) {
+                writtenFiles.add( new File( result.toUri() ) );
+            }
+
+            return result;
+        }
+    }
+
+    private static class RenderedSource extends SimpleJavaFileObject {
+        private final String content;
+
+        public RenderedSource( String path, String content ) {
+            super( URI.create( "string:///" + path ), Kind.SOURCE );
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent( boolean ignoreEncodingErrors ) {
+            return content;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.a5000.platform.api.annotations.generators.jpa.writer;
+
+import com.sun.codemodel.CodeWriter;
+import com.sun.codemodel.JPackage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright 2016 Cyril A. Karpenko <self@nikelin.ru>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ * Code writer which keeps rendered files in memory by theirs paths relative to the output root.
+ */
+public class MemoryCodeWriter extends CodeWriter {
+
+    private final Map<String, ByteArrayOutputStream> files = new LinkedHashMap<String, ByteArrayOutputStream>();
+
+    @Override
+    public OutputStream openBinary( JPackage pkg, String fileName ) throws IOException {
+        String path = pkg.isUnnamed() ? fileName : pkg.name().replace('.', '/') + "/" + fileName;
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        files.put( path, stream );
+        return stream;
+    }
+
+    @Override
+    public void close() throws IOException {}
+
+    /**
+     * @return contents of the rendered files by theirs paths ('/' separated)
+     */
+    public Map<String, byte[]> getFiles() {
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for ( Map.Entry<String, ByteArrayOutputStream> file : files.entrySet() ) {
+            result.put( file.getKey(), file.getValue().toByteArray() );
+        }
+
+        return result;
+    }
+
+    protected void clear() {
+        files.clear();
+    }
+
+}
@@ -1,26 +1,71 @@
 package com.a5000.platform.api.annotations.generators.jpa.v2;
 
+import com.a5000.platform.api.annotations.conversion.ChunkConverter;
+import com.a5000.platform.api.annotations.conversion.ConversionContext;
+import com.a5000.platform.api.annotations.conversion.ParallelConversion;
+import com.a5000.platform.api.annotations.generators.jpa.AbstractGeneratorMojo;
+import com.a5000.platform.api.annotations.generators.jpa.AbstractMojo;
+import com.a5000.platform.api.annotations.generators.jpa.IndexedClassLoader;
+import com.a5000.platform.api.annotations.generators.jpa.ScopedClassLoader;
+import com.a5000.platform.api.annotations.generators.jpa.cache.ClasspathIndex;
+import com.a5000.platform.api.annotations.generators.jpa.cache.SessionModelCache;
+import com.a5000.platform.api.annotations.generators.jpa.cache.SourceModelSnapshot;
+import com.a5000.platform.api.annotations.generators.jpa.discovery.SourceScanner;
 import com.a5000.platform.api.annotations.generators.jpa.entities.Test;
+import com.a5000.platform.api.annotations.generators.jpa.model.EntityModel;
+import com.a5000.platform.api.annotations.generators.jpa.model.ExtensionField;
+import com.a5000.platform.api.annotations.generators.jpa.model.Metamodel;
+import com.a5000.platform.api.annotations.generators.jpa.model.QueryModel;
+import com.a5000.platform.api.annotations.generators.jpa.model.TypeIndex;
+import com.a5000.platform.api.annotations.generators.jpa.model.TypeKind;
+import com.a5000.platform.api.annotations.generators.jpa.mojo.GenAllMojo;
 import com.a5000.platform.api.annotations.generators.jpa.mojo.GenDaoMojo;
 import com.a5000.platform.api.annotations.generators.jpa.mojo.GenDtoMojo;
 import com.a5000.platform.api.annotations.generators.jpa.mojo.GenJpaToDtoConverterMojo;
+import com.a5000.platform.api.annotations.generators.jpa.mojo.WatchMojo;
+import com.a5000.platform.api.annotations.generators.jpa.processor.GenerationProcessor;
+import com.a5000.platform.api.annotations.generators.jpa.report.GenerationReport;
 import com.a5000.platform.api.annotations.generators.jpa.utils.Commons;
+import com.a5000.platform.api.annotations.metrics.ConversionStatistics;
+import com.a5000.platform.api.annotations.metrics.HistogramConversionMetrics;
+import com.sun.codemodel.JClassAlreadyExistsException;
 import com.thoughtworks.qdox.JavaProjectBuilder;
 import com.thoughtworks.qdox.model.JavaAnnotation;
 import com.thoughtworks.qdox.model.JavaClass;
+import com.thoughtworks.qdox.model.JavaField;
 import com.thoughtworks.qdox.model.JavaMethod;
 import com.thoughtworks.qdox.model.JavaParameter;
+import com.thoughtworks.qdox.model.JavaType;
 import com.thoughtworks.qdox.model.expression.AnnotationValue;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Build;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
 import org.apache.maven.plugin.testing.stubs.MavenProjectStub;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -30,6 +75,8 @@ public class GenDaoMojoTest extends AbstractMojoTestCase {
 
     private static final Logger log = Logger.getLogger(GenDaoMojoTest.class.getCanonicalName());
 
+    private static final String ENTITIES_PATH = "com/a5000/platform/api/annotations/generators/jpa/entities/";
+
     /**
      * @see junit.framework.TestCase#setUp()
      */
@@ -77,6 +124,83 @@ public class GenDaoMojoTest extends AbstractMojoTestCase {
 
     }
 
+    @org.junit.Test
+    public void testParallelGenDaoGoal() throws Exception
+    {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom parallel = new Xpp3Dom("parallel");
+        parallel.setValue("true");
+        configuration.addChild( parallel );
+
+        Xpp3Dom parallelThreads = new Xpp3Dom("parallelThreads");
+        parallelThreads.setValue("2");
+        configuration.addChild( parallelThreads );
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-dao");
+        mojoExecution.setConfiguration( configuration );
+
+        GenDaoMojo mojo = (GenDaoMojo) lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree(new File("target/"));
+
+        JavaClass testDaoClass = builder.getClassByName("com.a5000.platform.api.annotations.generators.jpa.entities.ITestDAO");
+        assertClassMethod( builder, testDaoClass, "findByName", new ParameterMatcher[] { new ParameterMatcher(String.class) },
+                new TypesMatcher(Test.class), new AnnotationMatcher[] {} );
+
+        // the parent repository is generated once, before the workers, and extended by the Test one
+        String parentDaoName = "com.a5000.platform.api.annotations.generators.jpa.entities.ITestParentDAO";
+        assertEquals( parentDaoName, testDaoClass.getImplements().get(0).getFullyQualifiedName() );
+        assertEquals( 1, builder.getClassByName( parentDaoName ).getTypeParameters().size() );
+    }
+
+    @org.junit.Test
+    public void testBytecodeGenDaoGoal() throws Exception
+    {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom entityClassesRoots = new Xpp3Dom("entityClassesRoots");
+        Xpp3Dom entityClassesRoot = new Xpp3Dom("entityClassesRoot");
+        entityClassesRoot.setValue("target/test-classes");
+        entityClassesRoots.addChild( entityClassesRoot );
+        configuration.addChild( entityClassesRoots );
+
+        Xpp3Dom incremental = new Xpp3Dom("incremental");
+        incremental.setValue("false");
+        configuration.addChild( incremental );
+
+        File testDaoFile = new File("target/com/a5000/platform/api/annotations/generators/jpa/entities/ITestDAO.java");
+        testDaoFile.delete();
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-dao");
+        mojoExecution.setConfiguration( configuration );
+
+        GenDaoMojo mojo = (GenDaoMojo) lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+        assertTrue( testDaoFile.exists() );
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree(new File("target/"));
+
+        JavaClass testDaoClass = builder.getClassByName("com.a5000.platform.api.annotations.generators.jpa.entities.ITestDAO");
+        assertClassMethod( builder, testDaoClass, "findByName", new ParameterMatcher[] { new ParameterMatcher(String.class) },
+                new TypesMatcher(Test.class), new AnnotationMatcher[] {} );
+        assertClassMethod( builder, testDaoClass, "deleteWhereUserIdIn", new ParameterMatcher[] {
+                new ParameterMatcher(Long[].class)
+        }, new TypesMatcher(void.class), new AnnotationMatcher[] {
+                new AnnotationMatcher(GenDaoMojo.TRANSACTIONAL_ANNOTATION_CLASS_NAME),
+                new AnnotationMatcher(GenDaoMojo.MODIFYING_ANNOTATION_CLASS_NAME)
+        } );
+    }
+
     private static void assertClassMethod( JavaProjectBuilder builder,
                                            JavaClass clazz,
                                            String methodName,
@@ -180,6 +304,1512 @@ public class GenDaoMojoTest extends AbstractMojoTestCase {
         builder.addSourceTree(new File("target/"));
         Collection<JavaClass> classes = builder.getClasses();
         assertFalse(classes.isEmpty());
+        JavaClass serviceClass = builder.getClassByName("com.redshape.generators.jpa.services.DtoConversionService");
+        assertNotNull( serviceClass.getFieldByName("CONVERTERS") );
+        assertNotNull( serviceClass.getMethodBySignature("convertTestToDtoList",
+                Collections.singletonList( builder.getClassByName(Collection.class.getName()) ) ) );
+    }
+
+    public void testSplitJpaToDto() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild(convertersPackage);
+
+        Xpp3Dom outputPath = new Xpp3Dom("outputPath");
+        outputPath.setValue("target/split-test");
+        configuration.addChild( outputPath );
+
+        Xpp3Dom converterClasses = new Xpp3Dom("converterClasses");
+        converterClasses.setValue("entity");
+        configuration.addChild( converterClasses );
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-jpa-converter");
+        mojoExecution.setConfiguration(configuration);
+
+        GenJpaToDtoConverterMojo mojo = (GenJpaToDtoConverterMojo)
+                lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree(new File("target/split-test"));
+
+        JavaClass serviceClass = builder.getClassByName("com.redshape.generators.jpa.services.DtoConversionService");
+        assertTrue( serviceClass.getConstructors().isEmpty() );
+        assertNotNull( serviceClass.getMethodBySignature("resolveConverter0",
+                Collections.singletonList( builder.getClassByName(Class.class.getName()) ) ) );
+
+        JavaClass converterClass = builder.getClassByName("com.redshape.generators.jpa.services.TestConverter");
+        assertNotNull( converterClass.getMethodBySignature("convertToDto",
+                Collections.singletonList( builder.getClassByName(Test.class.getName()) ) ) );
+        assertNotNull( builder.getClassByName("com.redshape.generators.jpa.services.TestParentConverter")
+                .getNestedClassByName("TestParentConverterInvoke") );
+    }
+
+    public void testProfiledJpaToDto() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild(convertersPackage);
+
+        Xpp3Dom outputPath = new Xpp3Dom("outputPath");
+        outputPath.setValue("target/metrics-test");
+        configuration.addChild( outputPath );
+
+        Xpp3Dom profilingEnabled = new Xpp3Dom("profilingEnabled");
+        profilingEnabled.setValue("true");
+        configuration.addChild( profilingEnabled );
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-jpa-converter");
+        mojoExecution.setConfiguration(configuration);
+
+        GenJpaToDtoConverterMojo mojo = (GenJpaToDtoConverterMojo)
+                lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        File serviceFile = new File("target/metrics-test/com/redshape/generators/jpa/services/DtoConversionService.java");
+        String serviceSource = new String( Files.readAllBytes( serviceFile.toPath() ) );
+        assertTrue( serviceSource.contains("metrics.record(Test.class, started, allocated)") );
+        assertFalse( serviceSource.contains("System.out") );
+
+        HistogramConversionMetrics metrics = new HistogramConversionMetrics();
+        for ( int i = 1; i <= 1000; i++ ) {
+            metrics.record( Test.class, metrics.startTime() - i * 1000L, 0 );
+        }
+
+        ConversionStatistics statistics = metrics.export().get(0);
+        assertEquals( Test.class, statistics.getEntityClass() );
+        assertEquals( 1000, statistics.getCount() );
+        assertTrue( statistics.getPercentileNanos(50) >= 500000 );
+        assertTrue( statistics.getPercentileNanos(50) <= 500000 * 9 / 8 + 100000 );
+        assertTrue( statistics.getPercentileNanos(100) <= statistics.getMaxNanos() );
+    }
+
+    public void testConversionContextJpaToDto() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild(convertersPackage);
+
+        Xpp3Dom outputPath = new Xpp3Dom("outputPath");
+        outputPath.setValue("target/context-test");
+        configuration.addChild( outputPath );
+
+        Xpp3Dom conversionContextEnabled = new Xpp3Dom("conversionContextEnabled");
+        conversionContextEnabled.setValue("true");
+        configuration.addChild( conversionContextEnabled );
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-jpa-converter");
+        mojoExecution.setConfiguration(configuration);
+
+        GenJpaToDtoConverterMojo mojo = (GenJpaToDtoConverterMojo)
+                lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        File serviceFile = new File("target/context-test/com/redshape/generators/jpa/services/DtoConversionService.java");
+        String serviceSource = new String( Files.readAllBytes( serviceFile.toPath() ) );
+        assertTrue( serviceSource.contains("context.put(Test.class, value, entityId, result)") );
+        assertTrue( serviceSource.contains("context.exit()") );
+
+        Object first = new Object();
+        Object second = new Object();
+        ConversionContext context = ConversionContext.enter();
+        try {
+            context.put( Test.class, first, null, "first" );
+            for ( long id = 0; id < 100; id++ ) {
+                context.put( Test.class, second, id, "second" + id );
+            }
+
+            assertSame( context, ConversionContext.enter() );
+            context.exit();
+
+            assertEquals( "first", context.get( Test.class, first, null ) );
+            assertNull( context.get( Test.class, second, null ) );
+            assertEquals( "second42", context.get( Test.class, first, 42L ) );
+            assertNull( context.get( Object.class, first, 42L ) );
+        } finally {
+            context.exit();
+        }
+
+        ConversionContext next = ConversionContext.enter();
+        next.exit();
+        assertNotSame( context, next );
+    }
+
+    public void testParallelJpaToDto() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild(convertersPackage);
+
+        Xpp3Dom outputPath = new Xpp3Dom("outputPath");
+        outputPath.setValue("target/parallel-test");
+        configuration.addChild( outputPath );
+
+        Xpp3Dom parallelConversionThreshold = new Xpp3Dom("parallelConversionThreshold");
+        parallelConversionThreshold.setValue("5000");
+        configuration.addChild( parallelConversionThreshold );
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-jpa-converter");
+        mojoExecution.setConfiguration(configuration);
+
+        GenJpaToDtoConverterMojo mojo = (GenJpaToDtoConverterMojo)
+                lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        File serviceFile = new File("target/parallel-test/com/redshape/generators/jpa/services/DtoConversionService.java");
+        String serviceSource = new String( Files.readAllBytes( serviceFile.toPath() ) );
+        assertTrue( serviceSource.contains("ParallelConversion.isParallel(records, 5000)") );
+        assertTrue( serviceSource.contains("ParallelConversion.convert(records, 1024, getConversionExecutor()") );
+
+        List<Integer> records = new ArrayList<Integer>();
+        for ( int i = 0; i < 1000; i++ ) {
+            records.add( i );
+        }
+
+        // spring-tx is not available, so nothing is bound to the calling thread
+        assertTrue( ParallelConversion.isParallel( records, 10 ) );
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<String> result = ParallelConversion.convert( records, 64, executor, new ChunkConverter<Integer, String>() {
+                @Override
+                public List<String> convert( List<? extends Integer> chunk ) {
+                    assertFalse( ParallelConversion.isParallel( chunk, 1 ) );
+
+                    List<String> result = new ArrayList<String>();
+                    for ( Integer record : chunk ) {
+                        result.add( String.valueOf(record) );
+                    }
+                    return result;
+                }
+            });
+
+            assertEquals( records.size(), result.size() );
+            for ( int i = 0; i < records.size(); i++ ) {
+                assertEquals( String.valueOf(i), result.get(i) );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testConversionContextListJpaToDto() throws Exception {
+        File root = new File("target/context-list-test");
+        FileUtils.deleteDirectory( root );
+        File sourceRoot = new File(root, "src");
+        File generatedRoot = new File(root, "generated");
+        File packageRoot = new File(sourceRoot, "identity");
+        packageRoot.mkdirs();
+        writeSource( packageRoot, "Node", "package identity;\n\n"
+                + "import com.a5000.platform.api.annotations.dto.AggregationType;\n"
+                + "import com.a5000.platform.api.annotations.dto.DtoInclude;\n\n"
+                + "@javax.persistence.Entity\npublic class Node {\n\n"
+                + "    @javax.persistence.Id\n    Long id;\n\n"
+                + "    @DtoInclude(AggregationType.DTO)\n    Node parent;\n\n"
+                + "    public Long getId() {\n        return id;\n    }\n\n"
+                + "    public void setId(Long id) {\n        this.id = id;\n    }\n\n"
+                + "    public Node getParent() {\n        return parent;\n    }\n\n"
+                + "    public void setParent(Node parent) {\n        this.parent = parent;\n    }\n\n}\n" );
+        writeSource( packageRoot, "LeafNode", "package identity;\n\n"
+                + "@javax.persistence.Entity\npublic class LeafNode extends Node {\n}\n" );
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "sourceRoot", sourceRoot.getPath() );
+        setParameter( configuration, "basePackage", "identity" );
+        setParameter( configuration, "dtoPackage", "identity" );
+        setParameter( configuration, "convertersPackage", "identity.services" );
+        setParameter( configuration, "outputPath", generatedRoot.getPath() );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+        setParameter( configuration, "incremental", "false" );
+        setParameter( configuration, "conversionContextEnabled", "true" );
+        executeMojo( "gen-dto", configuration, sourceRoot );
+
+        // chunks converted by other threads would not share the context, so both could not be enabled
+        setParameter( configuration, "parallelConversionThreshold", "2" );
+        try {
+            executeMojo( "gen-jpa-converter", configuration, sourceRoot );
+            fail( "Parallel conversion has been accepted along with the conversion context" );
+        } catch ( MojoExecutionException e ) {
+            assertTrue( e.getMessage().startsWith("Parallel conversion could not be used along with") );
+        }
+        setParameter( configuration, "parallelConversionThreshold", "0" );
+
+        // converters are generated against the DTOs generated above
+        MavenProjectStub project = (MavenProjectStub) createProject( configuration, sourceRoot );
+        project.setCompileSourceRoots( Commons.list( sourceRoot.getPath(), generatedRoot.getPath() ) );
+        AbstractMojo converterMojo = createMojo( "gen-jpa-converter", configuration, project, newMavenSession(project) );
+        converterMojo.execute();
+
+        File serviceFile = new File(generatedRoot, "identity/services/DtoConversionService.java");
+        assertFalse( readFile( serviceFile ).contains("ParallelConversion.isParallel") );
+
+        // Spring and the platform model are not on the test classpath, so the service compiles against stubs
+        File stubsRoot = new File(root, "stubs");
+        File serviceStubRoot = new File(stubsRoot, "org/springframework/stereotype");
+        File beanStubRoot = new File(stubsRoot, "com/a5000/platform/api/model/domain/api");
+        serviceStubRoot.mkdirs();
+        beanStubRoot.mkdirs();
+        writeSource( serviceStubRoot, "Service", "package org.springframework.stereotype;\n\n"
+                + "public @interface Service {\n\n    String value() default \"\";\n\n}\n" );
+        writeSource( beanStubRoot, "IStoredBean", "package com.a5000.platform.api.model.domain.api;\n\n"
+                + "public interface IStoredBean {\n\n    Long getId();\n\n}\n" );
+
+        File classesRoot = new File(root, "classes");
+        classesRoot.mkdirs();
+        List<File> sources = new ArrayList<File>();
+        for ( File sourcesRoot : Arrays.asList( sourceRoot, generatedRoot, stubsRoot ) ) {
+            sources.addAll( FileUtils.getFiles( sourcesRoot, "**/*.java", null ) );
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        boolean compiled = compiler.getTask( null, fileManager, diagnostics,
+                Arrays.asList( "-d", classesRoot.getPath(), "-classpath", System.getProperty("java.class.path") ),
+                null, fileManager.getJavaFileObjectsFromFiles(sources) ).call();
+        fileManager.close();
+        assertTrue( diagnostics.getDiagnostics().toString(), compiled );
+
+        java.net.URLClassLoader classLoader = new java.net.URLClassLoader(
+                new java.net.URL[] { classesRoot.toURI().toURL() }, getClass().getClassLoader() );
+        try {
+            Class<?> entityClass = classLoader.loadClass("identity.Node");
+            java.lang.reflect.Method setId = entityClass.getMethod( "setId", Long.class );
+            java.lang.reflect.Method setParent = entityClass.getMethod( "setParent", entityClass );
+
+            Object parent = entityClass.newInstance();
+            setId.invoke( parent, 100L );
+
+            // the subclass records in the middle are converted by the converter resolved for their class
+            Class<?> leafClass = classLoader.loadClass("identity.LeafNode");
+            List<Object> records = new ArrayList<Object>();
+            for ( long id = 0; id < 4; id++ ) {
+                Object record = ( id == 1 || id == 2 ? leafClass : entityClass ).newInstance();
+                setId.invoke( record, id );
+                records.add( record );
+            }
+            setParent.invoke( records.get(2), parent );
+            setParent.invoke( records.get(0), parent );
+            setParent.invoke( records.get(3), parent );
+
+            Object service = classLoader.loadClass("identity.services.DtoConversionService").newInstance();
+            List<?> result = (List<?>) service.getClass().getMethod( "convertNodeToDtoList", Collection.class )
+                    .invoke( service, records );
+            assertEquals( records.size(), result.size() );
+
+            java.lang.reflect.Method getParent = result.get(0).getClass().getMethod("getParent");
+            assertNotNull( getParent.invoke( result.get(0) ) );
+            assertSame( getParent.invoke( result.get(0) ), getParent.invoke( result.get(3) ) );
+            assertSame( getParent.invoke( result.get(0) ), getParent.invoke( result.get(2) ) );
+            assertEquals( "identity.dto.LeafNodeDTO", result.get(1).getClass().getName() );
+            assertEquals( "identity.dto.NodeDTO", result.get(3).getClass().getName() );
+        } finally {
+            classLoader.close();
+        }
+    }
+
+    public void testReproducibleJpaToDto() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild(convertersPackage);
+
+        Xpp3Dom verifyReproducibility = new Xpp3Dom("verifyReproducibility");
+        verifyReproducibility.setValue("true");
+        configuration.addChild(verifyReproducibility);
+
+        Xpp3Dom outputPath = new Xpp3Dom("outputPath");
+        outputPath.setValue("target/reproducibility-test/identical");
+        configuration.addChild(outputPath);
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-jpa-converter");
+        mojoExecution.setConfiguration(configuration);
+
+        // identical results of both passes
+        GenJpaToDtoConverterMojo mojo = (GenJpaToDtoConverterMojo)
+                lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+        assertTrue( new File("target/reproducibility-test/identical/com/redshape/generators/jpa/services/"
+                + "DtoConversionService.java").exists() );
+
+        // results which differ between the passes fail the goal before anything is written
+        File perturbedRoot = new File("target/reproducibility-test/perturbed");
+        FileUtils.deleteDirectory( perturbedRoot );
+        PerturbedConverterMojo perturbedMojo = new PerturbedConverterMojo( project, perturbedRoot );
+        try {
+            perturbedMojo.execute();
+            fail( "Non-reproducible sources have been accepted" );
+        } catch ( MojoFailureException e ) {
+            assertEquals( "2 generated sources are not reproducible", e.getMessage() );
+        }
+        assertEquals( 2, perturbedMojo.runs.get() );
+        assertFalse( perturbedRoot.exists() );
+    }
+
+    /**
+     * Defines a class which name differs on each generation pass
+     */
+    private static class PerturbedConverterMojo extends GenJpaToDtoConverterMojo {
+
+        private final AtomicInteger runs = new AtomicInteger();
+
+        PerturbedConverterMojo( MavenProject project, File outputRoot ) {
+            setProject( project );
+            this.outputPath = outputRoot.getPath();
+            this.sourceRoot = "src/test/java";
+            this.entityPattern = "**/*.java";
+            this.basePackage = "com.redshape.generators.jpa.entities";
+            this.dtoPackage = "com.redshape.generators.jpa";
+            this.daoPackage = "com.redshape.generators.jpa";
+            this.convertersPackage = "com.redshape.generators.jpa.services";
+            this.transactionalAnnotation = "com.a5000.platform.api.services.A5TransactionalReadOnly";
+            this.sourceModelSnapshot = false;
+            this.generationReport = false;
+            this.verifyReproducibility = true;
+        }
+
+        @Override
+        protected void onExecutionFinished() {
+            super.onExecutionFinished();
+            try {
+                codeModel._class( convertersPackage + ".Pass" + runs.incrementAndGet() );
+            } catch ( JClassAlreadyExistsException e ) {
+                throw new IllegalStateException( e.getMessage(), e );
+            }
+        }
+    }
+
+    public void testGenAllGoal() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild(convertersPackage);
+
+        Xpp3Dom incremental = new Xpp3Dom("incremental");
+        incremental.setValue("false");
+        configuration.addChild( incremental );
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-all");
+        mojoExecution.setConfiguration(configuration);
+
+        GenAllMojo mojo = (GenAllMojo) lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree(new File("target/"));
+        JavaClass testDaoClass = builder.getClassByName("com.a5000.platform.api.annotations.generators.jpa.entities.ITestDAO");
+        assertClassMethod( builder, testDaoClass, "findByName", new ParameterMatcher[] { new ParameterMatcher(String.class) },
+                new TypesMatcher(Test.class), new AnnotationMatcher[] {} );
+        assertNotNull( builder.getClassByName(Test.class.getCanonicalName() + "DTO").getFieldByName("relatedTestAId") );
+        assertTrue( new File("target/com/redshape/generators/jpa/services/DtoConversionService.java").exists() );
+    }
+
+    public void testGenAllDelegateParameters() throws Exception {
+        File root = new File("target/gen-all-dto-test");
+        FileUtils.deleteDirectory( root );
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "outputPath", root.getPath() );
+        setParameter( configuration, "generateDao", "false" );
+        setParameter( configuration, "generateConverters", "false" );
+        Xpp3Dom interfaceClasses = new Xpp3Dom("dtoInterfaceClasses");
+        Xpp3Dom interfaceClass = new Xpp3Dom("dtoInterfaceClass");
+        interfaceClass.setValue( Cloneable.class.getName() );
+        interfaceClasses.addChild( interfaceClass );
+        configuration.addChild( interfaceClasses );
+
+        // a single enabled generator is executed by the goal with the parameters of the goal
+        executeMojo( "gen-all", configuration );
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree( root );
+        // interfaces are implemented by the DTO of the hierarchy root
+        JavaClass parentDtoClass = builder.getClassByName(
+                "com.a5000.platform.api.annotations.generators.jpa.entities.TestParentDTO" );
+        assertEquals( Cloneable.class.getName(), parentDtoClass.getImplements().get(0).getFullyQualifiedName() );
+        assertFalse( new File( root, "com/a5000/platform/api/annotations/generators/jpa/entities/ITestDAO.java" )
+                .exists() );
+    }
+
+    public void testHeapBudgetGenAllGoal() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild(convertersPackage);
+
+        Xpp3Dom incremental = new Xpp3Dom("incremental");
+        incremental.setValue("false");
+        configuration.addChild( incremental );
+
+        Xpp3Dom heapBudget = new Xpp3Dom("heapBudget");
+        heapBudget.setValue("1");
+        configuration.addChild( heapBudget );
+
+        File testDtoFile = new File("target/com/a5000/platform/api/annotations/generators/jpa/entities/TestDTO.java");
+        testDtoFile.delete();
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-all");
+        mojoExecution.setConfiguration(configuration);
+
+        GenAllMojo mojo = (GenAllMojo) lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree(new File("target/"));
+        assertTrue( testDtoFile.exists() );
+        assertNotNull( builder.getClassByName(Test.class.getCanonicalName() + "DTO").getFieldByName("relatedTestAId") );
+        assertNotNull( builder.getClassByName("com.a5000.platform.api.annotations.generators.jpa.entities.ITestParentDAO") );
+        assertTrue( new File("target/com/redshape/generators/jpa/services/DtoConversionService.java").exists() );
+    }
+
+    public void testCompiledGenDtoGoal() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom outputPath = new Xpp3Dom("outputPath");
+        outputPath.setValue("target/compile-test/sources");
+        configuration.addChild( outputPath );
+
+        Xpp3Dom classesOutputPath = new Xpp3Dom("classesOutputPath");
+        classesOutputPath.setValue("target/compile-test/classes");
+        configuration.addChild( classesOutputPath );
+
+        Xpp3Dom compileGenerated = new Xpp3Dom("compileGenerated");
+        compileGenerated.setValue("true");
+        configuration.addChild( compileGenerated );
+
+        Xpp3Dom writeSources = new Xpp3Dom("writeSources");
+        writeSources.setValue("false");
+        configuration.addChild( writeSources );
+
+        Xpp3Dom incremental = new Xpp3Dom("incremental");
+        incremental.setValue("false");
+        configuration.addChild( incremental );
+
+        MavenProject project = createProject( configuration );
+
+        MojoExecution mojoExecution = newMojoExecution("gen-dto");
+        mojoExecution.setConfiguration( configuration );
+
+        GenDtoMojo mojo = (GenDtoMojo) lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+        mojo.execute();
+
+        File classesRoot = new File("target/compile-test/classes");
+        String entitiesPath = "com/a5000/platform/api/annotations/generators/jpa/entities/";
+        assertTrue( new File(classesRoot, entitiesPath + "TestDTO.class").exists() );
+        assertFalse( new File(classesRoot, entitiesPath + "Test.class").exists() );
+        assertFalse( new File("target/compile-test/sources/" + entitiesPath + "TestDTO.java").exists() );
+
+        java.net.URLClassLoader classLoader = new java.net.URLClassLoader(
+                new java.net.URL[] { classesRoot.toURI().toURL() }, getClass().getClassLoader() );
+        Class<?> dtoClass = classLoader.loadClass( Test.class.getCanonicalName() + "DTO" );
+        assertSame( classLoader, dtoClass.getClassLoader() );
+        assertNotNull( dtoClass.getDeclaredField("relatedTestAId") );
+    }
+
+    public void testGenerationProcessor() throws Exception {
+        File generatedRoot = new File("target/processor-test/generated-sources");
+        File classesRoot = new File("target/processor-test/classes");
+        generatedRoot.mkdirs();
+        classesRoot.mkdirs();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        File[] sources = new File("src/test/java/com/a5000/platform/api/annotations/generators/jpa/entities").listFiles();
+
+        List<String> options = Arrays.asList( "-proc:only",
+                "-s", generatedRoot.getPath(),
+                "-d", classesRoot.getPath(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-A" + GenerationProcessor.ENABLED_OPTION + "=true",
+                "-A" + GenerationProcessor.OPTIONS_PREFIX + "basePackage=com.redshape.generators.jpa.entities",
+                "-A" + GenerationProcessor.OPTIONS_PREFIX + "daoPackage=com.redshape.generators.jpa",
+                "-A" + GenerationProcessor.OPTIONS_PREFIX + "dtoPackage=com.redshape.generators.jpa",
+                "-A" + GenerationProcessor.OPTIONS_PREFIX + "convertersPackage=com.redshape.generators.jpa.services" );
+
+        // generated repositories are not resolvable as Spring Data is not on the test classpath,
+        // so only errors reported by the processor itself are checked
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        JavaCompiler.CompilationTask task = compiler.getTask( null, fileManager, diagnostics, options, null,
+                fileManager.getJavaFileObjects(sources) );
+        task.setProcessors( Collections.singletonList( new GenerationProcessor() ) );
+        task.call();
+        fileManager.close();
+
+        for ( Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics() ) {
+            assertFalse( diagnostic.getMessage(null),
+                    diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getSource() == null );
+        }
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree(generatedRoot);
+        JavaClass testDaoClass = builder.getClassByName("com.a5000.platform.api.annotations.generators.jpa.entities.ITestDAO");
+        assertClassMethod( builder, testDaoClass, "findByName", new ParameterMatcher[] { new ParameterMatcher(String.class) },
+                new TypesMatcher(Test.class), new AnnotationMatcher[] {} );
+        assertNotNull( builder.getClassByName(Test.class.getCanonicalName() + "DTO").getFieldByName("relatedTestAId") );
+        assertTrue( new File(generatedRoot, "com/redshape/generators/jpa/services/DtoConversionService.java").exists() );
+        assertTrue( new File(classesRoot, GenerationProcessor.ENTITIES_INDEX).exists() );
+    }
+
+    public void testSharedModel() throws Exception {
+        Xpp3Dom configuration = createConfiguration();
+
+        Xpp3Dom incremental = new Xpp3Dom("incremental");
+        incremental.setValue("false");
+        configuration.addChild( incremental );
+
+        Xpp3Dom sharedModelParameter = new Xpp3Dom("sharedModel");
+        sharedModelParameter.setValue("true");
+        configuration.addChild( sharedModelParameter );
+
+        final MavenProject project = createProject( configuration );
+        MavenSession session = newMavenSession(project);
+
+        MojoExecution daoExecution = newMojoExecution("gen-dao");
+        daoExecution.setConfiguration( configuration );
+        GenDaoMojo daoMojo = (GenDaoMojo) lookupConfiguredMojo(session, daoExecution);
+        daoMojo.setProject(project);
+        daoMojo.setSession(session);
+        daoMojo.execute();
+
+        MojoExecution dtoExecution = newMojoExecution("gen-dto");
+        dtoExecution.setConfiguration( configuration );
+        GenDtoMojo dtoMojo = (GenDtoMojo) lookupConfiguredMojo(session, dtoExecution);
+        dtoMojo.setProject(project);
+        dtoMojo.setSession(session);
+        dtoMojo.execute();
+
+        assertTrue( new File("target/com/a5000/platform/api/annotations/generators/jpa/entities/TestDTO.java").exists() );
+
+        JavaProjectBuilder sharedModel = getSourcesModel( daoMojo );
+        assertNotNull( sharedModel );
+        assertSame( sharedModel, getSourcesModel( dtoMojo ) );
+
+        // the model is evicted once the module using it is finished
+        SessionModelCache cache = SessionModelCache.get( session.getRequest() );
+        assertEquals( 1, cache.size() );
+        session.getRequest().getExecutionListener().projectSucceeded( createProjectEvent( project, session ) );
+        assertEquals( 0, cache.size() );
+
+        GenDtoMojo nextDtoMojo = createMojo( "gen-dto", configuration, project, session );
+        nextDtoMojo.execute();
+        assertNotSame( sharedModel, getSourcesModel( nextDtoMojo ) );
+
+        final int[] builds = new int[1];
+        Callable<JavaProjectBuilder> factory = new Callable<JavaProjectBuilder>() {
+            @Override
+            public JavaProjectBuilder call() {
+                builds[0]++;
+                return new JavaProjectBuilder();
+            }
+        };
+
+        JavaProjectBuilder model = cache.getModel( "test", project, factory );
+        assertSame( model, cache.getModel( "test", project, factory ) );
+        assertEquals( 1, builds[0] );
+
+        cache.invalidate( "test" );
+        assertNotSame( model, cache.getModel( "test", project, factory ) );
+        assertNotSame( cache, SessionModelCache.get( newMavenSession(project).getRequest() ) );
+    }
+
+    private static JavaProjectBuilder getSourcesModel( AbstractGeneratorMojo mojo ) throws Exception {
+        java.lang.reflect.Field field = AbstractGeneratorMojo.class.getDeclaredField( "classMetaBuilder" );
+        field.setAccessible( true );
+        return (JavaProjectBuilder) field.get( mojo );
+    }
+
+    private static ExecutionEvent createProjectEvent( final MavenProject project, final MavenSession session ) {
+        return new ExecutionEvent() {
+            @Override
+            public Type getType() {
+                return Type.ProjectSucceeded;
+            }
+
+            @Override
+            public MavenSession getSession() {
+                return session;
+            }
+
+            @Override
+            public MavenProject getProject() {
+                return project;
+            }
+
+            @Override
+            public MojoExecution getMojoExecution() {
+                return null;
+            }
+
+            @Override
+            public Exception getException() {
+                return null;
+            }
+        };
+    }
+
+    public void testIncrementalGenDtoGoal() throws Exception {
+        File root = new File("target/incremental-test");
+        FileUtils.deleteDirectory( root );
+        File entitiesRoot = copyEntities( new File(root, "src") );
+        File stateRoot = new File(root, "state");
+        File reportFile = new File(root, "reports/GenDtoMojo.json");
+        File testDtoFile = new File(root, "generated/" + ENTITIES_PATH + "TestDTO.java");
+        File movedTestDtoFile = new File(root, "moved/" + ENTITIES_PATH + "TestDTO.java");
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "sourceRoot", new File(root, "src").getPath() );
+        setParameter( configuration, "outputPath", new File(root, "generated").getPath() );
+        setParameter( configuration, "incremental", "true" );
+        setParameter( configuration, "incrementalStatePath", stateRoot.getPath() );
+        setParameter( configuration, "generationReportPath", reportFile.getParent() );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        assertTrue( testDtoFile.exists() );
+        assertEquals( 1, stateRoot.list().length );
+        assertTrue( stateRoot.list()[0].startsWith("GenDtoMojo-") );
+
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        assertTrue( readFile( reportFile ).contains("\"skipped\": true") );
+
+        // Test refers to ITest by a relation field, TestParent only implements it
+        File interfaceSource = new File(entitiesRoot, "ITest.java");
+        Files.write( interfaceSource.toPath(), ( readFile( interfaceSource ) + "// changed\n" ).getBytes("UTF-8") );
+
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        String report = readFile( reportFile );
+        assertTrue( report.contains( "\"" + Test.class.getName() + "\"" ) );
+        assertFalse( report.contains( "\"" + Test.class.getName() + "Parent\"" ) );
+
+        // another output path is tracked by its own store, outputs under the previous one are left as is
+        setParameter( configuration, "outputPath", new File(root, "moved").getPath() );
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        assertTrue( movedTestDtoFile.exists() );
+        assertTrue( testDtoFile.exists() );
+        assertEquals( 2, stateRoot.list().length );
+    }
+
+    public void testExecutionsFingerprintStores() throws Exception {
+        File root = new File("target/executions-test");
+        FileUtils.deleteDirectory( root );
+        copyEntities( new File(root, "first") );
+        File otherRoot = new File(root, "second/other");
+        otherRoot.mkdirs();
+        writeSource( otherRoot, "Other", "package other;\n\n@javax.persistence.Entity\npublic class Other {\n\n"
+                + "    @javax.persistence.Id\n    Long id;\n\n}\n" );
+        File testDtoFile = new File(root, "first-generated/" + ENTITIES_PATH + "TestDTO.java");
+        File otherDtoFile = new File(root, "second-generated/com/redshape/generators/jpa/dto/OtherDTO.java");
+
+        // two executions of the goal sharing the state directory
+        Xpp3Dom first = createConfiguration();
+        setParameter( first, "sourceRoot", new File(root, "first").getPath() );
+        setParameter( first, "outputPath", new File(root, "first-generated").getPath() );
+        setParameter( first, "incremental", "true" );
+        setParameter( first, "incrementalStatePath", new File(root, "state").getPath() );
+        setParameter( first, "sourceModelSnapshot", "false" );
+
+        Xpp3Dom second = createConfiguration();
+        setParameter( second, "sourceRoot", new File(root, "second").getPath() );
+        setParameter( second, "basePackage", "other" );
+        setParameter( second, "outputPath", new File(root, "second-generated").getPath() );
+        setParameter( second, "incremental", "true" );
+        setParameter( second, "incrementalStatePath", new File(root, "state").getPath() );
+        setParameter( second, "sourceModelSnapshot", "false" );
+
+        executeMojo( "gen-dto", first, new File(root, "first") );
+        executeMojo( "gen-dto", second, new File(root, "second") );
+        assertTrue( testDtoFile.exists() );
+        assertTrue( otherDtoFile.exists() );
+
+        executeMojo( "gen-dto", first, new File(root, "first") );
+        assertTrue( otherDtoFile.exists() );
+        assertEquals( 2, new File(root, "state").list().length );
+    }
+
+    public void testChangedFilesWriting() throws Exception {
+        File root = new File("target/changed-files-test");
+        FileUtils.deleteDirectory( root );
+        File entitiesRoot = copyEntities( new File(root, "src") );
+        File reportFile = new File(root, "reports/GenDtoMojo.json");
+        File testDtoFile = new File(root, "generated/" + ENTITIES_PATH + "TestDTO.java");
+        File parentDtoFile = new File(root, "generated/" + ENTITIES_PATH + "TestParentDTO.java");
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "sourceRoot", new File(root, "src").getPath() );
+        setParameter( configuration, "outputPath", new File(root, "generated").getPath() );
+        setParameter( configuration, "incrementalStatePath", new File(root, "state").getPath() );
+        setParameter( configuration, "generationReportPath", reportFile.getParent() );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        assertTrue( testDtoFile.exists() );
+        assertTrue( parentDtoFile.exists() );
+
+        // regenerated with the same contents, so the files are not rewritten
+        long lastModified = 1000000000000L;
+        assertTrue( testDtoFile.setLastModified( lastModified ) );
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        assertEquals( lastModified, testDtoFile.lastModified() );
+        assertTrue( readFile( reportFile ).contains("\"writtenFilesCount\": 0,") );
+
+        // outputs are not tracked without the incremental mode
+        assertFalse( new File(root, "state").exists() );
+
+        // outputs of the removed entity are deleted by the incremental runs
+        setParameter( configuration, "incremental", "true" );
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        assertTrue( new File(entitiesRoot, "Test.java").delete() );
+        executeMojo( "gen-dto", configuration, new File(root, "src") );
+        assertFalse( testDtoFile.exists() );
+        assertTrue( parentDtoFile.exists() );
+        assertTrue( readFile( reportFile ).contains("\"removedFilesCount\": 1,") );
+    }
+
+    public void testEntityPrefilter() throws Exception {
+        File root = new File("target/prefilter-test");
+        FileUtils.deleteDirectory( root );
+        File sourceRoot = new File(root, "src");
+        File packageRoot = new File(sourceRoot, "prefilter");
+        packageRoot.mkdirs();
+
+        // annotations split across lines and a mapped superclass the entity inherits fields from
+        writeSource( packageRoot, "MappedBase", "package prefilter;\n\n@javax.persistence\n        .MappedSuperclass\n"
+                + "public abstract class MappedBase {\n\n    String code;\n\n}\n" );
+        writeSource( packageRoot, "MappedChild", "package prefilter;\n\n@javax.persistence.\n        Entity\n"
+                + "public class MappedChild extends MappedBase {\n\n    @javax.persistence.Id\n    Long id;\n\n"
+                + "    Kind kind;\n\n}\n" );
+        // not an entity candidate, but still parsed to resolve the entity field type
+        writeSource( packageRoot, "Kind", "package prefilter;\n\npublic enum Kind {\n    SMALL, LARGE\n}\n" );
+        writeSource( packageRoot, "Spaced", "package prefilter;\n\nimport javax.persistence.Entity;\n\n@ Entity\n"
+                + "public class Spaced {\n}\n" );
+        writeSource( packageRoot, "Listener", "package prefilter;\n\n@EntityListeners\npublic class Listener {\n\n"
+                + "    String entityName;\n\n    Object theEntity;\n\n}\n" );
+
+        SourceScanner scanner = new SourceScanner( Collections.singletonList("**/*.java"),
+                Collections.<String>emptyList(), Arrays.asList( "@Entity", "@MappedSuperclass", ".Entity",
+                ".MappedSuperclass" ), 2 );
+        Set<String> accepted = new HashSet<String>();
+        for ( SourceScanner.Source source : scanner.scan( Collections.singletonList(sourceRoot) ) ) {
+            accepted.add( source.getFile().getName() );
+        }
+        assertEquals( new HashSet<String>( Arrays.asList( "MappedBase.java", "MappedChild.java", "Spaced.java" ) ),
+                accepted );
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "sourceRoot", sourceRoot.getPath() );
+        setParameter( configuration, "basePackage", "prefilter" );
+        setParameter( configuration, "outputPath", new File(root, "generated").getPath() );
+        setParameter( configuration, "entityPrefilter", "true" );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+        executeMojo( "gen-dto", configuration, sourceRoot );
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree( new File(root, "generated") );
+        Set<String> dtoMethods = new HashSet<String>();
+        for ( JavaMethod method : builder.getClassByName( "com.redshape.generators.jpa.dto.MappedChildDTO" ).getMethods( true ) ) {
+            dtoMethods.add( method.getName() );
+        }
+        assertTrue( dtoMethods.contains("getId") );
+        assertTrue( dtoMethods.contains("getCode") );
+        assertTrue( dtoMethods.contains("getKind") );
+        assertFalse( new File(root, "generated/com/redshape/generators/jpa/dto/KindDTO.java").exists() );
+    }
+
+    private static void writeSource( File packageRoot, String className, String source ) throws Exception {
+        Files.write( new File(packageRoot, className + ".java").toPath(), source.getBytes("UTF-8") );
+    }
+
+    public void testSourceModelSnapshot() throws Exception {
+        File root = new File("target/snapshot-test");
+        FileUtils.deleteDirectory( root );
+        File sourceRoot = new File(root, "src");
+        File snapshotRoot = new File(root, "source-model");
+        File entitiesRoot = copyEntities( sourceRoot );
+        SourceScanner scanner = new SourceScanner( Collections.singletonList("**/*.java"),
+                Collections.<String>emptyList(), null, 1 );
+        ClassLoader classLoader = getClass().getClassLoader();
+        String testClassName = Test.class.getName();
+        String extraClassName = Test.class.getPackage().getName() + ".Extra";
+
+        snapshotRoot.mkdirs();
+        File legacyModelFile = new File(snapshotRoot, "legacy.model");
+        Files.write( legacyModelFile.toPath(), new byte[0] );
+
+        SourceModelSnapshot snapshot = new SourceModelSnapshot( snapshotRoot, Collections.singletonList(sourceRoot),
+                scanner, "dependencies" );
+        snapshot.build( classLoader );
+        assertEquals( 3, snapshot.getChangedSources().size() );
+        assertTrue( snapshot.isModified() );
+        snapshot.save();
+        assertFalse( legacyModelFile.exists() );
+        assertEquals( 1, snapshotRoot.list().length );
+
+        // unchanged sources are parsed from the snapshot with theirs file URLs
+        File testSource = new File(entitiesRoot, "Test.java");
+        snapshot = new SourceModelSnapshot( snapshotRoot, Collections.singletonList(sourceRoot), scanner, "dependencies" );
+        JavaProjectBuilder builder = snapshot.build( classLoader );
+        assertTrue( snapshot.getChangedSources().isEmpty() );
+        assertFalse( snapshot.isModified() );
+        assertEquals( testSource.toURI().toURL(), builder.getClassByName( testClassName ).getSource().getURL() );
+        assertEquals( testClassName + "Parent", builder.getClassByName( testClassName ).getSuperClass()
+                .getFullyQualifiedName() );
+
+        File extraSource = new File(entitiesRoot, "Extra.java");
+        Files.write( extraSource.toPath(), ( "package " + Test.class.getPackage().getName()
+                + ";\n\npublic class Extra {\n}\n" ).getBytes("UTF-8") );
+        Files.write( testSource.toPath(), ( readFile( testSource ) + "// changed\n" ).getBytes("UTF-8") );
+        builder = snapshot.build( classLoader );
+        assertEquals( new HashSet<File>( Arrays.asList( extraSource, testSource ) ),
+                new HashSet<File>( snapshot.getChangedSources() ) );
+        assertTrue( getClassNames( builder ).contains( extraClassName ) );
+        snapshot.save();
+
+        // removed sources are not kept in the model
+        extraSource.delete();
+        builder = snapshot.build( classLoader );
+        assertTrue( snapshot.getChangedSources().isEmpty() );
+        assertTrue( snapshot.isModified() );
+        assertFalse( getClassNames( builder ).contains( extraClassName ) );
+        assertTrue( getClassNames( builder ).contains( testClassName ) );
+        snapshot.save();
+
+        // changed dependencies drop the cached sources, the snapshot file is replaced
+        snapshot = new SourceModelSnapshot( snapshotRoot, Collections.singletonList(sourceRoot), scanner, "changed" );
+        snapshot.build( classLoader );
+        assertEquals( 3, snapshot.getChangedSources().size() );
+        snapshot.save();
+        assertEquals( 1, snapshotRoot.list().length );
+    }
+
+    private static Set<String> getClassNames( JavaProjectBuilder builder ) {
+        Set<String> result = new HashSet<String>();
+        for ( JavaClass javaClass : builder.getClasses() ) {
+            result.add( javaClass.getFullyQualifiedName() );
+        }
+
+        return result;
+    }
+
+    public void testTypeIndex() throws Exception {
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree(new File("src/test/java/" + ENTITIES_PATH));
+        builder.addClassLoader( getClass().getClassLoader() );
+
+        JavaClass testClass = builder.getClassByName( Test.class.getName() );
+        JavaClass parentClass = builder.getClassByName( Test.class.getName() + "Parent" );
+        JavaClass interfaceClass = builder.getClassByName( Test.class.getPackage().getName() + ".ITest" );
+
+        TypeIndex index = new TypeIndex( builder );
+        index.prepare( Arrays.asList( testClass ) );
+
+        assertTrue( index.hasDescendants( parentClass ) );
+        assertTrue( index.hasDescendants( interfaceClass ) );
+        assertFalse( index.hasDescendants( testClass ) );
+
+        List<JavaClass> hierarchy = index.getHierarchy( testClass );
+        assertEquals( testClass, hierarchy.get(0) );
+        assertEquals( parentClass, hierarchy.get(1) );
+        assertSame( hierarchy, index.getHierarchy( testClass ) );
+
+        // own fields first, then the inherited ones
+        List<JavaField> fields = index.getAllFields( testClass );
+        assertEquals( "name", fields.get(0).getName() );
+        assertEquals( "id", fields.get( fields.size() - 1 ).getName() );
+        assertEquals( parentClass, index.getField( testClass, "id" ).getDeclaringClass() );
+        assertEquals( testClass, index.getField( testClass, "relatedTest" ).getDeclaringClass() );
+        assertNull( index.getField( parentClass, "relatedTest" ) );
+
+        assertTrue( index.hasMethod( testClass, "getId", true, true ) );
+        assertFalse( index.hasMethod( testClass, "getId", false, false ) );
+        assertTrue( index.hasMethod( testClass, "add", false, true ) );
+        assertTrue( index.hasMethod( parentClass, "setId", false, true ) );
+    }
+
+    public void testHierarchyGenDaoGoal() throws Exception {
+        File root = new File("target/hierarchy-test");
+        FileUtils.deleteDirectory( root );
+        File sourceRoot = new File(root, "src");
+        File generatedRoot = new File(root, "generated");
+        File packageRoot = new File(sourceRoot, "hierarchy");
+        packageRoot.mkdirs();
+
+        // the id is declared two levels above the leaf entity, the descendants are declared after their parents
+        writeSource( packageRoot, "Animal", "package hierarchy;\n\n@javax.persistence.Entity\npublic class Animal {\n\n"
+                + "    @javax.persistence.Id\n    Integer id;\n\n}\n" );
+        writeSource( packageRoot, "Dog", "package hierarchy;\n\n@javax.persistence.Entity\n"
+                + "public class Dog extends Animal {\n\n    String breed;\n\n}\n" );
+        writeSource( packageRoot, "Puppy", "package hierarchy;\n\n@javax.persistence.Entity\n"
+                + "public class Puppy extends Dog {\n\n    Integer age;\n\n}\n" );
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "sourceRoot", sourceRoot.getPath() );
+        setParameter( configuration, "basePackage", "hierarchy" );
+        setParameter( configuration, "daoPackage", "hierarchy" );
+        setParameter( configuration, "outputPath", generatedRoot.getPath() );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+        setParameter( configuration, "incremental", "false" );
+        executeMojo( "gen-dao", configuration, sourceRoot );
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree( generatedRoot );
+
+        // repositories of the entities with descendants stay open for them
+        JavaClass animalDao = builder.getClassByName( "hierarchy.dao.IAnimalDAO" );
+        assertEquals( 1, animalDao.getTypeParameters().size() );
+        assertEquals( "org.springframework.data.jpa.repository.JpaRepository<T,java.lang.Integer>",
+                animalDao.getImplements().get(0).getGenericFullyQualifiedName() );
+
+        JavaClass dogDao = builder.getClassByName( "hierarchy.dao.IDogDAO" );
+        assertEquals( 1, dogDao.getTypeParameters().size() );
+        assertEquals( "hierarchy.dao.IAnimalDAO<T>", dogDao.getImplements().get(0).getGenericFullyQualifiedName() );
+
+        JavaClass puppyDao = builder.getClassByName( "hierarchy.dao.IPuppyDAO" );
+        assertTrue( puppyDao.getTypeParameters().isEmpty() );
+        assertEquals( "hierarchy.dao.IDogDAO<hierarchy.Puppy>",
+                puppyDao.getImplements().get(0).getGenericFullyQualifiedName() );
+    }
+
+    public void testScopedClassLoader() throws Exception {
+        ClassLoader delegate = getClass().getClassLoader();
+        ScopedClassLoader classLoader = new ScopedClassLoader( delegate, Arrays.asList( "javax.persistence", " " ) );
+        String testResource = Test.class.getName().replace('.', '/') + ".class";
+
+        assertTrue( classLoader.isInScope( "javax.persistence.Entity" ) );
+        assertTrue( classLoader.isInScope( "javax.persistence.criteria.Root" ) );
+        assertFalse( classLoader.isInScope( "javax.persistencex.Entity" ) );
+
+        assertSame( delegate.loadClass( "javax.persistence.Entity" ), classLoader.loadClass( "javax.persistence.Entity" ) );
+        assertSame( String.class, classLoader.loadClass( String.class.getName() ) );
+        try {
+            classLoader.loadClass( Test.class.getName() );
+            fail( "Class out of the scope has been loaded" );
+        } catch ( ClassNotFoundException e ) {
+            // expected
+        }
+
+        assertNotNull( delegate.getResource( testResource ) );
+        assertNull( classLoader.getResource( testResource ) );
+        assertFalse( classLoader.getResources( testResource ).hasMoreElements() );
+        assertNotNull( classLoader.getResource( "javax/persistence/Entity.class" ) );
+        assertTrue( classLoader.getResources( "javax/persistence/Entity.class" ).hasMoreElements() );
+    }
+
+    public void testScopedJpaToDto() throws Exception {
+        File root = new File("target/scoped-test");
+        FileUtils.deleteDirectory( root );
+        File sourceRoot = new File(root, "src");
+        File packageRoot = new File(sourceRoot, "scoped");
+        packageRoot.mkdirs();
+        writeSource( packageRoot, "Document", "package scoped;\n\n@javax.persistence.Entity\n"
+                + "public class Document extends outside.Record {\n\n    String title;\n\n}\n" );
+
+        // the parent with the id accessor is available to the project as a compiled dependency only
+        File recordRoot = new File(root, "record");
+        File recordPackageRoot = new File(recordRoot, "outside");
+        recordPackageRoot.mkdirs();
+        writeSource( recordPackageRoot, "Record", "package outside;\n\npublic class Record {\n\n"
+                + "    @javax.persistence.Id\n    Long id;\n\n"
+                + "    public Long getId() {\n        return id;\n    }\n\n}\n" );
+        File classesRoot = new File(root, "classes");
+        classesRoot.mkdirs();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        boolean compiled = compiler.getTask( null, fileManager, diagnostics,
+                Arrays.asList( "-d", classesRoot.getPath(), "-classpath", System.getProperty("java.class.path") ),
+                null, fileManager.getJavaFileObjectsFromFiles( FileUtils.getFiles( recordRoot, "**/*.java", null ) ) )
+                .call();
+        fileManager.close();
+        assertTrue( diagnostics.getDiagnostics().toString(), compiled );
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "sourceRoot", sourceRoot.getPath() );
+        setParameter( configuration, "basePackage", "scoped" );
+        setParameter( configuration, "dtoPackage", "scoped" );
+        setParameter( configuration, "convertersPackage", "scoped.services" );
+        setParameter( configuration, "outputPath", new File(root, "generated").getPath() );
+        setParameter( configuration, "conversionContextEnabled", "true" );
+        setParameter( configuration, "scopedClasspath", "true" );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+        setParameter( configuration, "incremental", "false" );
+
+        // the stub project exposes its compile source roots as the compile classpath
+        MavenProjectStub project = (MavenProjectStub) createProject( configuration, sourceRoot );
+        project.setCompileSourceRoots( Commons.list( sourceRoot.getPath(), classesRoot.getPath() ) );
+        AbstractMojo mojo = createMojo( "gen-jpa-converter", configuration, project, newMavenSession(project) );
+        mojo.execute();
+
+        // out of the scope the parent stays an opaque reference, so the id getter is not found
+        File serviceFile = new File(root, "generated/scoped/services/DtoConversionService.java");
+        assertTrue( readFile( serviceFile ).contains("ConversionContext.enter()") );
+        assertFalse( readFile( serviceFile ).contains("entityId") );
+
+        // once its package is in the scope the parent is resolved, conversions are matched by the ids
+        Xpp3Dom classpathScope = new Xpp3Dom("classpathScope");
+        Xpp3Dom scopePackage = new Xpp3Dom("classpathScopePackage");
+        scopePackage.setValue("outside");
+        classpathScope.addChild( scopePackage );
+        configuration.addChild( classpathScope );
+
+        project = (MavenProjectStub) createProject( configuration, sourceRoot );
+        project.setCompileSourceRoots( Commons.list( sourceRoot.getPath(), classesRoot.getPath() ) );
+        mojo = createMojo( "gen-jpa-converter", configuration, project, newMavenSession(project) );
+        mojo.execute();
+
+        assertTrue( readFile( serviceFile ).contains("Long entityId = value.getId();") );
+    }
+
+    public void testIndexedClassLoader() throws Exception {
+        File root = new File("target/indexed-loader-test");
+        FileUtils.deleteDirectory( root );
+
+        File archive = new File( junit.framework.Assert.class.getProtectionDomain().getCodeSource().getLocation().toURI() );
+        File directory = new File( root, "classes" );
+        new File( directory, "META-INF" ).mkdirs();
+        Files.write( new File( directory, "META-INF/MANIFEST.MF" ).toPath(), "Manifest-Version: 1.0\n".getBytes("UTF-8") );
+
+        ClasspathIndex index = new ClasspathIndex( new File( root, "index" ) );
+        index.build( Arrays.asList( directory, archive ) );
+        assertEquals( Arrays.asList( directory, archive ), index.getLocations( "META-INF/MANIFEST.MF" ) );
+        assertTrue( index.getLocations( "missing/Resource.txt" ).isEmpty() );
+
+        IndexedClassLoader classLoader = new IndexedClassLoader( index, null );
+        Class<?> assertClass = classLoader.loadClass( "junit.framework.Assert" );
+        assertEquals( "junit.framework", assertClass.getPackage().getName() );
+        assertEquals( 1, classLoader.getOpenedArchivesCount() );
+        assertEquals( new File( directory, "META-INF/MANIFEST.MF" ).toURI().toURL(),
+                classLoader.getResource( "META-INF/MANIFEST.MF" ) );
+        assertEquals( 2, Collections.list( classLoader.getResources( "META-INF/MANIFEST.MF" ) ).size() );
+
+        // archives are released on close, but the loader is still usable
+        classLoader.close();
+        assertEquals( 0, classLoader.getOpenedArchivesCount() );
+        // the package is defined once for all its classes
+        assertSame( assertClass.getPackage(), classLoader.loadClass( "junit.framework.TestCase" ).getPackage() );
+        assertEquals( 1, classLoader.getOpenedArchivesCount() );
+        classLoader.close();
+
+        // state directories default to the project build directory, not to the working one
+        MavenProject project = createProject( createConfiguration() );
+        project.getBuild().setDirectory( new File( root, "build" ).getAbsolutePath() );
+        MetamodelProbe probe = new MetamodelProbe( project );
+        assertEquals( new File( root, "build/generation-kit/classpath-index" ).getAbsoluteFile(),
+                probe.resolveBuildPath( null, "generation-kit/classpath-index" ) );
+        assertEquals( new File( project.getBasedir(), "state" ),
+                probe.resolveBuildPath( "state", "generation-kit" ) );
+    }
+
+    public void testDependenciesKey() throws Exception {
+        File root = new File("target/dependencies-key-test");
+        FileUtils.deleteDirectory( root );
+        root.mkdirs();
+        File archive = new File(root, "dependency.jar");
+        Files.write( archive.toPath(), "first".getBytes("UTF-8") );
+        assertTrue( archive.setLastModified( 1000000000000L ) );
+
+        MetamodelProbe probe = new MetamodelProbe( createProject( createConfiguration() ) );
+        probe.classpathElements = Arrays.asList( archive, root );
+        String key = probe.getDependenciesKey();
+
+        // archives are keyed by theirs size and modification time, the contents are not read
+        Files.write( archive.toPath(), "other".getBytes("UTF-8") );
+        assertTrue( archive.setLastModified( 1000000000000L ) );
+        assertEquals( key, probe.getDependenciesKey() );
+
+        // directories are not taken into account
+        Files.write( new File(root, "Compiled.class").toPath(), new byte[0] );
+        assertEquals( key, probe.getDependenciesKey() );
+
+        assertTrue( archive.setLastModified( 1000000010000L ) );
+        assertFalse( key.equals( probe.getDependenciesKey() ) );
+
+        Files.write( archive.toPath(), "changed".getBytes("UTF-8") );
+        assertTrue( archive.setLastModified( 1000000000000L ) );
+        assertFalse( key.equals( probe.getDependenciesKey() ) );
+    }
+
+    public void testGenerationReport() throws Exception {
+        File reportFile = new File("target/report-test/report.json");
+        reportFile.delete();
+
+        GenerationReport report = new GenerationReport( "gen\tdto", "Gen\"Dto\"Mojo" );
+        report.addPhase( GenerationReport.PHASE_PARSING, 1500000 );
+        report.addPhase( GenerationReport.PHASE_PARSING, 1600000 );
+        report.addPhase( GenerationReport.PHASE_WRITING, 999999 );
+        report.addEntity( "a.Fast", 1000000 );
+        report.addEntity( "a\\b\nc\u0001", 2999999 );
+        report.addEntity( "a\\b\nc\u0001", 2000000 );
+        report.addClass( "a.Small", 1, 10 );
+        report.addClass( "a.Large", 3, 100 );
+        report.addWrittenFiles( 1, 1 );
+        report.save( reportFile );
+
+        String json = readFile( reportFile );
+        assertTrue( json.contains( "\"goal\": \"gen\\tdto\"," ) );
+        assertTrue( json.contains( "\"generator\": \"Gen\\\"Dto\\\"Mojo\"," ) );
+        assertTrue( json.contains( "\"skipped\": false," ) );
+
+        // durations are reported in whole milliseconds, times of a phase or an entity are summed up
+        assertTrue( json.contains( "\"parsing\": 3," ) );
+        assertTrue( json.contains( "\"writing\": 0\n" ) );
+        assertTrue( json.contains( "\"entities\": [\n"
+                + "    { \"name\": \"a\\\\b\\nc\\u0001\", \"time\": 4 },\n"
+                + "    { \"name\": \"a.Fast\", \"time\": 1 }\n  ]," ) );
+        assertTrue( json.contains( "\"largestClasses\": [\n"
+                + "    { \"name\": \"a.Large\", \"size\": 100, \"methods\": 3 },\n"
+                + "    { \"name\": \"a.Small\", \"size\": 10, \"methods\": 1 }\n  ]" ) );
+        assertTrue( json.contains( "\"generatedMethodsCount\": 4," ) );
+        assertTrue( json.contains( "\"writtenFilesCount\": 1," ) );
+        assertTrue( json.matches( "(?s).*\"totalTime\": \\d+,.*" ) );
+        for ( char c : json.toCharArray() ) {
+            assertTrue( c >= 0x20 || c == '\n' );
+        }
+    }
+
+    public void testGenDaoGoalReport() throws Exception {
+        File root = new File("target/report-goal-test");
+        FileUtils.deleteDirectory( root );
+        File generatedRoot = new File(root, "generated");
+        File reportFile = new File(root, "reports/GenDaoMojo.json");
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "outputPath", generatedRoot.getPath() );
+        setParameter( configuration, "generationReportPath", reportFile.getParent() );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+        setParameter( configuration, "incremental", "false" );
+        executeMojo( "gen-dao", configuration );
+
+        String json = readFile( reportFile );
+        assertTrue( json.contains( "\"skipped\": false," ) );
+        for ( String phase : Arrays.asList( GenerationReport.PHASE_DISCOVERY, GenerationReport.PHASE_PARSING,
+                GenerationReport.PHASE_INDEXING, GenerationReport.PHASE_GENERATION, GenerationReport.PHASE_WRITING ) ) {
+            assertTrue( phase, json.matches( "(?s).*\"" + phase + "\": \\d+.*" ) );
+        }
+
+        // each entity is timed, each generated repository is measured by its written source
+        assertTrue( json.contains( "\"entitiesCount\": 2," ) );
+        assertTrue( json.contains( "{ \"name\": \"" + Test.class.getName() + "\", \"time\": " ) );
+        assertTrue( json.contains( "{ \"name\": \"" + Test.class.getName() + "Parent\", \"time\": " ) );
+        assertTrue( json.contains( "\"generatedClassesCount\": 2," ) );
+        assertTrue( json.contains( "\"writtenFilesCount\": 2," ) );
+
+        String daoName = Test.class.getPackage().getName() + ".ITestDAO";
+        File daoFile = new File(generatedRoot, daoName.replace('.', '/') + ".java");
+        assertTrue( json.contains( "{ \"name\": \"" + daoName + "\", \"size\": " + daoFile.length() + ", " ) );
+
+        // no report is written once disabled
+        reportFile.delete();
+        setParameter( configuration, "generationReport", "false" );
+        executeMojo( "gen-dao", configuration );
+        assertFalse( reportFile.exists() );
+    }
+
+    public void testEntityMetamodel() throws Exception {
+        MetamodelProbe probe = new MetamodelProbe( createProject( createConfiguration() ) );
+        String testClassName = Test.class.getName();
+
+        EntityModel model = probe.getEntityModel( testClassName );
+        assertSame( model, probe.getEntityModel( testClassName ) );
+        assertSame( model, probe.getMetamodel().getEntity( testClassName ) );
+        assertEquals( testClassName, model.getClassName() );
+        assertEquals( Long.class.getName(), model.getIdKeyType() );
+        assertTrue( model.getDtoClassName().endsWith(".TestDTO") );
+        assertTrue( model.getDaoClassName().endsWith(".ITestDAO") );
+
+        List<String> fieldNames = new ArrayList<String>();
+        for ( JavaField field : model.getFields() ) {
+            fieldNames.add( field.getName() );
+        }
+        assertEquals( Arrays.asList( "name", "relatedTest", "relatedTestA", "relatedTests",
+                "relatedTestByInterface", "date", "id" ), fieldNames );
+        assertEquals( 2, model.getRelationFields().size() );
+        assertEquals( "relatedTests", model.getRelationFields().get(0).getName() );
+
+        assertEquals( 1, model.getExtensionFields().size() );
+        assertEquals( "testParentId", model.getExtensionFields().get(0).getName() );
+        assertEquals( "Long", model.getExtensionFields().get(0).getTypeName() );
+
+        List<String> queryNames = new ArrayList<String>();
+        for ( QueryModel query : model.getQueries() ) {
+            queryNames.add( query.getName() );
+        }
+        assertEquals( Arrays.asList( "findByName", "findByUserId", "deleteWhereUserIdIs", "deleteWhereUserIdIn",
+                "countById" ), queryNames );
+
+        // a model registered concurrently for the same entity wins over the later one
+        Metamodel metamodel = new Metamodel();
+        assertSame( model, metamodel.addEntity( model ) );
+        assertSame( model, metamodel.addEntity( new EntityModel( model.getJavaClass(), null,
+                Collections.<JavaField>emptyList(), Collections.<JavaField>emptyList(), null, null,
+                Collections.<ExtensionField>emptyList(), Collections.<QueryModel>emptyList() ) ) );
+
+        JavaClass testClass = model.getJavaClass();
+        assertEquals( TypeKind.COMPLEX, metamodel.getTypeKind( testClass ) );
+        assertEquals( TypeKind.LANG, metamodel.getTypeKind( model.getFields().get(0).getType() ) );
+        assertEquals( TypeKind.DATE, metamodel.getTypeKind( model.getFields().get(5).getType() ) );
+        assertTrue( Metamodel.isA( testClass, testClassName ) );
+        assertTrue( Metamodel.isA( testClass, "Test" ) );
+        assertFalse( Metamodel.isA( testClass, "est" ) );
+
+        assertNull( metamodel.getIdKeyType( testClassName ) );
+        metamodel.putIdKeyType( testClassName, "" );
+        assertEquals( "", metamodel.getIdKeyType( testClassName ) );
+    }
+
+    /**
+     * Generator exposing its entities metamodel
+     */
+    public void testMetamodelGenDaoAndDtoGoals() throws Exception {
+        File root = new File("target/metamodel-test");
+        FileUtils.deleteDirectory( root );
+        File sourceRoot = new File(root, "src");
+        File generatedRoot = new File(root, "generated");
+        File packageRoot = new File(sourceRoot, "metamodel");
+        packageRoot.mkdirs();
+
+        // concatenated annotation values end up normalized in the query and extension specs
+        writeSource( packageRoot, "Invoice", "package metamodel;\n\n"
+                + "import com.a5000.platform.api.annotations.dto.DtoExtend;\n"
+                + "import com.a5000.platform.api.annotations.generators.*;\n\n"
+                + "@javax.persistence.Entity\n"
+                + "@NativeQueries({\n    @NativeQuery(\n        name = \"findBy\" + \"Number\",\n"
+                + "        isCollection = false,\n"
+                + "        value = \"select i from Invoice i \" + \"where i.number = :number\",\n"
+                + "        parameters = {\n            @Parameter( value = \"number\", type = String.class )\n"
+                + "        }\n    )\n})\n"
+                + "@DtoExtend({\n    @Parameter( value = \"linesCount\", type = Integer.class )\n})\n"
+                + "public class Invoice {\n\n    @javax.persistence.Id\n    Integer id;\n\n    String number;\n\n}\n" );
+
+        Xpp3Dom configuration = createConfiguration();
+        setParameter( configuration, "sourceRoot", sourceRoot.getPath() );
+        setParameter( configuration, "basePackage", "metamodel" );
+        setParameter( configuration, "daoPackage", "metamodel" );
+        setParameter( configuration, "dtoPackage", "metamodel" );
+        setParameter( configuration, "outputPath", generatedRoot.getPath() );
+        setParameter( configuration, "sourceModelSnapshot", "false" );
+        setParameter( configuration, "incremental", "false" );
+        executeMojo( "gen-dao", configuration, sourceRoot );
+        executeMojo( "gen-dto", configuration, sourceRoot );
+
+        JavaProjectBuilder builder = new JavaProjectBuilder();
+        builder.addSourceTree( generatedRoot );
+        JavaClass daoClass = builder.getClassByName( "metamodel.dao.IInvoiceDAO" );
+        assertEquals( "org.springframework.data.jpa.repository.JpaRepository<metamodel.Invoice,java.lang.Integer>",
+                daoClass.getImplements().get(0).getGenericFullyQualifiedName() );
+        JavaMethod queryMethod = daoClass.getMethods().get(0);
+        assertEquals( "findByNumber", queryMethod.getName() );
+        assertEquals( "number", queryMethod.getParameters().get(0).getName() );
+        assertEquals( "select i from Invoice i where i.number = :number",
+                queryMethod.getAnnotations().get(0).getNamedParameter("value").toString().replace("\"", "") );
+
+        JavaClass dtoClass = builder.getClassByName( "metamodel.dto.InvoiceDTO" );
+        assertEquals( "java.lang.Integer", dtoClass.getFieldByName("linesCount").getType().getFullyQualifiedName() );
+        assertNotNull( dtoClass.getMethodBySignature( "getLinesCount", Collections.<JavaType>emptyList() ) );
+        assertEquals( "java.lang.String", dtoClass.getFieldByName("number").getType().getFullyQualifiedName() );
+    }
+
+    private static class MetamodelProbe extends GenDtoMojo {
+
+        private List<File> classpathElements;
+
+        MetamodelProbe( MavenProject project ) {
+            setProject( project );
+            this.sourceRoot = "src/test/java";
+            this.basePackage = "com.redshape.generators.jpa.entities";
+            this.dtoPackage = "com.redshape.generators.jpa";
+            this.daoPackage = "com.redshape.generators.jpa";
+            this.sourceModelSnapshot = false;
+        }
+
+        EntityModel getEntityModel( String className ) {
+            return getEntityModel( getClassMetaBuilder().getClassByName( className ) );
+        }
+
+        @Override
+        protected Metamodel getMetamodel() {
+            return super.getMetamodel();
+        }
+
+        @Override
+        protected File resolveBuildPath( String path, String defaultPath ) {
+            return super.resolveBuildPath( path, defaultPath );
+        }
+
+        @Override
+        protected List<File> getClasspathElements() throws DependencyResolutionRequiredException {
+            return classpathElements != null ? classpathElements : super.getClasspathElements();
+        }
+
+        @Override
+        protected String getDependenciesKey() throws DependencyResolutionRequiredException {
+            return super.getDependenciesKey();
+        }
+    }
+
+    public void testWatchGoal() throws Exception {
+        File root = new File("target/watch-test");
+        File entitiesRoot = copyEntities( new File(root, "src") );
+
+        Xpp3Dom configuration = createConfiguration();
+        configuration.getChild("sourceRoot").setValue( new File(root, "src").getPath() );
+
+        Xpp3Dom outputPath = new Xpp3Dom("outputPath");
+        outputPath.setValue( new File(root, "generated").getPath() );
+        configuration.addChild( outputPath );
+
+        Xpp3Dom convertersPackage = new Xpp3Dom("convertersPackage");
+        convertersPackage.setValue("com.redshape.generators.jpa.services");
+        configuration.addChild( convertersPackage );
+
+        Xpp3Dom incrementalStatePath = new Xpp3Dom("incrementalStatePath");
+        incrementalStatePath.setValue( new File(root, "state").getPath() );
+        configuration.addChild( incrementalStatePath );
+
+        Xpp3Dom sourceModelSnapshotPath = new Xpp3Dom("sourceModelSnapshotPath");
+        sourceModelSnapshotPath.setValue( new File(root, "source-model").getPath() );
+        configuration.addChild( sourceModelSnapshotPath );
+
+        MavenProjectStub project = (MavenProjectStub) createProject( configuration );
+        project.setCompileSourceRoots( Commons.list( new File(root, "src").getPath() ) );
+
+        MojoExecution mojoExecution = newMojoExecution("watch");
+        mojoExecution.setConfiguration( configuration );
+
+        final WatchMojo mojo = (WatchMojo) lookupConfiguredMojo(newMavenSession(project), mojoExecution);
+        mojo.setProject(project);
+
+        final List<Exception> failures = Collections.synchronizedList( new ArrayList<Exception>() );
+        Thread watcher = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mojo.execute();
+                } catch ( Exception e ) {
+                    failures.add(e);
+                }
+            }
+        });
+        watcher.start();
+
+        File parentDtoFile = new File(root, "generated/com/a5000/platform/api/annotations/generators/jpa/entities/TestParentDTO.java");
+        try {
+            assertTrue( awaitContent( parentDtoFile, "getId" ) );
+
+            File parentSource = new File(entitiesRoot, "TestParent.java");
+            String source = new String( Files.readAllBytes( parentSource.toPath() ), "UTF-8" );
+            Files.write( parentSource.toPath(), source.replace("    Long id;", "    Long id;\n\n    String title;\n\n"
+                    + "    public String getTitle() {\n        return title;\n    }\n\n"
+                    + "    public void setTitle(String title) {\n        this.title = title;\n    }").getBytes("UTF-8") );
+
+            assertTrue( awaitContent( parentDtoFile, "getTitle" ) );
+        } finally {
+            watcher.interrupt();
+            watcher.join( 10000 );
+        }
+
+        assertFalse( watcher.isAlive() );
+        assertTrue( failures.isEmpty() );
+    }
+
+    /**
+     * Copies the test entities sources, so they could be modified by the test
+     *
+     * @return directory of the copied entities
+     */
+    private static File copyEntities( File sourceRoot ) throws Exception {
+        File entitiesRoot = new File( sourceRoot, ENTITIES_PATH );
+        entitiesRoot.mkdirs();
+        for ( File source : new File("src/test/java/" + ENTITIES_PATH).listFiles() ) {
+            Files.copy( source.toPath(), new File(entitiesRoot, source.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING );
+        }
+
+        return entitiesRoot;
+    }
+
+    private static String readFile( File file ) throws Exception {
+        return new String( Files.readAllBytes( file.toPath() ), "UTF-8" );
+    }
+
+    private static boolean awaitContent( File file, String content ) throws Exception {
+        long deadline = System.currentTimeMillis() + 30000;
+        while ( System.currentTimeMillis() < deadline ) {
+            if ( file.exists() && new String( Files.readAllBytes( file.toPath() ), "UTF-8" ).contains(content) ) {
+                return true;
+            }
+
+            Thread.sleep( 100 );
+        }
+
+        return false;
+    }
+
+    /**
+     * Executes the goal on a new project configured by the given parameters
+     */
+    protected <T extends AbstractMojo> T executeMojo( String goal, Xpp3Dom configuration ) throws Exception {
+        return executeMojo( goal, configuration, new File("src/test/java") );
+    }
+
+    protected <T extends AbstractMojo> T executeMojo( String goal, Xpp3Dom configuration, File sourceRoot )
+            throws Exception {
+        MavenProject project = createProject( configuration, sourceRoot );
+        T mojo = createMojo( goal, configuration, project, newMavenSession(project) );
+        mojo.execute();
+        return mojo;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <T extends AbstractMojo> T createMojo( String goal, Xpp3Dom configuration, MavenProject project,
+                                                     MavenSession session ) throws Exception {
+        MojoExecution mojoExecution = newMojoExecution( goal );
+        mojoExecution.setConfiguration( configuration );
+
+        T mojo = (T) lookupConfiguredMojo( session, mojoExecution );
+        mojo.setProject( project );
+        mojo.setSession( session );
+        return mojo;
+    }
+
+    protected static void setParameter( Xpp3Dom configuration, String name, String value ) {
+        Xpp3Dom parameter = configuration.getChild( name );
+        if ( parameter == null ) {
+            parameter = new Xpp3Dom( name );
+            configuration.addChild( parameter );
+        }
+
+        parameter.setValue( value );
     }
 
     protected Xpp3Dom createConfiguration() {
@@ -225,10 +1855,14 @@ public class GenDaoMojoTest extends AbstractMojoTestCase {
     }
 
     protected MavenProject createProject( Xpp3Dom configuration ) {
+        return createProject( configuration, new File("src/test/java") );
+    }
+
+    protected MavenProject createProject( Xpp3Dom configuration, File sourceRoot ) {
         MavenProjectStub project = new MavenProjectStub();
         project.setGroupId("test-mojo");
         project.setArtifactId("test-mojo");
-        project.setCompileSourceRoots(Commons.list("src/test/java"));
+        project.setCompileSourceRoots( Commons.list( sourceRoot.getPath() ) );
 
         Plugin generatorPlugin = new Plugin();
         generatorPlugin.setGroupId("com.redshape.utils.generation-kit");
@@ -238,6 +1872,7 @@ public class GenDaoMojoTest extends AbstractMojoTestCase {
 
         Build build = new Build();
         build.addPlugin(generatorPlugin);
+        build.setDirectory( new File( getBasedir(), "target" ).getPath() );
         project.setBuild(build);
 
         return project;